@@ -119,9 +119,21 @@ public final class InternalSheet {
      * @see org.apache.poi.hssf.record.Record
      */
     public static InternalSheet createSheet(RecordStream rs) {
-        return new InternalSheet(rs);
+        return new InternalSheet(rs, false);
     }
-    private InternalSheet(RecordStream rs) {
+
+    /**
+     * Reads a sheet like {@link #createSheet(RecordStream)}, and optionally stores the number, label
+     * and blank cells packed in primitive arrays, until their records are requested.
+     *
+     * @param rs the stream to read records from
+     * @param packCellValues <code>true</code> to store the plain value cells packed
+     * @return Sheet object with all values set to those read from the file
+     */
+    public static InternalSheet createSheet(RecordStream rs, boolean packCellValues) {
+        return new InternalSheet(rs, packCellValues);
+    }
+    private InternalSheet(RecordStream rs, boolean packCellValues) {
         _mergedCellsTable = new MergedCellsTable();
         RowRecordsAggregate rra = null;
 
@@ -180,7 +192,7 @@ public final class InternalSheet {
                 }
                 RowBlocksReader rbr = new RowBlocksReader(rs);
                 _mergedCellsTable.addRecords(rbr.getLooseMergedCells());
-                rra = new RowRecordsAggregate(rbr.getPlainRecordStream(), rbr.getSharedFormulaManager());
+                rra = new RowRecordsAggregate(rbr.getPlainRecordStream(), rbr.getSharedFormulaManager(), packCellValues);
                 records.add(rra); //only add the aggregate once
                 continue;
             }
@@ -251,9 +251,17 @@ public final class RecordFactoryInputStream {
             // step underlying RecordInputStream to the next record
             _recStream.nextRecord();
 
+			if (_recStream.getSid() == DBCellRecord.sid) {
+				// Not needed by POI.  Regenerated from scratch by POI when spreadsheet is written,
+				// so the record isn't even created
+				_recStream.skipRemainder();
+				_lastRecordWasEOFLevelZero = false;
+				continue;
+			}
+
 			r = readNextRecord();
 			if (r == null) {
-				// some record types may get skipped (e.g. DBCellRecord and ContinueRecord)
+				// some record types may get skipped (e.g. ContinueRecord)
 				continue;
 			}
 			return r;
@@ -302,11 +310,6 @@ public final class RecordFactoryInputStream {
 			return record;
 		}
 
-		if (record instanceof DBCellRecord) {
-			// Not needed by POI.  Regenerated from scratch by POI when spreadsheet is written
-			return null;
-		}
-
 		if (record instanceof RKRecord) {
 			return RecordFactory.convertToNumberRecord((RKRecord) record);
 		}
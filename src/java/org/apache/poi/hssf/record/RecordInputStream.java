@@ -451,6 +451,16 @@ public final class RecordInputStream implements LittleEndianInput {
 		return result;
 	}
 
+	/**
+	 * Skips the remaining bytes of the current record, without allocating a buffer for them.
+	 */
+	public void skipRemainder() {
+		while (_currentDataOffset < _currentDataLength) {
+			_dataInput.readByte();
+			_currentDataOffset++;
+		}
+	}
+
     /**
      * Reads all byte data for the current record, including any that overlaps
      * into any following continue records.
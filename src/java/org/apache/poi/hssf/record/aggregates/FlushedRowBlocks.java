@@ -0,0 +1,157 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.record.aggregates;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.aggregates.RecordAggregate.RecordVisitor;
+import org.apache.poi.util.Internal;
+import org.apache.poi.util.TempFile;
+
+/**
+ * The serialized row blocks of a sheet, which have been flushed to a temporary file by
+ * {@link RowRecordsAggregate#flushFirstRowBlock(FlushedRowBlocks)}.  The blocks are read back
+ * one at a time when the sheet is serialized.
+ */
+@Internal
+public final class FlushedRowBlocks {
+
+    /**
+     * A flushed row block, which is serialized as it was written to the temporary file
+     */
+    private final class FlushedRowBlockRecord extends Record {
+        private final int _blockIndex;
+
+        FlushedRowBlockRecord(int blockIndex) {
+            _blockIndex = blockIndex;
+        }
+
+        @Override
+        public short getSid() {
+            // consists of the row, cell and DBCELL records of the block
+            return -1;
+        }
+
+        @Override
+        public int getRecordSize() {
+            return _sizes[_blockIndex];
+        }
+
+        @Override
+        public int serialize(int offset, byte[] data) {
+            try {
+                _file.seek(_offsets[_blockIndex]);
+                _file.readFully(data, offset, _sizes[_blockIndex]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return _sizes[_blockIndex];
+        }
+    }
+
+    private final File _tempFile;
+    private final RandomAccessFile _file;
+    private long _length;
+    private int _blockCount;
+    private long[] _offsets = new long[16];
+    private int[] _sizes = new int[16];
+    /** offsets of the DBCELL records from the start of their blocks */
+    private int[] _dbCellPositions = new int[16];
+    private int _rowCount;
+    private int _lastRowNum = -1;
+
+    public FlushedRowBlocks() throws IOException {
+        _tempFile = TempFile.createTempFile("poi-shssf-sheet", ".tmp");
+        _file = new RandomAccessFile(_tempFile, "rw");
+    }
+
+    /**
+     * Appends a serialized row block
+     * @param data the row, cell and DBCELL records of the block
+     * @param dbCellPosition the offset of the DBCELL record in the data
+     * @param rowCount the number of rows in the block
+     * @param lastRowNum the number of the last row in the block
+     */
+    /* package */ void addBlock(byte[] data, int dbCellPosition, int rowCount, int lastRowNum) {
+        if (_blockCount == _sizes.length) {
+            int newSize = _sizes.length * 2;
+            _offsets = Arrays.copyOf(_offsets, newSize);
+            _sizes = Arrays.copyOf(_sizes, newSize);
+            _dbCellPositions = Arrays.copyOf(_dbCellPositions, newSize);
+        }
+        try {
+            _file.seek(_length);
+            _file.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        _offsets[_blockCount] = _length;
+        _sizes[_blockCount] = data.length;
+        _dbCellPositions[_blockCount] = dbCellPosition;
+        _blockCount++;
+        _length += data.length;
+        _rowCount += rowCount;
+        _lastRowNum = lastRowNum;
+    }
+
+    public int getBlockCount() {
+        return _blockCount;
+    }
+
+    /**
+     * @return the number of flushed rows
+     */
+    public int getRowCount() {
+        return _rowCount;
+    }
+
+    /**
+     * @return the number of the last flushed row, -1 if no rows have been flushed
+     */
+    public int getLastRowNum() {
+        return _lastRowNum;
+    }
+
+    /* package */ int getBlockSize(int blockIndex) {
+        return _sizes[blockIndex];
+    }
+
+    /* package */ int getDBCellPosition(int blockIndex) {
+        return _dbCellPositions[blockIndex];
+    }
+
+    /* package */ void visitBlocks(RecordVisitor rv) {
+        for (int i = 0; i < _blockCount; i++) {
+            rv.visitRecord(new FlushedRowBlockRecord(i));
+        }
+    }
+
+    /**
+     * Closes and deletes the temporary file
+     * @return whether the temporary file was deleted
+     */
+    public boolean dispose() throws IOException {
+        _file.close();
+        return _tempFile.delete();
+    }
+}
@@ -40,6 +40,8 @@ public final class RowRecordsAggregate extends RecordAggregate {
     private final ValueRecordsAggregate _valuesAgg;
     private final List<Record> _unknownRecords;
     private final SharedValueManager _sharedValueManager;
+    /** the row blocks before the rows in memory, <code>null</code> if none were flushed */
+    private FlushedRowBlocks _flushedBlocks;
 
     // Cache values to speed up performance of
     // getStartRowNumberForBlock / getEndRowNumberForBlock, see Bugzilla 47405
@@ -66,7 +68,20 @@ public final class RowRecordsAggregate extends RecordAggregate {
      * and table records of the current sheet).  Never <code>null</code>.
      */
     public RowRecordsAggregate(RecordStream rs, SharedValueManager svm) {
+        this(rs, svm, false);
+    }
+
+    /**
+     * @param rs record stream with all {@link SharedFormulaRecord}
+     * {@link ArrayRecord}, {@link TableRecord} {@link MergeCellsRecord} Records removed
+     * @param svm an initialised {@link SharedValueManager} (from the shared formula, array
+     * and table records of the current sheet).  Never <code>null</code>.
+     * @param packCellValues <code>true</code> to store the number, label and blank cells packed,
+     * see {@link ValueRecordsAggregate#setPackCellValues(boolean)}
+     */
+    public RowRecordsAggregate(RecordStream rs, SharedValueManager svm, boolean packCellValues) {
         this(svm);
+        _valuesAgg.setPackCellValues(packCellValues);
         while(rs.hasNext()) {
             Record rec = rs.getNext();
             switch (rec.getSid()) {
@@ -246,37 +261,13 @@ public final class RowRecordsAggregate extends RecordAggregate {
 
     @Override
     public void visitContainedRecords(RecordVisitor rv) {
-
-        PositionTrackingVisitor stv = new PositionTrackingVisitor(rv, 0);
+        if (_flushedBlocks != null) {
+            _flushedBlocks.visitBlocks(rv);
+        }
         //DBCells are serialized before row records.
         final int blockCount = getRowBlockCount();
         for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
-            // Serialize a block of rows.
-            // Hold onto the position of the first row in the block
-            int pos=0;
-            // Hold onto the size of this block that was serialized
-            final int rowBlockSize = visitRowRecordsForBlock(blockIndex, rv);
-            pos += rowBlockSize;
-            // Serialize a block of cells for those rows
-            final int startRowNumber = getStartRowNumberForBlock(blockIndex);
-            final int endRowNumber = getEndRowNumberForBlock(blockIndex);
-            DBCellRecord.Builder dbcrBuilder = new DBCellRecord.Builder();
-            // Note: Cell references start from the second row...
-            int cellRefOffset = (rowBlockSize - RowRecord.ENCODED_SIZE);
-            for (int row = startRowNumber; row <= endRowNumber; row++) {
-                if (_valuesAgg.rowHasCells(row)) {
-                    stv.setPosition(0);
-                    _valuesAgg.visitCellsForRow(row, stv);
-                    int rowCellSize = stv.getPosition();
-                    pos += rowCellSize;
-                    // Add the offset to the first cell for the row into the
-                    // DBCellRecord.
-                    dbcrBuilder.addCellOffset(cellRefOffset);
-                    cellRefOffset = rowCellSize;
-                }
-            }
-            // Calculate Offset from the start of a DBCellRecord to the first Row
-            rv.visitRecord(dbcrBuilder.build(pos));
+            visitRowBlock(blockIndex, rv);
         }
         for (Record _unknownRecord : _unknownRecords) {
             // Potentially breaking the file here since we don't know exactly where to write these records
@@ -284,6 +275,85 @@ public final class RowRecordsAggregate extends RecordAggregate {
         }
     }
 
+    /**
+     * Visits the row records, the cell records and the DBCELL record of a row block
+     * @return the size of the records before the DBCELL record
+     */
+    private int visitRowBlock(int blockIndex, RecordVisitor rv) {
+        PositionTrackingVisitor stv = new PositionTrackingVisitor(rv, 0);
+        // Serialize a block of rows.
+        // Hold onto the position of the first row in the block
+        int pos=0;
+        // Hold onto the size of this block that was serialized
+        final int rowBlockSize = visitRowRecordsForBlock(blockIndex, rv);
+        pos += rowBlockSize;
+        // Serialize a block of cells for those rows
+        final int startRowNumber = getStartRowNumberForBlock(blockIndex);
+        final int endRowNumber = getEndRowNumberForBlock(blockIndex);
+        DBCellRecord.Builder dbcrBuilder = new DBCellRecord.Builder();
+        // Note: Cell references start from the second row...
+        int cellRefOffset = (rowBlockSize - RowRecord.ENCODED_SIZE);
+        for (int row = startRowNumber; row <= endRowNumber; row++) {
+            if (_valuesAgg.rowHasCells(row)) {
+                stv.setPosition(0);
+                _valuesAgg.visitCellsForRow(row, stv);
+                int rowCellSize = stv.getPosition();
+                pos += rowCellSize;
+                // Add the offset to the first cell for the row into the
+                // DBCellRecord.
+                dbcrBuilder.addCellOffset(cellRefOffset);
+                cellRefOffset = rowCellSize;
+            }
+        }
+        // Calculate Offset from the start of a DBCellRecord to the first Row
+        rv.visitRecord(dbcrBuilder.build(pos));
+        return pos;
+    }
+
+    /**
+     * Serializes the first row block to the flushed blocks and removes its rows and cells.
+     * All rows added later must come after the flushed rows.
+     * @return the number of the last flushed row, -1 if there are no rows
+     */
+    public int flushFirstRowBlock(FlushedRowBlocks flushedBlocks) {
+        if (_rowRecords.isEmpty()) {
+            return -1;
+        }
+        if (_flushedBlocks != null && _flushedBlocks != flushedBlocks) {
+            throw new IllegalArgumentException("The rows were flushed to other blocks");
+        }
+        _flushedBlocks = flushedBlocks;
+
+        final List<Record> records = new ArrayList<>();
+        int dbCellPosition = visitRowBlock(0, new RecordVisitor() {
+            @Override
+            public void visitRecord(Record r) {
+                records.add(r);
+            }
+        });
+        int size = 0;
+        for (Record rec : records) {
+            size += rec.getRecordSize();
+        }
+        byte[] data = new byte[size];
+        int pos = 0;
+        for (Record rec : records) {
+            pos += rec.serialize(pos, data);
+        }
+
+        int rowCount = getRowCountForBlock(0);
+        int lastRowNum = getEndRowNumberForBlock(0);
+        flushedBlocks.addBlock(data, dbCellPosition, rowCount, lastRowNum);
+
+        Iterator<RowRecord> it = _rowRecords.values().iterator();
+        for (int i = 0; i < rowCount; i++) {
+            _valuesAgg.removeAllCellsValuesForRow(it.next().getRowNumber());
+            it.remove();
+        }
+        _rowRecordValues = null;
+        return lastRowNum;
+    }
+
     public Iterator<RowRecord> getIterator() {
         return _rowRecords.values().iterator();
     }
@@ -442,6 +512,29 @@ public final class RowRecordsAggregate extends RecordAggregate {
         return _valuesAgg.iterator();
     }
 
+    /**
+     * @return <code>true</code> if the number, label and blank cells are stored packed,
+     * and are only materialized when they are requested
+     */
+    public boolean isPackCellValues() {
+        return _valuesAgg.isPackCellValues();
+    }
+
+    /**
+     * @param rowIndex the row index
+     * @return the cell value records of the row in column order
+     */
+    public CellValueRecordInterface[] getCellValueRecordsForRow(int rowIndex) {
+        return _valuesAgg.getValueRecordsForRow(rowIndex);
+    }
+
+    /**
+     * @return the indexes of the rows with cells in ascending order
+     */
+    public int[] getRowIndexesWithCells() {
+        return _valuesAgg.getRowIndexesWithCells();
+    }
+
     public IndexRecord createIndexRecord(int indexRecordOffset, int sizeOfInitialSheetRecords) {
         IndexRecord result = new IndexRecord();
         result.setFirstRow(_firstrow);
@@ -454,11 +547,17 @@ public final class RowRecordsAggregate extends RecordAggregate {
         // 0 for now.....
 
         int blockCount = getRowBlockCount();
+        int flushedBlockCount = _flushedBlocks == null ? 0 : _flushedBlocks.getBlockCount();
         // Calculate the size of this IndexRecord
-        int indexRecSize = IndexRecord.getRecordSizeForBlockCount(blockCount);
+        int indexRecSize = IndexRecord.getRecordSizeForBlockCount(flushedBlockCount + blockCount);
 
         int currentOffset = indexRecordOffset + indexRecSize + sizeOfInitialSheetRecords;
 
+        for (int block = 0; block < flushedBlockCount; block++) {
+            // the flushed blocks are written first, with the known position of their DBCELL records
+            result.addDbcell(currentOffset + _flushedBlocks.getDBCellPosition(block));
+            currentOffset += _flushedBlocks.getBlockSize(block);
+        }
         for (int block = 0; block < blockCount; block++) {
             // each row-block has a DBCELL record.
             // The offset of each DBCELL record needs to be updated in the INDEX record
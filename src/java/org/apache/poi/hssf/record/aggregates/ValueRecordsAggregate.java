@@ -17,13 +17,16 @@
 
 package org.apache.poi.hssf.record.aggregates;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.apache.poi.hssf.model.RecordStream;
 import org.apache.poi.hssf.record.BlankRecord;
 import org.apache.poi.hssf.record.CellValueRecordInterface;
 import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
 import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.RecordBase;
 import org.apache.poi.hssf.record.StringRecord;
@@ -45,6 +48,88 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 	private int firstcell = INDEX_NOT_SET;
 	private int lastcell  = INDEX_NOT_SET;
 	private CellValueRecordInterface[][] records;
+	private boolean packCellValues;
+	/** the plain value cells, which are stored without records, <code>null</code> if packing is off */
+	private PackedRow[] packedRows;
+
+	private static final byte PACKED_NONE = 0;
+	private static final byte PACKED_NUMBER = 1;
+	private static final byte PACKED_LABEL_SST = 2;
+	private static final byte PACKED_BLANK = 3;
+
+	/**
+	 * The plain value cells of a row - numbers, shared string labels and blanks - which are
+	 * stored in primitive arrays indexed by column.  A cell is either held by the packed row or
+	 * by the record grid, never by both.
+	 */
+	private static final class PackedRow {
+		byte[] types;
+		short[] xfs;
+		/** the raw bits of the number or the SST index */
+		long[] values;
+
+		PackedRow(int size) {
+			types = new byte[size];
+			xfs = new short[size];
+			values = new long[size];
+		}
+
+		int length() {
+			return types.length;
+		}
+
+		byte getType(int column) {
+			return column < types.length ? types[column] : PACKED_NONE;
+		}
+
+		void set(int column, byte type, short xf, long value) {
+			if (column >= types.length) {
+				int newSize = Math.max(types.length * 2, column + 1);
+				types = Arrays.copyOf(types, newSize);
+				xfs = Arrays.copyOf(xfs, newSize);
+				values = Arrays.copyOf(values, newSize);
+			}
+			types[column] = type;
+			xfs[column] = xf;
+			values[column] = value;
+		}
+
+		int getRecordSize(int column) {
+			// 4 byte header, 6 bytes of row, column and xf index plus the value
+			switch (types[column]) {
+				case PACKED_NUMBER: return 18;
+				case PACKED_LABEL_SST: return 14;
+				default: return 10;
+			}
+		}
+
+		CellValueRecordInterface createRecord(int row, int column) {
+			switch (types[column]) {
+				case PACKED_NUMBER:
+					NumberRecord nr = new NumberRecord();
+					nr.setRow(row);
+					nr.setColumn((short)column);
+					nr.setXFIndex(xfs[column]);
+					nr.setValue(Double.longBitsToDouble(values[column]));
+					return nr;
+				case PACKED_LABEL_SST:
+					LabelSSTRecord lr = new LabelSSTRecord();
+					lr.setRow(row);
+					lr.setColumn((short)column);
+					lr.setXFIndex(xfs[column]);
+					lr.setSSTIndex((int)values[column]);
+					return lr;
+				case PACKED_BLANK:
+					BlankRecord br = new BlankRecord();
+					br.setRow(row);
+					br.setColumn((short)column);
+					br.setXFIndex(xfs[column]);
+					return br;
+				default:
+					return null;
+			}
+		}
+	}
 
 	/** Creates a new instance of ValueRecordsAggregate */
 
@@ -87,7 +172,15 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 			records[row] = rowCells;
 		}
 		rowCells[column] = cell;
+		PackedRow packed = getPackedRow(row);
+		if (packed != null && column < packed.length()) {
+			packed.types[column] = PACKED_NONE;
+		}
 
+		updateCellRange(column);
+	}
+
+	private void updateCellRange(int column) {
 		if (column < firstcell || firstcell == INDEX_NOT_SET) {
 			firstcell = column;
 		}
@@ -96,11 +189,125 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 		}
 	}
 
+	/**
+	 * Enables or disables the packed storage of the plain value cells, which are read by
+	 * {@link #construct(CellValueRecordInterface, RecordStream, SharedValueManager)} and
+	 * {@link #addMultipleBlanks(MulBlankRecord)}.  Packed cells are materialized as records
+	 * when they are requested by {@link #iterator()} or {@link #getValueRecordsForRow(int)},
+	 * but they are serialized without creating records, which are kept.
+	 */
+	public void setPackCellValues(boolean packCellValues) {
+		if (packCellValues && packedRows == null) {
+			packedRows = new PackedRow[records.length];
+		}
+		this.packCellValues = packCellValues;
+	}
+
+	/**
+	 * @return <code>true</code> if the plain value cells are stored packed
+	 */
+	public boolean isPackCellValues() {
+		return packCellValues;
+	}
+
+	private PackedRow getPackedRow(int row) {
+		return packedRows != null && row < packedRows.length ? packedRows[row] : null;
+	}
+
+	private void packCell(int row, int column, byte type, short xf, long value) {
+		if (row >= packedRows.length) {
+			int newSize = Math.max(packedRows.length * 2, row + 1);
+			packedRows = Arrays.copyOf(packedRows, newSize);
+		}
+		PackedRow packed = packedRows[row];
+		if (packed == null) {
+			packed = new PackedRow(Math.max(column + 1, 10));
+			packedRows[row] = packed;
+		}
+		packed.set(column, type, xf, value);
+		if (row < records.length && records[row] != null && column < records[row].length) {
+			records[row][column] = null;
+		}
+		updateCellRange(column);
+	}
+
+	private void packOrInsertCell(CellValueRecordInterface cell) {
+		if (!packCellValues) {
+			insertCell(cell);
+		} else if (cell instanceof NumberRecord) {
+			NumberRecord nr = (NumberRecord)cell;
+			packCell(nr.getRow(), nr.getColumn(), PACKED_NUMBER, nr.getXFIndex(), Double.doubleToRawLongBits(nr.getValue()));
+		} else if (cell instanceof LabelSSTRecord) {
+			LabelSSTRecord lr = (LabelSSTRecord)cell;
+			packCell(lr.getRow(), lr.getColumn(), PACKED_LABEL_SST, lr.getXFIndex(), lr.getSSTIndex());
+		} else if (cell instanceof BlankRecord) {
+			packCell(cell.getRow(), cell.getColumn(), PACKED_BLANK, cell.getXFIndex(), 0);
+		} else {
+			insertCell(cell);
+		}
+	}
+
+	/**
+	 * Replaces the packed cell by its record, which is kept from now on
+	 */
+	private CellValueRecordInterface materializeCell(int row, int column) {
+		CellValueRecordInterface cell = packedRows[row].createRecord(row, column);
+		insertCell(cell);
+		return cell;
+	}
+
+	/**
+	 * Returns the cell value records of a row in column order.  Packed cells
+	 * are materialized, so that the returned records belong to this aggregate.
+	 *
+	 * @param rowIndex the row index
+	 * @return the records, an empty array if the row has no cells
+	 */
+	public CellValueRecordInterface[] getValueRecordsForRow(int rowIndex) {
+		CellValueRecordInterface[] rowCells = rowIndex < records.length ? records[rowIndex] : null;
+		PackedRow packed = getPackedRow(rowIndex);
+		int width = getRowWidth(rowCells, packed);
+		CellValueRecordInterface[] result = new CellValueRecordInterface[width];
+		int count = 0;
+		for (int col = 0; col < width; col++) {
+			if (packed != null && packed.getType(col) != PACKED_NONE) {
+				result[count++] = materializeCell(rowIndex, col);
+			} else if (rowCells != null && col < rowCells.length && rowCells[col] != null) {
+				result[count++] = rowCells[col];
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * @return the indexes of the rows with cells in ascending order
+	 */
+	public int[] getRowIndexesWithCells() {
+		int rowCount = Math.max(records.length, packedRows == null ? 0 : packedRows.length);
+		int[] result = new int[rowCount];
+		int count = 0;
+		for (int row = 0; row < rowCount; row++) {
+			if (rowHasCells(row)) {
+				result[count++] = row;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static int getRowWidth(CellValueRecordInterface[] rowCells, PackedRow packed) {
+		return Math.max(rowCells == null ? 0 : rowCells.length, packed == null ? 0 : packed.length());
+	}
+
 	public void removeCell(CellValueRecordInterface cell) {
 		if (cell == null) {
 			throw new IllegalArgumentException("cell must not be null");
 		}
 		int row = cell.getRow();
+		PackedRow packed = getPackedRow(row);
+		if (packed != null && packed.getType(cell.getColumn()) != PACKED_NONE) {
+			packed.types[cell.getColumn()] = PACKED_NONE;
+			return;
+		}
 		if (row >= records.length) {
 			throw new RuntimeException("cell row is out of range");
 		}
@@ -120,6 +327,9 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 			throw new IllegalArgumentException("Specified rowIndex " + rowIndex
 					+ " is outside the allowable range (0.." +MAX_ROW_INDEX + ")");
 		}
+		if (packedRows != null && rowIndex < packedRows.length) {
+			packedRows[rowIndex] = null;
+		}
 		if (rowIndex >= records.length) {
 			// this can happen when the client code has created a row,
 			// and then removes/replaces it before adding any cells. (see bug 46312)
@@ -141,6 +351,16 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 				}
 			}
 		}
+		if (packedRows != null) {
+			for (PackedRow packed : packedRows) {
+				if (packed != null) {
+					for (byte type : packed.types) {
+						if (type != PACKED_NONE)
+							count++;
+					}
+				}
+			}
+		}
 		return count;
 	}
 
@@ -159,7 +379,7 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 			br.setColumn(( short ) (j + mbr.getFirstColumn()));
 			br.setRow(mbr.getRow());
 			br.setXFIndex(mbr.getXFAt(j));
-			insertCell(br);
+			packOrInsertCell(br);
 		}
 	}
 
@@ -180,7 +400,7 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 			}
 			insertCell(new FormulaRecordAggregate(formulaRec, cachedText, sfh));
 		} else {
-			insertCell(rec);
+			packOrInsertCell(rec);
 		}
 	}
 
@@ -189,14 +409,21 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 	 */
 	public int getRowCellBlockSize(int startRow, int endRow) {
 		int result = 0;
-		for(int rowIx=startRow; rowIx<=endRow && rowIx<records.length; rowIx++) {
-			result += getRowSerializedSize(records[rowIx]);
+		int rowCount = Math.max(records.length, packedRows == null ? 0 : packedRows.length);
+		for(int rowIx=startRow; rowIx<=endRow && rowIx<rowCount; rowIx++) {
+			result += getRowSerializedSize(rowIx);
 		}
 		return result;
 	}
 
 	/** Returns true if the row has cells attached to it */
 	public boolean rowHasCells(int row) {
+		PackedRow packed = getPackedRow(row);
+		if (packed != null) {
+			for (byte type : packed.types) {
+				if (type != PACKED_NONE) return true;
+			}
+		}
 		if (row >= records.length) {
 			return false;
 		}
@@ -208,22 +435,25 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 		return false;
 	}
 
-	private static int getRowSerializedSize(CellValueRecordInterface[] rowCells) {
-		if(rowCells == null) {
-			return 0;
-		}
+	private int getRowSerializedSize(int rowIndex) {
+		CellValueRecordInterface[] rowCells = rowIndex < records.length ? records[rowIndex] : null;
+		PackedRow packed = getPackedRow(rowIndex);
+		int width = getRowWidth(rowCells, packed);
 		int result = 0;
-		for (int i = 0; i < rowCells.length; i++) {
-			RecordBase cvr = (RecordBase) rowCells[i];
-			if(cvr == null) {
+		for (int i = 0; i < width; i++) {
+			RecordBase cvr = rowCells != null && i < rowCells.length ? (RecordBase) rowCells[i] : null;
+			byte packedType = packed == null ? PACKED_NONE : packed.getType(i);
+			if(cvr == null && packedType == PACKED_NONE) {
 				continue;
 			}
-			int nBlank = countBlanks(rowCells, i);
+			int nBlank = countBlanks(rowCells, packed, i);
 			if (nBlank > 1) {
 				result += (10 + 2*nBlank);
 				i+=nBlank-1;
-			} else {
+			} else if (cvr != null) {
 				result += cvr.getRecordSize();
+			} else {
+				result += packed.getRecordSize(i);
 			}
 		}
 		return result;
@@ -231,21 +461,26 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 
 	public void visitCellsForRow(int rowIndex, RecordVisitor rv) {
 
-		CellValueRecordInterface[] rowCells = records[rowIndex];
-		if(rowCells == null) {
+		CellValueRecordInterface[] rowCells = rowIndex < records.length ? records[rowIndex] : null;
+		PackedRow packed = getPackedRow(rowIndex);
+		if(rowCells == null && packed == null) {
 			throw new IllegalArgumentException("Row [" + rowIndex + "] is empty");
 		}
 
-
-		for (int i = 0; i < rowCells.length; i++) {
-			RecordBase cvr = (RecordBase) rowCells[i];
-			if(cvr == null) {
+		int width = getRowWidth(rowCells, packed);
+		for (int i = 0; i < width; i++) {
+			RecordBase cvr = rowCells != null && i < rowCells.length ? (RecordBase) rowCells[i] : null;
+			byte packedType = packed == null ? PACKED_NONE : packed.getType(i);
+			if(cvr == null && packedType == PACKED_NONE) {
 				continue;
 			}
-			int nBlank = countBlanks(rowCells, i);
+			int nBlank = countBlanks(rowCells, packed, i);
 			if (nBlank > 1) {
-				rv.visitRecord(createMBR(rowCells, i, nBlank));
+				rv.visitRecord(createMBR(rowCells, packed, rowIndex, i, nBlank));
 				i+=nBlank-1;
+			} else if (cvr == null) {
+				// a transient record, the packed cell stays packed
+				rv.visitRecord((Record) packed.createRecord(rowIndex, i));
 			} else if (cvr instanceof RecordAggregate) {
 				RecordAggregate agg = (RecordAggregate) cvr;
 				agg.visitContainedRecords(rv);
@@ -259,11 +494,11 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 	 * @return the number of <em>consecutive</em> {@link BlankRecord}s in the specified row
 	 * starting from startIx.
 	 */
-	private static int countBlanks(CellValueRecordInterface[] rowCellValues, int startIx) {
+	private static int countBlanks(CellValueRecordInterface[] rowCellValues, PackedRow packed, int startIx) {
 		int i = startIx;
-		while(i < rowCellValues.length) {
-			CellValueRecordInterface cvr = rowCellValues[i];
-			if (!(cvr instanceof BlankRecord)) {
+		while (true) {
+			CellValueRecordInterface cvr = rowCellValues != null && i < rowCellValues.length ? rowCellValues[i] : null;
+			if (!(cvr instanceof BlankRecord) && (packed == null || packed.getType(i) != PACKED_BLANK)) {
 				break;
 			}
 			i++;
@@ -271,13 +506,14 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 		return i - startIx;
 	}
 
-	private MulBlankRecord createMBR(CellValueRecordInterface[] cellValues, int startIx, int nBlank) {
+	private MulBlankRecord createMBR(CellValueRecordInterface[] cellValues, PackedRow packed, int rowIx, int startIx, int nBlank) {
 
 		short[] xfs = new short[nBlank];
 		for (int i = 0; i < xfs.length; i++) {
-			xfs[i] = cellValues[startIx + i].getXFIndex();
+			int col = startIx + i;
+			CellValueRecordInterface cvr = cellValues != null && col < cellValues.length ? cellValues[col] : null;
+			xfs[i] = cvr != null ? cvr.getXFIndex() : packed.xfs[col];
 		}
-		int rowIx = cellValues[startIx].getRow();
 		return new MulBlankRecord(rowIx, startIx, xfs);
 	}
 
@@ -314,26 +550,38 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 			getNextPos();
 		}
 
+		private int getRowCount() {
+			return Math.max(records.length, packedRows == null ? 0 : packedRows.length);
+		}
+
+		private boolean isPacked(int rowIndex, int colIndex) {
+			PackedRow packed = getPackedRow(rowIndex);
+			return packed != null && packed.getType(colIndex) != PACKED_NONE;
+		}
+
 		void getNextPos() {
-			if (nextRowIndex >= records.length)
+			int rowCount = getRowCount();
+			if (nextRowIndex >= rowCount)
 				return; // no next already
 
-			while (nextRowIndex < records.length) {
+			while (nextRowIndex < rowCount) {
 				++nextColIndex;
-				if (records[nextRowIndex] == null || nextColIndex >= records[nextRowIndex].length) {
+				CellValueRecordInterface[] rowCells = nextRowIndex < records.length ? records[nextRowIndex] : null;
+				if (nextColIndex >= getRowWidth(rowCells, getPackedRow(nextRowIndex))) {
 					++nextRowIndex;
 					nextColIndex = -1;
 					continue;
 				}
 
-				if (records[nextRowIndex][nextColIndex] != null)
+				if ((rowCells != null && nextColIndex < rowCells.length && rowCells[nextColIndex] != null)
+						|| isPacked(nextRowIndex, nextColIndex))
 					return; // next cell found
 			}
 			// no next found
 		}
 
 		public boolean hasNext() {
-			return nextRowIndex < records.length;
+			return nextRowIndex < getRowCount();
 		}
 
 		public CellValueRecordInterface next() {
@@ -342,7 +590,9 @@ public final class ValueRecordsAggregate implements Iterable<CellValueRecordInte
 
 			curRowIndex = nextRowIndex;
 			curColIndex = nextColIndex;
-			final CellValueRecordInterface ret = records[curRowIndex][curColIndex];
+			final CellValueRecordInterface ret = isPacked(curRowIndex, curColIndex)
+					? materializeCell(curRowIndex, curColIndex)
+					: records[curRowIndex][curColIndex];
 			getNextPos();
 			return ret;
 		}
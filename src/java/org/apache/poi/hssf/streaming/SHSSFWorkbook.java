@@ -0,0 +1,524 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.record.aggregates.FlushedRowBlocks;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFCreationHelper;
+import org.apache.poi.hssf.usermodel.HSSFDataFormat;
+import org.apache.poi.hssf.usermodel.HSSFFont;
+import org.apache.poi.hssf.usermodel.HSSFName;
+import org.apache.poi.hssf.usermodel.HSSFPictureData;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.SheetVisibility;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+import org.apache.poi.util.Removal;
+
+/**
+ * Streaming version of HSSFWorkbook implementing the "BigGridDemo" strategy, in the manner
+ * of the SXSSFWorkbook for .xlsx files.
+ *
+ * This allows writing very large .xls files without running out of memory as only
+ * a configurable portion of the rows are kept in memory at any one time.  The older rows
+ * of a sheet are serialized to a temporary file in blocks of 32 rows, together with the
+ * DBCELL record of each block, and are copied into the workbook stream by {@link #write(OutputStream)},
+ * which also fixes up the INDEX record of the sheet with the offsets of the flushed blocks.
+ *
+ * The sheets are ordinary {@link HSSFSheet}s, but the rows, which have been flushed, can't be
+ * accessed any more and new rows must come after them.  The workbook globals, like the
+ * shared string table, the styles and the fonts, are still kept in memory.
+ *
+ * Carefully review your memory budget for compatibility if you'd like to use this
+ * class, and remember to {@link #dispose()} of the temporary files.
+ *
+ * @since POI 4.0.0
+ */
+public class SHSSFWorkbook implements Workbook {
+    /**
+     * Specifies how many rows can be accessed at most via {@link HSSFSheet#getRow}.
+     * When a new node is created via {@link HSSFSheet#createRow} and the total number
+     * of unflushed records would exceed the specified value, then the
+     * oldest row blocks are flushed, so that at least this many rows stay in memory.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+    private static final POILogger logger = POILogFactory.getLogger(SHSSFWorkbook.class);
+
+    private final HSSFWorkbook _wb;
+
+    private final Map<HSSFSheet,FlushedRowBlocks> _flushedRows = new IdentityHashMap<>();
+
+    private final int _randomAccessWindowSize;
+
+    /**
+     * Construct a new workbook with default row window size
+     */
+    public SHSSFWorkbook() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct an empty workbook and specify the window for row access.
+     *
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out, -1 means unlimited
+     */
+    public SHSSFWorkbook(int rowAccessWindowSize) {
+        this(new HSSFWorkbook(), rowAccessWindowSize);
+    }
+
+    /**
+     * Construct a workbook from a template.
+     *
+     * The rows of the existing sheets stay accessible until new rows are created
+     * in these sheets and push them out of the window.
+     *
+     * @param workbook  the template workbook
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out, -1 means unlimited
+     */
+    public SHSSFWorkbook(HSSFWorkbook workbook, int rowAccessWindowSize) {
+        if (rowAccessWindowSize == 0 || rowAccessWindowSize < -1) {
+            throw new IllegalArgumentException("rowAccessWindowSize must be greater than 0 or -1");
+        }
+        _wb = workbook;
+        _randomAccessWindowSize = rowAccessWindowSize;
+        for (int i = 0; i < _wb.getNumberOfSheets(); i++) {
+            initSheet(_wb.getSheetAt(i));
+        }
+    }
+
+    private HSSFSheet initSheet(HSSFSheet sheet) {
+        if (_randomAccessWindowSize != -1) {
+            FlushedRowBlocks flushedRows;
+            try {
+                flushedRows = new FlushedRowBlocks();
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+            sheet.setRowAccessWindow(_randomAccessWindowSize, flushedRows);
+            _flushedRows.put(sheet, flushedRows);
+        }
+        return sheet;
+    }
+
+    /**
+     * @return the wrapped workbook
+     */
+    public HSSFWorkbook getHSSFWorkbook() {
+        return _wb;
+    }
+
+    /**
+     * @return the number of rows that are kept in memory until flushed out, -1 means unlimited
+     */
+    public int getRandomAccessWindowSize() {
+        return _randomAccessWindowSize;
+    }
+
+    @Override
+    public int getActiveSheetIndex() {
+        return _wb.getActiveSheetIndex();
+    }
+
+    @Override
+    public void setActiveSheet(int sheetIndex) {
+        _wb.setActiveSheet(sheetIndex);
+    }
+
+    @Override
+    public int getFirstVisibleTab() {
+        return _wb.getFirstVisibleTab();
+    }
+
+    @Override
+    public void setFirstVisibleTab(int sheetIndex) {
+        _wb.setFirstVisibleTab(sheetIndex);
+    }
+
+    @Override
+    public void setSheetOrder(String sheetname, int pos) {
+        _wb.setSheetOrder(sheetname, pos);
+    }
+
+    @Override
+    public void setSelectedTab(int index) {
+        _wb.setSelectedTab(index);
+    }
+
+    @Override
+    public void setSheetName(int sheet, String name) {
+        _wb.setSheetName(sheet, name);
+    }
+
+    @Override
+    public String getSheetName(int sheet) {
+        return _wb.getSheetName(sheet);
+    }
+
+    @Override
+    public int getSheetIndex(String name) {
+        return _wb.getSheetIndex(name);
+    }
+
+    @Override
+    public int getSheetIndex(Sheet sheet) {
+        return _wb.getSheetIndex(sheet);
+    }
+
+    @Override
+    public HSSFSheet createSheet() {
+        return initSheet(_wb.createSheet());
+    }
+
+    @Override
+    public HSSFSheet createSheet(String sheetname) {
+        return initSheet(_wb.createSheet(sheetname));
+    }
+
+    /**
+     * Not implemented for streaming workbooks, as the flushed rows can't be copied.
+     */
+    @Override
+    public Sheet cloneSheet(int sheetNum) {
+        throw new RuntimeException("Not Implemented");
+    }
+
+    @Override
+    public Iterator<Sheet> sheetIterator() {
+        return _wb.sheetIterator();
+    }
+
+    /**
+     * Alias for {@link #sheetIterator()} to allow
+     * foreach loops
+     */
+    @Override
+    public Iterator<Sheet> iterator() {
+        return sheetIterator();
+    }
+
+    @Override
+    public int getNumberOfSheets() {
+        return _wb.getNumberOfSheets();
+    }
+
+    @Override
+    public HSSFSheet getSheetAt(int index) {
+        return _wb.getSheetAt(index);
+    }
+
+    @Override
+    public HSSFSheet getSheet(String name) {
+        return _wb.getSheet(name);
+    }
+
+    /**
+     * Removes the sheet at the given index and deletes the temporary file of its flushed rows
+     */
+    @Override
+    public void removeSheetAt(int index) {
+        HSSFSheet sheet = _wb.getSheetAt(index);
+        _wb.removeSheetAt(index);
+        FlushedRowBlocks flushedRows = _flushedRows.remove(sheet);
+        if (flushedRows != null) {
+            try {
+                flushedRows.dispose();
+            } catch (IOException e) {
+                logger.log(POILogger.WARN, e);
+            }
+        }
+    }
+
+    @Override
+    public HSSFFont createFont() {
+        return _wb.createFont();
+    }
+
+    @Override
+    public HSSFFont findFont(boolean bold, short color, short fontHeight, String name, boolean italic, boolean strikeout, short typeOffset, byte underline) {
+        return _wb.findFont(bold, color, fontHeight, name, italic, strikeout, typeOffset, underline);
+    }
+
+    @Override
+    @Deprecated
+    @Removal(version="4.2")
+    public short getNumberOfFonts() {
+        return _wb.getNumberOfFonts();
+    }
+
+    @Override
+    public int getNumberOfFontsAsInt() {
+        return _wb.getNumberOfFontsAsInt();
+    }
+
+    @Override
+    @Deprecated
+    @Removal(version="4.2")
+    public HSSFFont getFontAt(short idx) {
+        return _wb.getFontAt(idx);
+    }
+
+    @Override
+    public HSSFFont getFontAt(int idx) {
+        return _wb.getFontAt(idx);
+    }
+
+    @Override
+    public HSSFCellStyle createCellStyle() {
+        return _wb.createCellStyle();
+    }
+
+    @Override
+    public int getNumCellStyles() {
+        return _wb.getNumCellStyles();
+    }
+
+    @Override
+    public HSSFCellStyle getCellStyleAt(int idx) {
+        return _wb.getCellStyleAt(idx);
+    }
+
+    /**
+     * Write out this workbook to an OutputStream.  The flushed rows are copied from
+     * the temporary files, which are kept until {@link #dispose()} is called.
+     *
+     * @param stream - the java OutputStream you wish to write to
+     * @exception IOException if anything can't be written.
+     */
+    @Override
+    public void write(OutputStream stream) throws IOException {
+        _wb.write(stream);
+    }
+
+    /**
+     * Closes the underlying {@link HSSFWorkbook}.
+     * Once this has been called, no further
+     * operations, updates or reads should be performed on the
+     * Workbook.
+     *
+     * This does not delete the temporary files, call {@link #dispose()} for that.
+     */
+    @Override
+    public void close() throws IOException {
+        _wb.close();
+    }
+
+    /**
+     * Dispose of temporary files backing this workbook on disk.
+     * Calling this method will render the workbook unusable.
+     * @return true if all temporary files were deleted successfully.
+     */
+    public boolean dispose() {
+        boolean success = true;
+        for (FlushedRowBlocks flushedRows : _flushedRows.values()) {
+            try {
+                success = flushedRows.dispose() && success;
+            } catch (IOException e) {
+                logger.log(POILogger.WARN, e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public int getNumberOfNames() {
+        return _wb.getNumberOfNames();
+    }
+
+    @Override
+    public HSSFName getName(String name) {
+        return _wb.getName(name);
+    }
+
+    @Override
+    public List<HSSFName> getNames(String name) {
+        return _wb.getNames(name);
+    }
+
+    @Override
+    public List<HSSFName> getAllNames() {
+        return _wb.getAllNames();
+    }
+
+    @Override
+    @Deprecated
+    @Removal(version="3.20")
+    public HSSFName getNameAt(int nameIndex) {
+        return _wb.getNameAt(nameIndex);
+    }
+
+    @Override
+    public HSSFName createName() {
+        return _wb.createName();
+    }
+
+    @Override
+    @Deprecated
+    @Removal(version="3.20")
+    public int getNameIndex(String name) {
+        return _wb.getNameIndex(name);
+    }
+
+    @Override
+    @Deprecated
+    @Removal(version="3.20")
+    public void removeName(int index) {
+        _wb.removeName(index);
+    }
+
+    @Override
+    @Deprecated
+    @Removal(version="3.20")
+    public void removeName(String name) {
+        _wb.removeName(name);
+    }
+
+    @Override
+    public void removeName(Name name) {
+        _wb.removeName(name);
+    }
+
+    @Override
+    public int linkExternalWorkbook(String name, Workbook workbook) {
+        return _wb.linkExternalWorkbook(name, workbook);
+    }
+
+    @Override
+    public void setPrintArea(int sheetIndex, String reference) {
+        _wb.setPrintArea(sheetIndex, reference);
+    }
+
+    @Override
+    public void setPrintArea(int sheetIndex, int startColumn, int endColumn, int startRow, int endRow) {
+        _wb.setPrintArea(sheetIndex, startColumn, endColumn, startRow, endRow);
+    }
+
+    @Override
+    public String getPrintArea(int sheetIndex) {
+        return _wb.getPrintArea(sheetIndex);
+    }
+
+    @Override
+    public void removePrintArea(int sheetIndex) {
+        _wb.removePrintArea(sheetIndex);
+    }
+
+    @Override
+    public MissingCellPolicy getMissingCellPolicy() {
+        return _wb.getMissingCellPolicy();
+    }
+
+    @Override
+    public void setMissingCellPolicy(MissingCellPolicy missingCellPolicy) {
+        _wb.setMissingCellPolicy(missingCellPolicy);
+    }
+
+    @Override
+    public HSSFDataFormat createDataFormat() {
+        return _wb.createDataFormat();
+    }
+
+    @Override
+    public int addPicture(byte[] pictureData, int format) {
+        return _wb.addPicture(pictureData, format);
+    }
+
+    @Override
+    public List<HSSFPictureData> getAllPictures() {
+        return _wb.getAllPictures();
+    }
+
+    @Override
+    public HSSFCreationHelper getCreationHelper() {
+        return _wb.getCreationHelper();
+    }
+
+    @Override
+    public boolean isHidden() {
+        return _wb.isHidden();
+    }
+
+    @Override
+    public void setHidden(boolean hiddenFlag) {
+        _wb.setHidden(hiddenFlag);
+    }
+
+    @Override
+    public boolean isSheetHidden(int sheetIx) {
+        return _wb.isSheetHidden(sheetIx);
+    }
+
+    @Override
+    public boolean isSheetVeryHidden(int sheetIx) {
+        return _wb.isSheetVeryHidden(sheetIx);
+    }
+
+    @Override
+    public void setSheetHidden(int sheetIx, boolean hidden) {
+        _wb.setSheetHidden(sheetIx, hidden);
+    }
+
+    @Override
+    public SheetVisibility getSheetVisibility(int sheetIx) {
+        return _wb.getSheetVisibility(sheetIx);
+    }
+
+    @Override
+    public void setSheetVisibility(int sheetIx, SheetVisibility visibility) {
+        _wb.setSheetVisibility(sheetIx, visibility);
+    }
+
+    @Override
+    public void addToolPack(UDFFinder toopack) {
+        _wb.addToolPack(toopack);
+    }
+
+    @Override
+    public void setForceFormulaRecalculation(boolean value) {
+        _wb.setForceFormulaRecalculation(value);
+    }
+
+    @Override
+    public boolean getForceFormulaRecalculation() {
+        return _wb.getForceFormulaRecalculation();
+    }
+
+    @Override
+    public SpreadsheetVersion getSpreadsheetVersion() {
+        return SpreadsheetVersion.EXCEL97;
+    }
+
+    @Override
+    public int addOlePackage(byte[] oleData, String label, String fileName, String command) throws IOException {
+        return _wb.addOlePackage(oleData, label, fileName, command);
+    }
+}
@@ -43,6 +43,11 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
 
     private int rowNum;
     private HSSFCell[] cells;
+    /**
+     * <code>true</code> while the cells of this row haven't been created from its
+     * packed cell value records yet
+     */
+    private boolean cellsPending;
 
     /**
      * reference to low level representation
@@ -81,10 +86,29 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      * @see org.apache.poi.hssf.usermodel.HSSFSheet#createRow(int)
      */
     HSSFRow(HSSFWorkbook book, HSSFSheet sheet, RowRecord record) {
+        this(book, sheet, record, false);
+    }
+
+    /**
+     * Creates an HSSFRow from a low level RowRecord object, whose cells are optionally
+     * created when they are accessed for the first time.  Only HSSFSheet should do this.
+     *
+     * @param book low-level Workbook object containing the sheet that contains this row
+     * @param sheet low-level Sheet object that contains this Row
+     * @param record the low level api object this row should represent
+     * @param lazyCells <code>true</code> to create the cells from the records of the sheet on demand
+     */
+    HSSFRow(HSSFWorkbook book, HSSFSheet sheet, RowRecord record, boolean lazyCells) {
         this.book = book;
         this.sheet = sheet;
         row = record;
         setRowNum(record.getRowNumber());
+
+        if (lazyCells) {
+            // the column boundaries of the RowRecord are kept until the cells are created
+            cellsPending = true;
+            return;
+        }
         
         // Size the initial cell list such that a read only case won't waste
         //  lots of memory, and a create/read followed by adding new cells can
@@ -97,6 +121,21 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
         // subsequent calls to createCellFromRecord() will update the colIx boundaries properly
     }
 
+    /**
+     * Creates the cells of a lazily loaded row from the cell value records of the sheet
+     */
+    private void loadCells() {
+        if (!cellsPending) {
+            return;
+        }
+        cellsPending = false;
+        cells = new HSSFCell[row.getLastCol()+INITIAL_CAPACITY];
+        row.setEmpty();
+        for (CellValueRecordInterface cval : sheet.getSheet().getRowsAggregate().getCellValueRecordsForRow(rowNum)) {
+            createCellFromRecord(cval);
+        }
+    }
+
     /**
      * Use this to create new cells within the row and return it.
      * <p>
@@ -155,6 +194,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
         removeCell((HSSFCell)cell, true);
     }
     private void removeCell(HSSFCell cell, boolean alsoRemoveRecords) {
+        loadCells();
 
         int column=cell.getColumnIndex();
         if(column < 0) {
@@ -186,6 +226,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      *  records too.
      */
     protected void removeAllCells() {
+        loadCells();
         for (HSSFCell cell : cells) {
             if (cell != null) {
                 removeCell(cell, true);
@@ -233,6 +274,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
           throw new IllegalArgumentException("Invalid row number (" + rowIndex
                   + ") outside allowable range (0.." + maxrow + ")");
         }
+        loadCells();
         rowNum = rowIndex;
         if (row != null) {
             row.setRowNumber(rowIndex);   // used only for KEY comparison (HSSFRow)
@@ -277,6 +319,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      * @param newColumn The new column number (0 based)
      */
     public void moveCell(HSSFCell cell, short newColumn) {
+        loadCells();
         // Ensure the destination is free
         if(cells.length > newColumn && cells[newColumn] != null) {
             throw new IllegalArgumentException("Asked to move cell to column " + newColumn + " but there's already a cell there");
@@ -298,6 +341,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      * used internally to add a cell.
      */
     private void addCell(HSSFCell cell) {
+        loadCells();
 
         int column=cell.getColumnIndex();
         // re-allocate cells array as required.
@@ -333,6 +377,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      * @return HSSFCell representing that column or null if undefined.
      */
     private HSSFCell retrieveCell(int cellIndex) {
+        loadCells();
         if(cellIndex<0||cellIndex>=cells.length) {
             return null;
         }
@@ -384,6 +429,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      */
     @Override
     public short getFirstCellNum() {
+        loadCells();
         if (row.isEmpty()) {
             return -1;
         }
@@ -411,6 +457,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
      */
     @Override
     public short getLastCellNum() {
+        loadCells();
         if (row.isEmpty()) {
             return -1;
         }
@@ -427,6 +474,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
     @Override
     public int getPhysicalNumberOfCells()
     {
+        loadCells();
         int count = 0;
         for (HSSFCell cell : cells) {
             if (cell != null) count++;
@@ -609,6 +657,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
     @Override
     public Iterator<Cell> cellIterator()
     {
+      loadCells();
       return new CellIterator();
     }
     /**
@@ -730,6 +779,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
         if(firstShiftColumnIndex > lastShiftColumnIndex)
             throw new IllegalArgumentException(String.format(LocaleUtil.getUserLocale(),
                     "Incorrect shifting range : %d-%d", firstShiftColumnIndex, lastShiftColumnIndex));
+        loadCells();
         if(lastShiftColumnIndex + step + 1> cells.length)
             extend(lastShiftColumnIndex + step + 1);
         for (int columnIndex = lastShiftColumnIndex; columnIndex >= firstShiftColumnIndex; columnIndex--){ // process cells backwards, because of shifting 
@@ -759,6 +809,7 @@ public final class HSSFRow implements Row, Comparable<HSSFRow> {
         if(firstShiftColumnIndex > lastShiftColumnIndex)
             throw new IllegalArgumentException(String.format(LocaleUtil.getUserLocale(),
                     "Incorrect shifting range : %d-%d", firstShiftColumnIndex, lastShiftColumnIndex));
+        loadCells();
         if(firstShiftColumnIndex - step < 0) 
             throw new IllegalStateException("Column index less than zero : " + (Integer.valueOf(firstShiftColumnIndex + step)).toString());
         for (int columnIndex = firstShiftColumnIndex; columnIndex <= lastShiftColumnIndex; columnIndex++){ 
@@ -33,6 +33,7 @@ import org.apache.poi.hssf.model.InternalSheet;
 import org.apache.poi.hssf.model.InternalWorkbook;
 import org.apache.poi.hssf.record.AutoFilterInfoRecord;
 import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DBCellRecord;
 import org.apache.poi.hssf.record.DVRecord;
 import org.apache.poi.hssf.record.DimensionsRecord;
 import org.apache.poi.hssf.record.DrawingRecord;
@@ -47,8 +48,10 @@ import org.apache.poi.hssf.record.SCLRecord;
 import org.apache.poi.hssf.record.WSBoolRecord;
 import org.apache.poi.hssf.record.WindowTwoRecord;
 import org.apache.poi.hssf.record.aggregates.DataValidityTable;
+import org.apache.poi.hssf.record.aggregates.FlushedRowBlocks;
 import org.apache.poi.hssf.record.aggregates.FormulaRecordAggregate;
 import org.apache.poi.hssf.record.aggregates.RecordAggregate.RecordVisitor;
+import org.apache.poi.hssf.record.aggregates.RowRecordsAggregate;
 import org.apache.poi.hssf.record.aggregates.WorksheetProtectionBlock;
 import org.apache.poi.hssf.usermodel.helpers.HSSFColumnShifter;
 
@@ -77,6 +80,7 @@ import org.apache.poi.ss.util.SSCellRange;
 import org.apache.poi.ss.util.SheetUtil;
 import org.apache.poi.util.Beta;
 import org.apache.poi.util.Configurator;
+import org.apache.poi.util.Internal;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 
@@ -117,6 +121,10 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
     private HSSFPatriarch _patriarch;
     private int _firstrow;
     private int _lastrow;
+    /** the number of rows kept in memory when the rows are flushed, -1 to keep all rows */
+    private int _rowAccessWindowSize = -1;
+    /** the flushed rows, <code>null</code> if the rows aren't flushed */
+    private FlushedRowBlocks _flushedRows;
 
     /**
      * Creates new HSSFSheet   - called by HSSFWorkbook to create a sheet from
@@ -188,14 +196,32 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
      * used internally to set the properties given a Sheet object
      */
     private void setPropertiesFromSheet(InternalSheet sheet) {
+        RowRecordsAggregate rowsAggregate = sheet.getRowsAggregate();
+        boolean lazyCells = rowsAggregate.isPackCellValues();
         RowRecord row = sheet.getNextRow();
 
         while (row != null) {
-            createRowFromRecord(row);
+            createRowFromRecord(row, lazyCells);
 
             row = sheet.getNextRow();
         }
 
+        if (lazyCells) {
+            // the cells of the rows are created when the rows are accessed,
+            // only the rows without row records are created with their cells now
+            for (int rowIx : rowsAggregate.getRowIndexesWithCells()) {
+                if (getRow(rowIx) == null) {
+                    RowRecord rowRec = new RowRecord(rowIx);
+                    sheet.addRow(rowRec);
+                    HSSFRow hrow = createRowFromRecord(rowRec);
+                    for (CellValueRecordInterface cval : rowsAggregate.getCellValueRecordsForRow(rowIx)) {
+                        hrow.createCellFromRecord(cval);
+                    }
+                }
+            }
+            return;
+        }
+
         Iterator<CellValueRecordInterface> iter = sheet.getCellValueIterator();
         long timestart = System.currentTimeMillis();
 
@@ -260,15 +286,50 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
      */
     @Override
     public HSSFRow createRow(int rownum) {
+        if (_flushedRows != null && rownum <= _flushedRows.getLastRowNum()) {
+            throw new IllegalArgumentException(
+                    "Attempting to write a row[" + rownum + "] " +
+                            "in the range [0," + _flushedRows.getLastRowNum() + "] that is already written to disk.");
+        }
         HSSFRow row = new HSSFRow(_workbook, this, rownum);
         // new rows inherit default height from the sheet
         row.setHeight(getDefaultRowHeight());
         row.getRowRecord().setBadFontHeight(false);
 
         addRow(row, true);
+        if (_flushedRows != null) {
+            flushRows(_rowAccessWindowSize);
+        }
         return row;
     }
 
+    /**
+     * Lets the sheet keep only the last rows in memory, the older rows are serialized to
+     * a temporary file in blocks of {@link DBCellRecord#BLOCK_SIZE} rows, while new rows are created.
+     * The flushed rows can't be accessed any more, and new rows must come after them.
+     *
+     * @param rowAccessWindowSize the number of rows, which are kept in memory at least
+     * @param flushedRows the temporary file of the flushed rows
+     */
+    @Internal
+    public void setRowAccessWindow(int rowAccessWindowSize, FlushedRowBlocks flushedRows) {
+        _rowAccessWindowSize = rowAccessWindowSize;
+        _flushedRows = flushedRows;
+    }
+
+    /**
+     * Flushes the row blocks of the oldest rows, so that at least <code>remaining</code>
+     * rows are kept in memory
+     */
+    private void flushRows(int remaining) {
+        while (_rows.size() >= remaining + DBCellRecord.BLOCK_SIZE) {
+            _sheet.getRowsAggregate().flushFirstRowBlock(_flushedRows);
+            for (int i = 0; i < DBCellRecord.BLOCK_SIZE; i++) {
+                _rows.pollFirstEntry();
+            }
+        }
+    }
+
     /**
      * Used internally to create a high level Row object from a low level row object.
      * USed when reading an existing file
@@ -278,7 +339,11 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
      */
 
     private HSSFRow createRowFromRecord(RowRecord row) {
-        HSSFRow hrow = new HSSFRow(_workbook, this, row);
+        return createRowFromRecord(row, false);
+    }
+
+    private HSSFRow createRowFromRecord(RowRecord row, boolean lazyCells) {
+        HSSFRow hrow = new HSSFRow(_workbook, this, row, lazyCells);
 
         addRow(hrow, false);
         return hrow;
@@ -368,7 +433,7 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
         if (addLow) {
             _sheet.addRow(row.getRowRecord());
         }
-        boolean firstRow = _rows.size() == 1;
+        boolean firstRow = _rows.size() == 1 && (_flushedRows == null || _flushedRows.getRowCount() == 0);
         if (row.getRowNum() > getLastRowNum() || firstRow) {
             _lastrow = row.getRowNum();
         }
@@ -394,7 +459,7 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
      */
     @Override
     public int getPhysicalNumberOfRows() {
-        return _rows.size();
+        return _rows.size() + (_flushedRows == null ? 0 : _flushedRows.getRowCount());
     }
 
     /**
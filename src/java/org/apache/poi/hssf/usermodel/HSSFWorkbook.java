@@ -26,9 +26,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
@@ -42,6 +44,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
 import org.apache.commons.codec.digest.DigestUtils;
@@ -65,9 +70,11 @@ import org.apache.poi.hssf.model.InternalWorkbook;
 import org.apache.poi.hssf.model.RecordStream;
 import org.apache.poi.hssf.model.WorkbookRecordList;
 import org.apache.poi.hssf.record.AbstractEscherHolderRecord;
+import org.apache.poi.hssf.record.BOFRecord;
 import org.apache.poi.hssf.record.BackupRecord;
 import org.apache.poi.hssf.record.BoundSheetRecord;
 import org.apache.poi.hssf.record.DrawingGroupRecord;
+import org.apache.poi.hssf.record.EOFRecord;
 import org.apache.poi.hssf.record.ExtendedFormatRecord;
 import org.apache.poi.hssf.record.FilePassRecord;
 import org.apache.poi.hssf.record.FontRecord;
@@ -96,8 +103,11 @@ import org.apache.poi.poifs.filesystem.EntryUtils;
 import org.apache.poi.poifs.filesystem.FilteringDirectoryNode;
 import org.apache.poi.poifs.filesystem.NPOIFSDocument;
 import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.OPOIFSFileSystem;
 import org.apache.poi.poifs.filesystem.Ole10Native;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterEvent;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.formula.FormulaShifter;
 import org.apache.poi.ss.formula.FormulaType;
@@ -120,6 +130,7 @@ import org.apache.poi.util.LittleEndianByteArrayInputStream;
 import org.apache.poi.util.LittleEndianByteArrayOutputStream;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
+import org.apache.poi.util.RecordFormatException;
 
 /**
  * High level representation of a workbook.  This is the first object most users
@@ -156,6 +167,13 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
 
     public final static int INITIAL_CAPACITY = Configurator.getIntValue("HSSFWorkbook.SheetInitialCapacity",3);
 
+    /**
+     * The system property to store the number, label and blank cells of existing workbooks packed
+     * in primitive arrays.  The cells of a row are only materialized, when the row is accessed,
+     * which saves memory for large read-mostly workbooks.  Read when a workbook is loaded.
+     */
+    public static final String PACK_CELL_VALUES_PROPERTY = "HSSFWorkbook.PackCellValues";
+
     /**
      * this is the reference to the low level Workbook object
      */
@@ -335,6 +353,34 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
      */
     public HSSFWorkbook(DirectoryNode directory, boolean preserveNodes)
             throws IOException
+    {
+        this(directory, preserveNodes, null);
+    }
+
+    /**
+     * given a POI POIFSFileSystem object, and a specific directory
+     *  within it, read in its Workbook and populate the high and
+     *  low level models, parsing the sheets concurrently.
+     * <p>
+     * The workbook globals (including the shared strings table) are read
+     *  first, then each sheet substream is parsed by a task on the given
+     *  executor. The sheets keep their order in the workbook. Encrypted
+     *  workbooks and streams whose substreams can't be told apart are read
+     *  sequentially.
+     *
+     * @param directory the POI filesystem directory to process from
+     * @param preserveNodes whether to preserve other nodes, such as
+     *        macros.  This takes more memory, so only say yes if you
+     *        need to. If set, will store all of the POIFSFileSystem
+     *        in memory
+     * @param sheetExecutor the executor to parse the sheets on, or
+     *        <code>null</code> to parse them sequentially
+     * @see org.apache.poi.poifs.filesystem.POIFSFileSystem
+     * @exception IOException if the stream cannot be read
+     * @since POI 4.0.0
+     */
+    public HSSFWorkbook(DirectoryNode directory, boolean preserveNodes, Executor sheetExecutor)
+            throws IOException
     {
         super(directory);
         String workbookName = getWorkbookDirEntryName(directory);
@@ -353,7 +399,28 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
         // Grab the data from the workbook stream, however
         //  it happens to be spelled.
         InputStream stream = directory.createDocumentInputStream(workbookName);
+        boolean packCellValues = Configurator.getBooleanValue(PACK_CELL_VALUES_PROPERTY, false);
+
+        if (sheetExecutor == null) {
+            readRecords(stream, packCellValues);
+        } else {
+            byte[] data = IOUtils.toByteArray(stream);
+            if (!readRecordsConcurrently(data, sheetExecutor, packCellValues)) {
+                readRecords(new ByteArrayInputStream(data), packCellValues);
+            }
+        }
+
+        for (int i = 0 ; i < workbook.getNumNames() ; ++i){
+            NameRecord nameRecord = workbook.getNameRecord(i);
+            HSSFName name = new HSSFName(this, nameRecord, workbook.getNameCommentRecord(nameRecord));
+            names.add(name);
+        }
+    }
 
+    /**
+     * Reads the workbook globals and all sheets from the Workbook stream, one after the other
+     */
+    private void readRecords(InputStream stream, boolean packCellValues) {
         List<Record> records = RecordFactory.createRecords(stream);
 
         workbook = InternalWorkbook.createWorkbook(records);
@@ -365,18 +432,150 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
         RecordStream rs = new RecordStream(records, recOffset);
         while (rs.hasNext()) {
             try {
-                InternalSheet sheet = InternalSheet.createSheet(rs);
+                InternalSheet sheet = InternalSheet.createSheet(rs, packCellValues);
                 _sheets.add(new HSSFSheet(this, sheet));
             } catch (UnsupportedBOFType eb) {
                 // Hopefully there's a supported one after this!
                 log.log(POILogger.WARN, "Unsupported BOF found of type " + eb.getType());
             }
         }
+    }
 
-        for (int i = 0 ; i < workbook.getNumNames() ; ++i){
-            NameRecord nameRecord = workbook.getNameRecord(i);
-            HSSFName name = new HSSFName(this, nameRecord, workbook.getNameCommentRecord(nameRecord));
-            names.add(name);
+    /**
+     * Reads the workbook globals, then parses the sheet substreams on the executor.
+     * The label records of all sheets are converted in sheet order before the sheets
+     * are built, as they add to the shared strings table.
+     *
+     * @return <code>false</code> if nothing was read, because the workbook is
+     *  encrypted or its substreams can't be located
+     */
+    private boolean readRecordsConcurrently(final byte[] data, Executor executor, final boolean packCellValues)
+    throws IOException {
+        List<int[]> substreams = findSubstreams(data);
+        if (substreams == null || substreams.size() < 2) {
+            return false;
+        }
+        int[] globals = substreams.get(0);
+        List<Record> globalRecords = RecordFactory.createRecords(
+                new ByteArrayInputStream(data, globals[0], globals[1] - globals[0]));
+        for (Record r : globalRecords) {
+            if (r instanceof FilePassRecord) {
+                // the sheets are decrypted relative to the start of the stream
+                return false;
+            }
+        }
+
+        List<FutureTask<List<Record>>> parseTasks = new ArrayList<>();
+        List<FutureTask<HSSFSheet>> sheetTasks = new ArrayList<>();
+        try {
+            for (final int[] substream : substreams.subList(1, substreams.size())) {
+                FutureTask<List<Record>> task = new FutureTask<>(() -> RecordFactory.createRecords(
+                        new ByteArrayInputStream(data, substream[0], substream[1] - substream[0])));
+                parseTasks.add(task);
+                executor.execute(task);
+            }
+
+            setPropertiesFromWorkbook(InternalWorkbook.createWorkbook(globalRecords));
+            List<List<Record>> sheetRecords = new ArrayList<>(parseTasks.size());
+            for (FutureTask<List<Record>> parseTask : parseTasks) {
+                List<Record> records = waitFor(parseTask);
+                // convert all LabelRecord records to LabelSSTRecord
+                convertLabelRecords(records, 0);
+                sheetRecords.add(records);
+            }
+
+            // the shared strings table is complete, it's only read by the sheet tasks
+            for (final List<Record> records : sheetRecords) {
+                FutureTask<HSSFSheet> task = new FutureTask<>(() -> {
+                    try {
+                        InternalSheet sheet = InternalSheet.createSheet(new RecordStream(records, 0), packCellValues);
+                        return new HSSFSheet(this, sheet);
+                    } catch (UnsupportedBOFType eb) {
+                        // Hopefully there's a supported one after this!
+                        log.log(POILogger.WARN, "Unsupported BOF found of type " + eb.getType());
+                        return null;
+                    }
+                });
+                sheetTasks.add(task);
+                executor.execute(task);
+            }
+
+            for (FutureTask<HSSFSheet> sheetTask : sheetTasks) {
+                HSSFSheet sheet = waitFor(sheetTask);
+                if (sheet != null) {
+                    _sheets.add(sheet);
+                }
+            }
+        } finally {
+            for (FutureTask<?> task : parseTasks) {
+                task.cancel(true);
+            }
+            for (FutureTask<?> task : sheetTasks) {
+                task.cancel(true);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Locates the globals and sheet substreams by the BOF and EOF record headers,
+     * following the rules of {@link org.apache.poi.hssf.record.RecordFactoryInputStream}.
+     * The substream offsets of the {@link BoundSheetRecord}s aren't used, as they
+     * are sometimes wrong and are ignored when the stream is read sequentially.
+     *
+     * @return the start (inclusive) and end (exclusive) offsets of each substream,
+     *  or <code>null</code> if the records don't add up to complete substreams or
+     *  a substream is empty, which a {@link RecordFactory} refuses on its own
+     */
+    private static List<int[]> findSubstreams(byte[] data) {
+        List<int[]> substreams = new ArrayList<>();
+        int pos = 0;
+        while (pos + 4 <= data.length && LittleEndian.getUShort(data, pos) == BOFRecord.sid) {
+            int start = pos;
+            int depth = 0;
+            int numRecords = 0;
+            do {
+                if (pos + 4 > data.length) {
+                    return null;
+                }
+                int sid = LittleEndian.getUShort(data, pos);
+                pos += 4 + LittleEndian.getUShort(data, pos + 2);
+                if (pos > data.length) {
+                    return null;
+                }
+                if (sid == BOFRecord.sid) {
+                    depth++;
+                } else if (sid == EOFRecord.sid) {
+                    depth--;
+                }
+                numRecords++;
+            } while (depth > 0);
+            if (numRecords < 3) {
+                return null;
+            }
+            substreams.add(new int[]{ start, pos });
+        }
+        return substreams;
+    }
+
+    private static <T> T waitFor(FutureTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the sheets to be read");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RecordFormatException(cause);
         }
     }
 
@@ -1372,9 +1571,10 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
     }
     
     /**
-     * Method write - write out this workbook to an {@link OutputStream}. Constructs
-     * a new POI POIFSFileSystem, passes in the workbook binary representation and
-     * writes it out.
+     * Method write - write out this workbook to an {@link OutputStream}. The records of
+     * the sheets are serialized directly into the sectors of the written document, without
+     * building the whole workbook stream in memory first. Only encrypted workbooks are
+     * still serialized to a byte array, like {@link #getBytes()}.
      * 
      * If {@code stream} is a {@link java.io.FileOutputStream} on a networked drive
      * or has a high cost/latency associated with each written byte,
@@ -1388,21 +1588,61 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
      */
     @Override
 	public void write(OutputStream stream) throws IOException {
+        if (Biff8EncryptionKey.getCurrentUserPassword() != null) {
+            // the records are encrypted in place in the whole workbook stream
+            try (NPOIFSFileSystem fs = new NPOIFSFileSystem()) {
+                write(fs);
+                fs.writeFilesystem(stream);
+            }
+            return;
+        }
+
+        final SheetRecordCollector[] srCollectors = prepareSerialize();
+        int totalsize = workbook.getSize();
+        for (SheetRecordCollector src : srCollectors) {
+            totalsize += src.getTotalSize();
+        }
+
         try (NPOIFSFileSystem fs = new NPOIFSFileSystem()) {
-            write(fs);
-            fs.writeFilesystem(stream);
+            // the other entries are small, so they are collected in memory first
+            writeEntries(fs);
+
+            // the workbook stream is written, when its sectors are written
+            OPOIFSFileSystem out = new OPOIFSFileSystem();
+            out.createDocument("Workbook", totalsize, new POIFSWriterListener() {
+                @Override
+                public void processPOIFSWriterEvent(POIFSWriterEvent event) {
+                    try {
+                        serialize(srCollectors, event.getStream());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            EntryUtils.copyNodes(fs.getRoot(), out.getRoot());
+            out.getRoot().setStorageClsid(fs.getRoot().getStorageClsid());
+            try {
+                out.writeFilesystem(stream);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
         }
     }
     
     /** Writes the workbook out to a brand new, empty POIFS */
     private void write(NPOIFSFileSystem fs) throws IOException {
+        // Write out the Workbook stream
+        fs.createDocument(new ByteArrayInputStream(getBytes()), "Workbook");
+
+        writeEntries(fs);
+    }
+
+    /** Writes the entries besides the Workbook stream to a brand new POIFS */
+    private void writeEntries(NPOIFSFileSystem fs) throws IOException {
         // For tracking what we've written out, used if we're
         //  going to be preserving nodes
         List<String> excepts = new ArrayList<>(1);
 
-        // Write out the Workbook stream
-        fs.createDocument(new ByteArrayInputStream(getBytes()), "Workbook");
-
         // Write out our HPFS properties, if we have them
         writeProperties(fs, excepts);
         
@@ -1460,6 +1700,32 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
             }
             return result;
         }
+        /**
+         * Serializes the records through the buffer, records larger than the buffer
+         * are serialized on their own
+         */
+        public int serialize(OutputStream out, byte[] buffer) throws IOException {
+            int result = 0;
+            int pos = 0;
+            for (Record rec : _list) {
+                int size = rec.getRecordSize();
+                if (pos + size > buffer.length) {
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                if (size > buffer.length) {
+                    byte[] data = rec.serialize();
+                    out.write(data);
+                    result += data.length;
+                } else {
+                    int len = rec.serialize(pos, buffer);
+                    pos += len;
+                    result += len;
+                }
+            }
+            out.write(buffer, 0, pos);
+            return result;
+        }
     }
 
 
@@ -1475,7 +1741,60 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
         if (log.check( POILogger.DEBUG )) {
             log.log(DEBUG, "HSSFWorkbook.getBytes()");
         }
+
+        SheetRecordCollector[] srCollectors = prepareSerialize();
+        int totalsize = workbook.getSize();
+        for (SheetRecordCollector src : srCollectors) {
+            totalsize += src.getTotalSize();
+        }
+
+        byte[] retval = new byte[totalsize];
+        int pos = workbook.serialize(0, retval);
+
+        for (int k = 0; k < srCollectors.length; k++) {
+            SheetRecordCollector src = srCollectors[k];
+            int serializedSize = src.serialize(pos, retval);
+            checkSerializedSize(src, serializedSize, k);
+            pos += serializedSize;
+        }
+
+        encryptBytes(retval);
         
+        return retval;
+    }
+
+    /**
+     * Serializes the workbook stream to the output, without encryption
+     */
+    private void serialize(SheetRecordCollector[] srCollectors, OutputStream out) throws IOException {
+        byte[] globals = new byte[workbook.getSize()];
+        int pos = workbook.serialize(0, globals);
+        out.write(globals, 0, pos);
+
+        byte[] buffer = new byte[64*1024];
+        for (int k = 0; k < srCollectors.length; k++) {
+            SheetRecordCollector src = srCollectors[k];
+            checkSerializedSize(src, src.serialize(out, buffer), k);
+        }
+    }
+
+    private static void checkSerializedSize(SheetRecordCollector src, int serializedSize, int sheetIndex) {
+        if (serializedSize != src.getTotalSize()) {
+            // Wrong offset values have been passed in the call to setSheetBof() above.
+            // For books with more than one sheet, this discrepancy would cause excel
+            // to report errors and loose data while reading the workbook
+            throw new IllegalStateException("Actual serialized sheet size (" + serializedSize
+                    + ") differs from pre-calculated size (" + src.getTotalSize()
+                    + ") for sheet (" + sheetIndex + ")");
+            // TODO - add similar sanity check to ensure that Sheet.serializeIndexRecord() does not write mis-aligned offsets either
+        }
+    }
+
+    /**
+     * Prepares the workbook and the sheets for serialization, collects the records of
+     * the sheets and sets the BOF offsets of the sheets
+     */
+    private SheetRecordCollector[] prepareSerialize() {
         HSSFSheet[] sheets = getSheets();
         int nSheets = sheets.length;
 
@@ -1500,28 +1819,7 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
             totalsize += src.getTotalSize();
             srCollectors[k] = src;
         }
-
-        byte[] retval = new byte[totalsize];
-        int pos = workbook.serialize(0, retval);
-
-        for (int k = 0; k < nSheets; k++) {
-            SheetRecordCollector src = srCollectors[k];
-            int serializedSize = src.serialize(pos, retval);
-            if (serializedSize != src.getTotalSize()) {
-                // Wrong offset values have been passed in the call to setSheetBof() above.
-                // For books with more than one sheet, this discrepancy would cause excel
-                // to report errors and loose data while reading the workbook
-                throw new IllegalStateException("Actual serialized sheet size (" + serializedSize
-                        + ") differs from pre-calculated size (" + src.getTotalSize()
-                        + ") for sheet (" + k + ")");
-                // TODO - add similar sanity check to ensure that Sheet.serializeIndexRecord() does not write mis-aligned offsets either
-            }
-            pos += serializedSize;
-        }
-
-        encryptBytes(retval);
-        
-        return retval;
+        return srCollectors;
     }
 
     @SuppressWarnings("resource")
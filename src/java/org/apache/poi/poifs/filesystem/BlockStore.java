@@ -43,6 +43,20 @@ public abstract class BlockStore {
      *  the specified offset, and return the block from there. 
      */
     protected abstract ByteBuffer createBlockIfNeeded(final int offset) throws IOException;
+
+    /**
+     * Read-only data sources may hand out read-only views of their data.
+     *  As these blocks are never written back, changes are made to a copy.
+     */
+    protected static ByteBuffer getWritableBlock(ByteBuffer block) {
+        if (!block.isReadOnly()) {
+            return block;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(block.remaining());
+        copy.put(block.duplicate());
+        copy.position(0);
+        return copy;
+    }
     
     /**
      * Returns the BATBlock that handles the specified offset,
@@ -19,10 +19,10 @@ package org.apache.poi.poifs.filesystem;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Iterator;
 
 import org.apache.poi.poifs.property.DocumentProperty;
-import org.apache.poi.util.IOUtils;
 import org.apache.poi.util.LittleEndian;
 
 /**
@@ -133,15 +133,7 @@ public final class NDocumentInputStream extends DocumentInputStream {
         if (atEOD()) {
             return EOF;
         }
-        byte[] b = new byte[1];
-        int result = read(b, 0, 1);
-        if(result >= 0) {
-            if(b[0] < 0) {
-                return b[0]+256;
-            }
-            return b[0];
-        }
-        return result;
+        return readUByte();
     }
 
     @Override
@@ -184,7 +176,7 @@ public final class NDocumentInputStream extends DocumentInputStream {
         _data = _document.getBlockIterator();
         _current_offset = 0;
 		for(int i=0; i<_marked_offset_count; i++) {
-		   _buffer = _data.next();
+		   _buffer = _data.next().order(ByteOrder.LITTLE_ENDIAN);
 		   _current_offset += _buffer.remaining();
 		}
 		
@@ -193,7 +185,7 @@ public final class NDocumentInputStream extends DocumentInputStream {
       // Do we need to position within it?
       if(_current_offset != _marked_offset) {
    		// Grab the right block
-         _buffer = _data.next();
+         _buffer = _data.next().order(ByteOrder.LITTLE_ENDIAN);
          _current_block_count++;
          
    		// Skip to the right place in it
@@ -223,10 +215,18 @@ public final class NDocumentInputStream extends DocumentInputStream {
 		}
 		
 		long rval = new_offset - _current_offset;
-		
-		// TODO Do this better
-		byte[] skip = IOUtils.safelyAllocate(rval, Integer.MAX_VALUE);
-		readFully(skip);
+
+		// move through the blocks instead of reading the skipped bytes
+		long toSkip = rval;
+		while (toSkip > 0) {
+			if (_buffer == null || _buffer.remaining() == 0) {
+				nextBuffer();
+			}
+			int limit = (int)Math.min(toSkip, _buffer.remaining());
+			_buffer.position(_buffer.position() + limit);
+			_current_offset += limit;
+			toSkip -= limit;
+		}
 		return rval;
 	}
 
@@ -261,8 +261,7 @@ public final class NDocumentInputStream extends DocumentInputStream {
 		int read = 0;
 		while(read < len) {
 		   if(_buffer == null || _buffer.remaining() == 0) {
-		      _current_block_count++;
-		      _buffer = _data.next();
+		      nextBuffer();
 		   }
 		   
 		   int limit = Math.min(len-read, _buffer.remaining());
@@ -272,6 +271,29 @@ public final class NDocumentInputStream extends DocumentInputStream {
 		}
 	}
 
+   private void nextBuffer() {
+      _current_block_count++;
+      _buffer = _data.next().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   /**
+    * Returns the current block, if the next <code>size</code> bytes can be read directly from it.
+    * Values spanning a block boundary need to be gathered by {@link #readFully(byte[], int, int)}.
+    *
+    * @return the current block, positioned at the value, or <code>null</code> if the value spans blocks
+    */
+   private ByteBuffer getBufferFor(int size) {
+      checkAvaliable(size);
+      if(_buffer == null || _buffer.remaining() == 0) {
+         nextBuffer();
+      }
+      if(_buffer.remaining() < size) {
+         return null;
+      }
+      _current_offset += size;
+      return _buffer;
+   }
+
    @Override
    public byte readByte() {
       return (byte) readUByte();
@@ -284,7 +306,10 @@ public final class NDocumentInputStream extends DocumentInputStream {
 
    @Override
 	public long readLong() {
-		checkAvaliable(SIZE_LONG);
+		ByteBuffer buffer = getBufferFor(SIZE_LONG);
+		if (buffer != null) {
+			return buffer.getLong();
+		}
 		byte[] data = new byte[SIZE_LONG];
 		readFully(data, 0, SIZE_LONG);
 		return LittleEndian.getLong(data, 0);
@@ -292,7 +317,10 @@ public final class NDocumentInputStream extends DocumentInputStream {
 
    @Override
    public short readShort() {
-      checkAvaliable(SIZE_SHORT);
+      ByteBuffer buffer = getBufferFor(SIZE_SHORT);
+      if (buffer != null) {
+         return buffer.getShort();
+      }
       byte[] data = new byte[SIZE_SHORT];
       readFully(data, 0, SIZE_SHORT);
       return LittleEndian.getShort(data);
@@ -300,7 +328,10 @@ public final class NDocumentInputStream extends DocumentInputStream {
 
    @Override
 	public int readInt() {
-		checkAvaliable(SIZE_INT);
+		ByteBuffer buffer = getBufferFor(SIZE_INT);
+		if (buffer != null) {
+			return buffer.getInt();
+		}
       byte[] data = new byte[SIZE_INT];
       readFully(data, 0, SIZE_INT);
       return LittleEndian.getInt(data);
@@ -308,7 +339,10 @@ public final class NDocumentInputStream extends DocumentInputStream {
 
    @Override
 	public int readUShort() {
-		checkAvaliable(SIZE_SHORT);
+		ByteBuffer buffer = getBufferFor(SIZE_SHORT);
+		if (buffer != null) {
+			return buffer.getShort() & 0xFFFF;
+		}
       byte[] data = new byte[SIZE_SHORT];
       readFully(data, 0, SIZE_SHORT);
       return LittleEndian.getUShort(data);
@@ -316,11 +350,6 @@ public final class NDocumentInputStream extends DocumentInputStream {
 
     @Override
     public int readUByte() {
-        checkAvaliable(1);
-        byte[] data = new byte[1];
-        readFully(data, 0, 1);
-        if (data[0] >= 0)
-            return data[0];
-        return data[0] + 256;
+        return getBufferFor(1).get() & 0xFF;
     }
 }
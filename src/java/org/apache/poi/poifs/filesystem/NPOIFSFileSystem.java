@@ -447,7 +447,7 @@ public class NPOIFSFileSystem extends BlockStore
     @Override
     protected ByteBuffer createBlockIfNeeded(final int offset) throws IOException {
        try {
-          return getBlockAt(offset);
+          return getWritableBlock(getBlockAt(offset));
        } catch(IndexOutOfBoundsException e) {
           // The header block doesn't count, so add one
           long startAt = (offset+1L) * bigBlockSize.getBigBlockSize();
@@ -455,7 +455,7 @@ public class NPOIFSFileSystem extends BlockStore
           ByteBuffer buffer = ByteBuffer.allocate(getBigBlockSize());
           _data.write(buffer, startAt);
           // Retrieve the properly backed block
-          return getBlockAt(offset);
+          return getWritableBlock(getBlockAt(offset));
        }
     }
     
@@ -768,16 +768,16 @@ public class NPOIFSFileSystem extends BlockStore
         
        // HeaderBlock
        HeaderBlockWriter hbw = new HeaderBlockWriter(_header);
-       hbw.writeBlock( getBlockAt(-1) );
+       hbw.writeBlock( getWritableBlock(getBlockAt(-1)) );
        
        // BATs
        for(BATBlock bat : _bat_blocks) {
-          ByteBuffer block = getBlockAt(bat.getOurBlockIndex());
+          ByteBuffer block = getWritableBlock(getBlockAt(bat.getOurBlockIndex()));
           BlockAllocationTableWriter.writeBlock(bat, block);
        }
        // XBats
        for(BATBlock bat : _xbat_blocks) {
-           ByteBuffer block = getBlockAt(bat.getOurBlockIndex());
+           ByteBuffer block = getWritableBlock(getBlockAt(bat.getOurBlockIndex()));
            BlockAllocationTableWriter.writeBlock(bat, block);
         }
     }
@@ -94,7 +94,7 @@ public class NPOIFSMiniStore extends BlockStore
        // Try to get it without extending the stream
        if (! firstInStore) {
            try {
-              return getBlockAt(offset);
+              return getWritableBlock(getBlockAt(offset));
            } catch(IndexOutOfBoundsException e) {}
        }
        
@@ -248,7 +248,7 @@ public class NPOIFSMiniStore extends BlockStore
     protected void syncWithDataSource() throws IOException {
        int blocksUsed = 0;
        for (BATBlock sbat : _sbat_blocks) {
-          ByteBuffer block = _filesystem.getBlockAt(sbat.getOurBlockIndex());
+          ByteBuffer block = getWritableBlock(_filesystem.getBlockAt(sbat.getOurBlockIndex()));
           BlockAllocationTableWriter.writeBlock(sbat, block);
           
           if (!sbat.hasFreeSectors()) {
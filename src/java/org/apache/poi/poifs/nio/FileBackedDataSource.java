@@ -32,6 +32,7 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.poi.util.Configurator;
 import org.apache.poi.util.IOUtils;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
@@ -42,9 +43,22 @@ import org.apache.poi.util.SuppressForbidden;
  */
 public class FileBackedDataSource extends DataSource {
    private final static POILogger logger = POILogFactory.getLogger( FileBackedDataSource.class );
-   
+
+   /**
+    * The system property to map the whole file of a read-only source once and to hand out
+    * slices of the mapping as blocks, instead of copying each block onto the heap.
+    * Read when a source is created, disabled by default.
+    * <p>
+    * Only enable it for files which aren't modified while they are open. If another process
+    * truncates or rewrites the file, reading a block fails with an {@link InternalError}
+    * instead of an {@link IOException}. The blocks must not be read after {@link #close()},
+    * as the mapping is released then.
+    */
+   public static final String MAP_READ_ONLY_PROPERTY = "FileBackedDataSource.MapReadOnly";
+
    private FileChannel channel;
    private boolean writable;
+   private final boolean mapReadOnly;
    // remember file base, which needs to be closed too
    private RandomAccessFile srcFile;
    
@@ -56,6 +70,11 @@ public class FileBackedDataSource extends DataSource {
    // http://bugs.java.com/view_bug.do?bug_id=4724038 for related discussions
    private List<ByteBuffer> buffersToClean = new ArrayList<>();
 
+   // A read-only source may map the whole file once, and hand out slices of it as blocks.
+   // Unset if the file hasn't been mapped yet, or couldn't be mapped at all.
+   private ByteBuffer readOnlyMapping;
+   private boolean readOnlyMappingFailed;
+
    public FileBackedDataSource(File file) throws FileNotFoundException {
        this(newSrcFile(file, "r"), true);
    }
@@ -72,6 +91,7 @@ public class FileBackedDataSource extends DataSource {
    public FileBackedDataSource(FileChannel channel, boolean readOnly) {
       this.channel = channel;
       this.writable = !readOnly;
+      this.mapReadOnly = readOnly && Configurator.getBooleanValue(MAP_READ_ONLY_PROPERTY, false);
    }
    
    public boolean isWriteable() {
@@ -95,7 +115,14 @@ public class FileBackedDataSource extends DataSource {
       
       // Do we read or map (for read/write)?
       ByteBuffer dst;
-      if (writable) {
+      ByteBuffer mapping = mapReadOnly ? getReadOnlyMapping() : null;
+      if (mapping != null) {
+          // a view of the mapped file, without copying the data
+          dst = mapping.duplicate();
+          dst.position((int)position);
+          dst.limit((int)Math.min(position + length, mapping.capacity()));
+          dst = dst.slice();
+      } else if (writable) {
           dst = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
 
           // remember this buffer for cleanup
@@ -119,6 +146,29 @@ public class FileBackedDataSource extends DataSource {
       return dst;
    }
 
+   /**
+    * @return the read-only mapping of the whole file, or <code>null</code> if the file
+    *  can't be mapped, e.g. because it's too large for a single buffer
+    */
+   private ByteBuffer getReadOnlyMapping() {
+       if (readOnlyMapping == null && !readOnlyMappingFailed) {
+           try {
+               long size = channel.size();
+               if (size > Integer.MAX_VALUE) {
+                   readOnlyMappingFailed = true;
+               } else {
+                   readOnlyMapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                   // remember this buffer for cleanup
+                   buffersToClean.add(readOnlyMapping);
+               }
+           } catch (IOException | UnsupportedOperationException e) {
+               logger.log(POILogger.INFO, "Unable to map the file, reading it instead", e);
+               readOnlyMappingFailed = true;
+           }
+       }
+       return readOnlyMapping;
+   }
+
    @Override
    public void write(ByteBuffer src, long position) throws IOException {
       channel.write(src, position);
@@ -145,6 +195,7 @@ public class FileBackedDataSource extends DataSource {
            unmap(buffer);
        }
        buffersToClean.clear();
+       readOnlyMapping = null;
 
        if (srcFile != null) {
           // see http://bugs.java.com/bugdatabase/view_bug.do?bug_id=4796385
@@ -17,7 +17,12 @@
 
 package org.apache.poi.ss.formula;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
@@ -39,6 +44,20 @@ public abstract class BaseFormulaEvaluator implements FormulaEvaluator, Workbook
         this._bookEvaluator = bookEvaluator;
     }
 
+    /**
+     * Records the time spent in the functions, sheets and cells of the following evaluations
+     * with the given profiler.  Profiling slows down the evaluation, so it should only be
+     * used to find the formulas which dominate the evaluation time.
+     * @param profiler the profiler, <code>null</code> to stop profiling
+     * @since POI 4.0.0
+     */
+    public void setEvaluationProfiler(EvaluationProfiler profiler) {
+        if (profiler != null) {
+            profiler.attach(_bookEvaluator);
+        }
+        _bookEvaluator.setEvaluationListener(profiler);
+    }
+
     /**
      * Coordinates several formula evaluators together so that formulas that involve external
      * references can be evaluated.
@@ -284,6 +303,149 @@ public abstract class BaseFormulaEvaluator implements FormulaEvaluator, Workbook
         }
     }
 
+    /**
+     * Evaluates the formula cells, which are affected by the cells changed since the last call,
+     *  and saves their results like {@link #evaluateFormulaCell(Cell)}. The changed cells need to
+     *  be reported by {@link #notifyUpdateCell(Cell)}, {@link #notifySetFormula(Cell)} or
+     *  {@link #notifyDeleteCell(Cell)}.
+     * <p>
+     * The first call builds a {@link FormulaDependencyGraph} of all formula cells of the workbook
+     *  from their parsed formulas and evaluates all of them. Later calls only evaluate the formula
+     *  cells, which directly or indirectly reference a changed cell, in the order of their
+     *  dependencies. Formula cells with references, which can't be determined in advance
+     *  (e.g. INDIRECT or OFFSET) or volatile functions, are evaluated each time.
+     *  {@link #clearAllCachedResultValues()} discards the graph.
+     * </p>
+     *
+     * @return the number of evaluated formula cells
+     * @since POI 4.0.0
+     */
+    protected static int evaluateDirtyFormulaCells(Workbook wb, BaseFormulaEvaluator evaluator) {
+        return evaluateDirtyFormulaCells(wb, evaluator, null);
+    }
+
+    /**
+     * Evaluates the formula cells, which are affected by the cells changed since the last call,
+     *  like {@link #evaluateDirtyFormulaCells(Workbook, BaseFormulaEvaluator)}, but evaluates the
+     *  cells of each level of the {@link FormulaDependencyGraph} concurrently on the given pool.
+     * <p>
+     * The cells of a level don't depend on each other, so they are evaluated in parallel into the
+     *  shared evaluation cache. Afterwards the results are saved to the cells by the calling thread
+     *  in the order of the graph, so the workbook is only modified by one thread and the results
+     *  are the same as with the sequential recalculation. Cells with circular references are
+     *  evaluated one after another.
+     * </p>
+     * <p>
+     * The workbook must not be modified and the evaluator must not be used otherwise while the
+     *  recalculation is running. An {@link IEvaluationListener} or the debug output of the
+     *  evaluator aren't supported in this mode.
+     * </p>
+     *
+     * @param pool the pool to evaluate the cells or {@code null} to evaluate them by the calling thread
+     * @return the number of evaluated formula cells
+     * @since POI 4.0.0
+     */
+    protected static int evaluateDirtyFormulaCells(Workbook wb, BaseFormulaEvaluator evaluator, ForkJoinPool pool) {
+        WorkbookEvaluator bookEvaluator = evaluator._bookEvaluator;
+        FormulaDependencyGraph graph = bookEvaluator.getDependencyGraph();
+        if (graph == null) {
+            graph = bookEvaluator.createDependencyGraph(wb);
+        }
+
+        int[][] levels = graph.takeDirtyLevels();
+        int count = 0;
+        for (int l = 0; l < levels.length; l++) {
+            int[] level = levels[l];
+            Cell[] cells = new Cell[level.length];
+            EvaluationCell[] evalCells = new EvaluationCell[level.length];
+            int size = 0;
+            for (int node : level) {
+                Row row = wb.getSheetAt(graph.getSheetIndex(node)).getRow(graph.getRowIndex(node));
+                Cell cell = (row == null) ? null : row.getCell(graph.getColumnIndex(node));
+                if (cell != null && cell.getCellType() == CellType.FORMULA) {
+                    evalCells[size] = graph.getCell(node);
+                    cells[size++] = cell;
+                }
+            }
+            boolean circular = (l == levels.length - 1) && graph.hasCircularReferences();
+            if (pool != null && !circular && size > ParallelEvaluation.THRESHOLD) {
+                // fill the cache concurrently, the results are saved below
+                pool.invoke(new ParallelEvaluation(bookEvaluator, evalCells, 0, size));
+            }
+            for (int i = 0; i < size; i++) {
+                evaluator.evaluateFormulaCell(cells[i]);
+            }
+            count += size;
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates a range of independent cells, splitting it in halves until it is small enough
+     */
+    private static final class ParallelEvaluation extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        /** the maximum number of cells evaluated by one task */
+        static final int THRESHOLD = 16;
+
+        private final transient WorkbookEvaluator _bookEvaluator;
+        private final transient EvaluationCell[] _cells;
+        private final int _from;
+        private final int _to;
+
+        ParallelEvaluation(WorkbookEvaluator bookEvaluator, EvaluationCell[] cells, int from, int to) {
+            _bookEvaluator = bookEvaluator;
+            _cells = cells;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= THRESHOLD) {
+                for (int i = _from; i < _to; i++) {
+                    _bookEvaluator.evaluate(_cells[i]);
+                }
+            } else {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new ParallelEvaluation(_bookEvaluator, _cells, _from, mid),
+                        new ParallelEvaluation(_bookEvaluator, _cells, mid, _to));
+            }
+        }
+    }
+
+    /**
+     * Writes the cached cell values of the evaluator and the dependencies of the formula results
+     *  to a binary snapshot, which can be restored by
+     *  {@link #readCacheSnapshot(Workbook, BaseFormulaEvaluator, InputStream)} after a restart.
+     * <p>
+     * Formula results depending on other workbooks or on cached lookup indexes aren't written and
+     *  are evaluated again after restoring the snapshot.
+     * </p>
+     *
+     * @param wb the workbook evaluated by the evaluator
+     * @since POI 4.0.0
+     */
+    protected static void writeCacheSnapshot(Workbook wb, BaseFormulaEvaluator evaluator, OutputStream out) throws IOException {
+        EvaluationCacheSnapshot.write(evaluator._bookEvaluator, wb, out);
+    }
+
+    /**
+     * Replaces the cached cell values of the evaluator with those of a snapshot written by
+     *  {@link #writeCacheSnapshot(Workbook, BaseFormulaEvaluator, OutputStream)}, so the restored
+     *  formula results don't need to be evaluated again. The snapshot contains a hash of the
+     *  contents of the workbook and is only restored, if the workbook still has the same contents.
+     *  Changes after restoring the snapshot need to be reported like usual.
+     *
+     * @param wb the workbook evaluated by the evaluator
+     * @return {@code false}, if the snapshot was written for different workbook contents
+     * @throws IllegalArgumentException if the stream contains no snapshot
+     * @since POI 4.0.0
+     */
+    protected static boolean readCacheSnapshot(Workbook wb, BaseFormulaEvaluator evaluator, InputStream in) throws IOException {
+        return EvaluationCacheSnapshot.read(evaluator._bookEvaluator, wb, in);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void setIgnoreMissingWorkbooks(boolean ignore){
@@ -17,6 +17,9 @@
 
 package org.apache.poi.ss.formula;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.poi.ss.formula.FormulaCellCache.IEntryOperation;
 import org.apache.poi.ss.formula.FormulaUsedBlankCellSet.BookSheetKey;
 import org.apache.poi.ss.formula.PlainCellCache.Loc;
@@ -31,7 +34,11 @@ import org.apache.poi.ss.usermodel.CellType;
 /**
  * Performance optimisation for {@link org.apache.poi.ss.usermodel.FormulaEvaluator}.
  * This class stores previously calculated values of already visited cells,
- * to avoid unnecessary re-calculation when the same cells are referenced multiple times
+ * to avoid unnecessary re-calculation when the same cells are referenced multiple times.<p>
+ *
+ * The cache and the state of its entries are only changed while holding the lock of the cache,
+ * so cells can be evaluated concurrently, e.g. by
+ * {@link BaseFormulaEvaluator#evaluateDirtyFormulaCells(org.apache.poi.ss.usermodel.Workbook, BaseFormulaEvaluator, java.util.concurrent.ForkJoinPool)}
  *
  * @author Josh Micich
  */
@@ -39,16 +46,26 @@ final class EvaluationCache {
 
 	private final PlainCellCache _plainCellCache;
 	private final FormulaCellCache _formulaCellCache;
-	/** only used for testing. <code>null</code> otherwise */
-	final IEvaluationListener _evaluationListener;
+	/** the entries of the indexes of areas, which depend on the cells of the area */
+	private final Map<AreaIndexKey, FormulaCellCacheEntry> _areaIndexCache;
+	/**
+	 * the listener of the tests or the evaluation profiler, <code>null</code> otherwise. It may be
+	 * replaced while other threads evaluate, but the cache operations see one listener throughout
+	 */
+	private volatile IEvaluationListener _evaluationListener;
 
 	/* package */EvaluationCache(IEvaluationListener evaluationListener) {
 		_evaluationListener = evaluationListener;
 		_plainCellCache = new PlainCellCache();
 		_formulaCellCache = new FormulaCellCache();
+		_areaIndexCache = new HashMap<>();
 	}
 
-	public void notifyUpdateCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
+	/* package */ synchronized void setEvaluationListener(IEvaluationListener evaluationListener) {
+		_evaluationListener = evaluationListener;
+	}
+
+	public synchronized void notifyUpdateCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
 		FormulaCellCacheEntry fcce = _formulaCellCache.get(cell);
 
 		int rowIndex = cell.getRowIndex();
@@ -71,6 +88,8 @@ final class EvaluationCache {
 			} else {
 				fcce.recurseClearCachedFormulaResults(_evaluationListener);
 				fcce.clearFormulaEntry();
+				// the formula may have changed
+				fcce.setPlan(null);
 			}
 			if (pcce == null) {
 				// was formula cell before - no change of type
@@ -124,9 +143,12 @@ final class EvaluationCache {
 				entry.notifyUpdatedBlankCell(bsk, rowIndex, columnIndex, _evaluationListener);
 			}
 		});
+		for (FormulaCellCacheEntry entry : _areaIndexCache.values()) {
+			entry.notifyUpdatedBlankCell(bsk, rowIndex, columnIndex, _evaluationListener);
+		}
 	}
 
-	public PlainValueCellCacheEntry getPlainValueEntry(int bookIndex, int sheetIndex,
+	public synchronized PlainValueCellCacheEntry getPlainValueEntry(int bookIndex, int sheetIndex,
 			int rowIndex, int columnIndex, ValueEval value) {
 
 		Loc loc = new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
@@ -148,6 +170,24 @@ final class EvaluationCache {
 		}
 		return result;
 	}
+	/**
+	 * Like {@link #getPlainValueEntry}, but the number is only converted to a {@link NumberEval},
+	 * when the entry is created
+	 */
+	public synchronized PlainValueCellCacheEntry getPlainNumberEntry(int bookIndex, int sheetIndex,
+			int rowIndex, int columnIndex, double value) {
+
+		PlainValueCellCacheEntry result = _plainCellCache.get(new Loc(bookIndex, sheetIndex, rowIndex, columnIndex));
+		if (result == null || _evaluationListener != null) {
+			return getPlainValueEntry(bookIndex, sheetIndex, rowIndex, columnIndex, new NumberEval(value));
+		}
+		ValueEval cachedValue = result.getValue();
+		if (cachedValue == null || cachedValue.getClass() != NumberEval.class
+				|| ((NumberEval) cachedValue).getNumberValue() != value) {
+			throw new IllegalStateException("value changed");
+		}
+		return result;
+	}
 	private boolean areValuesEqual(ValueEval a, ValueEval b) {
 		if (a == null) {
 			return false;
@@ -175,7 +215,15 @@ final class EvaluationCache {
 		throw new IllegalStateException("Unexpected value class (" + cls.getName() + ")");
 	}
 
-	public FormulaCellCacheEntry getOrCreateFormulaCellEntry(EvaluationCell cell) {
+	/* package */ PlainCellCache getPlainCellCache() {
+		return _plainCellCache;
+	}
+
+	/* package */ FormulaCellCache getFormulaCellCache() {
+		return _formulaCellCache;
+	}
+
+	public synchronized FormulaCellCacheEntry getOrCreateFormulaCellEntry(EvaluationCell cell) {
 		FormulaCellCacheEntry result = _formulaCellCache.get(cell);
 		if (result == null) {
 
@@ -185,17 +233,33 @@ final class EvaluationCache {
 		return result;
 	}
 
+	/**
+	 * @param indexType identifies the kind of the index, e.g. its factory
+	 * @return the entry of the index of the values of an area, which is evaluated like a formula cell
+	 */
+	public synchronized FormulaCellCacheEntry getOrCreateAreaIndexEntry(int bookIndex, int sheetIndex,
+			int firstRow, int firstColumn, int lastRow, int lastColumn, Object indexType) {
+		AreaIndexKey key = new AreaIndexKey(bookIndex, sheetIndex, firstRow, firstColumn, lastRow, lastColumn, indexType);
+		FormulaCellCacheEntry result = _areaIndexCache.get(key);
+		if (result == null) {
+			result = new FormulaCellCacheEntry();
+			_areaIndexCache.put(key, result);
+		}
+		return result;
+	}
+
 	/**
 	 * Should be called whenever there are changes to input cells in the evaluated workbook.
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		if(_evaluationListener != null) {
 			_evaluationListener.onClearWholeCache();
 		}
 		_plainCellCache.clear();
 		_formulaCellCache.clear();
+		_areaIndexCache.clear();
 	}
-	public void notifyDeleteCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
+	public synchronized void notifyDeleteCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
 
 		if (cell.getCellType() == CellType.FORMULA) {
 			FormulaCellCacheEntry fcce = _formulaCellCache.remove(cell);
@@ -216,4 +280,60 @@ final class EvaluationCache {
 			}
 		}
 	}
+
+	/**
+	 * Removes the entry of a cell, which won't change any more. The cached results of the formulas
+	 * using the cell are kept, as they stay valid.
+	 */
+	public synchronized void notifyFinalCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
+		FormulaCellCacheEntry fcce = _formulaCellCache.remove(cell);
+		if (fcce != null) {
+			// the inputs don't need to know the entry any more
+			fcce.setSensitiveInputCells(null);
+		}
+		_plainCellCache.remove(new Loc(bookIndex, sheetIndex, cell.getRowIndex(), cell.getColumnIndex()));
+	}
+
+	private static final class AreaIndexKey {
+		private final int _bookIndex;
+		private final int _sheetIndex;
+		private final int _firstRow;
+		private final int _firstColumn;
+		private final int _lastRow;
+		private final int _lastColumn;
+		private final Object _indexType;
+
+		public AreaIndexKey(int bookIndex, int sheetIndex, int firstRow, int firstColumn,
+				int lastRow, int lastColumn, Object indexType) {
+			_bookIndex = bookIndex;
+			_sheetIndex = sheetIndex;
+			_firstRow = firstRow;
+			_firstColumn = firstColumn;
+			_lastRow = lastRow;
+			_lastColumn = lastColumn;
+			_indexType = indexType;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = _bookIndex * 17 + _sheetIndex;
+			result = result * 31 + _firstRow;
+			result = result * 31 + _firstColumn;
+			result = result * 31 + _lastRow;
+			result = result * 31 + _lastColumn;
+			return result * 31 + _indexType.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof AreaIndexKey)) {
+				return false;
+			}
+			AreaIndexKey other = (AreaIndexKey) obj;
+			return _bookIndex == other._bookIndex && _sheetIndex == other._sheetIndex
+					&& _firstRow == other._firstRow && _firstColumn == other._firstColumn
+					&& _lastRow == other._lastRow && _lastColumn == other._lastColumn
+					&& _indexType.equals(other._indexType);
+		}
+	}
 }
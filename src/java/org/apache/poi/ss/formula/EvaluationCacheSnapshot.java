@@ -0,0 +1,392 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.poifs.crypt.CryptoFunctions;
+import org.apache.poi.poifs.crypt.HashAlgorithm;
+import org.apache.poi.ss.formula.FormulaUsedBlankCellSet.BookSheetKey;
+import org.apache.poi.ss.formula.PlainCellCache.Loc;
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.LittleEndianInputStream;
+import org.apache.poi.util.LittleEndianOutputStream;
+import org.apache.poi.util.StringUtil;
+
+/**
+ * Writes the {@link EvaluationCache} entries of a workbook to a binary snapshot and restores them,
+ * so the formulas don't need to be evaluated again after a restart.<p>
+ *
+ * The snapshot contains the values of the cached plain and formula cells and the cells each
+ * formula result depends on. The used blank cells of a formula are only kept per sheet, so a
+ * value entered in any blank cell of such a sheet clears the restored result. Formula results
+ * depending on other workbooks or on cached area indexes aren't written, they are evaluated again.
+ * The snapshot starts with a hash of the contents of the workbook and is only restored against a
+ * workbook with the same hash.
+ */
+final class EvaluationCacheSnapshot {
+    private static final int SIGNATURE = 0x45435331; // "ECS1"
+    private static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.sha256;
+
+    private static final byte TYPE_BLANK = 0;
+    private static final byte TYPE_NUMBER = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+    private static final byte TYPE_ERROR = 4;
+
+    private EvaluationCacheSnapshot() {
+        // no instances of this class
+    }
+
+    /**
+     * Writes the cached values of the cells of the given workbook, which needs to be the workbook
+     * evaluated by the evaluator
+     */
+    public static void write(WorkbookEvaluator evaluator, Workbook wb, OutputStream out) throws IOException {
+        EvaluationCache cache = evaluator.getCache();
+        int bookIndex = evaluator.getWorkbookIndex();
+        EvaluationWorkbook evalWorkbook = evaluator.getWorkbook();
+
+        LittleEndianOutputStream leos = new LittleEndianOutputStream(out);
+        leos.writeInt(SIGNATURE);
+        leos.write(hashContents(wb));
+
+        synchronized (cache) {
+            // number the entries, the plain cells first
+            Map<CellCacheEntry, Integer> indexes = new IdentityHashMap<>();
+            List<Loc> plainLocs = new ArrayList<>();
+            List<CellCacheEntry> plainEntries = new ArrayList<>();
+            for (Map.Entry<Loc, PlainValueCellCacheEntry> me : cache.getPlainCellCache().entrySet()) {
+                if (me.getKey().getBookIndex() == bookIndex && isSupportedValue(me.getValue().getValue())) {
+                    indexes.put(me.getValue(), plainLocs.size());
+                    plainLocs.add(me.getKey());
+                    plainEntries.add(me.getValue());
+                }
+            }
+            Map<FormulaCellCacheEntry, Loc> formulaLocs = new IdentityHashMap<>();
+            for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+                EvaluationSheet evalSheet = evalWorkbook.getSheet(i);
+                for (Row r : wb.getSheetAt(i)) {
+                    for (Cell c : r) {
+                        if (c.getCellType() != CellType.FORMULA) {
+                            continue;
+                        }
+                        FormulaCellCacheEntry fcce = cache.getFormulaCellCache().get(evalSheet.getCell(c.getRowIndex(), c.getColumnIndex()));
+                        if (fcce != null && fcce.getValue() != null && isSupportedValue(fcce.getValue())) {
+                            formulaLocs.put(fcce, new Loc(bookIndex, i, c.getRowIndex(), c.getColumnIndex()));
+                        }
+                    }
+                }
+            }
+            removeUnresolvedEntries(formulaLocs, indexes, bookIndex);
+            List<FormulaCellCacheEntry> formulaEntries = new ArrayList<>(formulaLocs.keySet());
+            for (FormulaCellCacheEntry fcce : formulaEntries) {
+                indexes.put(fcce, indexes.size());
+            }
+
+            leos.writeInt(plainEntries.size());
+            for (int i = 0; i < plainEntries.size(); i++) {
+                writeLoc(leos, plainLocs.get(i));
+                writeValue(leos, plainEntries.get(i).getValue());
+            }
+            leos.writeInt(formulaEntries.size());
+            for (FormulaCellCacheEntry fcce : formulaEntries) {
+                writeLoc(leos, formulaLocs.get(fcce));
+                writeValue(leos, fcce.getValue());
+                CellCacheEntry[] inputs = fcce.getSensitiveInputCells();
+                leos.writeInt(inputs == null ? 0 : inputs.length);
+                if (inputs != null) {
+                    for (CellCacheEntry input : inputs) {
+                        leos.writeInt(indexes.get(input));
+                    }
+                }
+                FormulaUsedBlankCellSet blanks = fcce.getUsedBlankCellGroup();
+                leos.writeInt(blanks == null ? 0 : blanks.getBookSheetKeys().size());
+                if (blanks != null) {
+                    for (BookSheetKey bsk : blanks.getBookSheetKeys()) {
+                        leos.writeInt(bsk.getSheetIndex());
+                    }
+                }
+            }
+        }
+        leos.flush();
+    }
+
+    /**
+     * Removes the formula entries depending on entries, which aren't written
+     */
+    private static void removeUnresolvedEntries(Map<FormulaCellCacheEntry, Loc> formulaLocs,
+            Map<CellCacheEntry, Integer> plainIndexes, int bookIndex) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<FormulaCellCacheEntry> iter = formulaLocs.keySet().iterator();
+            while (iter.hasNext()) {
+                if (!isResolved(iter.next(), formulaLocs, plainIndexes, bookIndex)) {
+                    iter.remove();
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isResolved(FormulaCellCacheEntry fcce, Map<FormulaCellCacheEntry, Loc> formulaLocs,
+            Map<CellCacheEntry, Integer> plainIndexes, int bookIndex) {
+        CellCacheEntry[] inputs = fcce.getSensitiveInputCells();
+        if (inputs != null) {
+            for (CellCacheEntry input : inputs) {
+                if (!plainIndexes.containsKey(input) && !formulaLocs.containsKey(input)) {
+                    return false;
+                }
+            }
+        }
+        FormulaUsedBlankCellSet blanks = fcce.getUsedBlankCellGroup();
+        if (blanks != null) {
+            for (BookSheetKey bsk : blanks.getBookSheetKeys()) {
+                if (bsk.getBookIndex() != bookIndex) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the cached values of the evaluator with those of the snapshot, if the snapshot has
+     * been written for a workbook with the same contents
+     *
+     * @return <code>false</code>, if the contents of the workbook have changed
+     * @throws IOException if the snapshot can't be read
+     * @throws IllegalArgumentException if the stream contains no snapshot
+     */
+    public static boolean read(WorkbookEvaluator evaluator, Workbook wb, InputStream in) throws IOException {
+        LittleEndianInputStream leis = new LittleEndianInputStream(in);
+        if (leis.readInt() != SIGNATURE) {
+            throw new IllegalArgumentException("The stream contains no evaluation cache snapshot");
+        }
+        byte[] hash = new byte[HASH_ALGORITHM.hashSize];
+        leis.readFully(hash);
+        if (!Arrays.equals(hash, hashContents(wb))) {
+            return false;
+        }
+
+        EvaluationCache cache = evaluator.getCache();
+        int bookIndex = evaluator.getWorkbookIndex();
+        EvaluationWorkbook evalWorkbook = evaluator.getWorkbook();
+        synchronized (cache) {
+            cache.clear();
+            int plainCount = leis.readInt();
+            List<CellCacheEntry> entries = new ArrayList<>();
+            for (int i = 0; i < plainCount; i++) {
+                Loc loc = readLoc(leis, bookIndex);
+                PlainValueCellCacheEntry pcce = new PlainValueCellCacheEntry(readValue(leis));
+                cache.getPlainCellCache().put(loc, pcce);
+                entries.add(pcce);
+            }
+            // the entries of all formula cells are needed for the dependencies
+            int formulaCount = leis.readInt();
+            FormulaCellCacheEntry[] formulaEntries = new FormulaCellCacheEntry[formulaCount];
+            ValueEval[] values = new ValueEval[formulaCount];
+            int[][] inputIndexes = new int[formulaCount][];
+            int[][] blankSheets = new int[formulaCount][];
+            for (int i = 0; i < formulaCount; i++) {
+                Loc loc = readLoc(leis, bookIndex);
+                EvaluationCell cell = evalWorkbook.getSheet(loc.getSheetIndex()).getCell(loc.getRowIndex(), loc.getColumnIndex());
+                if (cell == null || cell.getCellType() != CellType.FORMULA) {
+                    throw new IllegalStateException("The snapshot doesn't match the workbook");
+                }
+                formulaEntries[i] = cache.getOrCreateFormulaCellEntry(cell);
+                entries.add(formulaEntries[i]);
+                values[i] = readValue(leis);
+                inputIndexes[i] = readInts(leis);
+                blankSheets[i] = readInts(leis);
+            }
+            for (int i = 0; i < formulaCount; i++) {
+                CellCacheEntry[] inputs = new CellCacheEntry[inputIndexes[i].length];
+                for (int j = 0; j < inputs.length; j++) {
+                    inputs[j] = entries.get(inputIndexes[i][j]);
+                }
+                FormulaUsedBlankCellSet blanks = null;
+                if (blankSheets[i].length > 0) {
+                    blanks = new FormulaUsedBlankCellSet();
+                    for (int sheetIndex : blankSheets[i]) {
+                        blanks.addSheet(bookIndex, sheetIndex);
+                    }
+                }
+                formulaEntries[i].updateFormulaResult(values[i], inputs, blanks);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the hash of the sheets, cells and names of the workbook
+     */
+    private static byte[] hashContents(Workbook wb) throws IOException {
+        MessageDigest md = CryptoFunctions.getMessageDigest(HASH_ALGORITHM);
+        LittleEndianOutputStream leos = new LittleEndianOutputStream(new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // only the digest is needed
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // only the digest is needed
+            }
+        }, md));
+        for (Name name : wb.getAllNames()) {
+            writeString(leos, name.getNameName());
+            leos.writeInt(name.getSheetIndex());
+            writeString(leos, name.getRefersToFormula());
+        }
+        leos.writeInt(wb.getNumberOfSheets());
+        for (Sheet sheet : wb) {
+            writeString(leos, sheet.getSheetName());
+            for (Row r : sheet) {
+                for (Cell c : r) {
+                    leos.writeInt(c.getRowIndex());
+                    leos.writeShort(c.getColumnIndex());
+                    CellType cellType = c.getCellType();
+                    leos.writeByte(cellType.ordinal());
+                    switch (cellType) {
+                        case NUMERIC:
+                            leos.writeDouble(c.getNumericCellValue());
+                            break;
+                        case STRING:
+                            writeString(leos, c.getStringCellValue());
+                            break;
+                        case BOOLEAN:
+                            leos.writeByte(c.getBooleanCellValue() ? 1 : 0);
+                            break;
+                        case ERROR:
+                            leos.writeByte(c.getErrorCellValue());
+                            break;
+                        case FORMULA:
+                            writeString(leos, c.getCellFormula());
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+            // marks the end of the cells of a sheet
+            leos.writeInt(-1);
+        }
+        leos.flush();
+        return md.digest();
+    }
+
+    private static void writeString(LittleEndianOutputStream leos, String value) {
+        if (value == null) {
+            leos.writeInt(-1);
+        } else {
+            leos.writeInt(value.length());
+            StringUtil.putUnicodeLE(value, leos);
+        }
+    }
+
+    private static String readString(LittleEndianInputStream leis) {
+        int length = leis.readInt();
+        return length < 0 ? null : StringUtil.readUnicodeLE(leis, length);
+    }
+
+    private static void writeLoc(LittleEndianOutputStream leos, Loc loc) {
+        leos.writeInt(loc.getSheetIndex());
+        leos.writeInt(loc.getRowIndex());
+        leos.writeShort(loc.getColumnIndex());
+    }
+
+    private static Loc readLoc(LittleEndianInputStream leis, int bookIndex) {
+        int sheetIndex = leis.readInt();
+        int rowIndex = leis.readInt();
+        int columnIndex = leis.readUShort();
+        return new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
+    }
+
+    private static int[] readInts(LittleEndianInputStream leis) {
+        int[] result = new int[leis.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = leis.readInt();
+        }
+        return result;
+    }
+
+    private static boolean isSupportedValue(ValueEval value) {
+        Class<?> cls = value.getClass();
+        return value == BlankEval.instance || cls == NumberEval.class || cls == StringEval.class
+                || cls == BoolEval.class || cls == ErrorEval.class;
+    }
+
+    private static void writeValue(LittleEndianOutputStream leos, ValueEval value) {
+        Class<?> cls = value.getClass();
+        if (cls == NumberEval.class) {
+            leos.writeByte(TYPE_NUMBER);
+            leos.writeDouble(((NumberEval) value).getNumberValue());
+        } else if (cls == StringEval.class) {
+            leos.writeByte(TYPE_STRING);
+            writeString(leos, ((StringEval) value).getStringValue());
+        } else if (cls == BoolEval.class) {
+            leos.writeByte(TYPE_BOOLEAN);
+            leos.writeByte(((BoolEval) value).getBooleanValue() ? 1 : 0);
+        } else if (cls == ErrorEval.class) {
+            leos.writeByte(TYPE_ERROR);
+            leos.writeInt(((ErrorEval) value).getErrorCode());
+        } else {
+            leos.writeByte(TYPE_BLANK);
+        }
+    }
+
+    private static ValueEval readValue(LittleEndianInputStream leis) {
+        byte type = leis.readByte();
+        switch (type) {
+            case TYPE_NUMBER:
+                return new NumberEval(leis.readDouble());
+            case TYPE_STRING:
+                return new StringEval(readString(leis));
+            case TYPE_BOOLEAN:
+                return BoolEval.valueOf(leis.readByte() != 0);
+            case TYPE_ERROR:
+                return ErrorEval.valueOf(leis.readInt());
+            case TYPE_BLANK:
+                return BlankEval.instance;
+            default:
+                throw new IllegalArgumentException("Unexpected value type (" + type + ")");
+        }
+    }
+}
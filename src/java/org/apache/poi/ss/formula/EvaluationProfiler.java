@@ -0,0 +1,442 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.eval.FunctionNameEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.OperationPtg;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Records where the time of formula evaluations is spent, to find the functions, sheets and
+ * cells which dominate the recalculation of a workbook.<p>
+ *
+ * The profiler is attached to a formula evaluator with
+ * {@link BaseFormulaEvaluator#setEvaluationProfiler(EvaluationProfiler)}:
+ * <pre>
+ * EvaluationProfiler profiler = new EvaluationProfiler();
+ * evaluator.setEvaluationProfiler(profiler);
+ * evaluator.evaluateAll();
+ * evaluator.setEvaluationProfiler(null);
+ * profiler.writeReport(System.out, 20);
+ * </pre>
+ *
+ * The time of a cell includes the functions of its formula, but not the evaluation of the
+ * formula cells it refers to, which are recorded as cells of their own. Likewise the time of a
+ * function doesn't include the evaluation of the formula cells in its arguments.
+ * So the recorded times of the cells, and of the sheets, add up to the total evaluation time.<p>
+ *
+ * The functions IF and CHOOSE are evaluated by jumping to the selected argument, so they
+ * are not recorded as functions.<p>
+ *
+ * The dependency depth of a cell is the length of the longest chain of formula cells it depends on,
+ * including the cell itself.<p>
+ *
+ * Evaluations of several threads can be recorded at the same time.
+ *
+ * @since POI 4.0.0
+ */
+public final class EvaluationProfiler implements IEvaluationListener {
+
+    /**
+     * The number of calls and the time of a function, sheet or cell
+     */
+    public static final class Statistic {
+        private final String _name;
+        private int _count;
+        private long _selfTime;
+        private long _totalTime;
+        private int _dependencyDepth;
+
+        Statistic(String name) {
+            _name = name;
+        }
+
+        /**
+         * @return the name of the function, the name of the sheet or the reference of the cell
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * @return the number of calls or evaluations
+         */
+        public int getCount() {
+            return _count;
+        }
+
+        /**
+         * @return the time in nanoseconds, without the evaluation of referenced formula cells
+         */
+        public long getSelfTime() {
+            return _selfTime;
+        }
+
+        /**
+         * @return the time in nanoseconds, including the evaluation of referenced formula cells
+         */
+        public long getTotalTime() {
+            return _totalTime;
+        }
+
+        /**
+         * @return the dependency depth of a cell, 0 for functions and sheets
+         */
+        public int getDependencyDepth() {
+            return _dependencyDepth;
+        }
+
+        void add(long selfTime, long totalTime) {
+            _count++;
+            _selfTime += selfTime;
+            _totalTime += totalTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-32s %10d %12.3f %12.3f", _name, _count,
+                    _selfTime / 1e6, _totalTime / 1e6);
+        }
+    }
+
+    private static final Comparator<Statistic> BY_SELF_TIME = new Comparator<Statistic>() {
+        @Override
+        public int compare(Statistic s1, Statistic s2) {
+            return Long.compare(s2._selfTime, s1._selfTime);
+        }
+    };
+
+    /**
+     * A running evaluation of a cell or a function
+     */
+    private static final class Frame {
+        /** the cache entry of a cell or the ptg of a function */
+        final Object key;
+        final int sheetIndex;
+        final long cellKey;
+        final String functionName;
+        final long start;
+        /** the time of the formula cells evaluated while this frame was running */
+        long nestedCellTime;
+        /** the maximum dependency depth of the formula cells used by this frame */
+        int nestedDepth;
+
+        Frame(Object key, int sheetIndex, long cellKey, String functionName) {
+            this.key = key;
+            this.sheetIndex = sheetIndex;
+            this.cellKey = cellKey;
+            this.functionName = functionName;
+            this.start = System.nanoTime();
+        }
+    }
+
+    private final ThreadLocal<Deque<Frame>> _frames = new ThreadLocal<Deque<Frame>>() {
+        @Override
+        protected Deque<Frame> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private WorkbookEvaluator _evaluator;
+    private final Map<String, Statistic> _functions = new HashMap<>();
+    private final Map<Integer, Statistic> _sheets = new HashMap<>();
+    private final Map<Long, Statistic> _cells = new HashMap<>();
+    private long _evaluations;
+    private long _cacheHits;
+    private long _plainValueReads;
+    private long _totalTime;
+    private int _maxDependencyDepth;
+
+    /* package */ void attach(WorkbookEvaluator evaluator) {
+        _evaluator = evaluator;
+    }
+
+    /**
+     * Discards all recorded statistics
+     */
+    public synchronized void reset() {
+        _functions.clear();
+        _sheets.clear();
+        _cells.clear();
+        _evaluations = 0;
+        _cacheHits = 0;
+        _plainValueReads = 0;
+        _totalTime = 0;
+        _maxDependencyDepth = 0;
+    }
+
+    /**
+     * @return the statistics of the functions and operators, the most expensive first
+     */
+    public synchronized List<Statistic> getFunctionStatistics() {
+        return sorted(_functions.values());
+    }
+
+    /**
+     * @return the statistics of the sheets, the most expensive first
+     */
+    public synchronized List<Statistic> getSheetStatistics() {
+        return sorted(_sheets.values());
+    }
+
+    /**
+     * @return the statistics of the evaluated formula cells, the most expensive first
+     */
+    public synchronized List<Statistic> getCellStatistics() {
+        return sorted(_cells.values());
+    }
+
+    /**
+     * @return the number of evaluated formula cells
+     */
+    public synchronized long getEvaluationCount() {
+        return _evaluations;
+    }
+
+    /**
+     * @return the number of values of formula and plain cells, which were taken from the cache
+     */
+    public synchronized long getCacheHitCount() {
+        return _cacheHits;
+    }
+
+    /**
+     * @return the share of the cell values taken from the cache, of all read cell values
+     */
+    public synchronized double getCacheHitRatio() {
+        long reads = _cacheHits + _plainValueReads + _evaluations;
+        return reads == 0 ? 0.0 : (double) _cacheHits / reads;
+    }
+
+    /**
+     * @return the length of the longest chain of dependent formula cells
+     */
+    public synchronized int getMaxDependencyDepth() {
+        return _maxDependencyDepth;
+    }
+
+    /**
+     * @return the time in nanoseconds of the evaluations, which were not part of another evaluation
+     */
+    public synchronized long getTotalTime() {
+        return _totalTime;
+    }
+
+    /**
+     * Writes the recorded statistics as text, the times in milliseconds
+     * @param maxRows the maximum number of functions, sheets and cells to list
+     */
+    public synchronized void writeReport(Appendable out, int maxRows) throws IOException {
+        String nl = String.format(Locale.ROOT, "%n");
+        out.append(String.format(Locale.ROOT, "Evaluation time:        %.3f ms%n", _totalTime / 1e6));
+        out.append(String.format(Locale.ROOT, "Evaluated formulas:     %d%n", _evaluations));
+        out.append(String.format(Locale.ROOT, "Cache hits:             %d (%.1f%%)%n", _cacheHits, getCacheHitRatio() * 100));
+        out.append(String.format(Locale.ROOT, "Max dependency depth:   %d%n", _maxDependencyDepth));
+        String header = String.format(Locale.ROOT, "%-32s %10s %12s %12s%n", "", "count", "self", "total");
+        out.append(nl).append("Functions").append(header.substring("Functions".length()));
+        writeRows(out, sorted(_functions.values()), maxRows, nl);
+        out.append(nl).append("Sheets").append(header.substring("Sheets".length()));
+        writeRows(out, sorted(_sheets.values()), maxRows, nl);
+        out.append(nl).append("Cells").append(header.substring("Cells".length()));
+        writeRows(out, sorted(_cells.values()), maxRows, nl);
+    }
+
+    private static void writeRows(Appendable out, List<Statistic> statistics, int maxRows, String nl) throws IOException {
+        Iterator<Statistic> it = statistics.iterator();
+        for (int i = 0; i < maxRows && it.hasNext(); i++) {
+            out.append(it.next().toString()).append(nl);
+        }
+    }
+
+    private static List<Statistic> sorted(Collection<Statistic> statistics) {
+        List<Statistic> result = new ArrayList<>(statistics);
+        Collections.sort(result, BY_SELF_TIME);
+        return result;
+    }
+
+    private static long getCellKey(int sheetIndex, int rowIndex, int columnIndex) {
+        return ((long) sheetIndex << 34) | ((long) rowIndex << 14) | columnIndex;
+    }
+
+    private static String getFunctionName(OperationPtg ptg, ValueEval[] args) {
+        if (ptg instanceof AbstractFunctionPtg) {
+            AbstractFunctionPtg fptg = (AbstractFunctionPtg) ptg;
+            if (fptg.isExternalFunction() && args.length > 0 && args[0] instanceof FunctionNameEval) {
+                return ((FunctionNameEval) args[0]).getFunctionName();
+            }
+            return fptg.getName();
+        }
+        // the operators, e.g. "Add" for the AddPtg
+        String name = ptg.getClass().getSimpleName();
+        return name.endsWith("Ptg") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /**
+     * Removes the frames up to the one of the key, frames left by failed evaluations are discarded
+     * @return the frame of the key, <code>null</code> if it isn't running
+     */
+    private static Frame pop(Deque<Frame> frames, Object key) {
+        while (!frames.isEmpty()) {
+            Frame frame = frames.pop();
+            if (frame.key == key) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onStartEvaluate(EvaluationCell cell, ICacheEntry entry) {
+        int sheetIndex = _evaluator.getSheetIndex(cell.getSheet());
+        long cellKey = getCellKey(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+        _frames.get().push(new Frame(entry, sheetIndex, cellKey, null));
+    }
+
+    @Override
+    public void onEndEvaluate(ICacheEntry entry, ValueEval result) {
+        long end = System.nanoTime();
+        Deque<Frame> frames = _frames.get();
+        Frame frame = pop(frames, entry);
+        if (frame == null) {
+            return;
+        }
+        long time = end - frame.start;
+        int depth = frame.nestedDepth + 1;
+        Frame parent = frames.peek();
+        if (parent != null) {
+            parent.nestedCellTime += time;
+            parent.nestedDepth = Math.max(parent.nestedDepth, depth);
+        }
+        long selfTime = time - frame.nestedCellTime;
+        synchronized (this) {
+            Statistic cellStatistic = _cells.get(frame.cellKey);
+            if (cellStatistic == null) {
+                int rowIndex = (int) (frame.cellKey >>> 14) & 0xFFFFF;
+                int columnIndex = (int) frame.cellKey & 0x3FFF;
+                String sheetName = _evaluator.getSheetName(frame.sheetIndex);
+                cellStatistic = new Statistic(new CellReference(sheetName, rowIndex, columnIndex, false, false).formatAsString());
+                _cells.put(frame.cellKey, cellStatistic);
+            }
+            cellStatistic.add(selfTime, time);
+            cellStatistic._dependencyDepth = Math.max(cellStatistic._dependencyDepth, depth);
+
+            Statistic sheetStatistic = _sheets.get(frame.sheetIndex);
+            if (sheetStatistic == null) {
+                sheetStatistic = new Statistic(_evaluator.getSheetName(frame.sheetIndex));
+                _sheets.put(frame.sheetIndex, sheetStatistic);
+            }
+            sheetStatistic.add(selfTime, time);
+
+            _evaluations++;
+            _maxDependencyDepth = Math.max(_maxDependencyDepth, depth);
+            if (parent == null) {
+                _totalTime += time;
+            }
+        }
+    }
+
+    @Override
+    public void onStartFunction(OperationPtg ptg, ValueEval[] args) {
+        _frames.get().push(new Frame(ptg, -1, -1, getFunctionName(ptg, args)));
+    }
+
+    @Override
+    public void onEndFunction(OperationPtg ptg, ValueEval result) {
+        long end = System.nanoTime();
+        Deque<Frame> frames = _frames.get();
+        Frame frame = pop(frames, ptg);
+        if (frame == null) {
+            return;
+        }
+        long time = end - frame.start;
+        Frame parent = frames.peek();
+        if (parent != null) {
+            // the function is part of the parent cell, only the nested cells are passed on
+            parent.nestedCellTime += frame.nestedCellTime;
+            parent.nestedDepth = Math.max(parent.nestedDepth, frame.nestedDepth);
+        }
+        synchronized (this) {
+            Statistic statistic = _functions.get(frame.functionName);
+            if (statistic == null) {
+                statistic = new Statistic(frame.functionName);
+                _functions.put(frame.functionName, statistic);
+            }
+            statistic.add(time - frame.nestedCellTime, time);
+        }
+    }
+
+    @Override
+    public void onCacheHit(int sheetIndex, int rowIndex, int columnIndex, ValueEval result) {
+        Frame parent = _frames.get().peek();
+        synchronized (this) {
+            _cacheHits++;
+            if (parent != null) {
+                Statistic cellStatistic = _cells.get(getCellKey(sheetIndex, rowIndex, columnIndex));
+                if (cellStatistic != null) {
+                    parent.nestedDepth = Math.max(parent.nestedDepth, cellStatistic._dependencyDepth);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onReadPlainValue(int sheetIndex, int rowIndex, int columnIndex, ICacheEntry entry) {
+        _plainValueReads++;
+    }
+
+    @Override
+    public void onClearWholeCache() {
+        // the statistics are kept
+    }
+
+    @Override
+    public void onClearCachedValue(ICacheEntry entry) {
+        // the statistics are kept
+    }
+
+    @Override
+    public void sortDependentCachedValues(ICacheEntry[] formulaCells) {
+        // the order doesn't matter
+    }
+
+    @Override
+    public void onClearDependentCachedValue(ICacheEntry formulaCell, int depth) {
+        // the statistics are kept
+    }
+
+    @Override
+    public void onChangeFromBlankValue(int sheetIndex, int rowIndex, int columnIndex,
+            EvaluationCell cell, ICacheEntry entry) {
+        // the statistics are kept
+    }
+}
@@ -40,6 +40,7 @@ final class EvaluationTracker {
 	private final List<CellEvaluationFrame> _evaluationFrames;
 	private final Set<FormulaCellCacheEntry> _currentlyEvaluatingCells;
 	private final EvaluationCache _cache;
+	private PrecedentEvaluator _precedentEvaluator;
 
 	public EvaluationTracker(EvaluationCache cache) {
 		_cache = cache;
@@ -73,6 +74,31 @@ final class EvaluationTracker {
 		return true;
 	}
 
+	/**
+	 * @return <code>true</code> if the specified cell is currently being evaluated
+	 */
+	public boolean isEvaluating(FormulaCellCacheEntry cce) {
+		return _currentlyEvaluatingCells.contains(cce);
+	}
+
+	/**
+	 * @return the number of nested cell evaluations
+	 */
+	public int getEvaluationDepth() {
+		return _evaluationFrames.size();
+	}
+
+	/**
+	 * @return the evaluator for the precedents of deeply nested cells, which keeps track of
+	 *  the cells it has visited during this evaluation
+	 */
+	public PrecedentEvaluator getPrecedentEvaluator() {
+		if (_precedentEvaluator == null) {
+			_precedentEvaluator = new PrecedentEvaluator();
+		}
+		return _precedentEvaluator;
+	}
+
 	public void updateCacheResult(ValueEval result) {
 
 		int nFrames = _evaluationFrames.size();
@@ -90,7 +116,10 @@ final class EvaluationTracker {
 			return;
 		}
 
-		frame.updateFormulaResult(result);
+		// the cache entries are shared with concurrent evaluations
+		synchronized (_cache) {
+			frame.updateFormulaResult(result);
+		}
 	}
 
 	/**
@@ -148,4 +177,18 @@ final class EvaluationTracker {
 			}
 		}
 	}
+
+	/**
+	 * Like {@link #acceptPlainValueDependency}, but for plain number cells, whose value is only
+	 * converted to a {@link org.apache.poi.ss.formula.eval.NumberEval}, when the cell is read for the first time
+	 */
+	public void acceptPlainNumberDependency(int bookIndex, int sheetIndex,
+			int rowIndex, int columnIndex, double value) {
+		int prevFrameIndex = _evaluationFrames.size() - 1;
+		if (prevFrameIndex >= 0) {
+			CellEvaluationFrame consumingFrame = _evaluationFrames.get(prevFrameIndex);
+			consumingFrame.addSensitiveInputCell(_cache.getPlainNumberEntry(bookIndex, sheetIndex,
+					rowIndex, columnIndex, value));
+		}
+	}
 }
@@ -35,9 +35,14 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 	 *
 	 * If any of the following cells change, this cache entry needs to be cleared
 	 */
-	private CellCacheEntry[] _sensitiveInputCells;
+	private volatile CellCacheEntry[] _sensitiveInputCells;
 
-	private FormulaUsedBlankCellSet _usedBlankCellGroup;
+	private volatile FormulaUsedBlankCellSet _usedBlankCellGroup;
+
+	/**
+	 * The compiled formula tokens, kept until the formula of the cell changes
+	 */
+	private volatile FormulaPlan _plan;
 
 	public FormulaCellCacheEntry() {
 		// leave fields un-set
@@ -64,6 +69,25 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 	    }
 	}
 
+	/**
+	 * @return the cells used by the last evaluation, <code>null</code> if not evaluated
+	 */
+	public CellCacheEntry[] getSensitiveInputCells() {
+		return _sensitiveInputCells;
+	}
+
+	public FormulaUsedBlankCellSet getUsedBlankCellGroup() {
+		return _usedBlankCellGroup;
+	}
+
+	public FormulaPlan getPlan() {
+		return _plan;
+	}
+
+	public void setPlan(FormulaPlan plan) {
+		_plan = plan;
+	}
+
 	public void clearFormulaEntry() {
 		CellCacheEntry[] usedCells = _sensitiveInputCells;
 		if (usedCells != null) {
@@ -0,0 +1,602 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.util.IntList;
+import org.apache.poi.util.Internal;
+
+/**
+ * A dependency graph of the formula cells of a workbook, which is built from their parsed
+ * formula tokens before any evaluation.<p>
+ *
+ * The references of the formulas are indexed by the referenced cell for single cell references
+ * and by row intervals for area references, so an area isn't expanded to its cells. This allows
+ * to find the formula cells, which (directly or indirectly) depend on a changed cell, without
+ * walking all formula cells. Formulas with references, which can't be determined from their tokens,
+ * e.g. INDIRECT, OFFSET or volatile functions like NOW, are treated as always dirty.<p>
+ *
+ * The graph is kept up to date by {@link WorkbookEvaluator#notifyUpdateCell(EvaluationCell)} and
+ * {@link WorkbookEvaluator#notifyDeleteCell(EvaluationCell)}, which also collect the changed cells
+ * for the next {@link #takeDirtyLevels()}.<p>
+ *
+ * For POI internal use only
+ */
+@Internal
+public final class FormulaDependencyGraph {
+    private final EvaluationWorkbook _workbook;
+    private final FormulaReferenceCollector _referenceCollector;
+
+    // the formula cells (nodes) of the graph
+    private int _size;
+    private int[] _sheets = new int[64];
+    private int[] _rows = new int[64];
+    private int[] _cols = new int[64];
+    private int[] _versions = new int[64];
+    private EvaluationCell[] _cells = new EvaluationCell[64];
+    /** the references per node as groups of (sheet, firstRow, lastRow, firstCol, lastCol) */
+    private int[][] _refs = new int[64][];
+    private boolean[] _volatile = new boolean[64];
+    private final Map<Long,Integer> _nodesByCell = new HashMap<>();
+    private int _freeNodes;
+
+    // the index of the references, the entries are pairs of (node, version)
+    private final Map<Long,IntList> _cellDependents = new HashMap<>();
+    private AreaIndex[] _areaIndexes = new AreaIndex[0];
+    private int _staleEntries;
+    private int _liveEntries;
+
+    // the changes since the last recalculation
+    private final List<long[]> _changedCells = new ArrayList<>();
+    private final IntList _changedNodes = new IntList();
+    private boolean _allDirty;
+    // whether the last level of the last takeDirtyLevels contains circular references
+    private boolean _circular;
+    // marks of the nodes, only used within takeDirtyLevels
+    private int[] _marks = new int[64];
+
+    /* package */ FormulaDependencyGraph(WorkbookEvaluator evaluator) {
+        _workbook = evaluator.getWorkbook();
+        _referenceCollector = evaluator.getReferenceCollector();
+    }
+
+    /**
+     * @return the number of formula cells in the graph
+     */
+    public int getNumberOfFormulaCells() {
+        return _nodesByCell.size();
+    }
+
+    /**
+     * Adds a formula cell, which is evaluated with the next recalculation
+     *
+     * @param sheetIndex the index of the sheet of the cell
+     * @param cell the formula cell
+     */
+    /* package */ void addFormulaCell(int sheetIndex, EvaluationCell cell) {
+        Long key = cellKey(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+        Integer node = _nodesByCell.get(key);
+        if (node == null) {
+            node = newNode(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+            _nodesByCell.put(key, node);
+        } else {
+            removeReferences(node);
+        }
+        _cells[node] = cell;
+        addReferences(node, sheetIndex);
+        _changedNodes.add(node);
+    }
+
+    /**
+     * Marks all formula cells as dirty, e.g. after the graph has been built
+     */
+    /* package */ void markAllDirty() {
+        _allDirty = true;
+    }
+
+    /**
+     * Updates the graph for a changed cell, i.e. a changed value or formula
+     */
+    /* package */ void notifyUpdateCell(int sheetIndex, EvaluationCell cell) {
+        if (cell.getCellType() == CellType.FORMULA) {
+            addFormulaCell(sheetIndex, cell);
+        } else {
+            removeFormulaCell(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+        }
+        _changedCells.add(new long[]{ sheetIndex, cell.getRowIndex(), cell.getColumnIndex() });
+    }
+
+    /**
+     * Updates the graph for a deleted cell
+     */
+    /* package */ void notifyDeleteCell(int sheetIndex, EvaluationCell cell) {
+        removeFormulaCell(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+        _changedCells.add(new long[]{ sheetIndex, cell.getRowIndex(), cell.getColumnIndex() });
+    }
+
+    private void removeFormulaCell(int sheetIndex, int rowIndex, int columnIndex) {
+        Integer node = _nodesByCell.remove(cellKey(sheetIndex, rowIndex, columnIndex));
+        if (node != null) {
+            removeReferences(node);
+            _cells[node] = null;
+            _freeNodes++;
+        }
+    }
+
+    /**
+     * @param node the node index as returned by {@link #takeDirtyLevels()}
+     * @return the formula cell of the node or {@code null} if it has been removed
+     */
+    public EvaluationCell getCell(int node) {
+        return _cells[node];
+    }
+
+    /**
+     * @param node the node index as returned by {@link #takeDirtyLevels()}
+     * @return the sheet index of the formula cell
+     */
+    public int getSheetIndex(int node) {
+        return _sheets[node];
+    }
+
+    /**
+     * @param node the node index as returned by {@link #takeDirtyLevels()}
+     * @return the row index of the formula cell
+     */
+    public int getRowIndex(int node) {
+        return _rows[node];
+    }
+
+    /**
+     * @param node the node index as returned by {@link #takeDirtyLevels()}
+     * @return the column index of the formula cell
+     */
+    public int getColumnIndex(int node) {
+        return _cols[node];
+    }
+
+    /**
+     * Finds the formula cells, which directly reference the given cell
+     *
+     * @return the node indexes of the formula cells
+     */
+    public int[] getDirectDependents(int sheetIndex, int rowIndex, int columnIndex) {
+        IntList result = new IntList();
+        collectDependents(sheetIndex, rowIndex, columnIndex, result);
+        return result.toArray();
+    }
+
+    /**
+     * Calculates the formula cells, which need to be evaluated because of the changes since
+     * the last call, and resets the changes.<p>
+     *
+     * The formula cells are grouped in levels: the cells of a level only depend on cells of
+     * earlier levels, so the levels can be evaluated one after another and the cells of a level
+     * in any order. Cells with circular references are returned in the last level.
+     *
+     * @return the node indexes of the dirty formula cells, grouped by levels
+     */
+    public int[][] takeDirtyLevels() {
+        if (_marks.length < _size) {
+            _marks = new int[_sheets.length];
+        }
+        IntList dirty = new IntList();
+        if (_allDirty) {
+            for (int node = 0; node < _size; node++) {
+                markDirty(node, dirty);
+            }
+        } else {
+            IntList dependents = new IntList();
+            for (long[] cell : _changedCells) {
+                dependents.clear();
+                collectDependents((int)cell[0], (int)cell[1], (int)cell[2], dependents);
+                for (int i = 0; i < dependents.size(); i++) {
+                    markDirty(dependents.get(i), dirty);
+                }
+            }
+            for (int i = 0; i < _changedNodes.size(); i++) {
+                markDirty(_changedNodes.get(i), dirty);
+            }
+            for (int node = 0; node < _size; node++) {
+                if (_volatile[node]) {
+                    markDirty(node, dirty);
+                }
+            }
+        }
+        _changedCells.clear();
+        _changedNodes.clear();
+        _allDirty = false;
+
+        // walk the dependents of the dirty cells and count the incoming edges within the dirty cone
+        IntList edges = new IntList();
+        IntList dependents = new IntList();
+        for (int i = 0; i < dirty.size(); i++) {
+            int node = dirty.get(i);
+            dependents.clear();
+            collectDependents(_sheets[node], _rows[node], _cols[node], dependents);
+            for (int j = 0; j < dependents.size(); j++) {
+                int dep = dependents.get(j);
+                markDirty(dep, dirty);
+                edges.add(node);
+                edges.add(dep);
+            }
+        }
+        int[][] levels = sortTopologically(dirty, edges);
+        for (int i = 0; i < dirty.size(); i++) {
+            _marks[dirty.get(i)] = 0;
+        }
+        return levels;
+    }
+
+    /**
+     * @return {@code true}, if the last level returned by the last {@link #takeDirtyLevels()}
+     *  consists of cells with circular references, which need to be evaluated one after another
+     */
+    public boolean hasCircularReferences() {
+        return _circular;
+    }
+
+    private void markDirty(int node, IntList dirty) {
+        if (_marks[node] == 0 && _cells[node] != null) {
+            _marks[node] = 1;
+            dirty.add(node);
+        }
+    }
+
+    /**
+     * Kahn's algorithm on the dirty cone. The marks are used as the count of incoming edges + 1
+     */
+    private int[][] sortTopologically(IntList dirty, IntList edges) {
+        int nodeCount = dirty.size();
+        int edgeCount = edges.size() / 2;
+        // adjacency lists in compressed form, indexed by the position in the dirty list
+        Map<Integer,Integer> positions = new HashMap<>(nodeCount * 4 / 3 + 1);
+        for (int i = 0; i < nodeCount; i++) {
+            positions.put(dirty.get(i), i);
+        }
+        int[] start = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            start[positions.get(edges.get(2 * e)) + 1]++;
+            _marks[edges.get(2 * e + 1)]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] targets = new int[edgeCount];
+        int[] fill = Arrays.copyOf(start, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            targets[fill[positions.get(edges.get(2 * e))]++] = edges.get(2 * e + 1);
+        }
+
+        List<int[]> levels = new ArrayList<>();
+        IntList current = new IntList();
+        for (int i = 0; i < nodeCount; i++) {
+            int node = dirty.get(i);
+            if (_marks[node] == 1) {
+                current.add(node);
+            }
+        }
+        int sorted = 0;
+        _circular = false;
+        while (!current.isEmpty()) {
+            int[] level = current.toArray();
+            levels.add(level);
+            sorted += level.length;
+            current = new IntList();
+            for (int node : level) {
+                int pos = positions.get(node);
+                for (int e = start[pos]; e < start[pos + 1]; e++) {
+                    int target = targets[e];
+                    if (--_marks[target] == 1) {
+                        current.add(target);
+                    }
+                }
+                // mark as done
+                _marks[node] = -1;
+            }
+        }
+        if (sorted < nodeCount) {
+            // the remaining cells are part of or depend on circular references
+            IntList cyclic = new IntList();
+            for (int i = 0; i < nodeCount; i++) {
+                int node = dirty.get(i);
+                if (_marks[node] > 0) {
+                    cyclic.add(node);
+                }
+            }
+            levels.add(cyclic.toArray());
+            _circular = true;
+        }
+        return levels.toArray(new int[levels.size()][]);
+    }
+
+    private int newNode(int sheetIndex, int rowIndex, int columnIndex) {
+        if (_freeNodes > 0 && _freeNodes > _size / 2) {
+            compact();
+        }
+        if (_size == _sheets.length) {
+            int newCapacity = _size * 2;
+            _sheets = Arrays.copyOf(_sheets, newCapacity);
+            _rows = Arrays.copyOf(_rows, newCapacity);
+            _cols = Arrays.copyOf(_cols, newCapacity);
+            _versions = Arrays.copyOf(_versions, newCapacity);
+            _cells = Arrays.copyOf(_cells, newCapacity);
+            _refs = Arrays.copyOf(_refs, newCapacity);
+            _volatile = Arrays.copyOf(_volatile, newCapacity);
+        }
+        int node = _size++;
+        _sheets[node] = sheetIndex;
+        _rows[node] = rowIndex;
+        _cols[node] = columnIndex;
+        return node;
+    }
+
+    /**
+     * Removes the nodes of deleted formula cells and rebuilds the reference index
+     */
+    private void compact() {
+        int size = 0;
+        int[] newIndexes = new int[_size];
+        _nodesByCell.clear();
+        for (int node = 0; node < _size; node++) {
+            if (_cells[node] == null) {
+                newIndexes[node] = -1;
+                continue;
+            }
+            newIndexes[node] = size;
+            _sheets[size] = _sheets[node];
+            _rows[size] = _rows[node];
+            _cols[size] = _cols[node];
+            _cells[size] = _cells[node];
+            _refs[size] = _refs[node];
+            _volatile[size] = _volatile[node];
+            _versions[size] = 0;
+            _nodesByCell.put(cellKey(_sheets[size], _rows[size], _cols[size]), size);
+            size++;
+        }
+        Arrays.fill(_cells, size, _size, null);
+        Arrays.fill(_refs, size, _size, null);
+        _size = size;
+        _freeNodes = 0;
+        // pending changes refer to the old node indexes
+        IntList changedNodes = new IntList(_changedNodes);
+        _changedNodes.clear();
+        for (int i = 0; i < changedNodes.size(); i++) {
+            int node = newIndexes[changedNodes.get(i)];
+            if (node >= 0) {
+                _changedNodes.add(node);
+            }
+        }
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        _cellDependents.clear();
+        _areaIndexes = new AreaIndex[0];
+        _staleEntries = 0;
+        _liveEntries = 0;
+        for (int node = 0; node < _size; node++) {
+            // the references are null, while a formula is updated
+            if (_cells[node] != null && _refs[node] != null) {
+                indexReferences(node);
+            }
+        }
+        for (AreaIndex ai : _areaIndexes) {
+            if (ai != null) {
+                ai.build(_versions);
+            }
+        }
+    }
+
+    private void removeReferences(int node) {
+        _versions[node]++;
+        int[] refs = _refs[node];
+        int count = refs == null ? 0 : refs.length / 5;
+        _staleEntries += count;
+        _liveEntries -= count;
+        _refs[node] = null;
+        _volatile[node] = false;
+        if (_staleEntries > 1024 && _staleEntries > _liveEntries) {
+            rebuildIndex();
+        }
+    }
+
+    private void addReferences(int node, int sheetIndex) {
+        IntList refs = new IntList();
+        boolean isVolatile;
+        try {
+            Ptg[] ptgs = _workbook.getFormulaTokens(_cells[node]);
+            isVolatile = _referenceCollector.collectReferences(ptgs, sheetIndex, refs);
+        } catch (RuntimeException e) {
+            // the formula can't be analyzed, so it is always evaluated
+            isVolatile = true;
+        }
+        _refs[node] = refs.toArray();
+        _volatile[node] = isVolatile;
+        indexReferences(node);
+    }
+
+    private void indexReferences(int node) {
+        int[] refs = _refs[node];
+        int version = _versions[node];
+        for (int i = 0; i < refs.length; i += 5) {
+            int sheet = refs[i];
+            if (refs[i+1] == refs[i+2] && refs[i+3] == refs[i+4]) {
+                Long key = cellKey(sheet, refs[i+1], refs[i+3]);
+                IntList deps = _cellDependents.get(key);
+                if (deps == null) {
+                    deps = new IntList(2);
+                    _cellDependents.put(key, deps);
+                }
+                deps.add(node);
+                deps.add(version);
+            } else {
+                if (sheet >= _areaIndexes.length) {
+                    _areaIndexes = Arrays.copyOf(_areaIndexes, sheet + 1);
+                }
+                if (_areaIndexes[sheet] == null) {
+                    _areaIndexes[sheet] = new AreaIndex();
+                }
+                _areaIndexes[sheet].add(refs[i+1], refs[i+2], refs[i+3], refs[i+4], node, version);
+            }
+            _liveEntries++;
+        }
+    }
+
+    private void collectDependents(int sheetIndex, int rowIndex, int columnIndex, IntList result) {
+        IntList deps = _cellDependents.get(cellKey(sheetIndex, rowIndex, columnIndex));
+        if (deps != null) {
+            for (int i = 0; i < deps.size(); i += 2) {
+                int node = deps.get(i);
+                if (_versions[node] == deps.get(i + 1) && _cells[node] != null) {
+                    result.add(node);
+                }
+            }
+        }
+        if (sheetIndex < _areaIndexes.length && _areaIndexes[sheetIndex] != null) {
+            _areaIndexes[sheetIndex].query(rowIndex, columnIndex, _versions, _cells, result);
+        }
+    }
+
+    private static Long cellKey(int sheetIndex, int rowIndex, int columnIndex) {
+        return ((long) sheetIndex << 40) | ((long) rowIndex << 16) | columnIndex;
+    }
+
+    /**
+     * An interval tree of the area references of a sheet, which finds the areas containing
+     * a row in O(log n + k). The tree is an array sorted by the first row, where each
+     * (implicit) subtree knows the highest last row of its areas.
+     * Areas added after the tree has been built are kept in a list until the next rebuild.
+     */
+    private static final class AreaIndex {
+        private int[] _firstRows = new int[8], _lastRows = new int[8];
+        private int[] _firstCols = new int[8], _lastCols = new int[8];
+        private int[] _nodes = new int[8], _versions = new int[8];
+        private int[] _maxLastRows = new int[0];
+        private int _size;
+        /** the number of entries in the tree, the following ones are unsorted */
+        private int _built;
+
+        void add(int firstRow, int lastRow, int firstCol, int lastCol, int node, int version) {
+            if (_size == _firstRows.length) {
+                int newCapacity = _size * 2;
+                _firstRows = Arrays.copyOf(_firstRows, newCapacity);
+                _lastRows = Arrays.copyOf(_lastRows, newCapacity);
+                _firstCols = Arrays.copyOf(_firstCols, newCapacity);
+                _lastCols = Arrays.copyOf(_lastCols, newCapacity);
+                _nodes = Arrays.copyOf(_nodes, newCapacity);
+                _versions = Arrays.copyOf(_versions, newCapacity);
+            }
+            _firstRows[_size] = firstRow;
+            _lastRows[_size] = lastRow;
+            _firstCols[_size] = firstCol;
+            _lastCols[_size] = lastCol;
+            _nodes[_size] = node;
+            _versions[_size] = version;
+            _size++;
+            if (_size - _built > 64 && _size - _built > _built / 4) {
+                build(null);
+            }
+        }
+
+        /**
+         * Sorts the entries by their first row and removes the stale ones
+         *
+         * @param nodeVersions the current versions of the nodes or {@code null} to keep all entries
+         */
+        void build(int[] nodeVersions) {
+            Integer[] order = new Integer[_size];
+            int count = 0;
+            for (int i = 0; i < _size; i++) {
+                if (nodeVersions == null || nodeVersions[_nodes[i]] == _versions[i]) {
+                    order[count++] = i;
+                }
+            }
+            final int[] firstRows = _firstRows;
+            Arrays.sort(order, 0, count, (a, b) -> Integer.compare(firstRows[a], firstRows[b]));
+            _firstRows = permute(_firstRows, order, count);
+            _lastRows = permute(_lastRows, order, count);
+            _firstCols = permute(_firstCols, order, count);
+            _lastCols = permute(_lastCols, order, count);
+            _nodes = permute(_nodes, order, count);
+            _versions = permute(_versions, order, count);
+            _size = count;
+            _built = count;
+            _maxLastRows = new int[count];
+            computeMax(0, count - 1);
+        }
+
+        private static int[] permute(int[] values, Integer[] order, int count) {
+            int[] result = new int[Math.max(count, 8)];
+            for (int i = 0; i < count; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+
+        private int computeMax(int lo, int hi) {
+            if (lo > hi) {
+                return -1;
+            }
+            int mid = (lo + hi) >>> 1;
+            int max = Math.max(_lastRows[mid], Math.max(computeMax(lo, mid - 1), computeMax(mid + 1, hi)));
+            _maxLastRows[mid] = max;
+            return max;
+        }
+
+        void query(int row, int col, int[] nodeVersions, EvaluationCell[] cells, IntList result) {
+            query(0, _built - 1, row, col, nodeVersions, cells, result);
+            for (int i = _built; i < _size; i++) {
+                check(i, row, col, nodeVersions, cells, result);
+            }
+        }
+
+        private void query(int lo, int hi, int row, int col, int[] nodeVersions, EvaluationCell[] cells, IntList result) {
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (_maxLastRows[mid] < row) {
+                    // no area of this subtree reaches the row
+                    return;
+                }
+                query(lo, mid - 1, row, col, nodeVersions, cells, result);
+                if (_firstRows[mid] > row) {
+                    // all following areas start below the row
+                    return;
+                }
+                check(mid, row, col, nodeVersions, cells, result);
+                lo = mid + 1;
+            }
+        }
+
+        private void check(int i, int row, int col, int[] nodeVersions, EvaluationCell[] cells, IntList result) {
+            if (_firstRows[i] <= row && row <= _lastRows[i] && _firstCols[i] <= col && col <= _lastCols[i]) {
+                int node = _nodes[i];
+                if (nodeVersions[node] == _versions[i] && cells[node] != null) {
+                    result.add(node);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.FunctionEval;
+import org.apache.poi.ss.formula.eval.NotImplementedException;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
+import org.apache.poi.ss.formula.functions.ArrayFunction;
+import org.apache.poi.ss.formula.functions.ArrayMode;
+import org.apache.poi.ss.formula.functions.Function;
+import org.apache.poi.ss.formula.ptg.AttrPtg;
+import org.apache.poi.ss.formula.ptg.BoolPtg;
+import org.apache.poi.ss.formula.ptg.ControlPtg;
+import org.apache.poi.ss.formula.ptg.ErrPtg;
+import org.apache.poi.ss.formula.ptg.FuncVarPtg;
+import org.apache.poi.ss.formula.ptg.IntPtg;
+import org.apache.poi.ss.formula.ptg.MemAreaPtg;
+import org.apache.poi.ss.formula.ptg.MemErrPtg;
+import org.apache.poi.ss.formula.ptg.MemFuncPtg;
+import org.apache.poi.ss.formula.ptg.NumberPtg;
+import org.apache.poi.ss.formula.ptg.OperationPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.StringPtg;
+import org.apache.poi.ss.formula.ptg.UnionPtg;
+import org.apache.poi.ss.formula.ptg.ValueOperatorPtg;
+
+/**
+ * The tokens of a formula compiled for repeated evaluation by the {@link WorkbookEvaluator}.<p>
+ *
+ * The kind of each token is determined once, the functions of the operations are looked up in
+ * advance, the jump targets of the IF, CHOOSE and skip tokens are calculated and constant operands
+ * are converted to their values. Operators with only constant operands, e.g. <code>1/12</code>,
+ * are folded to their result. The plan of a formula cell is kept with its cache entry, so
+ * repeated evaluations of the cell don't need to get and interpret its tokens again.
+ */
+final class FormulaPlan {
+    /** control tokens and folded constants, which don't change the stack */
+    static final byte IGNORED = 0;
+    /** operands, which are evaluated for each evaluation */
+    static final byte OPERAND = 1;
+    static final byte CONSTANT = 2;
+    static final byte OPERATION = 3;
+    static final byte UNION = 4;
+    static final byte ATTR_IF = 5;
+    static final byte ATTR_CHOOSE = 6;
+    static final byte ATTR_SKIP = 7;
+
+    /** a jump target, which can't be calculated from the tokens, so the error is reported at evaluation */
+    private static final int UNKNOWN = -1;
+
+    private final Ptg[] _ptgs;
+    private final byte[] _kinds;
+    private final ValueEval[] _constants;
+    private final OperationPtg[] _operations;
+    private final Function[] _functions;
+    /** <code>null</code>, if the array modes are only looked up on evaluation */
+    private final boolean[] _arrayModes;
+    private final int[][] _jumps;
+    private int _stackSize;
+
+    private FormulaPlan(Ptg[] ptgs, boolean compiled) {
+        int size = ptgs.length;
+        _ptgs = ptgs;
+        _kinds = new byte[size];
+        _constants = new ValueEval[size];
+        _operations = new OperationPtg[size];
+        _functions = new Function[size];
+        _arrayModes = compiled ? new boolean[size] : null;
+        _jumps = new int[size][];
+    }
+
+    /**
+     * @param ptgs the tokens of the formula
+     * @param arrayFormula whether the formula may be evaluated as an array formula, where operators
+     *  with constant operands can't be folded
+     */
+    public static FormulaPlan compile(Ptg[] ptgs, boolean arrayFormula) {
+        FormulaPlan plan = new FormulaPlan(ptgs, true);
+        plan.classify();
+        plan.foldConstants(arrayFormula);
+        return plan;
+    }
+
+    /**
+     * Only classifies the tokens, for formulas which are evaluated once, e.g. the definitions of
+     * names or the formulas of conditional formats. Constants aren't folded and the array modes
+     * are looked up on evaluation, as the interpreter did before the plans.
+     *
+     * @param ptgs the tokens of the formula
+     */
+    public static FormulaPlan interpret(Ptg[] ptgs) {
+        FormulaPlan plan = new FormulaPlan(ptgs, false);
+        plan.classify();
+        return plan;
+    }
+
+    private void classify() {
+        int depth = 0;
+        for (int i = 0; i < _ptgs.length; i++) {
+            Ptg ptg = _ptgs[i];
+            if (ptg instanceof AttrPtg) {
+                AttrPtg attrPtg = (AttrPtg) ptg;
+                if (attrPtg.isSum()) {
+                    // Excel prefers to encode 'SUM()' as a tAttr token, but this evaluator
+                    // expects the equivalent function token
+                    ptg = FuncVarPtg.SUM;
+                } else if (attrPtg.isOptimizedChoose()) {
+                    _kinds[i] = ATTR_CHOOSE;
+                    _jumps[i] = chooseTargets(i, attrPtg);
+                    continue;
+                } else if (attrPtg.isOptimizedIf()) {
+                    _kinds[i] = ATTR_IF;
+                    _jumps[i] = ifTargets(i, attrPtg);
+                    continue;
+                } else if (attrPtg.isSkip()) {
+                    _kinds[i] = ATTR_SKIP;
+                    _jumps[i] = new int[] { target(i, attrPtg.getData() + 1) };
+                    continue;
+                }
+            }
+            if (ptg instanceof ControlPtg || ptg instanceof MemFuncPtg
+                    || ptg instanceof MemAreaPtg || ptg instanceof MemErrPtg) {
+                _kinds[i] = IGNORED;
+            } else if (ptg instanceof UnionPtg) {
+                _kinds[i] = UNION;
+                depth--;
+            } else if (ptg instanceof OperationPtg) {
+                OperationPtg optg = (OperationPtg) ptg;
+                _kinds[i] = OPERATION;
+                _operations[i] = optg;
+                _functions[i] = OperationEvaluatorFactory.resolveFunction(optg);
+                if (_arrayModes != null) {
+                    _arrayModes[i] = isArrayModeFunctionNext(i);
+                }
+                depth += 1 - optg.getNumberOfOperands();
+            } else {
+                ValueEval constant;
+                try {
+                    constant = getConstant(ptg);
+                } catch (RuntimeException e) {
+                    // e.g. an invalid error code, reported at evaluation
+                    constant = null;
+                }
+                _kinds[i] = (constant == null) ? OPERAND : CONSTANT;
+                _constants[i] = constant;
+                depth++;
+            }
+            _stackSize = Math.max(_stackSize, depth);
+        }
+    }
+
+    private static ValueEval getConstant(Ptg ptg) {
+        // the values are immutable, so they can be shared by all evaluations
+        if (ptg instanceof IntPtg) {
+            return new NumberEval(((IntPtg) ptg).getValue());
+        }
+        if (ptg instanceof NumberPtg) {
+            return new NumberEval(((NumberPtg) ptg).getValue());
+        }
+        if (ptg instanceof StringPtg) {
+            return new StringEval(((StringPtg) ptg).getValue());
+        }
+        if (ptg instanceof BoolPtg) {
+            return BoolEval.valueOf(((BoolPtg) ptg).getValue());
+        }
+        if (ptg instanceof ErrPtg) {
+            return ErrorEval.valueOf(((ErrPtg) ptg).getErrorCode());
+        }
+        return null;
+    }
+
+    /**
+     * Whether one of the operands is evaluated in array mode, if it is an area.
+     * The next variable argument function after the operation decides.
+     */
+    private boolean isArrayModeFunctionNext(int index) {
+        for (int i = index; i < _ptgs.length; i++) {
+            if (_ptgs[i] instanceof FuncVarPtg) {
+                try {
+                    Function func = FunctionEval.getBasicFunction(((FuncVarPtg) _ptgs[i]).getFunctionIndex());
+                    return func instanceof ArrayMode;
+                } catch (NotImplementedException e) {
+                    // FunctionEval.getBasicFunction can throw NotImplementedException
+                    // if the function is not yet supported.
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces operators, whose operands are all constant, with their result. The tokens of the
+     * operands are ignored then. Operands before jump tokens aren't folded, as the jumps may
+     * skip over them.
+     */
+    private void foldConstants(boolean arrayFormula) {
+        // the simulated stack: the first token of each entry and its value, if it is constant
+        int[] starts = new int[_ptgs.length + 1];
+        ValueEval[] values = new ValueEval[_ptgs.length + 1];
+        int sp = 0;
+        for (int i = 0; i < _ptgs.length; i++) {
+            switch (_kinds[i]) {
+                case IGNORED:
+                    break;
+                case CONSTANT:
+                case OPERAND:
+                    starts[sp] = i;
+                    values[sp++] = _constants[i];
+                    break;
+                case UNION:
+                    if (sp < 2) {
+                        return;
+                    }
+                    sp--;
+                    values[sp - 1] = null;
+                    break;
+                case OPERATION:
+                    int numops = _operations[i].getNumberOfOperands();
+                    if (sp < numops) {
+                        // malformed, leave the errors to the evaluation
+                        return;
+                    }
+                    sp -= numops;
+                    ValueEval folded = fold(i, values, sp, numops, arrayFormula);
+                    if (folded != null) {
+                        for (int j = starts[sp]; j < i; j++) {
+                            _kinds[j] = IGNORED;
+                        }
+                        _kinds[i] = CONSTANT;
+                        _constants[i] = folded;
+                    } else if (numops == 0) {
+                        starts[sp] = i;
+                    }
+                    values[sp++] = folded;
+                    break;
+                default:
+                    // jumps: the arguments are still popped by the IF or CHOOSE function token
+                    // at the end, but the operands before can't be folded anymore
+                    for (int j = 0; j < sp; j++) {
+                        values[j] = null;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private ValueEval fold(int index, ValueEval[] values, int first, int numops, boolean arrayFormula) {
+        Function function = _functions[index];
+        if (numops == 0 || !(_operations[index] instanceof ValueOperatorPtg) || function == null
+                || (arrayFormula && function instanceof ArrayFunction)) {
+            return null;
+        }
+        ValueEval[] args = new ValueEval[numops];
+        for (int j = 0; j < numops; j++) {
+            if (values[first + j] == null) {
+                return null;
+            }
+            args[j] = values[first + j];
+        }
+        try {
+            // the operators only use the position of the cell to resolve references
+            return function.evaluate(args, 0, 0);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private int[] chooseTargets(int index, AttrPtg attrPtg) {
+        int[] jumpTable = attrPtg.getJumpTable();
+        int nChoices = jumpTable.length;
+        int[] targets = new int[nChoices + 1];
+        // Encoded dist for tAttrChoose includes size of jump table, but
+        // countTokensToBeSkipped() does not (it counts whole tokens).
+        for (int i = 0; i < nChoices; i++) {
+            targets[i] = target(index, jumpTable[i] - (nChoices*2+2));
+        }
+        // +4 for tFuncFar(CHOOSE)
+        targets[nChoices] = target(index, attrPtg.getChooseFuncOffset() + 4 - (nChoices*2+2));
+        return targets;
+    }
+
+    /**
+     * @return the index of the last true argument token, whether the false argument is missing
+     *  and the index of the last token of the IF function
+     */
+    private int[] ifTargets(int index, AttrPtg attrPtg) {
+        int falseIndex = target(index, attrPtg.getData());
+        int noFalseParam = UNKNOWN;
+        int endIndex = UNKNOWN;
+        if (falseIndex != UNKNOWN) {
+            try {
+                Ptg nextPtg = _ptgs[falseIndex+1];
+                // in order to verify that there is no third param, we need to check
+                // if we really have the IF next or some other FuncVarPtg as third param, e.g. ROW()/COLUMN()!
+                noFalseParam = (_ptgs[falseIndex] instanceof AttrPtg && nextPtg instanceof FuncVarPtg
+                        && ((FuncVarPtg)nextPtg).getFunctionIndex() == FunctionMetadataRegistry.FUNCTION_INDEX_IF) ? 1 : 0;
+                endIndex = target(falseIndex, ((AttrPtg) _ptgs[falseIndex]).getData()+1);
+            } catch (RuntimeException e) {
+                // reported, if the branch is taken
+            }
+        }
+        return new int[] { falseIndex, noFalseParam, endIndex };
+    }
+
+    private int target(int index, int distInBytes) {
+        try {
+            return index + countTokensToBeSkipped(_ptgs, index, distInBytes);
+        } catch (RuntimeException e) {
+            // reported, if the jump is taken
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Calculates the number of tokens that the evaluator should skip upon reaching a tAttrSkip.
+     *
+     * @return the number of tokens (starting from <tt>startIndex+1</tt>) that need to be skipped
+     * to achieve the specified <tt>distInBytes</tt> skip distance.
+     */
+    static int countTokensToBeSkipped(Ptg[] ptgs, int startIndex, int distInBytes) {
+        int remBytes = distInBytes;
+        int index = startIndex;
+        while (remBytes != 0) {
+            index++;
+            remBytes -= ptgs[index].getSize();
+            if (remBytes < 0) {
+                throw new RuntimeException("Bad skip distance (wrong token size calculation).");
+            }
+            if (index >= ptgs.length) {
+                throw new RuntimeException("Skip distance too far (ran out of formula tokens).");
+            }
+        }
+        return index-startIndex;
+    }
+
+    public Ptg[] getPtgs() {
+        return _ptgs;
+    }
+
+    /**
+     * @return the maximum size of the operand stack, if all tokens are evaluated
+     */
+    public int getStackSize() {
+        return _stackSize;
+    }
+
+    public byte getKind(int index) {
+        return _kinds[index];
+    }
+
+    public ValueEval getConstant(int index) {
+        return _constants[index];
+    }
+
+    /**
+     * @return the operation with a SUM tAttr token replaced by the SUM function
+     */
+    public OperationPtg getOperation(int index) {
+        return _operations[index];
+    }
+
+    /**
+     * @return the function of the operation or <code>null</code>, if it isn't known in advance
+     */
+    public Function getFunction(int index) {
+        return _functions[index];
+    }
+
+    /**
+     * @return whether area operands of the operation are evaluated in array mode
+     */
+    public boolean isArrayMode(int index) {
+        return (_arrayModes != null) ? _arrayModes[index] : isArrayModeFunctionNext(index);
+    }
+
+    /**
+     * @return the index of the token before the selected choice of a CHOOSE token
+     * @param choice the zero based choice or the number of choices for an invalid choice
+     */
+    public int getChooseTarget(int index, int choice) {
+        int target = _jumps[index][choice];
+        if (target == UNKNOWN) {
+            // throws the error
+            AttrPtg attrPtg = (AttrPtg) _ptgs[index];
+            int nChoices = attrPtg.getJumpTable().length;
+            int dist = (choice < nChoices) ? attrPtg.getJumpTable()[choice] : attrPtg.getChooseFuncOffset() + 4;
+            target = index + countTokensToBeSkipped(_ptgs, index, dist - (nChoices*2+2));
+        }
+        return target;
+    }
+
+    /**
+     * @return the index of the last token of the true argument of an IF token
+     */
+    public int getIfFalseTarget(int index) {
+        int target = _jumps[index][0];
+        if (target == UNKNOWN) {
+            // throws the error
+            target = index + countTokensToBeSkipped(_ptgs, index, ((AttrPtg) _ptgs[index]).getData());
+        }
+        return target;
+    }
+
+    /**
+     * @return whether an IF token has no false argument
+     */
+    public boolean isIfWithoutFalseParam(int index) {
+        int noFalseParam = _jumps[index][1];
+        if (noFalseParam == UNKNOWN) {
+            // throws the error
+            int target = getIfFalseTarget(index);
+            Ptg nextPtg = _ptgs[target+1];
+            return _ptgs[target] instanceof AttrPtg && nextPtg instanceof FuncVarPtg
+                    && ((FuncVarPtg)nextPtg).getFunctionIndex() == FunctionMetadataRegistry.FUNCTION_INDEX_IF;
+        }
+        return noFalseParam == 1;
+    }
+
+    /**
+     * @return the index of the last token of an IF function, which is skipped on an error of the condition
+     */
+    public int getIfEndTarget(int index) {
+        int target = _jumps[index][2];
+        if (target == UNKNOWN) {
+            // throws the error
+            int falseTarget = getIfFalseTarget(index);
+            AttrPtg attrPtg = (AttrPtg) _ptgs[falseTarget];
+            target = falseTarget + countTokensToBeSkipped(_ptgs, falseTarget, attrPtg.getData()+1);
+        }
+        return target;
+    }
+
+    /**
+     * @return the index of the last token skipped by a skip token
+     */
+    public int getSkipTarget(int index) {
+        int target = _jumps[index][0];
+        if (target == UNKNOWN) {
+            // throws the error
+            target = index + countTokensToBeSkipped(_ptgs, index, ((AttrPtg) _ptgs[index]).getData()+1);
+        }
+        return target;
+    }
+}
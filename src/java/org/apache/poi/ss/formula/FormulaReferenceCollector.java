@@ -0,0 +1,159 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.Locale;
+
+import org.apache.poi.ss.formula.EvaluationWorkbook.ExternalSheet;
+import org.apache.poi.ss.formula.EvaluationWorkbook.ExternalSheetRange;
+import org.apache.poi.ss.formula.atp.AnalysisToolPak;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.AreaNPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.ExpPtg;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.NameXPxg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg;
+import org.apache.poi.ss.formula.ptg.Pxg3D;
+import org.apache.poi.ss.formula.ptg.RefNPtg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.util.IntList;
+
+/**
+ * Determines the cells and areas referenced by the tokens of a formula, without evaluating it.
+ * References, which are only known at evaluation time, e.g. by INDIRECT or OFFSET, and volatile
+ * functions are reported, so the caller can treat such formulas as always dirty.
+ */
+final class FormulaReferenceCollector {
+    /** functions, whose result may change without a change of their arguments or whose references are dynamic */
+    private static final String[] VOLATILE_FUNCTIONS = {
+        "INDIRECT", "OFFSET", "RAND", "RANDBETWEEN", "NOW", "TODAY", "CELL", "INFO"
+    };
+    private static final int MAX_NAME_DEPTH = 32;
+
+    private final WorkbookEvaluator _evaluator;
+    private final EvaluationWorkbook _workbook;
+
+    /* package */ FormulaReferenceCollector(WorkbookEvaluator evaluator) {
+        _evaluator = evaluator;
+        _workbook = evaluator.getWorkbook();
+    }
+
+    /**
+     * Collects the referenced cells and areas of the formula tokens as groups of
+     * (sheet, firstRow, lastRow, firstCol, lastCol)
+     *
+     * @return true, if the references can't be determined in advance
+     */
+    public boolean collectReferences(Ptg[] ptgs, int sheetIndex, IntList refs) {
+        return collectReferences(ptgs, sheetIndex, refs, 0);
+    }
+
+    private boolean collectReferences(Ptg[] ptgs, int sheetIndex, IntList refs, int depth) {
+        if (depth > MAX_NAME_DEPTH) {
+            return true;
+        }
+        boolean isVolatile = false;
+        for (Ptg ptg : ptgs) {
+            if (ptg instanceof RefNPtg || ptg instanceof AreaNPtg || ptg instanceof ExpPtg) {
+                // relative to an unknown base cell
+                isVolatile = true;
+            } else if (ptg instanceof RefPtgBase) {
+                RefPtgBase ref = (RefPtgBase) ptg;
+                isVolatile |= addReference(ptg, sheetIndex, ref.getRow(), ref.getRow(), ref.getColumn(), ref.getColumn(), refs);
+            } else if (ptg instanceof AreaPtgBase) {
+                AreaPtgBase area = (AreaPtgBase) ptg;
+                isVolatile |= addReference(ptg, sheetIndex, area.getFirstRow(), area.getLastRow(),
+                        area.getFirstColumn(), area.getLastColumn(), refs);
+            } else if (ptg instanceof NamePtg) {
+                EvaluationName name = _workbook.getName((NamePtg) ptg);
+                if (name == null || name.isFunctionName() || !name.hasFormula()) {
+                    // user defined functions aren't known
+                    isVolatile = true;
+                } else {
+                    isVolatile |= collectReferences(name.getNameDefinition(), sheetIndex, refs, depth + 1);
+                }
+            } else if (ptg instanceof NameXPtg) {
+                isVolatile |= !isKnownFunction(_workbook.resolveNameXText((NameXPtg) ptg));
+            } else if (ptg instanceof NameXPxg) {
+                isVolatile |= !isKnownFunction(((NameXPxg) ptg).getNameName());
+            } else if (ptg instanceof AbstractFunctionPtg) {
+                isVolatile |= isVolatileFunction(((AbstractFunctionPtg) ptg).getName());
+            }
+        }
+        return isVolatile;
+    }
+
+    private static boolean isKnownFunction(String name) {
+        return name != null && !isVolatileFunction(name)
+            && AnalysisToolPak.getSupportedFunctionNames().contains(name.toUpperCase(Locale.ROOT));
+    }
+
+    private static boolean isVolatileFunction(String name) {
+        for (String f : VOLATILE_FUNCTIONS) {
+            if (f.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, if the reference points to an other workbook
+     */
+    private boolean addReference(Ptg ptg, int sheetIndex, int firstRow, int lastRow, int firstCol, int lastCol, IntList refs) {
+        int firstSheet = sheetIndex, lastSheet = sheetIndex;
+        ExternalSheet externalSheet = null;
+        boolean isExternal = false;
+        if (ptg instanceof Pxg) {
+            Pxg pxg = (Pxg) ptg;
+            if (pxg.getSheetName() != null) {
+                String lastSheetName = (pxg instanceof Pxg3D) ? ((Pxg3D) pxg).getLastSheetName() : null;
+                externalSheet = _workbook.getExternalSheet(pxg.getSheetName(), lastSheetName, pxg.getExternalWorkbookNumber());
+                isExternal = true;
+            }
+        } else if (ptg instanceof ExternSheetReferenceToken) {
+            externalSheet = _workbook.getExternalSheet(((ExternSheetReferenceToken) ptg).getExternSheetIndex());
+            isExternal = true;
+        }
+        if (isExternal) {
+            if (externalSheet == null || externalSheet.getWorkbookName() != null) {
+                // a reference to an other workbook or a deleted sheet
+                return true;
+            }
+            firstSheet = _evaluator.getSheetIndex(externalSheet.getSheetName());
+            lastSheet = firstSheet;
+            if (externalSheet instanceof ExternalSheetRange) {
+                lastSheet = _evaluator.getSheetIndex(((ExternalSheetRange) externalSheet).getLastSheetName());
+            }
+            if (firstSheet < 0 || lastSheet < 0) {
+                return true;
+            }
+        }
+        for (int s = firstSheet; s <= lastSheet; s++) {
+            refs.add(s);
+            refs.add(Math.min(firstRow, lastRow));
+            refs.add(Math.max(firstRow, lastRow));
+            refs.add(Math.min(firstCol, lastCol));
+            refs.add(Math.max(firstCol, lastCol));
+        }
+        return false;
+    }
+}
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.poi.ss.util.CellReference;
 
@@ -49,6 +50,12 @@ final class FormulaUsedBlankCellSet {
 			BookSheetKey other = (BookSheetKey) obj;
 			return _bookIndex == other._bookIndex && _sheetIndex == other._sheetIndex;
 		}
+		public int getBookIndex() {
+			return _bookIndex;
+		}
+		public int getSheetIndex() {
+			return _sheetIndex;
+		}
 	}
 
 	private static final class BlankCellSheetGroup {
@@ -189,6 +196,18 @@ final class FormulaUsedBlankCellSet {
 		return result;
 	}
 
+	/**
+	 * Adds all cells of a sheet, e.g. when the used blank cells are not known exactly
+	 */
+	public void addSheet(int bookIndex, int sheetIndex) {
+		// all rows after the 'last defined row' are contained
+		_sheetGroupsByBookSheet.put(new BookSheetKey(bookIndex, sheetIndex), new BlankCellSheetGroup(-1));
+	}
+
+	public Set<BookSheetKey> getBookSheetKeys() {
+		return _sheetGroupsByBookSheet.keySet();
+	}
+
 	public boolean containsCell(BookSheetKey key, int rowIndex, int columnIndex) {
 		BlankCellSheetGroup bcsg = _sheetGroupsByBookSheet.get(key);
 		if (bcsg == null) {
@@ -18,6 +18,7 @@
 package org.apache.poi.ss.formula;
 
 import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.ptg.OperationPtg;
 
 /**
  * Tests can implement this class to track the internal working of the {@link WorkbookEvaluator}.<br>
@@ -40,6 +41,17 @@ interface IEvaluationListener {
 	void onReadPlainValue(int sheetIndex, int rowIndex, int columnIndex, ICacheEntry entry);
 	void onStartEvaluate(EvaluationCell cell, ICacheEntry entry);
 	void onEndEvaluate(ICacheEntry entry, ValueEval result);
+	/**
+	 * Called before a function or an operator of a formula is invoked.  The arguments may
+	 * be evaluated while the function is running, so nested calls to
+	 * {@link #onStartEvaluate(EvaluationCell, ICacheEntry)} are possible.
+	 */
+	void onStartFunction(OperationPtg ptg, ValueEval[] args);
+	/**
+	 * Called after a function started by {@link #onStartFunction(OperationPtg, ValueEval[])}
+	 * returned, not called when the function failed with an exception.
+	 */
+	void onEndFunction(OperationPtg ptg, ValueEval result);
 	void onClearWholeCache();
 	void onClearCachedValue(ICacheEntry entry);
 	/**
@@ -19,6 +19,8 @@ package org.apache.poi.ss.formula;
 
 import org.apache.poi.ss.formula.eval.AreaEval;
 import org.apache.poi.ss.formula.eval.AreaEvalBase;
+import org.apache.poi.ss.formula.eval.AreaIndexFactory;
+import org.apache.poi.ss.formula.eval.AreaValues;
 import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.ptg.AreaI;
 import org.apache.poi.ss.formula.ptg.AreaI.OffsetArea;
@@ -94,4 +96,27 @@ final class LazyAreaEval extends AreaEvalBase {
         SheetRefEvaluator _sre = _evaluator.getSheetEvaluator(_evaluator.getFirstSheetIndex());
         return _sre.isSubTotal(getFirstRow() + rowIndex, getFirstColumn() + columnIndex);
     }
+
+    /**
+     * @return the index of the values of this area, which is cached by the evaluator, or
+     *  <code>null</code> for areas spanning multiple sheets
+     */
+    @Override
+    public <T> T getIndex(AreaIndexFactory<T> factory) {
+        if (getFirstSheetIndex() != getLastSheetIndex()) {
+            return null;
+        }
+        SheetRefEvaluator _sre = _evaluator.getSheetEvaluator(getFirstSheetIndex());
+        return _sre.getIndex(getFirstRow(), getFirstColumn(), getLastRow(), getLastColumn(), factory);
+    }
+
+    /**
+     * Fills the values of the first sheet of the area, which are evaluated by the sheet evaluator
+     * without creating a {@link ValueEval} for plain number cells
+     */
+    @Override
+    public void getValues(AreaValues values) {
+        SheetRefEvaluator _sre = _evaluator.getSheetEvaluator(getFirstSheetIndex());
+        _sre.getValues(getFirstRow(), getFirstColumn(), getLastRow(), getLastColumn(), values);
+    }
 }
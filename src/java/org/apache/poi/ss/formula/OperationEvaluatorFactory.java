@@ -45,6 +45,7 @@ import org.apache.poi.ss.formula.ptg.UnaryPlusPtg;
 import org.apache.poi.ss.formula.eval.ConcatEval;
 import org.apache.poi.ss.formula.eval.FunctionEval;
 import org.apache.poi.ss.formula.eval.IntersectionEval;
+import org.apache.poi.ss.formula.eval.NotImplementedException;
 import org.apache.poi.ss.formula.eval.PercentEval;
 import org.apache.poi.ss.formula.eval.RangeEval;
 import org.apache.poi.ss.formula.eval.RelationalOperationEval;
@@ -135,17 +136,50 @@ final class OperationEvaluatorFactory {
 			}
 		}
 		if (result != null) {
-			EvaluationSheet evalSheet = ec.getWorkbook().getSheet(ec.getSheetIndex());
-			EvaluationCell evalCell = evalSheet.getCell(ec.getRowIndex(), ec.getColumnIndex());
-
-		    if (evalCell != null && (evalCell.isPartOfArrayFormulaGroup() || ec.isArraymode()) && result instanceof ArrayFunction)
-		        return ((ArrayFunction) result).evaluateArray(args, ec.getRowIndex(), ec.getColumnIndex());
-		                
-			return  result.evaluate(args, ec.getRowIndex(), ec.getColumnIndex());
+			return evaluate(result, args, ec);
 		} else if (udfFunc != null){
 			return  udfFunc.evaluate(args, ec);
 		}
 
 		throw new RuntimeException("Unexpected operation ptg class (" + ptg.getClass().getName() + ")");
 	}
+
+	/**
+	 * Looks up the function of an operation in advance, e.g. for a compiled formula
+	 *
+	 * @return the function or <code>null</code>, if the operation has to be evaluated by
+	 *  {@link #evaluate(OperationPtg, ValueEval[], OperationEvaluationContext)}, e.g. for
+	 *  INDIRECT, user defined or not implemented functions
+	 */
+	/* package */ static Function resolveFunction(OperationPtg ptg) {
+		Function result = _instancesByPtgClass.get(ptg);
+		if (result == null && ptg instanceof AbstractFunctionPtg) {
+			try {
+				// null for INDIRECT and user defined functions
+				result = FunctionEval.getBasicFunction(((AbstractFunctionPtg)ptg).getFunctionIndex());
+			} catch (NotImplementedException e) {
+				// reported, when the function is evaluated
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates an operation with a function looked up by {@link #resolveFunction(OperationPtg)}
+	 */
+	/* package */ static ValueEval evaluate(Function function, ValueEval[] args, OperationEvaluationContext ec) {
+		// only look up the cell, if the function supports arrays
+		if (function instanceof ArrayFunction) {
+			boolean arrayMode = ec.isArraymode();
+			if (!arrayMode) {
+				EvaluationSheet evalSheet = ec.getWorkbook().getSheet(ec.getSheetIndex());
+				EvaluationCell evalCell = evalSheet.getCell(ec.getRowIndex(), ec.getColumnIndex());
+				arrayMode = evalCell != null && evalCell.isPartOfArrayFormulaGroup();
+			}
+			if (arrayMode) {
+				return ((ArrayFunction) function).evaluateArray(args, ec.getRowIndex(), ec.getColumnIndex());
+			}
+		}
+		return function.evaluate(args, ec.getRowIndex(), ec.getColumnIndex());
+	}
 }
@@ -19,6 +19,7 @@ package org.apache.poi.ss.formula;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 final class PlainCellCache {
 
@@ -92,4 +93,7 @@ final class PlainCellCache {
 	public void remove(Loc key) {
 		_plainValueEntriesByLoc.remove(key);
 	}
+	public Set<Map.Entry<Loc, PlainValueCellCacheEntry>> entrySet() {
+		return _plainValueEntriesByLoc.entrySet();
+	}
 }
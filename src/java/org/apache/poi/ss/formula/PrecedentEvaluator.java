@@ -0,0 +1,208 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.util.IntList;
+
+/**
+ * Evaluates the formula cells referenced by a formula with an explicit work stack, the deepest
+ * ones first, so long chains of formulas (e.g. running totals referencing the cell above) don't
+ * need a Java stack frame per cell of the chain.<p>
+ *
+ * The {@link WorkbookEvaluator} uses this, when the recursive evaluation gets too deep.
+ * The cells are evaluated with the {@link EvaluationTracker} of the current evaluation, so
+ * references to the cells currently being evaluated result in the usual circular reference
+ * errors. Cells, whose precedents can't be determined from the formula tokens (e.g. INDIRECT
+ * or large areas) or which are part of a circular reference, and the cells depending on them,
+ * are left to the recursive evaluation. As the errors of circular references aren't cached,
+ * long chains depending on a circular reference are still evaluated recursively.<p>
+ *
+ * An instance is only used by one {@link EvaluationTracker} and remembers the visited cells,
+ * so nested calls don't walk the same cells again.
+ */
+final class PrecedentEvaluator {
+    /** the maximum number of cells of an area, which are walked */
+    private static final int MAX_AREA_CELLS = 10000;
+
+    private static final Integer VISITING = 0;
+    private static final Integer EVALUATED = 1;
+    private static final Integer SKIPPED = 2;
+
+    private final Map<FormulaCellCacheEntry, Integer> _states = new IdentityHashMap<>();
+
+    /**
+     * Evaluates the not yet evaluated formula cells referenced by the given cell, which is
+     * currently evaluated by the tracker
+     */
+    public void evaluatePrecedents(WorkbookEvaluator evaluator, EvaluationCell cell, int sheetIndex,
+            FormulaCellCacheEntry cce, EvaluationTracker tracker) {
+        if (_states.containsKey(cce)) {
+            return;
+        }
+        List<Frame> stack = new ArrayList<>();
+        Frame root = newFrame(evaluator, cell, sheetIndex, cce);
+        if (root.skip) {
+            _states.put(cce, SKIPPED);
+            return;
+        }
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.get(stack.size() - 1);
+            if (frame.nextPrecedent(evaluator)) {
+                visit(evaluator, frame, tracker, stack);
+                continue;
+            }
+
+            stack.remove(stack.size() - 1);
+            if (frame == root) {
+                // the root cell is evaluated by the caller
+                _states.put(frame.cce, frame.skip ? SKIPPED : EVALUATED);
+                break;
+            }
+            if (!frame.skip) {
+                try {
+                    evaluator.evaluateAny(frame.cell, frame.sheetIndex,
+                            frame.cell.getRowIndex(), frame.cell.getColumnIndex(), tracker);
+                } catch (RuntimeException e) {
+                    // the recursive evaluation reports the error, if the cell is actually needed
+                    frame.skip = true;
+                }
+            }
+            _states.put(frame.cce, frame.skip ? SKIPPED : EVALUATED);
+            if (frame.skip) {
+                stack.get(stack.size() - 1).skip = true;
+            }
+        }
+    }
+
+    private void visit(WorkbookEvaluator evaluator, Frame frame, EvaluationTracker tracker, List<Frame> stack) {
+        EvaluationCell precedent = evaluator.getSheet(frame.precedentSheet)
+                .getCell(frame.precedentRow, frame.precedentCol);
+        if (precedent == null || precedent.getCellType() != CellType.FORMULA) {
+            return;
+        }
+        FormulaCellCacheEntry pcce = evaluator.getOrCreateFormulaCellEntry(precedent);
+        if (pcce.getValue() != null) {
+            return;
+        }
+        Integer state = _states.get(pcce);
+        if (state == EVALUATED) {
+            return;
+        }
+        if (state != null || tracker.isEvaluating(pcce)) {
+            // a circular reference or a cell, which isn't evaluated in advance
+            frame.skip = true;
+            return;
+        }
+        Frame next = newFrame(evaluator, precedent, frame.precedentSheet, pcce);
+        if (next.skip) {
+            _states.put(pcce, SKIPPED);
+            frame.skip = true;
+            return;
+        }
+        stack.add(next);
+    }
+
+    private Frame newFrame(WorkbookEvaluator evaluator, EvaluationCell cell, int sheetIndex, FormulaCellCacheEntry cce) {
+        Frame frame = new Frame(cell, sheetIndex, cce);
+        IntList refs = new IntList();
+        try {
+            Ptg[] ptgs = evaluator.getWorkbook().getFormulaTokens(cell);
+            frame.skip = evaluator.getReferenceCollector().collectReferences(ptgs, sheetIndex, refs);
+        } catch (RuntimeException e) {
+            frame.skip = true;
+        }
+        frame.refs = refs.toArray();
+        if (!frame.skip) {
+            _states.put(cce, VISITING);
+        }
+        return frame;
+    }
+
+    /**
+     * A formula cell on the work stack and the position within its referenced cells
+     */
+    private static final class Frame {
+        final EvaluationCell cell;
+        final int sheetIndex;
+        final FormulaCellCacheEntry cce;
+        /** the references as groups of (sheet, firstRow, lastRow, firstCol, lastCol) */
+        int[] refs;
+        boolean skip;
+
+        private int refIndex = -5;
+        private int lastRow, lastCol;
+        int precedentSheet, precedentRow, precedentCol;
+
+        Frame(EvaluationCell cell, int sheetIndex, FormulaCellCacheEntry cce) {
+            this.cell = cell;
+            this.sheetIndex = sheetIndex;
+            this.cce = cce;
+        }
+
+        /**
+         * Moves to the next referenced cell
+         *
+         * @return false, if all referenced cells have been visited or the cell is skipped anyway
+         */
+        boolean nextPrecedent(WorkbookEvaluator evaluator) {
+            if (skip) {
+                return false;
+            }
+            if (refIndex >= 0) {
+                if (precedentCol < lastCol) {
+                    precedentCol++;
+                    return true;
+                }
+                if (precedentRow < lastRow) {
+                    precedentRow++;
+                    precedentCol = refs[refIndex + 3];
+                    return true;
+                }
+            }
+            while (true) {
+                refIndex += 5;
+                if (refIndex >= refs.length) {
+                    return false;
+                }
+                precedentSheet = refs[refIndex];
+                precedentRow = refs[refIndex + 1];
+                precedentCol = refs[refIndex + 3];
+                // cells below the last row don't exist
+                lastRow = Math.min(refs[refIndex + 2], evaluator.getSheet(precedentSheet).getLastRowNum());
+                lastCol = refs[refIndex + 4];
+                if (precedentRow <= lastRow) {
+                    break;
+                }
+            }
+            if ((long)(lastRow - precedentRow + 1) * (lastCol - precedentCol + 1) > MAX_AREA_CELLS) {
+                // too expensive to walk, so leave this cell to the recursive evaluation
+                skip = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.apache.poi.ss.formula;
 
+import org.apache.poi.ss.formula.eval.AreaIndexFactory;
+import org.apache.poi.ss.formula.eval.AreaValues;
 import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.ptg.FuncVarPtg;
 import org.apache.poi.ss.formula.ptg.Ptg;
@@ -48,6 +50,22 @@ final class SheetRefEvaluator {
 		return _bookEvaluator.evaluateReference(getSheet(), _sheetIndex, rowIndex, columnIndex, _tracker);
 	}
 
+	/**
+	 * @return the cached index of the values of the area or <code>null</code>, if it can't be created
+	 */
+	public <T> T getIndex(int firstRow, int firstColumn, int lastRow, int lastColumn, AreaIndexFactory<T> factory) {
+		return _bookEvaluator.getAreaIndex(getSheet(), _sheetIndex, firstRow, firstColumn, lastRow, lastColumn,
+				factory, _tracker);
+	}
+
+	/**
+	 * Fills the values of the cells of the area into the given values
+	 */
+	public void getValues(int firstRow, int firstColumn, int lastRow, int lastColumn, AreaValues values) {
+		_bookEvaluator.getAreaValues(getSheet(), _sheetIndex, firstRow, firstColumn, lastRow, lastColumn,
+				values, _tracker);
+	}
+
 	private EvaluationSheet getSheet() {
 		if (_sheet == null) {
 			_sheet = _bookEvaluator.getSheet(_sheetIndex);
@@ -18,6 +18,7 @@
 package org.apache.poi.ss.formula;
 
 import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.AreaValues;
 import org.apache.poi.ss.formula.eval.ValueEval;
 
 /**
@@ -65,4 +66,23 @@ public interface TwoDEval extends ValueEval {
      */
     boolean isSubTotal(int rowIndex, int columnIndex);
 
+    /**
+     * Fills the values of all cells in row major order. By default the values are fetched one
+     * by one with {@link #getValue(int, int)}. Implementations may fill plain number cells
+     * without a {@link ValueEval}, which is cheaper for large areas.
+     *
+     * @param values the values to fill, their previous values are removed
+     * @since POI 4.0.0
+     */
+    default void getValues(AreaValues values) {
+        int width = getWidth();
+        int height = getHeight();
+        values.reset(width, height);
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                values.addValue(getValue(r, c));
+            }
+        }
+    }
+
 }
@@ -20,9 +20,9 @@ package org.apache.poi.ss.formula;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EmptyStackException;
 import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Stack;
 import java.util.TreeSet;
 
 import org.apache.poi.ss.SpreadsheetVersion;
@@ -34,7 +34,10 @@ import org.apache.poi.ss.formula.functions.*;
 import org.apache.poi.ss.formula.ptg.*;
 import org.apache.poi.ss.formula.udf.AggregatingUDFFinder;
 import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddressBase;
 import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.util.Internal;
@@ -57,12 +60,16 @@ public final class WorkbookEvaluator {
     
     private static final POILogger LOG = POILogFactory.getLogger(WorkbookEvaluator.class);
 
+    /** the number of nested cell evaluations, before the precedents of a cell are evaluated with an explicit stack */
+    private static final int MAX_RECURSIVE_EVALUATION_DEPTH = 64;
+
     private final EvaluationWorkbook _workbook;
     private EvaluationCache _cache;
     /** part of cache entry key (useful when evaluating multiple workbooks) */
     private int _workbookIx;
 
-    private final IEvaluationListener _evaluationListener;
+    /** the listener of the tests or the evaluation profiler, may be replaced during concurrent evaluations */
+    private volatile IEvaluationListener _evaluationListener;
     private final Map<EvaluationSheet, Integer> _sheetIndexesBySheet;
     private final Map<String, Integer> _sheetIndexesByName;
     private CollaboratingWorkbooksEnvironment _collaboratingWorkbookEnvironment;
@@ -71,6 +78,10 @@ public final class WorkbookEvaluator {
 
     private boolean _ignoreMissingWorkbooks;
 
+    /** the dependencies of the formula cells, only built on demand */
+    private FormulaDependencyGraph _dependencyGraph;
+    private FormulaReferenceCollector _referenceCollector;
+
     /**
      * whether print detailed messages about the next formula evaluation
      */
@@ -92,8 +103,9 @@ public final class WorkbookEvaluator {
         _workbook = workbook;
         _evaluationListener = evaluationListener;
         _cache = new EvaluationCache(evaluationListener);
-        _sheetIndexesBySheet = new IdentityHashMap<>();
-        _sheetIndexesByName = new IdentityHashMap<>();
+        // synchronized for concurrent evaluations
+        _sheetIndexesBySheet = Collections.synchronizedMap(new IdentityHashMap<EvaluationSheet, Integer>());
+        _sheetIndexesByName = Collections.synchronizedMap(new IdentityHashMap<String, Integer>());
         _collaboratingWorkbookEnvironment = CollaboratingWorkbooksEnvironment.EMPTY;
         _workbookIx = 0;
         _stabilityClassifier = stabilityClassifier;
@@ -146,6 +158,12 @@ public final class WorkbookEvaluator {
         _cache = cache;
         _workbookIx = workbookIx;
     }
+    /* package */ EvaluationCache getCache() {
+        return _cache;
+    }
+    /* package */ int getWorkbookIndex() {
+        return _workbookIx;
+    }
     /* package */ CollaboratingWorkbooksEnvironment getEnvironment() {
         return _collaboratingWorkbookEnvironment;
     }
@@ -170,6 +188,15 @@ public final class WorkbookEvaluator {
         return _evaluationListener;
     }
 
+    /**
+     * Replaces the listener of this evaluator and of its cache, which may be shared with
+     * the other evaluators of the {@link CollaboratingWorkbooksEnvironment}
+     */
+    /* package */ void setEvaluationListener(IEvaluationListener evaluationListener) {
+        _evaluationListener = evaluationListener;
+        _cache.setEvaluationListener(evaluationListener);
+    }
+
     /**
      * Should be called whenever there are changes to input cells in the evaluated workbook.
      * Failure to call this method after changing cell values will cause incorrect behaviour
@@ -179,6 +206,8 @@ public final class WorkbookEvaluator {
         _cache.clear();
         _sheetIndexesBySheet.clear();
         _workbook.clearAllCachedResultValues();
+        // the formulas may have changed without notification
+        _dependencyGraph = null;
     }
 
     /**
@@ -188,6 +217,20 @@ public final class WorkbookEvaluator {
     public void notifyUpdateCell(EvaluationCell cell) {
         int sheetIndex = getSheetIndex(cell.getSheet());
         _cache.notifyUpdateCell(_workbookIx, sheetIndex, cell);
+        if (_dependencyGraph != null) {
+            _dependencyGraph.notifyUpdateCell(sheetIndex, cell);
+        }
+    }
+    /**
+     * Tells the cell value cache that the specified cell will never change again, e.g. because it
+     * has been written to a stream, so its cache entry can be removed. The cached results of the
+     * formulas using the cell are kept. Later evaluations should treat the cell as final, see
+     * {@link IStabilityClassifier#isCellFinal(int, int, int)}.
+     *
+     * @since POI 4.0.0
+     */
+    public void notifyFinalCell(EvaluationCell cell) {
+        _cache.notifyFinalCell(_workbookIx, getSheetIndex(cell.getSheet()), cell);
     }
     /**
      * Should be called to tell the cell value cache that the specified cell has just been
@@ -196,9 +239,64 @@ public final class WorkbookEvaluator {
     public void notifyDeleteCell(EvaluationCell cell) {
         int sheetIndex = getSheetIndex(cell.getSheet());
         _cache.notifyDeleteCell(_workbookIx, sheetIndex, cell);
+        if (_dependencyGraph != null) {
+            _dependencyGraph.notifyDeleteCell(sheetIndex, cell);
+        }
+    }
+
+    /**
+     * @return the dependency graph of the formula cells or {@code null}, if it hasn't been built
+     *  or has been discarded by {@link #clearAllCachedResultValues()}
+     */
+    public FormulaDependencyGraph getDependencyGraph() {
+        return _dependencyGraph;
+    }
+
+    /* package */ FormulaReferenceCollector getReferenceCollector() {
+        if (_referenceCollector == null) {
+            _referenceCollector = new FormulaReferenceCollector(this);
+        }
+        return _referenceCollector;
+    }
+
+    /* package */ FormulaCellCacheEntry getOrCreateFormulaCellEntry(EvaluationCell cell) {
+        return _cache.getOrCreateFormulaCellEntry(cell);
+    }
+
+    /**
+     * Starts a new dependency graph, which is kept up to date by the notify~ methods,
+     * until {@link #clearAllCachedResultValues()} is called.
+     * The formula cells need to be added by the caller.
+     */
+    /* package */ FormulaDependencyGraph createDependencyGraph() {
+        _dependencyGraph = new FormulaDependencyGraph(this);
+        return _dependencyGraph;
+    }
+
+    /**
+     * Starts a new dependency graph like {@link #createDependencyGraph()} and adds all formula
+     * cells of the given workbook, which needs to be the workbook evaluated by this evaluator.
+     * All formula cells are dirty for the next {@link FormulaDependencyGraph#takeDirtyLevels()}.
+     *
+     * @since POI 4.0.0
+     */
+    public FormulaDependencyGraph createDependencyGraph(Workbook wb) {
+        FormulaDependencyGraph graph = createDependencyGraph();
+        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+            EvaluationSheet evalSheet = getSheet(i);
+            for (Row r : wb.getSheetAt(i)) {
+                for (Cell c : r) {
+                    if (c.getCellType() == CellType.FORMULA) {
+                        graph.addFormulaCell(i, evalSheet.getCell(c.getRowIndex(), c.getColumnIndex()));
+                    }
+                }
+            }
+        }
+        graph.markAllDirty();
+        return graph;
     }
     
-    private int getSheetIndex(EvaluationSheet sheet) {
+    /* package */ int getSheetIndex(EvaluationSheet sheet) {
         Integer result = _sheetIndexesBySheet.get(sheet);
         if (result == null) {
             int sheetIndex = _workbook.getSheetIndex(sheet);
@@ -241,7 +339,7 @@ public final class WorkbookEvaluator {
     /**
      * @return never <code>null</code>, never {@link BlankEval}
      */
-    private ValueEval evaluateAny(EvaluationCell srcCell, int sheetIndex,
+    /* package */ ValueEval evaluateAny(EvaluationCell srcCell, int sheetIndex,
                 int rowIndex, int columnIndex, EvaluationTracker tracker) {
 
         // avoid tracking dependencies to cells that have constant definition
@@ -267,19 +365,28 @@ public final class WorkbookEvaluator {
             }
 
             try {
+                if (tracker.getEvaluationDepth() > MAX_RECURSIVE_EVALUATION_DEPTH) {
+                    // evaluate the rest of a long chain of formulas bottom-up without recursion
+                    tracker.getPrecedentEvaluator().evaluatePrecedents(this, srcCell, sheetIndex, cce, tracker);
+                }
 
-                Ptg[] ptgs = _workbook.getFormulaTokens(srcCell);
+                FormulaPlan plan = cce.getPlan();
+                if (plan == null) {
+                    plan = FormulaPlan.compile(_workbook.getFormulaTokens(srcCell), srcCell.isPartOfArrayFormulaGroup());
+                }
                 OperationEvaluationContext ec = new OperationEvaluationContext
                         (this, _workbook, sheetIndex, rowIndex, columnIndex, tracker);
                 if (evalListener == null) {
-                    result = evaluateFormula(ec, ptgs);
+                    result = evaluateFormula(ec, plan);
                 } else {
                     evalListener.onStartEvaluate(srcCell, cce);
-                    result = evaluateFormula(ec, ptgs);
+                    result = evaluateFormula(ec, plan);
                     evalListener.onEndEvaluate(cce, result);
                 }
 
                 tracker.updateCacheResult(result);
+                // only keep the plan of successfully evaluated formulas, failed ones are compiled again
+                cce.setPlan(plan);
             }
              catch (NotImplementedException e) {
                 throw addExceptionInfo(e, sheetIndex, rowIndex, columnIndex);
@@ -379,6 +486,13 @@ public final class WorkbookEvaluator {
     // visibility raised for testing
     @Internal
     /* package */ ValueEval evaluateFormula(OperationEvaluationContext ec, Ptg[] ptgs) {
+        // the tokens of names, conditional formats etc. are created for each evaluation,
+        // so they are interpreted without compiling a plan which is only used once
+        return evaluateFormula(ec, FormulaPlan.interpret(ptgs));
+    }
+
+    /* package */ ValueEval evaluateFormula(OperationEvaluationContext ec, FormulaPlan plan) {
+        Ptg[] ptgs = plan.getPtgs();
 
         String dbgIndentStr = "";        // always init. to non-null just for defensive avoiding NPE
         if (dbgEvaluationOutputForNextEval) {
@@ -398,158 +512,127 @@ public final class WorkbookEvaluator {
             dbgEvaluationOutputIndent++;
         }
 
-        Stack<ValueEval> stack = new Stack<>();
+        IEvaluationListener evalListener = _evaluationListener;
+        // the plan knows the maximum stack size, but an IF without false argument may push one more
+        ValueEval[] stack = new ValueEval[plan.getStackSize() + 1];
+        int sp = 0;
         for (int i = 0, iSize = ptgs.length; i < iSize; i++) {
-            // since we don't know how to handle these yet :(
-            Ptg ptg = ptgs[i];
             if (dbgEvaluationOutputIndent > 0) {
-                EVAL_LOG.log(POILogger.INFO, dbgIndentStr + "  * ptg " + i + ": " + ptg + ", stack: " + stack);
+                EVAL_LOG.log(POILogger.INFO, dbgIndentStr + "  * ptg " + i + ": " + ptgs[i]
+                        + ", stack: " + Arrays.toString(Arrays.copyOf(stack, sp)));
             }
-            if (ptg instanceof AttrPtg) {
-                AttrPtg attrPtg = (AttrPtg) ptg;
-                if (attrPtg.isSum()) {
-                    // Excel prefers to encode 'SUM()' as a tAttr token, but this evaluator
-                    // expects the equivalent function token
-                    ptg = FuncVarPtg.SUM;
-                }
-                if (attrPtg.isOptimizedChoose()) {
-                    ValueEval arg0 = stack.pop();
-                    int[] jumpTable = attrPtg.getJumpTable();
-                    int dist;
-                    int nChoices = jumpTable.length;
+            ValueEval opResult;
+            switch (plan.getKind(i)) {
+                case FormulaPlan.IGNORED:
+                    // Parentheses, Attr, Mem~ tokens etc. and folded constants
+                    continue;
+                case FormulaPlan.CONSTANT:
+                    opResult = plan.getConstant(i);
+                    break;
+                case FormulaPlan.OPERAND:
+                    opResult = getEvalForPtg(ptgs[i], ec);
+                    break;
+                case FormulaPlan.ATTR_CHOOSE: {
+                    checkOperands(sp, 1);
+                    ValueEval arg0 = stack[--sp];
+                    int nChoices = ((AttrPtg) ptgs[i]).getJumpTable().length;
                     try {
                         int switchIndex = Choose.evaluateFirstArg(arg0, ec.getRowIndex(), ec.getColumnIndex());
                         if (switchIndex<1 || switchIndex > nChoices) {
-                            stack.push(ErrorEval.VALUE_INVALID);
-                            dist = attrPtg.getChooseFuncOffset() + 4; // +4 for tFuncFar(CHOOSE)
+                            stack[sp++] = ErrorEval.VALUE_INVALID;
+                            i = plan.getChooseTarget(i, nChoices);
                         } else {
-                            dist = jumpTable[switchIndex-1];
+                            i = plan.getChooseTarget(i, switchIndex-1);
                         }
                     } catch (EvaluationException e) {
-                        stack.push(e.getErrorEval());
-                        dist = attrPtg.getChooseFuncOffset() + 4; // +4 for tFuncFar(CHOOSE)
+                        stack[sp++] = e.getErrorEval();
+                        i = plan.getChooseTarget(i, nChoices);
                     }
-                    // Encoded dist for tAttrChoose includes size of jump table, but
-                    // countTokensToBeSkipped() does not (it counts whole tokens).
-                    dist -= nChoices*2+2; // subtract jump table size
-                    i+= countTokensToBeSkipped(ptgs, i, dist);
                     continue;
                 }
-                if (attrPtg.isOptimizedIf()) {
-                    ValueEval arg0 = stack.pop();
+                case FormulaPlan.ATTR_IF: {
+                    checkOperands(sp, 1);
+                    ValueEval arg0 = stack[--sp];
                     boolean evaluatedPredicate;
                     try {
                         evaluatedPredicate = IfFunc.evaluateFirstArg(arg0, ec.getRowIndex(), ec.getColumnIndex());
                     } catch (EvaluationException e) {
-                        stack.push(e.getErrorEval());
-                        int dist = attrPtg.getData();
-                        i+= countTokensToBeSkipped(ptgs, i, dist);
-                        attrPtg = (AttrPtg) ptgs[i];
-                        dist = attrPtg.getData()+1;
-                        i+= countTokensToBeSkipped(ptgs, i, dist);
+                        stack[sp++] = e.getErrorEval();
+                        i = plan.getIfEndTarget(i);
                         continue;
                     }
                     if (evaluatedPredicate) {
                         // nothing to skip - true param follows
+                    } else if (plan.isIfWithoutFalseParam(i)) {
+                        // this is an if statement without a false param (as opposed to MissingArgPtg as the false param)
+                        i = plan.getIfFalseTarget(i) + 1;
+                        stack = ensureCapacity(stack, sp);
+                        stack[sp++] = BoolEval.FALSE;
                     } else {
-                        int dist = attrPtg.getData();
-                        i+= countTokensToBeSkipped(ptgs, i, dist);
-                        Ptg nextPtg = ptgs[i+1];
-                        if (ptgs[i] instanceof AttrPtg && nextPtg instanceof FuncVarPtg && 
-                                // in order to verify that there is no third param, we need to check 
-                                // if we really have the IF next or some other FuncVarPtg as third param, e.g. ROW()/COLUMN()!
-                                ((FuncVarPtg)nextPtg).getFunctionIndex() == FunctionMetadataRegistry.FUNCTION_INDEX_IF) {
-                            // this is an if statement without a false param (as opposed to MissingArgPtg as the false param)
-                            i++;
-                            stack.push(BoolEval.FALSE);
-                        }
+                        i = plan.getIfFalseTarget(i);
                     }
                     continue;
                 }
-                if (attrPtg.isSkip()) {
-                    int dist = attrPtg.getData()+1;
-                    i+= countTokensToBeSkipped(ptgs, i, dist);
-                    if (stack.peek() == MissingArgEval.instance) {
-                        stack.pop();
-                        stack.push(BlankEval.instance);
+                case FormulaPlan.ATTR_SKIP:
+                    i = plan.getSkipTarget(i);
+                    if (peek(stack, sp) == MissingArgEval.instance) {
+                        stack[sp-1] = BlankEval.instance;
                     }
                     continue;
+                case FormulaPlan.UNION: {
+                    checkOperands(sp, 2);
+                    ValueEval v2 = stack[--sp];
+                    ValueEval v1 = stack[--sp];
+                    stack[sp++] = new RefListEval(v1, v2);
+                    continue;
                 }
-            }
-            if (ptg instanceof ControlPtg) {
-                // skip Parentheses, Attr, etc
-                continue;
-            }
-            if (ptg instanceof MemFuncPtg || ptg instanceof MemAreaPtg) {
-                // can ignore, rest of tokens for this expression are in OK RPN order
-                continue;
-            }
-            if (ptg instanceof MemErrPtg) {
-                continue;
-            }
-
-            if (ptg instanceof UnionPtg) {
-                ValueEval v2 = stack.pop();
-                ValueEval v1 = stack.pop();
-                stack.push(new RefListEval(v1, v2));
-                continue;
-            }
-
-            ValueEval opResult;
-            if (ptg instanceof OperationPtg) {
-                OperationPtg optg = (OperationPtg) ptg;
-
-                int numops = optg.getNumberOfOperands();
-                ValueEval[] ops = new ValueEval[numops];
-
-                // storing the ops in reverse order since they are popping
-                boolean areaArg = false; // whether one of the operands is an area
-                for (int j = numops - 1; j >= 0; j--) {
-                    ValueEval p = stack.pop();
-                    ops[j] = p;
-                    if(p instanceof AreaEval){
-                        areaArg = true;
-                    }
-                }
-
-                boolean arrayMode = false;
-                if(areaArg) for (int ii = i; ii < iSize; ii++) {
-                    if(ptgs[ii] instanceof FuncVarPtg){
-                        FuncVarPtg f = (FuncVarPtg)ptgs[ii];
-                        try {
-                            Function func = FunctionEval.getBasicFunction(f.getFunctionIndex());
-                            if (func != null && func instanceof ArrayMode) {
-                                arrayMode = true;
-                            }
-                        } catch (NotImplementedException ne){
-                            //FunctionEval.getBasicFunction can throw NotImplementedException
-                            // if the fucntion is not yet supported.
+                default: {
+                    OperationPtg optg = plan.getOperation(i);
+                    int numops = optg.getNumberOfOperands();
+                    checkOperands(sp, numops);
+                    ValueEval[] ops = new ValueEval[numops];
+
+                    // storing the ops in reverse order since they are popping
+                    boolean areaArg = false; // whether one of the operands is an area
+                    for (int j = numops - 1; j >= 0; j--) {
+                        ValueEval p = stack[--sp];
+                        ops[j] = p;
+                        if(p instanceof AreaEval){
+                            areaArg = true;
                         }
-                        break;
                     }
-                }
-                ec.setArrayMode(arrayMode);
 
-//                logDebug("invoke " + operation + " (nAgs=" + numops + ")");
-                opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+                    ec.setArrayMode(areaArg && plan.isArrayMode(i));
 
-                ec.setArrayMode(false);
+//                    logDebug("invoke " + operation + " (nAgs=" + numops + ")");
+                    Function function = plan.getFunction(i);
+                    if (evalListener != null) {
+                        evalListener.onStartFunction(optg, ops);
+                    }
+                    opResult = (function == null)
+                            ? OperationEvaluatorFactory.evaluate(optg, ops, ec)
+                            : OperationEvaluatorFactory.evaluate(function, ops, ec);
+                    if (evalListener != null) {
+                        evalListener.onEndFunction(optg, opResult);
+                    }
 
-            } else {
-                opResult = getEvalForPtg(ptg, ec);
+                    ec.setArrayMode(false);
+                }
             }
             if (opResult == null) {
                 throw new RuntimeException("Evaluation result must not be null");
             }
 //            logDebug("push " + opResult);
-            stack.push(opResult);
+            stack = ensureCapacity(stack, sp);
+            stack[sp++] = opResult;
             if (dbgEvaluationOutputIndent > 0) {
                 EVAL_LOG.log(POILogger.INFO, dbgIndentStr + "    = " + opResult);
             }
         }
 
-        ValueEval value = stack.pop();
-        if (!stack.isEmpty()) {
+        checkOperands(sp, 1);
+        ValueEval value = stack[--sp];
+        if (sp != 0) {
             throw new IllegalStateException("evaluation stack not empty");
         }
         
@@ -577,27 +660,28 @@ public final class WorkbookEvaluator {
     }
 
     /**
-     * Calculates the number of tokens that the evaluator should skip upon reaching a tAttrSkip.
-     *
-     * @return the number of tokens (starting from <tt>startIndex+1</tt>) that need to be skipped
-     * to achieve the specified <tt>distInBytes</tt> skip distance.
-     */
-    private static int countTokensToBeSkipped(Ptg[] ptgs, int startIndex, int distInBytes) {
-        int remBytes = distInBytes;
-        int index = startIndex;
-        while (remBytes != 0) {
-            index++;
-            remBytes -= ptgs[index].getSize();
-            if (remBytes < 0) {
-                throw new RuntimeException("Bad skip distance (wrong token size calculation).");
-            }
-            if (index >= ptgs.length) {
-                throw new RuntimeException("Skip distance too far (ran out of formula tokens).");
-            }
+     * @return the top of the operand stack, without removing it
+     * @throws EmptyStackException if the formula tokens are malformed
+     */
+    private static ValueEval peek(ValueEval[] stack, int size) {
+        checkOperands(size, 1);
+        return stack[size-1];
+    }
+
+    /**
+     * @throws EmptyStackException if the operand stack has less than the needed operands,
+     *  because the formula tokens are malformed
+     */
+    private static void checkOperands(int size, int numops) {
+        if (size < numops) {
+            throw new EmptyStackException();
         }
-        return index-startIndex;
     }
-    
+
+    private static ValueEval[] ensureCapacity(ValueEval[] stack, int size) {
+        return (size < stack.length) ? stack : Arrays.copyOf(stack, size * 2 + 1);
+    }
+
     /**
      * Dereferences a single value from any AreaEval or RefEval evaluation
      * result. If the supplied evaluationResult is just a plain value, it is
@@ -782,6 +866,104 @@ public final class WorkbookEvaluator {
         EvaluationCell cell = sheet.getCell(rowIndex, columnIndex);
         return evaluateAny(cell, sheetIndex, rowIndex, columnIndex, tracker);
     }
+
+    /**
+     * Used by the lazy area evals to get the values of all their cells at once. The cells are
+     * evaluated like {@link #evaluateReference}, but plain number cells are added without creating
+     * a {@link NumberEval}. Cells below the last row of the sheet are blank and only the first of them
+     * is evaluated, which is enough to record the dependency on new rows.
+     */
+    /* package */ void getAreaValues(EvaluationSheet sheet, int sheetIndex, int firstRow, int firstColumn,
+            int lastRow, int lastColumn, AreaValues values, EvaluationTracker tracker) {
+        values.reset(lastColumn - firstColumn + 1, lastRow - firstRow + 1);
+        int lastRowToEvaluate = Math.min(lastRow, Math.max(firstRow, sheet.getLastRowNum() + 1));
+        for (int rowIndex = firstRow; rowIndex <= lastRowToEvaluate; rowIndex++) {
+            for (int columnIndex = firstColumn; columnIndex <= lastColumn; columnIndex++) {
+                EvaluationCell cell = sheet.getCell(rowIndex, columnIndex);
+                if (cell != null && cell.getCellType() == CellType.NUMERIC) {
+                    double value = cell.getNumericCellValue();
+                    if (_stabilityClassifier == null || !_stabilityClassifier.isCellFinal(sheetIndex, rowIndex, columnIndex)) {
+                        tracker.acceptPlainNumberDependency(_workbookIx, sheetIndex, rowIndex, columnIndex, value);
+                    }
+                    values.addNumber(value);
+                } else {
+                    values.addValue(evaluateAny(cell, sheetIndex, rowIndex, columnIndex, tracker));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the index of the values of an area or returns the cached one. The index is cached like
+     * a formula cell, which depends on all cells of the area, so it is cleared together with the formulas
+     * using it, when one of the cells changes. Cells below the last row of the sheet are blank and only
+     * the first of them is evaluated, which is enough to notice new rows.
+     *
+     * @return the index or <code>null</code>, if the index can't be created as one of the cells is
+     *  currently evaluated or its evaluation fails, so the caller needs to evaluate the cells itself
+     */
+    /* package */ <T> T getAreaIndex(EvaluationSheet sheet, int sheetIndex, int firstRow, int firstColumn,
+            int lastRow, int lastColumn, AreaIndexFactory<T> factory, EvaluationTracker tracker) {
+        FormulaCellCacheEntry entry = _cache.getOrCreateAreaIndexEntry(_workbookIx, sheetIndex,
+                firstRow, firstColumn, lastRow, lastColumn, factory);
+        ValueEval value = entry.getValue();
+        if (value == null) {
+            if (!tracker.startEvaluate(entry)) {
+                return null;
+            }
+            try {
+                int width = lastColumn - firstColumn + 1;
+                int size = (lastRow - firstRow + 1) * width;
+                int lastRowToEvaluate = Math.min(lastRow, Math.max(firstRow, sheet.getLastRowNum() + 1));
+                ValueEval[] values = new ValueEval[(lastRowToEvaluate - firstRow + 1) * width];
+                int i = 0;
+                for (int rowIndex = firstRow; rowIndex <= lastRowToEvaluate; rowIndex++) {
+                    for (int columnIndex = firstColumn; columnIndex <= lastColumn; columnIndex++) {
+                        ValueEval cellValue = evaluateReference(sheet, sheetIndex, rowIndex, columnIndex, tracker);
+                        if (cellValue == ErrorEval.CIRCULAR_REF_ERROR) {
+                            // the area contains the cell, which is currently evaluated
+                            return null;
+                        }
+                        values[i++] = cellValue;
+                    }
+                }
+                value = new AreaIndexEval(factory.createIndex(values, size));
+                synchronized (_cache) {
+                    // a concurrent evaluation may have created the index in the meantime
+                    if (entry.getValue() == null) {
+                        tracker.updateCacheResult(value);
+                    } else {
+                        value = entry.getValue();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // the cells are evaluated again by the caller, which reports the error, if needed
+                return null;
+            } finally {
+                tracker.endEvaluate(entry);
+            }
+        }
+        tracker.acceptFormulaDependency(entry);
+        @SuppressWarnings("unchecked")
+        T index = (T) ((AreaIndexEval) value).getIndex();
+        return index;
+    }
+
+    /**
+     * The cached result of {@link #getAreaIndex}
+     */
+    private static final class AreaIndexEval implements ValueEval {
+        private final Object _index;
+
+        AreaIndexEval(Object index) {
+            _index = index;
+        }
+
+        Object getIndex() {
+            return _index;
+        }
+    }
+
     public FreeRefFunction findUserDefinedFunction(String functionName) {
         return _udfFinder.findFunction(functionName);
     }
@@ -90,4 +90,17 @@ public interface AreaEval extends TwoDEval, ThreeDEval {
      * of this area
      */
     AreaEval offset(int relFirstRowIx, int relLastRowIx, int relFirstColIx, int relLastColIx);
+
+    /**
+     * Returns the index created by the given factory from the values of this area. The index
+     * is cached with the evaluated cell values until one of the cells of the area changes, so
+     * lookups into the same area don't need to compare all of its values again.
+     * By default <code>null</code> is returned, i.e. the area doesn't cache indexes.
+     *
+     * @return the index or <code>null</code>, if this area doesn't cache indexes
+     * @since POI 4.0.0
+     */
+    default <T> T getIndex(AreaIndexFactory<T> factory) {
+        return null;
+    }
 }
@@ -0,0 +1,36 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.eval;
+
+/**
+ * Creates an index over the values of an area, e.g. for repeated lookups into the same range.
+ *
+ * @param <T> the type of the index
+ * @see AreaEval#getIndex(AreaIndexFactory)
+ * @since POI 4.0.0
+ */
+public interface AreaIndexFactory<T> {
+    /**
+     * @param values the values of the area, row by row. The cells after the last given value
+     *  are blank, so there may be less values than cells in the area
+     * @param size the number of cells of the area
+     * @return the index, which must not change afterwards, as it is shared by all formulas
+     *  referencing the area
+     */
+    T createIndex(ValueEval[] values, int size);
+}
@@ -0,0 +1,180 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.eval;
+
+import java.util.Arrays;
+
+import org.apache.poi.ss.formula.TwoDEval;
+
+/**
+ * The values of all cells of an area in row major order, as filled by
+ * {@link TwoDEval#getValues(AreaValues)}. Numbers and booleans are kept in a primitive array
+ * together with the type of each cell, so aggregate functions like SUM or SUMPRODUCT don't need
+ * a {@link ValueEval} for every cell of large areas.<p>
+ *
+ * The values are added in row major order. The cells after the last added value, usually the
+ * rows below the last row of the sheet, are blank. The arrays are reused, when the same instance
+ * is filled again.
+ *
+ * @since POI 4.0.0
+ */
+public final class AreaValues {
+    public static final byte BLANK = 0;
+    public static final byte NUMBER = 1;
+    public static final byte BOOLEAN = 2;
+    public static final byte STRING = 3;
+    public static final byte ERROR = 4;
+
+    private int _size;
+    private int _count;
+    private byte[] _types = new byte[16];
+    private double[] _numbers = new double[16];
+    /** the {@link StringEval}s and {@link ErrorEval}s, only created if there are any */
+    private ValueEval[] _others;
+
+    /**
+     * Removes all values
+     *
+     * @param width the number of columns of the area
+     * @param height the number of rows of the area
+     */
+    public void reset(int width, int height) {
+        _size = Math.multiplyExact(width, height);
+        if (_others != null) {
+            Arrays.fill(_others, 0, Math.min(_count, _others.length), null);
+        }
+        _count = 0;
+    }
+
+    /**
+     * @return the number of cells of the area
+     */
+    public int getSize() {
+        return _size;
+    }
+
+    /**
+     * @return the number of added values, all cells after them are blank
+     */
+    public int getCount() {
+        return _count;
+    }
+
+    /**
+     * @param index the zero based row major index of the cell
+     * @return one of {@link #BLANK}, {@link #NUMBER}, {@link #BOOLEAN}, {@link #STRING} or {@link #ERROR}
+     */
+    public byte getType(int index) {
+        checkIndex(index);
+        return index < _count ? _types[index] : BLANK;
+    }
+
+    /**
+     * @param index the zero based row major index of the cell
+     * @return the value of a number, 1 or 0 for a boolean and 0 for all other cells
+     */
+    public double getNumber(int index) {
+        checkIndex(index);
+        return index < _count ? _numbers[index] : 0.0;
+    }
+
+    /**
+     * @param index the zero based row major index of the cell
+     * @return the value of the cell, a {@link NumberEval} is created for numbers
+     */
+    public ValueEval getValue(int index) {
+        switch (getType(index)) {
+            case NUMBER:
+                return new NumberEval(_numbers[index]);
+            case BOOLEAN:
+                return BoolEval.valueOf(_numbers[index] != 0.0);
+            case STRING:
+            case ERROR:
+                return _others[index];
+            default:
+                return BlankEval.instance;
+        }
+    }
+
+    /**
+     * Adds the number value of the next cell
+     */
+    public void addNumber(double value) {
+        ensureCapacity();
+        _types[_count] = NUMBER;
+        _numbers[_count++] = value;
+    }
+
+    /**
+     * Adds the value of the next cell
+     *
+     * @param value the value of the cell, <code>null</code> for a blank cell
+     */
+    public void addValue(ValueEval value) {
+        ensureCapacity();
+        if (value instanceof NumberEval) {
+            addNumber(((NumberEval) value).getNumberValue());
+            return;
+        }
+        if (value == null || value == BlankEval.instance) {
+            _types[_count] = BLANK;
+            _numbers[_count++] = 0.0;
+            return;
+        }
+        if (value instanceof BoolEval) {
+            _types[_count] = BOOLEAN;
+            _numbers[_count++] = ((BoolEval) value).getNumberValue();
+            return;
+        }
+        byte type;
+        if (value instanceof StringEval) {
+            type = STRING;
+        } else if (value instanceof ErrorEval) {
+            type = ERROR;
+        } else {
+            throw new IllegalArgumentException("Unexpected value class (" + value.getClass().getName() + ")");
+        }
+        if (_others == null) {
+            _others = new ValueEval[_types.length];
+        }
+        _types[_count] = type;
+        _numbers[_count] = 0.0;
+        _others[_count++] = value;
+    }
+
+    private void ensureCapacity() {
+        if (_count == _size) {
+            throw new IllegalStateException("All " + _size + " values have been added");
+        }
+        if (_count == _types.length) {
+            int newLength = Math.min(_size, _count * 3 / 2 + 1);
+            _types = Arrays.copyOf(_types, newLength);
+            _numbers = Arrays.copyOf(_numbers, newLength);
+            if (_others != null) {
+                _others = Arrays.copyOf(_others, newLength);
+            }
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size) {
+            throw new ArrayIndexOutOfBoundsException("Specified index (" + index
+                    + ") is outside the allowed range (0.." + (_size-1) + ")");
+        }
+    }
+}
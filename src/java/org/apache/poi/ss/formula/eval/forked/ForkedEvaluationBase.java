@@ -0,0 +1,138 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.eval.forked;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationWorkbook;
+import org.apache.poi.ss.formula.FormulaDependencyGraph;
+import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.WorkbookEvaluator;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.ptg.FuncVarPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * The results of all formulas of a master workbook, which are evaluated once and then shared by
+ * many {@link ForkedEvaluator}s, possibly in different threads.<p>
+ *
+ * A forked evaluator created with {@link ForkedEvaluator#create(ForkedEvaluationBase)} only
+ * evaluates the formulas, which depend on the cells updated by it, and takes the results of all
+ * other formulas from the base. Volatile formulas (like those with INDIRECT, OFFSET or RAND) and
+ * their dependents are always evaluated. The base is immutable, so any number of threads can
+ * create and use their own forked evaluators, as long as the master workbook isn't modified.
+ *
+ * @since POI 4.0.0
+ */
+public final class ForkedEvaluationBase {
+
+    private final EvaluationWorkbook _masterBook;
+    private final IStabilityClassifier _stabilityClassifier;
+    private final FormulaDependencyGraph _graph;
+    /** the results of the formula cells, which don't need to be evaluated again, by their cell key */
+    private final Map<Long, ForkedEvaluationCell> _resultCells;
+
+    private ForkedEvaluationBase(EvaluationWorkbook masterBook, IStabilityClassifier stabilityClassifier,
+            FormulaDependencyGraph graph, Map<Long, ForkedEvaluationCell> resultCells) {
+        _masterBook = masterBook;
+        _stabilityClassifier = stabilityClassifier;
+        _graph = graph;
+        _resultCells = resultCells;
+    }
+
+    /**
+     * Evaluates all formulas of the given workbook
+     *
+     * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+     */
+    public static ForkedEvaluationBase create(Workbook wb, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+        EvaluationWorkbook masterBook = ForkedEvaluator.createEvaluationWorkbook(wb);
+        WorkbookEvaluator evaluator = new WorkbookEvaluator(masterBook, stabilityClassifier, udfFinder);
+        FormulaDependencyGraph graph = evaluator.createDependencyGraph(wb);
+
+        Map<Long, ForkedEvaluationCell> resultCells = new HashMap<>();
+        for (int[] level : graph.takeDirtyLevels()) {
+            for (int node : level) {
+                EvaluationCell cell = graph.getCell(node);
+                if (cell.isPartOfArrayFormulaGroup() || isSubTotal(masterBook.getFormulaTokens(cell))) {
+                    // these are treated differently from plain value cells
+                    continue;
+                }
+                ValueEval result;
+                try {
+                    result = evaluator.evaluate(cell);
+                } catch (RuntimeException e) {
+                    // evaluated again by the forked evaluators, which report the problem to the caller
+                    continue;
+                }
+                try {
+                    resultCells.put(cellKey(graph.getSheetIndex(node), cell.getRowIndex(), cell.getColumnIndex()),
+                            new ForkedEvaluationCell(cell.getSheet(), cell, result));
+                } catch (IllegalArgumentException e) {
+                    // not a single value
+                }
+            }
+        }
+        // the volatile formulas and their dependents are dirty again
+        for (int[] level : graph.takeDirtyLevels()) {
+            for (int node : level) {
+                resultCells.remove(cellKey(graph.getSheetIndex(node), graph.getRowIndex(node), graph.getColumnIndex(node)));
+            }
+        }
+        return new ForkedEvaluationBase(masterBook, stabilityClassifier, graph,
+                Collections.unmodifiableMap(resultCells));
+    }
+
+    private static boolean isSubTotal(Ptg[] ptgs) {
+        for (Ptg ptg : ptgs) {
+            if (ptg instanceof FuncVarPtg && "SUBTOTAL".equals(((FuncVarPtg) ptg).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* package */ static long cellKey(int sheetIndex, int rowIndex, int columnIndex) {
+        return ((long) sheetIndex << 40) | ((long) rowIndex << 16) | columnIndex;
+    }
+
+    /* package */ EvaluationWorkbook getMasterWorkbook() {
+        return _masterBook;
+    }
+
+    /* package */ IStabilityClassifier getStabilityClassifier() {
+        return _stabilityClassifier;
+    }
+
+    /* package */ FormulaDependencyGraph getDependencyGraph() {
+        return _graph;
+    }
+
+    /**
+     * @return the evaluated formula cell or <code>null</code>, if the cell is no formula cell or
+     *  needs to be evaluated by every forked evaluator
+     */
+    /* package */ ForkedEvaluationCell getResultCell(long cellKey) {
+        return _resultCells.get(cellKey);
+    }
+}
@@ -33,7 +33,8 @@ import org.apache.poi.util.Removal;
 
 /**
  * Represents a cell being used for forked evaluation that has had a value set different from the
- * corresponding cell in the shared master workbook.
+ * corresponding cell in the shared master workbook, or the evaluated result of a formula cell of
+ * the master workbook.
  *
  * @author Josh Micich
  */
@@ -55,6 +56,18 @@ final class ForkedEvaluationCell implements EvaluationCell {
 		setValue(BlankEval.instance); // followed by a proper call to setValue()
 	}
 
+	/**
+	 * Creates a cell with the result of a formula cell of the master workbook, which is shared
+	 * by the forked evaluators of a {@link ForkedEvaluationBase} and never changed
+	 *
+	 * @throws IllegalArgumentException if the result is no single value
+	 */
+	ForkedEvaluationCell(EvaluationSheet masterSheet, EvaluationCell masterCell, ValueEval result) {
+		_sheet = masterSheet;
+		_masterCell = masterCell;
+		setValue(result);
+	}
+
 	@Override
 	public Object getIdentityKey() {
 		return _masterCell.getIdentityKey();
@@ -20,6 +20,7 @@ package org.apache.poi.ss.formula.eval.forked;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.poi.ss.formula.EvaluationCell;
 import org.apache.poi.ss.formula.EvaluationSheet;
@@ -34,7 +35,8 @@ import org.apache.poi.util.Internal;
  * Represents a sheet being used for forked evaluation.  Initially, objects of this class contain
  * only the cells from the master workbook. By calling {@link #getOrCreateUpdatableCell(int, int)},
  * the master cell object is logically replaced with a {@link ForkedEvaluationCell} instance, which
- * will be used in all subsequent evaluations.<br>
+ * will be used in all subsequent evaluations. With a {@link ForkedEvaluationBase}, the formula cells,
+ * which don't depend on updated cells, are replaced by their results in the base.<br>
  *
  * For POI internal use only
  */
@@ -48,9 +50,23 @@ final class ForkedEvaluationSheet implements EvaluationSheet {
      */
     private final Map<RowColKey, ForkedEvaluationCell> _sharedCellsByRowCol;
 
+    private final int _sheetIndex;
+    /** the evaluated formula cells, <code>null</code> if all formulas are evaluated */
+    private final ForkedEvaluationBase _base;
+    /** the keys of the formula cells, which depend on updated cells */
+    private final Set<Long> _dirtyCells;
+
     public ForkedEvaluationSheet(EvaluationSheet masterSheet) {
+        this(masterSheet, -1, null, null);
+    }
+
+    /* package */ ForkedEvaluationSheet(EvaluationSheet masterSheet, int sheetIndex,
+            ForkedEvaluationBase base, Set<Long> dirtyCells) {
         _masterSheet = masterSheet;
         _sharedCellsByRowCol = new HashMap<>();
+        _sheetIndex = sheetIndex;
+        _base = base;
+        _dirtyCells = dirtyCells;
     }
     
     /* (non-Javadoc)
@@ -67,10 +83,19 @@ final class ForkedEvaluationSheet implements EvaluationSheet {
         RowColKey key = new RowColKey(rowIndex, columnIndex);
 
         ForkedEvaluationCell result = _sharedCellsByRowCol.get(key);
-        if (result == null) {
-            return _masterSheet.getCell(rowIndex, columnIndex);
+        if (result != null) {
+            return result;
         }
-        return result;
+        if (_base != null) {
+            long cellKey = ForkedEvaluationBase.cellKey(_sheetIndex, rowIndex, columnIndex);
+            if (!_dirtyCells.contains(cellKey)) {
+                result = _base.getResultCell(cellKey);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return _masterSheet.getCell(rowIndex, columnIndex);
     }
 
     public ForkedEvaluationCell getOrCreateUpdatableCell(int rowIndex, int columnIndex) {
@@ -122,7 +147,10 @@ final class ForkedEvaluationSheet implements EvaluationSheet {
      */
     @Override
     public void clearAllCachedResultValues() {
-        _masterSheet.clearAllCachedResultValues();
+        // the master sheet of a base is shared with other threads
+        if (_base == null) {
+            _masterSheet.clearAllCachedResultValues();
+        }
     }
     
     // FIXME: serves same purpose as org.apache.poi.xssf.usermodel.XSSFEvaluationSheet$CellKey
@@ -17,14 +17,21 @@
 
 package org.apache.poi.ss.formula.eval.forked;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.formula.EvaluationCell;
 import org.apache.poi.ss.formula.EvaluationName;
 import org.apache.poi.ss.formula.EvaluationSheet;
 import org.apache.poi.ss.formula.EvaluationWorkbook;
+import org.apache.poi.ss.formula.FormulaDependencyGraph;
 import org.apache.poi.ss.formula.ptg.NamePtg;
 import org.apache.poi.ss.formula.ptg.NameXPtg;
 import org.apache.poi.ss.formula.ptg.Ptg;
@@ -44,10 +51,24 @@ final class ForkedEvaluationWorkbook implements EvaluationWorkbook {
 
     private final EvaluationWorkbook _masterBook;
     private final Map<String, ForkedEvaluationSheet> _sharedSheetsByName;
+    /** the evaluated formula cells, <code>null</code> if all formulas are evaluated */
+    private final ForkedEvaluationBase _base;
+    /** the keys of the formula cells, which depend on updated cells, see {@link ForkedEvaluationBase#cellKey(int, int, int)} */
+    private final Set<Long> _dirtyCells;
 
     public ForkedEvaluationWorkbook(EvaluationWorkbook master) {
+        this(master, null);
+    }
+
+    public ForkedEvaluationWorkbook(ForkedEvaluationBase base) {
+        this(base.getMasterWorkbook(), base);
+    }
+
+    private ForkedEvaluationWorkbook(EvaluationWorkbook master, ForkedEvaluationBase base) {
         _masterBook = master;
         _sharedSheetsByName = new HashMap<>();
+        _base = base;
+        _dirtyCells = base == null ? null : new HashSet<Long>();
     }
 
     public ForkedEvaluationCell getOrCreateUpdatableCell(String sheetName, int rowIndex,
@@ -61,11 +82,41 @@ final class ForkedEvaluationWorkbook implements EvaluationWorkbook {
         return sheet.getCell(rowIndex, columnIndex);
     }
 
+    /**
+     * Stops taking the results of the formula cells, which depend on the given cell, from the base
+     *
+     * @return the master cells of those formula cells, whose base result has been used so far
+     */
+    public List<EvaluationCell> markDependentsDirty(String sheetName, int rowIndex, int columnIndex) {
+        List<EvaluationCell> result = new ArrayList<>();
+        if (_base == null) {
+            return result;
+        }
+        FormulaDependencyGraph graph = _base.getDependencyGraph();
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.add(graph.getDirectDependents(_masterBook.getSheetIndex(sheetName), rowIndex, columnIndex));
+        while (!pending.isEmpty()) {
+            for (int node : pending.remove()) {
+                int sheetIndex = graph.getSheetIndex(node);
+                int row = graph.getRowIndex(node);
+                int column = graph.getColumnIndex(node);
+                long cellKey = ForkedEvaluationBase.cellKey(sheetIndex, row, column);
+                if (_dirtyCells.add(cellKey)) {
+                    if (_base.getResultCell(cellKey) != null) {
+                        result.add(graph.getCell(node));
+                    }
+                    pending.add(graph.getDirectDependents(sheetIndex, row, column));
+                }
+            }
+        }
+        return result;
+    }
+
     private ForkedEvaluationSheet getSharedSheet(String sheetName) {
         ForkedEvaluationSheet result = _sharedSheetsByName.get(sheetName);
         if (result == null) {
-            result = new ForkedEvaluationSheet(_masterBook.getSheet(_masterBook
-                    .getSheetIndex(sheetName)));
+            int sheetIndex = _masterBook.getSheetIndex(sheetName);
+            result = new ForkedEvaluationSheet(_masterBook.getSheet(sheetIndex), sheetIndex, _base, _dirtyCells);
             _sharedSheetsByName.put(sheetName, result);
         }
         return result;
@@ -168,6 +219,9 @@ final class ForkedEvaluationWorkbook implements EvaluationWorkbook {
      */
     @Override
     public void clearAllCachedResultValues() {
-        _masterBook.clearAllCachedResultValues();
+        // the master workbook of a base is shared with other threads
+        if (_base == null) {
+            _masterBook.clearAllCachedResultValues();
+        }
     }
 }
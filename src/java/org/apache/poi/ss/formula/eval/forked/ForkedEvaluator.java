@@ -25,6 +25,7 @@ import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 
 import java.lang.reflect.Method;
+import java.util.List;
 
 import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -41,7 +42,11 @@ import org.apache.poi.ss.usermodel.Workbook;
  * 90% of memory consumption is due to loading of the {@link HSSFWorkbook} or {@link org.apache.poi.xssf.usermodel.XSSFWorkbook}.
  * This class enables a 'master workbook' to be loaded just once and shared between many evaluation
  * clients.  Each evaluation client creates its own {@link ForkedEvaluator} and can set cell values
- * that will be used for local evaluations (and don't disturb evaluations on other evaluators).
+ * that will be used for local evaluations (and don't disturb evaluations on other evaluators).<p>
+ *
+ * Forked evaluators created from a {@link ForkedEvaluationBase} also share the results of the
+ * formulas, so they only evaluate the formulas depending on their updated cells. A forked
+ * evaluator is not thread-safe, each thread needs to create its own.
  */
 public final class ForkedEvaluator {
 
@@ -52,7 +57,12 @@ public final class ForkedEvaluator {
 		_sewb = new ForkedEvaluationWorkbook(masterWorkbook);
 		_evaluator = new WorkbookEvaluator(_sewb, stabilityClassifier, udfFinder);
 	}
-	private static EvaluationWorkbook createEvaluationWorkbook(Workbook wb) {
+	private ForkedEvaluator(ForkedEvaluationBase base) {
+		_sewb = new ForkedEvaluationWorkbook(base);
+		// the UDFs have been added to the master workbook by the base
+		_evaluator = new WorkbookEvaluator(_sewb, base.getStabilityClassifier(), null);
+	}
+	/* package */ static EvaluationWorkbook createEvaluationWorkbook(Workbook wb) {
 		if (wb instanceof HSSFWorkbook) {
 			return HSSFEvaluationWorkbook.create((HSSFWorkbook) wb);
 		} else {
@@ -75,6 +85,16 @@ public final class ForkedEvaluator {
 		return new ForkedEvaluator(createEvaluationWorkbook(wb), stabilityClassifier, udfFinder);
 	}
 
+	/**
+	 * Creates an evaluator, which takes the results of the formulas not depending on its
+	 * updated cells from the given base
+	 *
+	 * @since POI 4.0.0
+	 */
+	public static ForkedEvaluator create(ForkedEvaluationBase base) {
+		return new ForkedEvaluator(base);
+	}
+
 	/**
 	 * Sets the specified cell to the supplied <tt>value</tt>
 	 * @param sheetName the name of the sheet containing the cell
@@ -86,6 +106,11 @@ public final class ForkedEvaluator {
 		ForkedEvaluationCell cell = _sewb.getOrCreateUpdatableCell(sheetName, rowIndex, columnIndex);
 		cell.setValue(value);
 		_evaluator.notifyUpdateCell(cell);
+		List<EvaluationCell> dirtyCells = _sewb.markDependentsDirty(sheetName, rowIndex, columnIndex);
+		for (EvaluationCell dirtyCell : dirtyCells) {
+			// replaces the base result in the cache
+			_evaluator.notifyUpdateCell(dirtyCell);
+		}
 	}
 	/**
 	 * Copies the values of all updated cells (modified by calls to {@link
@@ -21,6 +21,8 @@ package org.apache.poi.ss.formula.functions;
 
 import org.apache.poi.ss.formula.OperationEvaluationContext;
 import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.AreaValues;
+import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.EvaluationException;
 import org.apache.poi.ss.formula.eval.NumberEval;
@@ -123,29 +125,41 @@ import org.apache.poi.ss.formula.functions.Countif.ErrorMatcher;
      * @return the computed value
      */
     private static double aggregateMatchingCells(AreaEval sumRange, AreaEval[] ranges, I_MatchPredicate[] predicates) {
-        int height = ranges[0].getHeight();
-        int width = ranges[0].getWidth();
-
-        double result = 0.0;
-        for (int r = 0; r < height; r++) {
-            for (int c = 0; c < width; c++) {
-
-                boolean matches = true;
-                for(int i = 0; i < ranges.length; i++){
-                    AreaEval aeRange = ranges[i];
-                    I_MatchPredicate mp = predicates[i];
+        AreaValues[] rangeValues = new AreaValues[ranges.length];
+        int size = Integer.MAX_VALUE;
+        for(int i = 0; i < ranges.length; i++){
+            rangeValues[i] = new AreaValues();
+            ranges[i].getValues(rangeValues[i]);
+            // Bugs 60858 and 56420 show predicate can be null
+            I_MatchPredicate mp = predicates[i];
+            if (mp == null) {
+                return 0.0;
+            }
+            // the cells after the values of the range are blank, so they can only match if blanks do
+            if (!mp.matches(BlankEval.instance)) {
+                size = Math.min(size, rangeValues[i].getCount());
+            }
+        }
+        size = Math.min(size, rangeValues[0].getSize());
 
-                    // Bugs 60858 and 56420 show predicate can be null
-                    if (mp == null || !mp.matches(aeRange.getRelativeValue(r, c))) {
-                        matches = false;
-                        break;
-                    }
+        AreaValues sumValues = null;
+        if (sumRange != null) {
+            sumValues = new AreaValues();
+            sumRange.getValues(sumValues);
+        }
 
+        double result = 0.0;
+        for (int index = 0; index < size; index++) {
+            boolean matches = true;
+            for(int i = 0; i < rangeValues.length; i++){
+                if (!Countif.matches(predicates[i], rangeValues[i], index)) {
+                    matches = false;
+                    break;
                 }
+            }
 
-                if(matches) { // sum only if all of the corresponding criteria specified are true for that cell.
-                    result += accumulate(sumRange, r, c);
-                }
+            if(matches) { // sum only if all of the corresponding criteria specified are true for that cell.
+                result += accumulate(sumValues, index);
             }
         }
         return result;
@@ -154,21 +168,18 @@ import org.apache.poi.ss.formula.functions.Countif.ErrorMatcher;
     /**
      * For counts, this would return 1, for sums it returns a cell value or zero.
      * This is only called after all the criteria are confirmed true for the coordinates.
-     * @param sumRange if used
-     * @param relRowIndex
-     * @param relColIndex
+     * @param sumValues the values of the sum range, if used
+     * @param index the row major index of the cell
      * @return the aggregate input value corresponding to the given range coordinates
      */
-    private static double accumulate(AreaEval sumRange, int relRowIndex, int relColIndex) {
-        if (sumRange == null) return 1.0; // count
-        
-        ValueEval addend = sumRange.getRelativeValue(relRowIndex, relColIndex);
-        if (addend instanceof NumberEval) {
-            return ((NumberEval)addend).getNumberValue();
+    private static double accumulate(AreaValues sumValues, int index) {
+        if (sumValues == null) return 1.0; // count
+
+        if (sumValues.getType(index) == AreaValues.NUMBER) {
+            return sumValues.getNumber(index);
         }
         // everything else (including string and boolean values) counts as zero
         return 0.0;
-
     }
 
     protected static AreaEval convertRangeArg(ValueEval eval) throws EvaluationException {
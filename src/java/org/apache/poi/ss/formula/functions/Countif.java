@@ -20,6 +20,8 @@ package org.apache.poi.ss.formula.functions;
 import java.util.regex.Pattern;
 
 import org.apache.poi.ss.formula.ThreeDEval;
+import org.apache.poi.ss.formula.TwoDEval;
+import org.apache.poi.ss.formula.eval.AreaValues;
 import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -31,6 +33,7 @@ import org.apache.poi.ss.formula.eval.StringEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.functions.CountUtils.I_MatchPredicate;
 import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.util.IntList;
 
 /**
  * Implementation for the function COUNTIF
@@ -190,7 +193,6 @@ public final class Countif extends Fixed2ArgFunction {
 
         @Override
         public boolean matches(ValueEval x) {
-            double testValue;
             if(x instanceof StringEval) {
                 // if the target(x) is a string, but parses as a number
                 // it may still count as a match, only for the equality operator
@@ -216,7 +218,7 @@ public final class Countif extends Fixed2ArgFunction {
                 return _value == val.doubleValue();
             } else if((x instanceof NumberEval)) {
                 NumberEval ne = (NumberEval) x;
-                testValue = ne.getNumberValue();
+                return matchesNumber(ne.getNumberValue());
             } else if((x instanceof BlankEval)) {
                 switch (getCode()) {
                     case CmpOp.NE:
@@ -228,6 +230,9 @@ public final class Countif extends Fixed2ArgFunction {
             } else {
                 return false;
             }
+        }
+
+        public boolean matchesNumber(double testValue) {
             return evaluate(Double.compare(testValue, _value));
         }
     }
@@ -455,6 +460,13 @@ public final class Countif extends Fixed2ArgFunction {
         if (rangeArg instanceof RefEval) {
             return CountUtils.countMatchingCellsInRef((RefEval) rangeArg, criteriaPredicate);
         } else if (rangeArg instanceof ThreeDEval) {
+            if (rangeArg instanceof TwoDEval) {
+                LookupIndex index = LookupIndex.forArea((TwoDEval) rangeArg);
+                IntList positions = (index == null) ? null : findMatchingPositions(index, criteriaPredicate);
+                if (positions != null) {
+                    return positions.size();
+                }
+            }
             return CountUtils.countMatchingCellsInArea((ThreeDEval) rangeArg, criteriaPredicate);
         } else {
             throw new IllegalArgumentException("Bad range arg type (" + rangeArg.getClass().getName() + ")");
@@ -489,6 +501,70 @@ public final class Countif extends Fixed2ArgFunction {
                 + evaluatedCriteriaArg.getClass().getName() + ")");
     }
 
+    /**
+     * Matches a cell of the values of an area, without creating a {@link NumberEval} for numbers
+     * compared with a number criteria
+     */
+    /* package */ static boolean matches(I_MatchPredicate criteriaPredicate, AreaValues values, int index) {
+        if (criteriaPredicate instanceof NumberMatcher && values.getType(index) == AreaValues.NUMBER) {
+            return ((NumberMatcher) criteriaPredicate).matchesNumber(values.getNumber(index));
+        }
+        return criteriaPredicate.matches(values.getValue(index));
+    }
+
+    /**
+     * Looks up the values matching an equality criteria in the cached index of the range,
+     * instead of matching every value
+     *
+     * @return the ascending positions of the matching values or <code>null</code>, if the criteria
+     *  can't be looked up in the index
+     */
+    /* package */ static IntList findMatchingPositions(LookupIndex index, I_MatchPredicate criteriaPredicate) {
+        if (!(criteriaPredicate instanceof MatcherBase)) {
+            return null;
+        }
+        MatcherBase matcher = (MatcherBase) criteriaPredicate;
+        if (matcher.getCode() != CmpOp.NONE && matcher.getCode() != CmpOp.EQ) {
+            return null;
+        }
+        if (matcher instanceof NumberMatcher) {
+            // strings, which parse as the number, match as well
+            double value = ((NumberMatcher) matcher)._value;
+            return merge(index.getPositionsOfValue(new NumberEval(value)), index.getPositionsOfNumericString(value));
+        }
+        if (matcher instanceof BooleanMatcher) {
+            return index.getPositionsOfValue(BoolEval.valueOf(((BooleanMatcher) matcher)._value == 1));
+        }
+        if (matcher instanceof StringMatcher) {
+            StringMatcher stringMatcher = (StringMatcher) matcher;
+            if (stringMatcher._pattern != null || stringMatcher._value.length() == 0) {
+                // wildcards and the special cases of empty strings and blank cells
+                return null;
+            }
+            return index.getPositionsOfValue(new StringEval(stringMatcher._value));
+        }
+        return null;
+    }
+
+    private static IntList merge(IntList a, IntList b) {
+        if (b.isEmpty()) {
+            return a;
+        }
+        if (a.isEmpty()) {
+            return b;
+        }
+        IntList result = new IntList(a.size() + b.size());
+        int i = 0, j = 0;
+        while (i < a.size() || j < b.size()) {
+            if (j == b.size() || (i < a.size() && a.get(i) < b.get(j))) {
+                result.add(a.get(i++));
+            } else {
+                result.add(b.get(j++));
+            }
+        }
+        return result;
+    }
+
     /**
      *
      * @return the de-referenced criteria arg (possibly {@link ErrorEval})
@@ -0,0 +1,321 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.functions;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.TwoDEval;
+import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.AreaIndexFactory;
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.OperandResolver;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.functions.LookupUtils.LookupValueComparer;
+import org.apache.poi.ss.formula.functions.LookupUtils.ValueVector;
+import org.apache.poi.util.IntList;
+
+/**
+ * The values of a lookup or criteria range, which are cached by the evaluator until one of the
+ * cells of the range changes (see {@link AreaEval#getIndex(AreaIndexFactory)}). Repeated
+ * VLOOKUP, HLOOKUP, LOOKUP, MATCH, COUNTIF and SUMIF calls with the same range use this index
+ * instead of comparing the lookup value with every cell of the range.<p>
+ *
+ * The values are kept in their original order, as the binary search of the approximate lookups
+ * gives Excel specific results for unsorted ranges. The hash index for exact matches and the
+ * sorted index for the approximate matches of MATCH are created when they are first needed.
+ */
+final class LookupIndex implements ValueVector {
+    /** smaller ranges are just scanned */
+    private static final int MIN_INDEXED_SIZE = 16;
+
+    private static final AreaIndexFactory<LookupIndex> FACTORY = new AreaIndexFactory<LookupIndex>() {
+        @Override
+        public LookupIndex createIndex(ValueEval[] values, int size) {
+            return new LookupIndex(values, size);
+        }
+    };
+
+    private final ValueEval[] _values;
+    private final int _size;
+    /** the positions of the numbers, strings (see {@link #getKey(ValueEval)}) and booleans */
+    private Map<Object, IntList> _positions;
+    /** the positions of strings, which can be parsed as number, by their number */
+    private Map<Double, IntList> _numericStringPositions;
+    /** the positions of the values of the same type in the order of their values */
+    private final Map<Class<?>, SortedPositions> _sortedPositions = new HashMap<>();
+
+    private LookupIndex(ValueEval[] values, int size) {
+        _values = values;
+        _size = size;
+    }
+
+    /**
+     * @return the cached index of the values of the area or <code>null</code>, if the area doesn't
+     *  cache its values or is too small to be worth indexing
+     */
+    public static LookupIndex forArea(TwoDEval area) {
+        if (!(area instanceof AreaEval) || area.getWidth() * area.getHeight() < MIN_INDEXED_SIZE) {
+            return null;
+        }
+        return ((AreaEval) area).getIndex(FACTORY);
+    }
+
+    @Override
+    public ValueEval getItem(int index) {
+        if (index < 0 || index >= _size) {
+            throw new ArrayIndexOutOfBoundsException("Specified index (" + index
+                    + ") is outside the allowed range (0.." + (_size-1) + ")");
+        }
+        return index < _values.length ? _values[index] : BlankEval.instance;
+    }
+
+    @Override
+    public int getSize() {
+        return _size;
+    }
+
+    /**
+     * @return whether the lookup value can be searched with the index, i.e. it is not a string
+     *  with wildcards
+     */
+    public static boolean isIndexable(ValueEval lookupValue) {
+        if (lookupValue instanceof StringEval) {
+            return Countif.StringMatcher.getWildCardPattern(((StringEval) lookupValue).getStringValue()) == null;
+        }
+        return lookupValue == BlankEval.instance || lookupValue instanceof NumberEval
+                || lookupValue instanceof BoolEval;
+    }
+
+    /**
+     * Finds the first value, which is equal to the lookup value like
+     * {@link LookupUtils#createLookupComparer(ValueEval, boolean, boolean)} compares them
+     *
+     * @param lookupValue an {@link #isIndexable(ValueEval) indexable} value
+     * @return the zero based index of the value, -1 if value cannot be found
+     */
+    public int indexOfExactValue(ValueEval lookupValue) {
+        IntList positions = getPositions().get(getKey(getLookupValue(lookupValue)));
+        return positions == null ? -1 : positions.get(0);
+    }
+
+    /**
+     * @return the positions of the values with the same type, which are equal to the given value,
+     *  strings are compared case insensitive
+     */
+    public IntList getPositionsOfValue(ValueEval value) {
+        IntList positions = getPositions().get(getKey(value));
+        return positions == null ? new IntList(0) : positions;
+    }
+
+    /**
+     * @return the positions of the strings, which can be parsed as the given number
+     */
+    public IntList getPositionsOfNumericString(double value) {
+        IntList positions = getNumericStringPositions().get(normalize(value));
+        return positions == null ? new IntList(0) : positions;
+    }
+
+    /**
+     * Finds the last value of the type of the lookup value, which is less than or equal to it
+     *
+     * @param lookupValue an {@link #isIndexable(ValueEval) indexable} value
+     * @param comparer the comparer of the lookup value
+     * @return the zero based index of the value, -1 if value cannot be found
+     */
+    public int lastIndexOfLessOrEqual(ValueEval lookupValue, LookupValueComparer comparer) {
+        SortedPositions sp = getSortedPositions(getLookupValue(lookupValue).getClass());
+        int count = sp.countLessOrEqual(comparer);
+        return count == 0 ? -1 : sp.maxPositions[count - 1];
+    }
+
+    /**
+     * Finds the first value of the type of the lookup value, which is less than or equal to it
+     *
+     * @param lookupValue an {@link #isIndexable(ValueEval) indexable} value
+     * @param comparer the comparer of the lookup value
+     * @return the zero based index of the value, -1 if value cannot be found
+     */
+    public int firstIndexOfLessOrEqual(ValueEval lookupValue, LookupValueComparer comparer) {
+        SortedPositions sp = getSortedPositions(getLookupValue(lookupValue).getClass());
+        int count = sp.countLessOrEqual(comparer);
+        return count == 0 ? -1 : sp.minPositions[count - 1];
+    }
+
+    /**
+     * a blank lookup value is looked up as zero
+     */
+    private static ValueEval getLookupValue(ValueEval lookupValue) {
+        return lookupValue == BlankEval.instance ? NumberEval.ZERO : lookupValue;
+    }
+
+    /**
+     * @return the key of the value in the hash index, strings are converted like
+     *  {@link String#compareToIgnoreCase(String)} compares them
+     */
+    private static Object getKey(ValueEval value) {
+        if (value instanceof NumberEval) {
+            // Double.equals() is consistent with Double.compare()
+            return ((NumberEval) value).getNumberValue();
+        }
+        if (value instanceof StringEval) {
+            String str = ((StringEval) value).getStringValue();
+            char[] chars = new char[str.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(Character.toUpperCase(str.charAt(i)));
+            }
+            return new String(chars);
+        }
+        if (value instanceof BoolEval) {
+            return ((BoolEval) value).getBooleanValue();
+        }
+        return null;
+    }
+
+    /**
+     * Numeric strings are compared with the == operator, so both zeros are the same
+     */
+    private static Double normalize(double value) {
+        return value == 0.0 ? 0.0 : value;
+    }
+
+    private synchronized Map<Object, IntList> getPositions() {
+        if (_positions == null) {
+            Map<Object, IntList> positions = new HashMap<>();
+            for (int i = 0; i < _values.length; i++) {
+                Object key = getKey(_values[i]);
+                if (key != null) {
+                    IntList list = positions.get(key);
+                    if (list == null) {
+                        list = new IntList(1);
+                        positions.put(key, list);
+                    }
+                    list.add(i);
+                }
+            }
+            _positions = positions;
+        }
+        return _positions;
+    }
+
+    private synchronized Map<Double, IntList> getNumericStringPositions() {
+        if (_numericStringPositions == null) {
+            Map<Double, IntList> positions = new HashMap<>();
+            for (int i = 0; i < _values.length; i++) {
+                if (!(_values[i] instanceof StringEval)) {
+                    continue;
+                }
+                Double value = OperandResolver.parseDouble(((StringEval) _values[i]).getStringValue());
+                if (value == null || value.isNaN()) {
+                    continue;
+                }
+                Double key = normalize(value);
+                IntList list = positions.get(key);
+                if (list == null) {
+                    list = new IntList(1);
+                    positions.put(key, list);
+                }
+                list.add(i);
+            }
+            _numericStringPositions = positions;
+        }
+        return _numericStringPositions;
+    }
+
+    private synchronized SortedPositions getSortedPositions(Class<?> type) {
+        SortedPositions sp = _sortedPositions.get(type);
+        if (sp == null) {
+            sp = new SortedPositions(_values, type);
+            _sortedPositions.put(type, sp);
+        }
+        return sp;
+    }
+
+    /**
+     * The positions of the values of one type ordered by their values
+     */
+    private static final class SortedPositions {
+        private final ValueEval[] _values;
+        private final int[] _order;
+        /** the largest position of the first i+1 values in the order */
+        final int[] maxPositions;
+        /** the smallest position of the first i+1 values in the order */
+        final int[] minPositions;
+
+        SortedPositions(final ValueEval[] values, Class<?> type) {
+            _values = values;
+            IntList positions = new IntList();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i].getClass() == type) {
+                    positions.add(i);
+                }
+            }
+            Integer[] order = new Integer[positions.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = positions.get(i);
+            }
+            // a stable sort of the same order, in which the lookup comparers compare the values
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return compareValues(values[a], values[b]);
+                }
+            });
+            _order = new int[order.length];
+            maxPositions = new int[order.length];
+            minPositions = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                _order[i] = order[i];
+                maxPositions[i] = (i == 0) ? order[i] : Math.max(maxPositions[i - 1], order[i]);
+                minPositions[i] = (i == 0) ? order[i] : Math.min(minPositions[i - 1], order[i]);
+            }
+        }
+
+        private static int compareValues(ValueEval a, ValueEval b) {
+            if (a instanceof NumberEval) {
+                return Double.compare(((NumberEval) a).getNumberValue(), ((NumberEval) b).getNumberValue());
+            }
+            if (a instanceof StringEval) {
+                return ((StringEval) a).getStringValue().compareToIgnoreCase(((StringEval) b).getStringValue());
+            }
+            return Boolean.compare(((BoolEval) a).getBooleanValue(), ((BoolEval) b).getBooleanValue());
+        }
+
+        /**
+         * @return the number of values, which are less than or equal to the lookup value
+         */
+        int countLessOrEqual(LookupValueComparer comparer) {
+            int low = 0;
+            int high = _order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparer.compareTo(_values[_order[mid]]).isLessThan()) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -73,6 +73,10 @@ final class LookupUtils {
 		public int getSize() {
 			return _size;
 		}
+
+		public LookupIndex getIndex() {
+			return LookupIndex.forArea(_tableArray.isRow() ? _tableArray : _tableArray.getRow(_rowIndex));
+		}
 	}
 
 	private static final class ColumnVector implements ValueVector {
@@ -102,6 +106,10 @@ final class LookupUtils {
 		public int getSize() {
 			return _size;
 		}
+
+		public LookupIndex getIndex() {
+			return LookupIndex.forArea(_tableArray.isColumn() ? _tableArray : _tableArray.getColumn(_columnIndex));
+		}
 	}
 
     private static final class SheetVector implements ValueVector {
@@ -149,6 +157,20 @@ final class LookupUtils {
 	    return new SheetVector(re);
 	}
 
+	/**
+	 * @return the cached index of the values of the vector or <code>null</code>, if the values
+	 *  of the vector aren't cached
+	 */
+	public static LookupIndex getIndex(ValueVector vector) {
+		if (vector instanceof RowVector) {
+			return ((RowVector) vector).getIndex();
+		}
+		if (vector instanceof ColumnVector) {
+			return ((ColumnVector) vector).getIndex();
+		}
+		return null;
+	}
+
 	/**
 	 * Enumeration to support <b>4</b> valued comparison results.<p>
 	 * Excel lookup functions have complex behaviour in the case where the lookup array has mixed
@@ -476,11 +498,15 @@ final class LookupUtils {
 
 	public static int lookupIndexOfValue(ValueEval lookupValue, ValueVector vector, boolean isRangeLookup) throws EvaluationException {
 		LookupValueComparer lookupComparer = createLookupComparer(lookupValue, isRangeLookup, false);
+		LookupIndex index = getIndex(vector);
 		int result;
 		if(isRangeLookup) {
-			result = performBinarySearch(vector, lookupComparer);
+			// the binary search runs over the cached values, as it depends on their order
+			result = performBinarySearch(index == null ? vector : index, lookupComparer);
+		} else if (index != null && LookupIndex.isIndexable(lookupValue)) {
+			result = index.indexOfExactValue(lookupValue);
 		} else {
-			result = lookupIndexOfExactValue(lookupComparer, vector);
+			result = lookupIndexOfExactValue(lookupComparer, index == null ? vector : index);
 		}
 		if(result < 0) {
 			throw new EvaluationException(ErrorEval.NA);
@@ -190,6 +190,15 @@ public final class Match extends Var2or3ArgFunction {
 
 		LookupValueComparer lookupComparer = createLookupComparer(lookupValue, matchExact);
 
+		LookupIndex index = LookupUtils.getIndex(lookupRange);
+		if (index != null) {
+			if (LookupIndex.isIndexable(lookupValue)) {
+				return findIndexOfValue(lookupValue, index, lookupComparer, matchExact, findLargestLessThanOrEqual);
+			}
+			// scan the cached values
+			lookupRange = index;
+		}
+
 		int size = lookupRange.getSize();
 		if(matchExact) {
 			for (int i = 0; i < size; i++) {
@@ -231,6 +240,33 @@ public final class Match extends Var2or3ArgFunction {
 		return size-1;
 	}
 
+	/**
+	 * Finds the same index as the scans of the values, but with the hash or sorted index
+	 *
+	 * @return zero based index
+	 */
+	private static int findIndexOfValue(ValueEval lookupValue, LookupIndex index, LookupValueComparer lookupComparer,
+			boolean matchExact, boolean findLargestLessThanOrEqual) throws EvaluationException {
+		int result;
+		if (matchExact) {
+			result = index.indexOfExactValue(lookupValue);
+		} else if (findLargestLessThanOrEqual) {
+			// the last value of the same type, which is not greater
+			result = index.lastIndexOfLessOrEqual(lookupValue, lookupComparer);
+		} else {
+			// the forward scan stops at the first value of the same type, which is not greater
+			int first = index.firstIndexOfLessOrEqual(lookupValue, lookupComparer);
+			if (first < 0) {
+				return index.getSize() - 1;
+			}
+			result = lookupComparer.compareTo(index.getItem(first)).isEqual() ? first : first - 1;
+		}
+		if (result < 0) {
+			throw new EvaluationException(ErrorEval.NA);
+		}
+		return result;
+	}
+
 	private static LookupValueComparer createLookupComparer(ValueEval lookupValue, boolean matchExact) {
 		return LookupUtils.createLookupComparer(lookupValue, matchExact, true);
 	}
@@ -20,6 +20,7 @@ package org.apache.poi.ss.formula.functions;
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.formula.ThreeDEval;
 import org.apache.poi.ss.formula.TwoDEval;
+import org.apache.poi.ss.formula.eval.AreaValues;
 import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -80,6 +81,12 @@ public abstract class MultiOperandNumericFunction implements Function {
 			_array[_count] = value;
 			_count++;
 		}
+
+		public void addZeros(int count) {
+			ensureCapacity(_count + count);
+			// the array is only ever filled up to _count, so the new elements are still zero
+			_count += count;
+		}
 	}
 
 	private static final int DEFAULT_MAX_NUM_OPERANDS = SpreadsheetVersion.EXCEL2007.getMaxFunctionArgs();
@@ -142,6 +149,10 @@ public abstract class MultiOperandNumericFunction implements Function {
 	 * Collects values from a single argument
 	 */
 	private void collectValues(ValueEval operand, DoubleList temp) throws EvaluationException {
+        if (operand instanceof TwoDEval && isSubtotalCounted() && isSingleSheet(operand)) {
+            collectAreaValues((TwoDEval) operand, temp);
+            return;
+        }
         if (operand instanceof ThreeDEval) {
             ThreeDEval ae = (ThreeDEval) operand;
             for (int sIx=ae.getFirstSheetIndex(); sIx <= ae.getLastSheetIndex(); sIx++) {
@@ -179,6 +190,51 @@ public abstract class MultiOperandNumericFunction implements Function {
 		}
 		collectValue(operand, false, temp);
 	}
+
+    private static boolean isSingleSheet(ValueEval operand) {
+        if (operand instanceof ThreeDEval) {
+            ThreeDEval ae = (ThreeDEval) operand;
+            return ae.getFirstSheetIndex() == ae.getLastSheetIndex();
+        }
+        return true;
+    }
+
+	/**
+	 * Collects the values of all cells of an area at once, like {@link #collectValue} collects
+	 * each value via reference
+	 */
+	private void collectAreaValues(TwoDEval ae, DoubleList temp) throws EvaluationException {
+		AreaValues values = new AreaValues();
+		ae.getValues(values);
+		int count = values.getCount();
+		temp.ensureCapacity(temp._count + count);
+		for (int i = 0; i < count; i++) {
+			switch (values.getType(i)) {
+				case AreaValues.NUMBER:
+					temp.add(values.getNumber(i));
+					break;
+				case AreaValues.BOOLEAN:
+					if (_isReferenceBoolCounted) {
+						temp.add(values.getNumber(i));
+					}
+					break;
+				case AreaValues.ERROR:
+					throw new EvaluationException((ErrorEval) values.getValue(i));
+				case AreaValues.BLANK:
+					if (_isBlankCounted) {
+						temp.add(0.0);
+					}
+					break;
+				default:
+					// ignore all ref strings
+			}
+		}
+		if (_isBlankCounted) {
+			// the remaining cells are blank
+			temp.addZeros(values.getSize() - count);
+		}
+	}
+
 	private void collectValue(ValueEval ve, boolean isViaReference, DoubleList temp)  throws EvaluationException {
 		if (ve == null) {
 			throw new IllegalArgumentException("ve must not be null");
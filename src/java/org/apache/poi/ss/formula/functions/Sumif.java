@@ -24,6 +24,7 @@ import org.apache.poi.ss.formula.eval.NumberEval;
 import org.apache.poi.ss.formula.eval.RefEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.functions.CountUtils.I_MatchPredicate;
+import org.apache.poi.util.IntList;
 
 /**
  * Implementation for the Excel function SUMIF<p>
@@ -83,6 +84,18 @@ public final class Sumif extends Var2or3ArgFunction {
 		int height=aeRange.getHeight();
 		int width= aeRange.getWidth();
 
+		LookupIndex index = LookupIndex.forArea(aeRange);
+		IntList positions = (index == null) ? null : Countif.findMatchingPositions(index, mp);
+		if (positions != null) {
+			// only the matching cells of the sum range are added, in the same order as below
+			double result = 0.0;
+			for (int i = 0; i < positions.size(); i++) {
+				int position = positions.get(i);
+				result += accumulate(aeSum, position / width, position % width);
+			}
+			return result;
+		}
+
 		double result = 0.0;
 		for (int r=0; r<height; r++) {
 			for (int c=0; c<width; c++) {
@@ -98,6 +111,10 @@ public final class Sumif extends Var2or3ArgFunction {
 		if (!mp.matches(aeRange.getRelativeValue(relRowIndex, relColIndex))) {
 			return 0.0;
 		}
+		return accumulate(aeSum, relRowIndex, relColIndex);
+	}
+
+	private static double accumulate(AreaEval aeSum, int relRowIndex, int relColIndex) {
 		ValueEval addend = aeSum.getRelativeValue(relRowIndex, relColIndex);
 		if (addend instanceof NumberEval) {
 			return ((NumberEval)addend).getNumberValue();
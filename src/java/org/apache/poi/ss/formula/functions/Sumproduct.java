@@ -19,6 +19,7 @@ package org.apache.poi.ss.formula.functions;
 
 import org.apache.poi.ss.formula.TwoDEval;
 import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.AreaValues;
 import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.EvaluationException;
@@ -148,22 +149,46 @@ public final class Sumproduct implements Function {
 			return ErrorEval.VALUE_INVALID;
 		}
 
-		double acc = 0;
+		AreaValues[] values = new AreaValues[maxN];
+		int count = 0;
+		for(int n=0; n<maxN; n++) {
+			values[n] = new AreaValues();
+			args[n].getValues(values[n]);
+			count = Math.max(count, values[n].getCount());
+		}
 
-		for (int rrIx=0; rrIx<height; rrIx++) {
-			for (int rcIx=0; rcIx<width; rcIx++) {
-				double term = 1D;
-				for(int n=0; n<maxN; n++) {
-					double val = getProductTerm(args[n].getValue(rrIx, rcIx), false);
-					term *= val;
-				}
-				acc += term;
+		// the terms of the remaining cells are zero, as they are blank in all areas
+		double acc = 0;
+		for (int i=0; i<count; i++) {
+			double term = 1D;
+			for(int n=0; n<maxN; n++) {
+				double val = getProductTerm(values[n], i);
+				term *= val;
 			}
+			acc += term;
 		}
 
 		return new NumberEval(acc);
 	}
 
+	/**
+	 * Determines the <code>double</code> value of a cell of an area like
+	 * {@link #getProductTerm(ValueEval, boolean)} for area (sum)products.
+	 * @throws EvaluationException if the cell contains an error value.
+	 */
+	private static double getProductTerm(AreaValues values, int index) throws EvaluationException {
+		switch (values.getType(index)) {
+			case AreaValues.NUMBER:
+			case AreaValues.BOOLEAN:
+				return values.getNumber(index);
+			case AreaValues.ERROR:
+				throw new EvaluationException((ErrorEval) values.getValue(index));
+			default:
+				// blanks and strings are interpreted as zero
+				return 0;
+		}
+	}
+
 	private static void throwFirstError(TwoDEval areaEval) throws EvaluationException {
 		int height = areaEval.getHeight();
 		int width = areaEval.getWidth();
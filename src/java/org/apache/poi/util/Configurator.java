@@ -18,7 +18,7 @@ package org.apache.poi.util;
 ==================================================================== */
 
 /**
- * Helper for fetching int values from system properties
+ * Helper for fetching int and boolean values from system properties
  */
 public class Configurator {
     private static POILogger logger = POILogFactory.getLogger(Configurator.class);
@@ -33,4 +33,12 @@ public class Configurator {
         }
         return result;
     }
+
+    public static boolean getBooleanValue(String systemProperty, boolean defaultValue) {
+        String property = System.getProperty(systemProperty);
+        if (property == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(property);
+    }
 }
@@ -0,0 +1,363 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map of int keys to objects, which keeps its entries sorted by key.
+ * <p>
+ * The keys are stored in a primitive int array next to an array of values,
+ * so there is no boxing of keys and no entry object per mapping, as it is
+ * the case with a {@code TreeMap<Integer,V>}. Lookups are binary searches.
+ * </p>
+ * <p>
+ * The free slots of the arrays are kept as a gap at the position of the last
+ * insertion or removal. Inserting or removing moves the gap to the new position,
+ * i.e. it moves the entries in between. Appending in ascending order, building
+ * in descending order, removing from the start (like removing the top rows of a
+ * sheet) and removing via the iterator therefore take constant time, as each
+ * change happens next to the previous one. Only changes at random positions
+ * take linear time, where a {@code TreeMap} would need logarithmic time.
+ * </p>
+ * <p>
+ * This is meant for the typical spreadsheet access pattern, i.e. rows and
+ * cells are mostly created in ascending order and looked up by index.
+ * </p>
+ *
+ * @param <V> the type of the values
+ */
+@Internal
+public class SortedIntMap<V> {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // the entries are stored in front of and after the gap of free slots
+    private int[] _keys;
+    private Object[] _values;
+    private int _size;
+    // the (logical and physical) index of the first free slot
+    private int _gapStart;
+    private int _modCount;
+
+    /**
+     * create a map with the default capacity
+     */
+    public SortedIntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * create a map
+     *
+     * @param initialCapacity the number of entries the map can hold before it needs to grow
+     */
+    public SortedIntMap(int initialCapacity) {
+        _keys = new int[Math.max(initialCapacity, 1)];
+        _values = new Object[_keys.length];
+    }
+
+    /**
+     * @return the number of mappings
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return true, if there are no mappings
+     */
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value mapped to the key or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int idx = indexOf(key);
+        return idx < 0 ? null : (V)_values[physical(idx)];
+    }
+
+    /**
+     * Maps the value to the key
+     *
+     * @param key the key
+     * @param value the value
+     * @return the value previously mapped to the key or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int idx = indexOf(key);
+        if (idx >= 0) {
+            int pos = physical(idx);
+            V prev = (V)_values[pos];
+            _values[pos] = value;
+            return prev;
+        }
+        idx = -idx - 1;
+        if (_size == _keys.length) {
+            grow(idx);
+        } else {
+            moveGap(idx);
+        }
+        _keys[idx] = key;
+        _values[idx] = value;
+        _gapStart++;
+        _size++;
+        _modCount++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping of the key
+     *
+     * @param key the key
+     * @return the value which was mapped to the key or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int idx = indexOf(key);
+        if (idx < 0) {
+            return null;
+        }
+        V prev = (V)_values[physical(idx)];
+        removeAt(idx);
+        return prev;
+    }
+
+    /**
+     * Removes all mappings
+     */
+    public void clear() {
+        Arrays.fill(_values, null);
+        _size = 0;
+        _gapStart = 0;
+        _modCount++;
+    }
+
+    /**
+     * @return the lowest key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public int firstKey() {
+        if (_size == 0) {
+            throw new NoSuchElementException();
+        }
+        return _keys[physical(0)];
+    }
+
+    /**
+     * @return the highest key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public int lastKey() {
+        if (_size == 0) {
+            throw new NoSuchElementException();
+        }
+        return _keys[physical(_size - 1)];
+    }
+
+    /**
+     * Counts the keys which are lower than the given key.
+     * This is the same as {@code headMap(key).size()} of a {@link java.util.SortedMap},
+     * but doesn't need to walk the entries.
+     *
+     * @param key the (exclusive) upper bound
+     * @return the number of keys lower than key
+     */
+    public int headSize(int key) {
+        int idx = indexOf(key);
+        return idx < 0 ? -idx - 1 : idx;
+    }
+
+    /**
+     * @return a view of the values in ascending key order, its iterator supports removal
+     */
+    public Collection<V> values() {
+        return new Values(Integer.MIN_VALUE, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * @param fromKey the lowest key (inclusive)
+     * @param toKey the highest key (exclusive)
+     * @return a view of the values of the given key range in ascending key order
+     */
+    public Collection<V> values(int fromKey, int toKey) {
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new Values(fromKey, toKey, false);
+    }
+
+    /**
+     * @return the array index of the entry with the given (logical) index
+     */
+    private int physical(int idx) {
+        return idx < _gapStart ? idx : idx + _keys.length - _size;
+    }
+
+    /**
+     * @return the (logical) index of the key or {@code -(insertion point) - 1}
+     */
+    private int indexOf(int key) {
+        // fast path for appending and for accessing the last entry
+        if (_size == 0) {
+            return -1;
+        }
+        int lastKey = _keys[physical(_size - 1)];
+        if (key > lastKey) {
+            return -_size - 1;
+        }
+        if (key == lastKey) {
+            return _size - 1;
+        }
+        if (_gapStart > 0 && key <= _keys[_gapStart - 1]) {
+            return Arrays.binarySearch(_keys, 0, _gapStart, key);
+        }
+        int gapLength = _keys.length - _size;
+        int idx = Arrays.binarySearch(_keys, _gapStart + gapLength, _keys.length, key);
+        return idx < 0 ? idx + gapLength : idx - gapLength;
+    }
+
+    /**
+     * Moves the gap to the given (logical) index by moving the entries in between
+     */
+    private void moveGap(int idx) {
+        int gapLength = _keys.length - _size;
+        if (idx < _gapStart) {
+            int moved = _gapStart - idx;
+            System.arraycopy(_keys, idx, _keys, idx + gapLength, moved);
+            System.arraycopy(_values, idx, _values, idx + gapLength, moved);
+            Arrays.fill(_values, idx, Math.min(_gapStart, idx + gapLength), null);
+        } else if (idx > _gapStart) {
+            int moved = idx - _gapStart;
+            System.arraycopy(_keys, _gapStart + gapLength, _keys, _gapStart, moved);
+            System.arraycopy(_values, _gapStart + gapLength, _values, _gapStart, moved);
+            Arrays.fill(_values, Math.max(idx, _gapStart + gapLength), idx + gapLength, null);
+        }
+        _gapStart = idx;
+    }
+
+    /**
+     * Enlarges the arrays, with the new gap at the given (logical) index
+     */
+    private void grow(int idx) {
+        int newCapacity = _size + (_size >> 1) + 1;
+        int[] keys = new int[newCapacity];
+        Object[] values = new Object[newCapacity];
+        // the arrays are full, so the physical and logical indexes are the same
+        System.arraycopy(_keys, 0, keys, 0, idx);
+        System.arraycopy(_values, 0, values, 0, idx);
+        int tail = _size - idx;
+        System.arraycopy(_keys, idx, keys, newCapacity - tail, tail);
+        System.arraycopy(_values, idx, values, newCapacity - tail, tail);
+        _keys = keys;
+        _values = values;
+        _gapStart = idx;
+    }
+
+    private void removeAt(int idx) {
+        moveGap(idx);
+        // the entry is now right after the gap, which grows by its slot
+        _values[idx + _keys.length - _size] = null;
+        _size--;
+        _modCount++;
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        private final int _fromKey;
+        private final int _toKey;
+        private final boolean _all;
+
+        Values(int fromKey, int toKey, boolean all) {
+            _fromKey = fromKey;
+            _toKey = toKey;
+            _all = all;
+        }
+
+        private int start() {
+            return _all ? 0 : headSize(_fromKey);
+        }
+
+        private int end() {
+            return _all ? _size : headSize(_toKey);
+        }
+
+        @Override
+        public int size() {
+            return end() - start();
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator(start(), end());
+        }
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+        private int _next;
+        private int _end;
+        private int _last = -1;
+        private int _expectedModCount = _modCount;
+
+        ValueIterator(int start, int end) {
+            _next = start;
+            _end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next < _end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (_modCount != _expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (_next >= _end) {
+                throw new NoSuchElementException();
+            }
+            _last = _next++;
+            return (V)_values[physical(_last)];
+        }
+
+        @Override
+        public void remove() {
+            if (_last < 0) {
+                throw new IllegalStateException();
+            }
+            if (_modCount != _expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(_last);
+            _next = _last;
+            _end--;
+            _last = -1;
+            _expectedModCount = _modCount;
+        }
+    }
+}
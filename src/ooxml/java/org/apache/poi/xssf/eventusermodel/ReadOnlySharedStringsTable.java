@@ -138,6 +138,17 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
         }
     }
 
+    /**
+     * Constructor for subclasses, which need to be set up before the strings are
+     * read with {@link #readFrom(InputStream)}
+     *
+     * @param includePhoneticRuns whether or not to concatenate phoneticRuns onto the shared string
+     * @since POI 4.0.0
+     */
+    protected ReadOnlySharedStringsTable(boolean includePhoneticRuns) {
+        this.includePhoneticRuns = includePhoneticRuns;
+    }
+
     /**
      * Like POIXMLDocumentPart constructor
      *
@@ -221,6 +232,26 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
         return strings;
     }
 
+    /**
+     * Called when the shared strings table starts, before the first string is added
+     *
+     * @param uniqueCount the number of unique strings as stated by the table, may be 0 if it's missing
+     * @since POI 4.0.0
+     */
+    protected void startEntries(int uniqueCount) {
+        this.strings = new ArrayList<>(uniqueCount);
+    }
+
+    /**
+     * Called for each string parsed from the table, in the order of their indexes
+     *
+     * @param entry the string, without formatting
+     * @since POI 4.0.0
+     */
+    protected void addEntry(String entry) {
+        strings.add(entry);
+    }
+
     //// ContentHandler methods ////
 
     private StringBuilder characters;
@@ -239,7 +270,7 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
             String uniqueCount = attributes.getValue("uniqueCount");
             if(uniqueCount != null) this.uniqueCount = Integer.parseInt(uniqueCount);
 
-            this.strings = new ArrayList<>(this.uniqueCount);
+            startEntries(this.uniqueCount);
             this.phoneticStrings = new HashMap<>();
             characters = new StringBuilder(64);
         } else if ("si".equals(localName)) {
@@ -262,7 +293,7 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
         }
 
         if ("si".equals(localName)) {
-            strings.add(characters.toString());
+            addEntry(characters.toString());
         } else if ("t".equals(localName)) {
             tIsOpen = false;
         } else if ("rPh".equals(localName)) {
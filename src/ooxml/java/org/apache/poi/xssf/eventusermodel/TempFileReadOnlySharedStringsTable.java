@@ -0,0 +1,235 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.SAXException;
+
+/**
+ * A {@link ReadOnlySharedStringsTable}, which keeps the strings in a memory mapped temp file
+ * instead of a list of Strings on the heap.
+ * <p>
+ * The strings are stored UTF-8 encoded one after another in the temp file, the heap only
+ * holds an int offset per string. A String is created, when the entry is looked up,
+ * the recently used ones are cached. This allows to process workbooks with millions of shared
+ * strings, at the price of slower lookups. It can be passed to the {@link XSSFSheetXMLHandler}
+ * like the default table and may be shared by concurrently parsed sheets.
+ * </p>
+ * <p>
+ * The table needs to be closed to remove the temp file.
+ * </p>
+ */
+public class TempFileReadOnlySharedStringsTable extends ReadOnlySharedStringsTable implements Closeable {
+    private static final POILogger logger = POILogFactory.getLogger(TempFileReadOnlySharedStringsTable.class);
+
+    // the position within a chunk is stored in the lower bits of an offset, the chunk index in the upper bits
+    private static final int CHUNK_BITS = 24;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << (32 - CHUNK_BITS);
+    private static final int CACHE_SIZE = 4096;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long fileSize;
+    private MappedByteBuffer current;
+    private int[] offsets = new int[1024];
+    private int size;
+    private final CachedEntry[] cache = new CachedEntry[CACHE_SIZE];
+
+    /**
+     * @param pkg The {@link OPCPackage} to use as basis for the shared-strings table.
+     * @throws IOException If reading the data from the package fails.
+     * @throws SAXException if parsing the XML data fails.
+     */
+    public TempFileReadOnlySharedStringsTable(OPCPackage pkg) throws IOException, SAXException {
+        this(pkg, true);
+    }
+
+    /**
+     * @param pkg The {@link OPCPackage} to use as basis for the shared-strings table.
+     * @param includePhoneticRuns whether or not to concatenate phoneticRuns onto the shared string
+     * @throws IOException If reading the data from the package fails.
+     * @throws SAXException if parsing the XML data fails.
+     */
+    public TempFileReadOnlySharedStringsTable(OPCPackage pkg, boolean includePhoneticRuns)
+    throws IOException, SAXException {
+        this(findPart(pkg), includePhoneticRuns);
+    }
+
+    /**
+     * @param part the shared strings part, may be {@code null} if the workbook has none
+     * @param includePhoneticRuns whether or not to concatenate phoneticRuns onto the shared string
+     * @throws IOException If reading the data from the package fails.
+     * @throws SAXException if parsing the XML data fails.
+     */
+    public TempFileReadOnlySharedStringsTable(PackagePart part, boolean includePhoneticRuns)
+    throws IOException, SAXException {
+        super(includePhoneticRuns);
+        file = TempFile.createTempFile("poi-sst-strings", ".tmp");
+        raf = new RandomAccessFile(file, "rw");
+        if (part != null) {
+            try {
+                readFrom(part.getInputStream());
+            } catch (IOException | SAXException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+    }
+
+    private static PackagePart findPart(OPCPackage pkg) {
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        return parts.isEmpty() ? null : parts.get(0);
+    }
+
+    @Override
+    protected void startEntries(int uniqueCount) {
+        // nothing to set up, the strings are appended to the temp file
+    }
+
+    @Override
+    protected void addEntry(String entry) {
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        int needed = bytes.length + 5;
+        try {
+            if (current == null || current.remaining() < needed) {
+                newChunk(Math.max(CHUNK_SIZE, needed));
+            }
+        } catch (IOException e) {
+            throw new POIXMLException(e);
+        }
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = ((chunks.size() - 1) << CHUNK_BITS) | current.position();
+        writeVarInt(current, bytes.length);
+        current.put(bytes);
+    }
+
+    private void newChunk(int chunkSize) throws IOException {
+        if (chunks.size() == MAX_CHUNKS) {
+            throw new IllegalStateException("The shared strings exceed the maximum size of the temp file");
+        }
+        current = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, fileSize, chunkSize);
+        fileSize += chunkSize;
+        chunks.add(current);
+    }
+
+    private static void writeVarInt(ByteBuffer bb, int value) {
+        while ((value & ~0x7F) != 0) {
+            bb.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        bb.put((byte)value);
+    }
+
+    @Override
+    public String getEntryAt(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+        int slot = idx & (CACHE_SIZE - 1);
+        CachedEntry ce = cache[slot];
+        if (ce != null && ce.idx == idx) {
+            return ce.value;
+        }
+
+        int offset = offsets[idx];
+        // use a duplicate, as lookups may happen concurrently
+        ByteBuffer bb = chunks.get(offset >>> CHUNK_BITS).duplicate();
+        bb.position(offset & (CHUNK_SIZE - 1));
+        int len = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bb.get();
+            len |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[len];
+        bb.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        cache[slot] = new CachedEntry(idx, value);
+        return value;
+    }
+
+    /**
+     * @return a view of the strings, which are read from the temp file on access
+     */
+    @Override
+    public List<String> getItems() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getEntryAt(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Removes the temp file
+     */
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        current = null;
+        try {
+            raf.close();
+        } finally {
+            // on Windows, the file can only be deleted after the mapped buffers have been garbage collected
+            if (file.exists() && !file.delete()) {
+                logger.log(POILogger.WARN, "Can't delete temporary file: " + file);
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static final class CachedEntry {
+        final int idx;
+        final String value;
+
+        CachedEntry(int idx, String value) {
+            this.idx = idx;
+            this.value = value;
+        }
+    }
+}
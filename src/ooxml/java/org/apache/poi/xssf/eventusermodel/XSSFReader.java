@@ -19,6 +19,7 @@ package org.apache.poi.xssf.eventusermodel;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -29,6 +30,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.apache.poi.POIXMLException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
@@ -40,9 +44,11 @@ import org.apache.poi.openxml4j.opc.PackageRelationship;
 import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
 import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
 import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
 import org.apache.poi.xssf.model.CommentsTable;
 import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.model.StylesTable;
@@ -195,6 +201,96 @@ public class XSSFReader {
         return new SheetIterator(workbookPart);
     }
 
+    /**
+     * Parses all sheets concurrently, each sheet is parsed by a task on the given executor
+     *  and reported to its own {@link SheetContentsHandler}.
+     * <p>
+     * The styles and shared strings tables are shared by all tasks and must not be modified
+     *  meanwhile. Each task uses its own {@link DataFormatter}, as it isn't thread-safe.
+     *  This method returns when all sheets have been parsed and rethrows the first failure
+     *  in sheet order, the remaining tasks are cancelled in that case.
+     *
+     * @param executor the executor to run the parsing tasks on
+     * @param styles the styles of the workbook, may be {@code null}
+     * @param strings the shared strings of the workbook
+     * @param handlerFactory provides the handler of each sheet, it's called by the parsing task
+     * @param formulasNotResults whether to report the formulas instead of their cached results
+     * @since POI 4.0.0
+     */
+    public void parseSheets(Executor executor, final StylesTable styles, final ReadOnlySharedStringsTable strings,
+            final SheetContentsHandlerFactory handlerFactory, final boolean formulasNotResults)
+    throws IOException, SAXException, InvalidFormatException {
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        try {
+            SheetIterator iter = (SheetIterator)getSheetsData();
+            for (int i = 0; iter.hasNext(); i++) {
+                iter.next().close();
+                final int sheetIndex = i;
+                final String sheetName = iter.getSheetName();
+                final PackagePart sheetPart = iter.getSheetPart();
+                final CommentsTable comments = iter.getSheetComments();
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    SheetContentsHandler handler = handlerFactory.create(sheetIndex, sheetName);
+                    XMLReader sheetParser = SAXHelper.newXMLReader();
+                    sheetParser.setContentHandler(new XSSFSheetXMLHandler(
+                            styles, comments, strings, handler, new DataFormatter(), formulasNotResults));
+                    try (InputStream is = sheetPart.getInputStream()) {
+                        sheetParser.parse(new InputSource(is));
+                    }
+                    return null;
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+            for (FutureTask<Void> task : tasks) {
+                waitFor(task);
+            }
+        } finally {
+            for (FutureTask<Void> task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static void waitFor(FutureTask<Void> task) throws IOException, SAXException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the sheets to be parsed");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new POIXMLException(cause);
+        }
+    }
+
+    /**
+     * Provides the handlers for {@link #parseSheets(Executor, StylesTable, ReadOnlySharedStringsTable,
+     *  SheetContentsHandlerFactory, boolean)}
+     */
+    public interface SheetContentsHandlerFactory {
+        /**
+         * Called by the task parsing the sheet, before it starts
+         *
+         * @param sheetIndex the (0 based) index of the sheet
+         * @param sheetName the name of the sheet
+         * @return the handler for the rows and cells of the sheet
+         */
+        SheetContentsHandler create(int sheetIndex, String sheetName);
+    }
+
     /**
      * Iterator over sheet data.
      */
@@ -0,0 +1,650 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.xssf.eventusermodel;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.ZipPackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.BoundedInputStream;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads ranges of rows of a (large) worksheet part, without parsing the rows in front of them.
+ * <p>
+ * When the reader is created, the inflated sheet XML is scanned once for the start of every
+ * n-th row. The resulting row index only holds a few numbers per sampled row and can be
+ * stored in a cache file, so it is reused the next time the same file is opened.
+ * The cached index is only reused, if the CRC32 and the size of the sheet part match.
+ * A range of rows is then read by inflating the sheet again, skipping the bytes in front of
+ * the nearest indexed row and parsing only the XML of the requested rows with the
+ * {@link XSSFSheetXMLHandler}. The shared strings, the styles and the cell comments are
+ * therefore handled like with the usual event API.
+ * </p>
+ * <p>
+ * The rows need to be stored in ascending order, as required by the specification,
+ * and the sheet XML needs to be UTF-8 encoded.
+ * </p>
+ * <p>Example:</p>
+ * <pre>
+ *   XSSFReader reader = new XSSFReader(pkg);
+ *   XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) reader.getSheetsData();
+ *   iter.next();
+ *   XSSFRowRangeReader rows = new XSSFRowRangeReader(iter.getSheetPart(),
+ *       reader.getStylesTable(), new ReadOnlySharedStringsTable(pkg));
+ *   rows.readRows(2000000, 2000500, handler);
+ * </pre>
+ */
+public class XSSFRowRangeReader {
+    private static final POILogger logger = POILogFactory.getLogger(XSSFRowRangeReader.class);
+
+    /**
+     * Default number of rows between two indexed rows
+     */
+    public static final int DEFAULT_INDEX_INTERVAL = 1024;
+
+    private final PackagePart sheetPart;
+    private final StylesTable styles;
+    private final ReadOnlySharedStringsTable strings;
+    private final RowIndex index;
+    private CommentsTable comments;
+    private DataFormatter formatter = new DataFormatter();
+    private boolean formulasNotResults;
+
+    /**
+     * Creates a reader, the row index is built in memory
+     *
+     * @param sheetPart the worksheet part
+     * @param styles the styles of the workbook
+     * @param strings the shared strings of the workbook
+     * @throws IOException if the sheet part can't be read
+     */
+    public XSSFRowRangeReader(PackagePart sheetPart, StylesTable styles, ReadOnlySharedStringsTable strings)
+    throws IOException {
+        this(sheetPart, styles, strings, null, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * Creates a reader
+     *
+     * @param sheetPart the worksheet part
+     * @param styles the styles of the workbook
+     * @param strings the shared strings of the workbook
+     * @param indexCache the file to reuse the row index from, if it matches the sheet part,
+     *                   otherwise the row index is built and stored there. May be {@code null}.
+     *                   Without a CRC in the zip entry, e.g. for packages opened from a stream,
+     *                   the sheet part is read once more to verify the cached index.
+     * @param indexInterval the number of rows between two indexed rows, i.e. the maximum
+     *                   number of rows which need to be parsed in front of a requested range
+     * @throws IOException if the sheet part can't be read or the index cache can't be written
+     */
+    public XSSFRowRangeReader(PackagePart sheetPart, StylesTable styles, ReadOnlySharedStringsTable strings,
+            File indexCache, int indexInterval) throws IOException {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("The index interval needs to be positive, but was " + indexInterval);
+        }
+        this.sheetPart = sheetPart;
+        this.styles = styles;
+        this.strings = strings;
+
+        String partName = sheetPart.getPartName().getName();
+        PartFingerprint fingerprint = PartFingerprint.fromZipEntry(sheetPart);
+        if (fingerprint == null && indexCache != null) {
+            fingerprint = PartFingerprint.read(sheetPart);
+        }
+        RowIndex idx = null;
+        if (indexCache != null && indexCache.length() > 0) {
+            idx = RowIndex.readFrom(indexCache, partName, fingerprint, indexInterval);
+        }
+        if (idx == null) {
+            try (InputStream is = sheetPart.getInputStream()) {
+                idx = RowIndex.build(is, partName, fingerprint, indexInterval);
+            }
+            if (indexCache != null) {
+                idx.writeTo(indexCache);
+            }
+        }
+        this.index = idx;
+    }
+
+    /**
+     * @param comments the comments of the sheet, to be reported with the cells, may be {@code null}
+     */
+    public void setCommentsTable(CommentsTable comments) {
+        this.comments = comments;
+    }
+
+    /**
+     * @param formatter the formatter for the cell values
+     */
+    public void setDataFormatter(DataFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * @param formulasNotResults whether to report the formulas instead of their cached results
+     */
+    public void setFormulasNotResults(boolean formulasNotResults) {
+        this.formulasNotResults = formulasNotResults;
+    }
+
+    /**
+     * @return the (0 based) number of the first row or -1 if the sheet has no rows
+     */
+    public int getFirstRowNum() {
+        return index.firstRow;
+    }
+
+    /**
+     * @return the (0 based) number of the last row or -1 if the sheet has no rows
+     */
+    public int getLastRowNum() {
+        return index.lastRow;
+    }
+
+    /**
+     * @return the number of rows stored in the sheet
+     */
+    public int getPhysicalNumberOfRows() {
+        return index.rowCount;
+    }
+
+    /**
+     * Reports the rows with numbers between firstRow and lastRow (inclusive) to the handler.
+     * {@link SheetContentsHandler#endSheet()} is called at the end of the range.
+     *
+     * @param firstRow the (0 based) number of the first row to read
+     * @param lastRow the (0 based) number of the last row to read
+     * @param handler the handler receiving the rows and cells
+     * @throws IOException if the sheet part can't be read
+     * @throws SAXException if the sheet XML can't be parsed
+     */
+    public void readRows(int firstRow, int lastRow, SheetContentsHandler handler) throws IOException, SAXException {
+        if (firstRow < 0 || firstRow > lastRow) {
+            throw new IllegalArgumentException("Invalid row range " + firstRow + " - " + lastRow);
+        }
+        XSSFSheetXMLHandler xmlHandler = new XSSFSheetXMLHandler(styles, comments, strings,
+                new RowWindowHandler(handler, firstRow, lastRow), formatter, formulasNotResults);
+        try (InputStream is = index.openWindow(sheetPart, firstRow, lastRow)) {
+            XMLReader sheetParser = SAXHelper.newXMLReader();
+            sheetParser.setContentHandler(xmlHandler);
+            sheetParser.parse(new InputSource(is));
+        } catch(ParserConfigurationException e) {
+            throw new RuntimeException("SAX parser appears to be broken - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Only passes on the rows of the requested range, as the parsed window
+     * starts and ends at indexed rows
+     */
+    private static final class RowWindowHandler implements SheetContentsHandler {
+        private final SheetContentsHandler delegate;
+        private final int firstRow;
+        private final int lastRow;
+        private boolean inRange;
+
+        RowWindowHandler(SheetContentsHandler delegate, int firstRow, int lastRow) {
+            this.delegate = delegate;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            inRange = rowNum >= firstRow && rowNum <= lastRow;
+            if (inRange) {
+                delegate.startRow(rowNum);
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (inRange) {
+                delegate.endRow(rowNum);
+            }
+            inRange = false;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (inRange) {
+                delegate.cell(cellReference, formattedValue, comment);
+            }
+        }
+
+        @Override
+        public void endSheet() {
+            delegate.endSheet();
+        }
+    }
+
+    /**
+     * Identifies the content of a sheet part, as the part names are the same in all workbooks
+     */
+    private static final class PartFingerprint {
+        private static final long UNKNOWN = -1;
+
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+
+        private PartFingerprint(long crc, long size, long compressedSize) {
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * @return the fingerprint from the zip entry of the part or {@code null}, if the
+         *  entry doesn't know its CRC, e.g. for packages opened from a stream
+         */
+        static PartFingerprint fromZipEntry(PackagePart part) {
+            if (!(part instanceof ZipPackagePart)) {
+                return null;
+            }
+            ZipEntry ze = ((ZipPackagePart)part).getZipArchive();
+            if (ze == null || ze.getCrc() == UNKNOWN || ze.getSize() == UNKNOWN) {
+                return null;
+            }
+            return new PartFingerprint(ze.getCrc(), ze.getSize(), ze.getCompressedSize());
+        }
+
+        /**
+         * Calculates the fingerprint from the inflated content of the part
+         */
+        static PartFingerprint read(PackagePart part) throws IOException {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            byte[] buf = new byte[ByteScanner.BUFFER_SIZE];
+            try (InputStream is = part.getInputStream()) {
+                int count;
+                while ((count = is.read(buf)) != -1) {
+                    crc.update(buf, 0, count);
+                    size += count;
+                }
+            }
+            return new PartFingerprint(crc.getValue(), size, UNKNOWN);
+        }
+
+        void writeTo(DataOutputStream dos) throws IOException {
+            dos.writeLong(crc);
+            dos.writeLong(size);
+            dos.writeLong(compressedSize);
+        }
+
+        static PartFingerprint readFrom(DataInputStream dis) throws IOException {
+            return new PartFingerprint(dis.readLong(), dis.readLong(), dis.readLong());
+        }
+
+        /**
+         * The compressed sizes are only compared, if both are known
+         */
+        boolean matches(PartFingerprint other) {
+            return crc == other.crc && size == other.size
+                && (compressedSize == UNKNOWN || other.compressedSize == UNKNOWN
+                    || compressedSize == other.compressedSize);
+        }
+    }
+
+    /**
+     * The byte offsets of every n-th row within the inflated sheet XML
+     */
+    private static final class RowIndex {
+        private static final int MAGIC = 0x58524958;
+        private static final int VERSION = 2;
+        private static final Pattern ROW_NUM = Pattern.compile("\\sr\\s*=\\s*[\"'](\\d+)[\"']");
+
+        private final String partName;
+        // null, if the index isn't cached and the zip entry doesn't know the CRC
+        private final PartFingerprint fingerprint;
+        private final int interval;
+        // start tag of the document element, for the namespace declarations
+        private byte[] rootTag;
+        private String rootName;
+        private String sheetDataName;
+        // offsets of the sheet data content
+        private long dataStart;
+        private long dataEnd;
+        private int rowCount;
+        private int firstRow = -1;
+        private int lastRow = -1;
+        private int samples;
+        private int[] sampleRows = new int[64];
+        private long[] sampleOffsets = new long[64];
+
+        private RowIndex(String partName, PartFingerprint fingerprint, int interval) {
+            this.partName = partName;
+            this.fingerprint = fingerprint;
+            this.interval = interval;
+        }
+
+        static RowIndex build(InputStream is, String partName, PartFingerprint fingerprint, int interval) throws IOException {
+            RowIndex idx = new RowIndex(partName, fingerprint, interval);
+            ByteScanner in = new ByteScanner(is);
+            StringBuilder name = new StringBuilder(32);
+            StringBuilder attrs = new StringBuilder(128);
+            int nextRow = 0;
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c != '<') {
+                    continue;
+                }
+                long tagStart = in.position() - 1;
+                c = in.read();
+                if (c == '?') {
+                    in.skipPast("?>");
+                    continue;
+                }
+                if (c == '!') {
+                    c = in.read();
+                    in.skipPast(c == '-' ? "-->" : c == '[' ? "]]>" : ">");
+                    continue;
+                }
+                boolean closing = (c == '/');
+                if (closing) {
+                    c = in.read();
+                }
+                name.setLength(0);
+                while (c != -1 && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+                    name.append((char)c);
+                    c = in.read();
+                }
+                String localName = localName(name);
+
+                if (closing) {
+                    if (idx.sheetDataName != null && "sheetData".equals(localName)) {
+                        idx.dataEnd = tagStart;
+                        break;
+                    }
+                    in.skipTag(c, null);
+                    continue;
+                }
+                if (idx.rootTag == null) {
+                    attrs.setLength(0);
+                    in.skipTag(c, attrs);
+                    idx.rootName = name.toString();
+                    idx.rootTag = ("<" + idx.rootName + attrs).getBytes(StandardCharsets.UTF_8);
+                    continue;
+                }
+                if (idx.sheetDataName != null && "row".equals(localName)) {
+                    attrs.setLength(0);
+                    in.skipTag(c, attrs);
+                    Matcher m = ROW_NUM.matcher(attrs);
+                    int rowNum = m.find() ? Integer.parseInt(m.group(1)) - 1 : nextRow;
+                    idx.addRow(rowNum, tagStart);
+                    nextRow = rowNum + 1;
+                    continue;
+                }
+                boolean empty = in.skipTag(c, null);
+                if (idx.sheetDataName == null && "sheetData".equals(localName)) {
+                    idx.sheetDataName = name.toString();
+                    idx.dataStart = in.position();
+                    if (empty) {
+                        idx.dataEnd = in.position();
+                        break;
+                    }
+                }
+            }
+            if (idx.rootTag == null) {
+                throw new IOException("The sheet part " + partName + " doesn't contain any XML");
+            }
+            if (idx.sheetDataName == null) {
+                int colon = idx.rootName.indexOf(':');
+                idx.sheetDataName = idx.rootName.substring(0, colon + 1) + "sheetData";
+            }
+            return idx;
+        }
+
+        private static String localName(CharSequence qName) {
+            String s = qName.toString();
+            return s.substring(s.indexOf(':') + 1);
+        }
+
+        private void addRow(int rowNum, long offset) {
+            if (rowCount % interval == 0) {
+                if (samples == sampleRows.length) {
+                    sampleRows = Arrays.copyOf(sampleRows, samples * 2);
+                    sampleOffsets = Arrays.copyOf(sampleOffsets, samples * 2);
+                }
+                sampleRows[samples] = rowNum;
+                sampleOffsets[samples] = offset;
+                samples++;
+            }
+            if (rowCount == 0) {
+                firstRow = rowNum;
+            }
+            lastRow = rowNum;
+            rowCount++;
+        }
+
+        InputStream openWindow(PackagePart part, int first, int last) throws IOException {
+            // the last indexed row at or before the first requested row
+            int from = Arrays.binarySearch(sampleRows, 0, samples, first);
+            if (from < 0) {
+                from = -from - 2;
+            }
+            // the first indexed row after the last requested row
+            int to = Arrays.binarySearch(sampleRows, 0, samples, last);
+            to = (to < 0) ? -to - 1 : to + 1;
+
+            long start = (from < 0) ? dataStart : sampleOffsets[from];
+            long end = (to >= samples) ? dataEnd : sampleOffsets[to];
+
+            InputStream body;
+            if (end > start) {
+                InputStream is = part.getInputStream();
+                if (IOUtils.skipFully(is, start) != start) {
+                    is.close();
+                    throw new IOException("The sheet part " + partName + " doesn't match its row index");
+                }
+                body = new BoundedInputStream(is, end - start);
+            } else {
+                body = new ByteArrayInputStream(new byte[0]);
+            }
+
+            byte[] head = ("<" + sheetDataName + ">").getBytes(StandardCharsets.UTF_8);
+            byte[] tail = ("</" + sheetDataName + "></" + rootName + ">").getBytes(StandardCharsets.UTF_8);
+            return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(rootTag), new ByteArrayInputStream(head),
+                    new BufferedInputStream(body, ByteScanner.BUFFER_SIZE), new ByteArrayInputStream(tail))));
+        }
+
+        void writeTo(File file) throws IOException {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeUTF(partName);
+                fingerprint.writeTo(dos);
+                dos.writeInt(interval);
+                dos.writeInt(rootTag.length);
+                dos.write(rootTag);
+                dos.writeUTF(rootName);
+                dos.writeUTF(sheetDataName);
+                dos.writeLong(dataStart);
+                dos.writeLong(dataEnd);
+                dos.writeInt(rowCount);
+                dos.writeInt(firstRow);
+                dos.writeInt(lastRow);
+                dos.writeInt(samples);
+                for (int i = 0; i < samples; i++) {
+                    dos.writeInt(sampleRows[i]);
+                    dos.writeLong(sampleOffsets[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the index stored in the file or {@code null}, if the file doesn't
+         *  contain an index of the given part content and interval
+         */
+        static RowIndex readFrom(File file, String partName, PartFingerprint fingerprint, int interval) {
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+                    || !partName.equals(dis.readUTF()) || !fingerprint.matches(PartFingerprint.readFrom(dis))
+                    || dis.readInt() != interval) {
+                    return null;
+                }
+                RowIndex idx = new RowIndex(partName, fingerprint, interval);
+                idx.rootTag = IOUtils.safelyAllocate(dis.readInt(), 1 << 20);
+                dis.readFully(idx.rootTag);
+                idx.rootName = dis.readUTF();
+                idx.sheetDataName = dis.readUTF();
+                idx.dataStart = dis.readLong();
+                idx.dataEnd = dis.readLong();
+                idx.rowCount = dis.readInt();
+                idx.firstRow = dis.readInt();
+                idx.lastRow = dis.readInt();
+                idx.samples = dis.readInt();
+                idx.sampleRows = new int[idx.samples];
+                idx.sampleOffsets = new long[idx.samples];
+                for (int i = 0; i < idx.samples; i++) {
+                    idx.sampleRows[i] = dis.readInt();
+                    idx.sampleOffsets[i] = dis.readLong();
+                }
+                return idx;
+            } catch (IOException e) {
+                logger.log(POILogger.WARN, "Can't read the row index from " + file + ", it will be rebuilt", e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads the inflated sheet XML byte by byte and keeps track of the position
+     */
+    private static final class ByteScanner {
+        static final int BUFFER_SIZE = 64 * 1024;
+
+        private final InputStream is;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private final ByteArrayOutputStream raw = new ByteArrayOutputStream(128);
+        private int len;
+        private int pos;
+        private long offset;
+
+        ByteScanner(InputStream is) {
+            this.is = is;
+        }
+
+        int read() throws IOException {
+            if (pos == len) {
+                offset += len;
+                len = IOUtils.readFully(is, buf);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        /**
+         * @return the offset of the next byte to be read
+         */
+        long position() {
+            return offset + pos;
+        }
+
+        void skipPast(String terminator) throws IOException {
+            int n = terminator.length();
+            int[] last = new int[n];
+            int count = 0;
+            int c;
+            while ((c = read()) != -1) {
+                last[count++ % n] = c;
+                if (count >= n && endsWith(last, count, terminator)) {
+                    return;
+                }
+            }
+        }
+
+        private static boolean endsWith(int[] last, int count, String terminator) {
+            int n = terminator.length();
+            for (int i = 0; i < n; i++) {
+                if (last[(count - n + i) % n] != terminator.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Skips the rest of a tag, quoted attribute values may contain '&gt;'
+         *
+         * @param c the current character
+         * @param capture if not null, the skipped characters are appended
+         * @return true, if the tag is an empty element tag
+         */
+        boolean skipTag(int c, StringBuilder capture) throws IOException {
+            int quote = 0;
+            int prev = 0;
+            raw.reset();
+            while (c != -1) {
+                if (capture != null) {
+                    raw.write(c);
+                }
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    break;
+                }
+                prev = c;
+                c = read();
+            }
+            if (capture != null) {
+                capture.append(new String(raw.toByteArray(), StandardCharsets.UTF_8));
+            }
+            return prev == '/';
+        }
+    }
+}
@@ -79,6 +79,11 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
     */
    private final SheetContentsHandler output;
 
+   /**
+    * Where our typed values are going, if no text is requested
+    */
+   private final SheetValuesHandler valuesOutput;
+
    // Set when V start element is seen
    private boolean vIsOpen;
    // Set when F start element is seen
@@ -101,6 +106,11 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
    private String cellRef;
    private boolean formulasNotResults;
 
+   // Used for the typed values
+   private int colNum;
+   private int styleIndex;
+   private boolean stringFormula;
+
    // Gathers characters as they are seen.
    private StringBuilder value = new StringBuilder(64);
    private StringBuilder formula = new StringBuilder(64);
@@ -125,6 +135,7 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
        this.commentsTable = comments;
        this.sharedStringsTable = strings;
        this.output = sheetContentsHandler;
+       this.valuesOutput = null;
        this.formulasNotResults = formulasNotResults;
        this.nextDataType = xssfDataType.NUMBER;
        this.formatter = dataFormatter;
@@ -159,6 +170,30 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            boolean formulasNotResults) {
        this(styles, strings, sheetContentsHandler, new DataFormatter(), formulasNotResults);
    }
+
+   /**
+    * Accepts objects needed while parsing. The cells are reported with their raw,
+    *  typed values to the {@link SheetValuesHandler}, without creating cell references
+    *  or formatted values. Formula cells are reported with their cached results,
+    *  cell comments are ignored.
+    *
+    * @param styles  Table of styles, only used by {@link #formatRawCellContents(double, int)}
+    * @param strings Table of shared strings, not used by the handler itself, as
+    *  shared string cells are reported with their index
+    * @param sheetValuesHandler the receiver of the row and cell events
+    * @since POI 4.0.0
+    */
+   public XSSFSheetXMLHandler(
+           StylesTable styles,
+           ReadOnlySharedStringsTable strings,
+           SheetValuesHandler sheetValuesHandler) {
+       this.stylesTable = styles;
+       this.sharedStringsTable = strings;
+       this.output = null;
+       this.valuesOutput = sheetValuesHandler;
+       this.nextDataType = xssfDataType.NUMBER;
+       this.formatter = new DataFormatter();
+   }
    
    private void init() {
        if (commentsTable != null) {
@@ -252,7 +287,15 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            } else {
                rowNum = nextRowNum;
            }
-           output.startRow(rowNum);
+           if (valuesOutput != null) {
+               colNum = -1;
+               valuesOutput.startRow(rowNum);
+           } else {
+               output.startRow(rowNum);
+           }
+       }
+       else if ("c".equals(localName) && valuesOutput != null) {
+           startValueCell(attributes);
        }
        // c => cell
        else if ("c".equals(localName)) {
@@ -307,6 +350,11 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
        // v => contents of a cell
        if (isTextTag(localName)) {
            vIsOpen = false;
+
+           if (valuesOutput != null) {
+               outputValue();
+               return;
+           }
            
            // Process the value contents as required, now we have it all
            switch (nextDataType) {
@@ -387,7 +435,11 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
           checkForEmptyCellComments(EmptyCellCommentsCheckType.END_OF_ROW);
           
           // Finish up the row
-          output.endRow(rowNum);
+          if (valuesOutput != null) {
+              valuesOutput.endRow(rowNum);
+          } else {
+              output.endRow(rowNum);
+          }
           
           // some sheets do not have rowNum set in the XML, Excel can read them so we should try to read them as well
           nextRowNum = rowNum + 1;
@@ -396,20 +448,251 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            checkForEmptyCellComments(EmptyCellCommentsCheckType.END_OF_SHEET_DATA);
 
            // indicate that this sheet is now done
-           output.endSheet();
+           if (valuesOutput != null) {
+               valuesOutput.endSheet();
+           } else {
+               output.endSheet();
+           }
        }
        else if("oddHeader".equals(localName) || "evenHeader".equals(localName) ||
              "firstHeader".equals(localName)) {
           hfIsOpen = false;
-          output.headerFooter(headerFooter.toString(), true, localName);
+          if (output != null) {
+              output.headerFooter(headerFooter.toString(), true, localName);
+          }
        }
        else if("oddFooter".equals(localName) || "evenFooter".equals(localName) ||
              "firstFooter".equals(localName)) {
           hfIsOpen = false;
-          output.headerFooter(headerFooter.toString(), false, localName);
+          if (output != null) {
+              output.headerFooter(headerFooter.toString(), false, localName);
+          }
        }
    }
 
+   /**
+    * Sets up the typed value of a cell, without looking up its style
+    */
+   private void startValueCell(Attributes attributes) {
+       String ref = attributes.getValue("r");
+       // cells without a reference follow the previous cell
+       colNum = (ref != null) ? parseColumn(ref) : colNum + 1;
+       String cellStyleStr = attributes.getValue("s");
+       styleIndex = (cellStyleStr != null) ? Integer.parseInt(cellStyleStr) : 0;
+       String cellType = attributes.getValue("t");
+       stringFormula = "str".equals(cellType);
+       if ("b".equals(cellType))
+           nextDataType = xssfDataType.BOOLEAN;
+       else if ("e".equals(cellType))
+           nextDataType = xssfDataType.ERROR;
+       else if ("inlineStr".equals(cellType))
+           nextDataType = xssfDataType.INLINE_STRING;
+       else if ("s".equals(cellType))
+           nextDataType = xssfDataType.SST_STRING;
+       else if (stringFormula)
+           nextDataType = xssfDataType.FORMULA;
+       else
+           nextDataType = xssfDataType.NUMBER;
+   }
+
+   /**
+    * Reports the typed value of the current cell
+    */
+   private void outputValue() {
+       switch (nextDataType) {
+           case BOOLEAN:
+               valuesOutput.booleanCell(rowNum, colNum, value.length() > 0 && value.charAt(0) != '0', styleIndex);
+               break;
+
+           case ERROR:
+               valuesOutput.errorCell(rowNum, colNum, value, styleIndex);
+               break;
+
+           case INLINE_STRING:
+               valuesOutput.stringCell(rowNum, colNum, decodeIfEscaped(value), styleIndex);
+               break;
+
+           case SST_STRING:
+               try {
+                   valuesOutput.sharedStringCell(rowNum, colNum, parseInt(value), styleIndex);
+               } catch (NumberFormatException ex) {
+                   logger.log(POILogger.ERROR, "Failed to parse SST index '" + value, ex);
+               }
+               break;
+
+           case FORMULA:
+               if (stringFormula) {
+                   valuesOutput.stringCell(rowNum, colNum, decodeIfEscaped(value), styleIndex);
+               } else {
+                   outputNumericValue();
+               }
+               break;
+
+           case NUMBER:
+               outputNumericValue();
+               break;
+
+           default:
+               break;
+       }
+   }
+
+   /**
+    * Reports the numeric value of the current cell, or the text if it isn't a number
+    */
+   private void outputNumericValue() {
+       if (value.length() > 0) {
+           try {
+               valuesOutput.numericCell(rowNum, colNum, parseDouble(value), styleIndex);
+           } catch (NumberFormatException e) {
+               valuesOutput.stringCell(rowNum, colNum, value, styleIndex);
+           }
+       }
+   }
+
+   /**
+    * Formats a numeric value with the data format of a cell style, like it's done for
+    *  the formatted values of the {@link SheetContentsHandler}.
+    *  This is meant to be called by a {@link SheetValuesHandler} on demand.
+    *
+    * @param value the numeric cell value
+    * @param styleIndex the style index of the cell
+    * @return the formatted value
+    * @since POI 4.0.0
+    */
+   public String formatRawCellContents(double value, int styleIndex) {
+       XSSFCellStyle style = (stylesTable != null) ? stylesTable.getStyleAt(styleIndex) : null;
+       if (style == null) {
+           return formatter.formatRawCellContents(value, 0, "General");
+       }
+       short fmtIndex = style.getDataFormat();
+       String fmtString = style.getDataFormatString();
+       if (fmtString == null) {
+           fmtString = BuiltinFormats.getBuiltinFormat(fmtIndex);
+       }
+       return formatter.formatRawCellContents(value, fmtIndex, fmtString);
+   }
+
+   /**
+    * Strings with escaped characters (_xHHHH_) are decoded like the formatted values,
+    *  otherwise the characters are passed as they are.
+    */
+   private static CharSequence decodeIfEscaped(StringBuilder text) {
+       return (text.indexOf("_x") < 0) ? text : new XSSFRichTextString(text.toString()).getString();
+   }
+
+   /**
+    * @return the zero based column index of a cell reference like "AB12"
+    */
+   private static int parseColumn(String ref) {
+       int col = 0;
+       for (int i = 0; i < ref.length(); i++) {
+           char ch = ref.charAt(i);
+           if (ch < 'A' || ch > 'Z') {
+               break;
+           }
+           col = col * 26 + (ch - 'A' + 1);
+       }
+       return col - 1;
+   }
+
+   private static int parseInt(CharSequence text) {
+       int len = text.length();
+       if (len == 0 || len > 9) {
+           return Integer.parseInt(text.toString());
+       }
+       int result = 0;
+       for (int i = 0; i < len; i++) {
+           char ch = text.charAt(i);
+           if (ch < '0' || ch > '9') {
+               return Integer.parseInt(text.toString());
+           }
+           result = result * 10 + (ch - '0');
+       }
+       return result;
+   }
+
+   private static final double[] POWERS_OF_TEN = {
+       1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+       1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
+
+   /**
+    * Parses a number without creating a String first. Numbers with up to 15 significant
+    *  digits and a small exponent are calculated by a single multiplication or division
+    *  of two exactly representable doubles, which gives the same result as
+    *  {@link Double#parseDouble(String)}. All other numbers are left to that method.
+    */
+   private static double parseDouble(CharSequence text) {
+       final int len = text.length();
+       int i = 0;
+       boolean negative = false;
+       if (len > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+           negative = text.charAt(0) == '-';
+           i++;
+       }
+       long mantissa = 0;
+       int digits = 0, scale = 0, exponent = 0;
+       boolean point = false, anyDigit = false;
+       for (; i < len; i++) {
+           char ch = text.charAt(i);
+           if (ch >= '0' && ch <= '9') {
+               anyDigit = true;
+               if (point) {
+                   scale++;
+               }
+               if (mantissa == 0 && ch == '0') {
+                   // leading zeros aren't significant
+                   continue;
+               }
+               if (++digits > 15) {
+                   return Double.parseDouble(text.toString());
+               }
+               mantissa = mantissa * 10 + (ch - '0');
+           } else if (ch == '.' && !point) {
+               point = true;
+           } else if ((ch == 'E' || ch == 'e') && anyDigit && i + 1 < len) {
+               i++;
+               boolean negativeExp = false;
+               if (text.charAt(i) == '-' || text.charAt(i) == '+') {
+                   negativeExp = text.charAt(i) == '-';
+                   i++;
+               }
+               if (i == len || len - i > 3) {
+                   return Double.parseDouble(text.toString());
+               }
+               for (; i < len; i++) {
+                   ch = text.charAt(i);
+                   if (ch < '0' || ch > '9') {
+                       return Double.parseDouble(text.toString());
+                   }
+                   exponent = exponent * 10 + (ch - '0');
+               }
+               if (negativeExp) {
+                   exponent = -exponent;
+               }
+           } else {
+               return Double.parseDouble(text.toString());
+           }
+       }
+       if (!anyDigit) {
+           return Double.parseDouble(text.toString());
+       }
+
+       double result = mantissa;
+       int exp10 = exponent - scale;
+       if (mantissa == 0 || exp10 == 0) {
+           // nothing to scale
+       } else if (exp10 < 0 && exp10 >= -22) {
+           result /= POWERS_OF_TEN[-exp10];
+       } else if (exp10 > 0 && exp10 <= 22) {
+           result *= POWERS_OF_TEN[exp10];
+       } else {
+           return Double.parseDouble(text.toString());
+       }
+       return negative ? -result : result;
+   }
+
    /**
     * Captures characters only if a suitable element is open.
     * Originally was just "v"; extended for inlineStr also.
@@ -526,4 +809,44 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
       /** Signal that the end of a sheet was been reached */
       public default void endSheet() {}
    }
+
+   /**
+    * A low level alternative to the {@link SheetContentsHandler}, which receives the
+    *  cell values as primitives instead of formatted Strings. Rows and columns are zero based,
+    *  the style index refers to the cell styles of the {@link StylesTable}.
+    * <p>
+    * The {@link CharSequence} arguments are only valid while the method is called,
+    *  as the buffer is reused for the next cell.
+    * </p>
+    *
+    * @since POI 4.0.0
+    */
+   public interface SheetValuesHandler {
+      /** A row with the (zero based) row number has started */
+      default void startRow(int rowNum) {}
+
+      /** A row with the (zero based) row number has ended */
+      default void endRow(int rowNum) {}
+
+      /** A numeric cell or a formula with a numeric result was encountered */
+      void numericCell(int rowNum, int colNum, double value, int styleIndex);
+
+      /** A boolean cell or a formula with a boolean result was encountered */
+      void booleanCell(int rowNum, int colNum, boolean value, int styleIndex);
+
+      /**
+       * A shared string cell was encountered, the string can be looked up with
+       *  {@link ReadOnlySharedStringsTable#getEntryAt(int)}
+       */
+      void sharedStringCell(int rowNum, int colNum, int sstIndex, int styleIndex);
+
+      /** An inline string cell or a formula with a string result was encountered */
+      void stringCell(int rowNum, int colNum, CharSequence value, int styleIndex);
+
+      /** An error cell or a formula with an error result, like "#DIV/0!", was encountered */
+      default void errorCell(int rowNum, int colNum, CharSequence errorCode, int styleIndex) {}
+
+      /** Signal that the end of a sheet was been reached */
+      default void endSheet() {}
+   }
 }
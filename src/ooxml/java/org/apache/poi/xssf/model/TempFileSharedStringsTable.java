@@ -0,0 +1,454 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.model;
+
+import static org.apache.poi.POIXMLTypeLoader.DEFAULT_XML_OPTIONS;
+import static org.apache.poi.xssf.usermodel.XSSFRelation.NS_SPREADSHEETML;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.POIXMLException;
+import org.apache.poi.POIXMLRelation;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFFactory;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+/**
+ * Shared strings table which keeps its entries on disk instead of the heap.
+ * <p>
+ * {@link SharedStringsTable} holds every unique string twice on the heap, as
+ * <code>CTRst</code> bean and as key of its lookup map. For streaming workbooks
+ * with millions of unique strings this table instead appends the <code>si</code>
+ * element of each entry to a temp file and finds duplicates via an open addressing hash index in
+ * a memory-mapped file. The entries are only parsed into beans when they are
+ * requested via {@link #getItemAt(int)} and {@link #writeTo(OutputStream)}
+ * copies the XML directly into the <code>sharedStrings.xml</code> part.
+ * </p>
+ * <p>
+ * The table is created for new workbooks via {@link #FACTORY}, e.g.
+ * <code>new SXSSFWorkbook(new XSSFWorkbook(TempFileSharedStringsTable.FACTORY), 100, false, true)</code>.
+ * Shared strings tables of existing documents are still loaded into memory.
+ * </p>
+ * <p>
+ * The temp files are removed when the table is closed, i.e. when the workbook is closed.
+ * </p>
+ *
+ * @since POI 4.0.0
+ */
+public class TempFileSharedStringsTable extends SharedStringsTable {
+    private static final POILogger logger = POILogFactory.getLogger(TempFileSharedStringsTable.class);
+
+    /**
+     * Factory for new workbooks which use this table instead of the in-memory table
+     */
+    public static final XSSFFactory FACTORY = new XSSFFactory() {
+        @Override
+        public POIXMLDocumentPart newDocumentPart(POIXMLRelation descriptor) {
+            if (descriptor == XSSFRelation.SHARED_STRINGS) {
+                try {
+                    return new TempFileSharedStringsTable();
+                } catch (IOException e) {
+                    throw new POIXMLException(e);
+                }
+            }
+            return super.newDocumentPart(descriptor);
+        }
+    };
+
+    private static final byte[] SST_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<sst xmlns=\"" + NS_SPREADSHEETML + "\"").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SST_END = "</sst>".getBytes(StandardCharsets.UTF_8);
+    private static final String SI_START = "<si";
+
+    /** the entries are stored as si elements in the default namespace of the sst element */
+    private static final XmlOptions SAVE_OPTIONS = new XmlOptions();
+    static {
+        SAVE_OPTIONS.setSaveNoXmlDecl();
+        SAVE_OPTIONS.setSaveAggressiveNamespaces();
+        SAVE_OPTIONS.setUseDefaultNamespace();
+        SAVE_OPTIONS.setSaveImplicitNamespaces(Collections.singletonMap("", NS_SPREADSHEETML));
+        SAVE_OPTIONS.setSaveSyntheticDocumentElement(new QName(NS_SPREADSHEETML, "si"));
+        // see Bugzilla 48936
+        SAVE_OPTIONS.setSaveCDataLengthThreshold(1000000);
+        SAVE_OPTIONS.setSaveCDataEntityCountThreshold(-1);
+    }
+
+    /** the entries are parsed without their si element */
+    private static final XmlOptions PARSE_OPTIONS = new XmlOptions(DEFAULT_XML_OPTIONS).setLoadReplaceDocumentElement(null);
+
+    /** each slot of the hash index holds the entry index + 1 and the hash code of the entry */
+    private static final int SLOT_SIZE = 8;
+    private static final int MAX_SLOTS = 1 << 27;
+    private static final int INITIAL_SLOTS = 1 << 16;
+    private static final int LOG_BUFFER_SIZE = 64 * 1024;
+
+    private final File _logFile;
+    private final RandomAccessFile _log;
+    private final ByteBuffer _logBuffer = ByteBuffer.allocate(LOG_BUFFER_SIZE);
+    private long _logFlushed;
+
+    private final File _offsetsFile;
+    private final RandomAccessFile _offsets;
+    private MappedByteBuffer _offsetsMap;
+
+    private File _indexFile;
+    private RandomAccessFile _index;
+    private MappedByteBuffer _indexMap;
+    private int _slots;
+
+    private byte[] _readBuf = new byte[256];
+
+    public TempFileSharedStringsTable() throws IOException {
+        super();
+        _logFile = TempFile.createTempFile("poi-sst-log", ".tmp");
+        _log = new RandomAccessFile(_logFile, "rw");
+        _offsetsFile = TempFile.createTempFile("poi-sst-offsets", ".tmp");
+        _offsets = new RandomAccessFile(_offsetsFile, "rw");
+        _offsetsMap = map(_offsets, (long)INITIAL_SLOTS * 8);
+        createIndex(INITIAL_SLOTS);
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile raf, long size) throws IOException {
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void createIndex(int slots) throws IOException {
+        _indexFile = TempFile.createTempFile("poi-sst-index", ".tmp");
+        _index = new RandomAccessFile(_indexFile, "rw");
+        _indexMap = map(_index, (long)slots * SLOT_SIZE);
+        _slots = slots;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int addEntry(CTRst st) {
+        count++;
+        try {
+            byte[] bytes = entryXml(st);
+            int hash = Arrays.hashCode(bytes);
+            int slot = findSlot(bytes, hash);
+            int stored = _indexMap.getInt(slot * SLOT_SIZE);
+            if (stored != 0) {
+                return stored - 1;
+            }
+
+            int idx = uniqueCount;
+            if ((long)idx * 8 >= _offsetsMap.capacity()) {
+                _offsetsMap = map(_offsets, (long)_offsetsMap.capacity() * 2);
+            }
+            _offsetsMap.putLong(idx * 8, appendToLog(bytes));
+            _indexMap.putInt(slot * SLOT_SIZE, idx + 1);
+            _indexMap.putInt(slot * SLOT_SIZE + 4, hash);
+            uniqueCount++;
+
+            if (uniqueCount > _slots / 2) {
+                resizeIndex();
+            }
+            return idx;
+        } catch (IOException e) {
+            throw new POIXMLException("unable to add the shared string", e);
+        }
+    }
+
+    private static byte[] entryXml(CTRst st) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        st.save(bos, SAVE_OPTIONS);
+        return bos.toByteArray();
+    }
+
+    /**
+     * @return the slot holding the entry or the free slot where it belongs
+     */
+    private int findSlot(byte[] bytes, int hash) throws IOException {
+        int mask = _slots - 1;
+        int slot = mix(hash) & mask;
+        while (true) {
+            int stored = _indexMap.getInt(slot * SLOT_SIZE);
+            if (stored == 0) {
+                return slot;
+            }
+            if (_indexMap.getInt(slot * SLOT_SIZE + 4) == hash && entryEquals(stored - 1, bytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void resizeIndex() throws IOException {
+        if (_slots >= MAX_SLOTS) {
+            throw new IllegalStateException("The shared strings table can't hold more than " + MAX_SLOTS / 2 + " entries");
+        }
+        MappedByteBuffer oldMap = _indexMap;
+        RandomAccessFile oldIndex = _index;
+        File oldFile = _indexFile;
+        int oldSlots = _slots;
+
+        createIndex(oldSlots * 2);
+        int mask = _slots - 1;
+        for (int i = 0; i < oldSlots; i++) {
+            int stored = oldMap.getInt(i * SLOT_SIZE);
+            if (stored == 0) {
+                continue;
+            }
+            int hash = oldMap.getInt(i * SLOT_SIZE + 4);
+            int slot = mix(hash) & mask;
+            while (_indexMap.getInt(slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            _indexMap.putInt(slot * SLOT_SIZE, stored);
+            _indexMap.putInt(slot * SLOT_SIZE + 4, hash);
+        }
+
+        oldIndex.close();
+        deleteTempFile(oldFile);
+    }
+
+    private long appendToLog(byte[] bytes) throws IOException {
+        long offset = _logFlushed + _logBuffer.position();
+        if (_logBuffer.remaining() < bytes.length + 4) {
+            flushLog();
+        }
+        if (_logBuffer.remaining() < bytes.length + 4) {
+            ByteBuffer bb = ByteBuffer.allocate(bytes.length + 4);
+            bb.putInt(bytes.length).put(bytes).flip();
+            writeFully(bb);
+        } else {
+            _logBuffer.putInt(bytes.length).put(bytes);
+        }
+        return offset;
+    }
+
+    private void flushLog() throws IOException {
+        _logBuffer.flip();
+        writeFully(_logBuffer);
+        _logBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bb) throws IOException {
+        FileChannel ch = _log.getChannel();
+        while (bb.hasRemaining()) {
+            _logFlushed += ch.write(bb, _logFlushed);
+        }
+    }
+
+    private boolean entryEquals(int idx, byte[] bytes) throws IOException {
+        int len = readEntry(idx);
+        if (len != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (_readBuf[i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the entry into {@link #_readBuf}
+     *
+     * @return the length of the entry
+     */
+    private int readEntry(int idx) throws IOException {
+        long offset = _offsetsMap.getLong(idx * 8);
+        if (offset >= _logFlushed) {
+            // the entry is still in the write buffer
+            int pos = (int)(offset - _logFlushed);
+            int len = _logBuffer.getInt(pos);
+            ensureReadBuf(len);
+            for (int i = 0; i < len; i++) {
+                _readBuf[i] = _logBuffer.get(pos + 4 + i);
+            }
+            return len;
+        }
+        ByteBuffer lenBuf = ByteBuffer.allocate(4);
+        readFully(lenBuf, offset);
+        int len = lenBuf.getInt(0);
+        ensureReadBuf(len);
+        readFully(ByteBuffer.wrap(_readBuf, 0, len), offset + 4);
+        return len;
+    }
+
+    private void ensureReadBuf(int len) {
+        if (_readBuf.length < len) {
+            _readBuf = new byte[Math.max(len, _readBuf.length * 2)];
+        }
+    }
+
+    private void readFully(ByteBuffer bb, long position) throws IOException {
+        FileChannel ch = _log.getChannel();
+        long pos = position;
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, pos);
+            if (n == -1) {
+                throw new IOException("Unexpected end of the shared strings log");
+            }
+            pos += n;
+        }
+    }
+
+    private CTRst parseEntry(int idx) {
+        if (idx < 0 || idx >= uniqueCount) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + uniqueCount);
+        }
+        try {
+            int len = readEntry(idx);
+            String si = new String(_readBuf, 0, len, StandardCharsets.UTF_8);
+            String xml = SI_START + " xmlns=\"" + NS_SPREADSHEETML + "\"" + si.substring(SI_START.length());
+            return CTRst.Factory.parse(xml, PARSE_OPTIONS);
+        } catch (IOException | XmlException e) {
+            throw new POIXMLException("unable to read the shared string " + idx, e);
+        }
+    }
+
+    /**
+     * Return a string item by index, the item is parsed from the temp file on each call
+     *
+     * @param idx index of item to return.
+     * @return the item at the specified position in this Shared String table.
+     * @deprecated use <code>getItemAt(int idx)</code> instead
+     */
+    @Override
+    @Deprecated
+    public CTRst getEntryAt(int idx) {
+        return parseEntry(idx);
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        return new XSSFRichTextString(parseEntry(idx));
+    }
+
+    /**
+     * @return a read-only view of the beans, which are parsed on access
+     * @deprecated use <code>getSharedStringItems</code> instead
+     */
+    @Override
+    @Deprecated
+    public List<CTRst> getItems() {
+        return new AbstractList<CTRst>() {
+            @Override
+            public CTRst get(int index) {
+                return parseEntry(index);
+            }
+
+            @Override
+            public int size() {
+                return uniqueCount;
+            }
+        };
+    }
+
+    /**
+     * @return a read-only view of the strings, which are parsed on access
+     */
+    @Override
+    public List<RichTextString> getSharedStringItems() {
+        return new AbstractList<RichTextString>() {
+            @Override
+            public RichTextString get(int index) {
+                return getItemAt(index);
+            }
+
+            @Override
+            public int size() {
+                return uniqueCount;
+            }
+        };
+    }
+
+    /**
+     * Write this table out as XML, the entries are copied from the temp file
+     * without parsing them.
+     *
+     * @param out The stream to write to.
+     * @throws IOException if an error occurs while writing.
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        flushLog();
+        out.write(SST_START);
+        out.write((" count=\"" + count + "\" uniqueCount=\"" + uniqueCount + "\">").getBytes(StandardCharsets.UTF_8));
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_logFile), LOG_BUFFER_SIZE))) {
+            for (int i = 0; i < uniqueCount; i++) {
+                int len = dis.readInt();
+                ensureReadBuf(len);
+                dis.readFully(_readBuf, 0, len);
+                out.write(_readBuf, 0, len);
+            }
+        }
+        out.write(SST_END);
+    }
+
+    /**
+     * Removes the temp files
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            _log.close();
+            _offsets.close();
+            _index.close();
+        } finally {
+            _offsetsMap = null;
+            _indexMap = null;
+            deleteTempFile(_logFile);
+            deleteTempFile(_offsetsFile);
+            deleteTempFile(_indexFile);
+        }
+    }
+
+    private static void deleteTempFile(File file) {
+        // on Windows, the file can only be deleted after the mapped buffer has been garbage collected
+        if (file.exists() && !file.delete()) {
+            logger.log(POILogger.WARN, "Can't delete temporary file: " + file);
+            file.deleteOnExit();
+        }
+    }
+}
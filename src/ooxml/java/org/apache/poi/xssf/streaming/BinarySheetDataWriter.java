@@ -0,0 +1,573 @@
+/*
+ *  ====================================================================
+ *    Licensed to the Apache Software Foundation (ASF) under one or more
+ *    contributor license agreements.  See the NOTICE file distributed with
+ *    this work for additional information regarding copyright ownership.
+ *    The ASF licenses this file to You under the Apache License, Version 2.0
+ *    (the "License"); you may not use this file except in compliance with
+ *    the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * ====================================================================
+ */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+/**
+ * Sheet writer that spills flushed rows as compact binary records instead of XML.
+ * <p>
+ * Each row is stored as a row header followed by one record per cell
+ * (type tag, varint column, varint style and the raw value, i.e. the IEEE
+ * bits of a number or the index into the shared strings table). Formula
+ * cells are followed by their cached result, tagged like a cell record.
+ * The worksheet XML is only rendered once, while
+ * {@link SXSSFWorkbook#write(OutputStream)} reads the sheet data back via
+ * {@link #getWorksheetXMLInputStream()}.
+ * </p>
+ *
+ * @see CompressedBinarySheetDataWriter
+ */
+public class BinarySheetDataWriter extends SheetDataWriter {
+    private static final int ROW = 1;
+    private static final int END_ROW = 2;
+
+    private static final int CELL_BLANK = 16;
+    private static final int CELL_NUMERIC = 17;
+    private static final int CELL_INLINE_STRING = 18;
+    private static final int CELL_SHARED_STRING = 19;
+    private static final int CELL_BOOLEAN = 20;
+    private static final int CELL_ERROR = 21;
+    private static final int CELL_FORMULA = 22;
+
+    private static final int FLAG_CUSTOM_HEIGHT = 1;
+    private static final int FLAG_ZERO_HEIGHT = 1 << 1;
+    private static final int FLAG_FORMATTED = 1 << 2;
+    private static final int FLAG_HAS_HIDDEN = 1 << 3;
+    private static final int FLAG_HIDDEN = 1 << 4;
+    private static final int FLAG_HAS_COLLAPSED = 1 << 5;
+    private static final int FLAG_COLLAPSED = 1 << 6;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SharedStringsTable _sst;
+    private final RecordOutput _records;
+
+    public BinarySheetDataWriter() throws IOException {
+        this(null);
+    }
+
+    /**
+     * @param sharedStringsTable the shared strings table, or null if inline text is used
+     */
+    public BinarySheetDataWriter(SharedStringsTable sharedStringsTable) throws IOException {
+        super(sharedStringsTable, false);
+        _sst = sharedStringsTable;
+        _records = new RecordOutput(new BufferedOutputStream(createOutputStream(getTempFile()), BUFFER_SIZE));
+    }
+
+    /**
+     * @return temp file to write sheet data
+     */
+    @Override
+    public File createTempFile() throws IOException {
+        return TempFile.createTempFile("poi-sxssf-sheet-bin", ".bin");
+    }
+
+    /**
+     * @return a stream which renders the spilled records as worksheet XML
+     */
+    @Override
+    public InputStream getWorksheetXMLInputStream() throws IOException {
+        return new XMLRenderingInputStream(new BufferedInputStream(super.getWorksheetXMLInputStream(), BUFFER_SIZE));
+    }
+
+    @Override
+    public void close() throws IOException {
+        _records.flush();
+        _records.close();
+    }
+
+    @Override
+    boolean dispose() throws IOException {
+        final boolean ret;
+        try {
+            _records.close();
+        } finally {
+            ret = super.dispose();
+        }
+        return ret;
+    }
+
+    @Override
+    void beginRow(int rownum, SXSSFRow row) throws IOException {
+        RecordOutput out = _records;
+        int flags = 0;
+        if (row.hasCustomHeight()) {
+            flags |= FLAG_CUSTOM_HEIGHT;
+        }
+        if (row.getZeroHeight()) {
+            flags |= FLAG_ZERO_HEIGHT;
+        }
+        if (row.isFormatted()) {
+            flags |= FLAG_FORMATTED;
+        }
+        if (row.getHidden() != null) {
+            flags |= FLAG_HAS_HIDDEN | (row.getHidden() ? FLAG_HIDDEN : 0);
+        }
+        if (row.getCollapsed() != null) {
+            flags |= FLAG_HAS_COLLAPSED | (row.getCollapsed() ? FLAG_COLLAPSED : 0);
+        }
+        out.writeByte(ROW);
+        out.writeVarInt(rownum);
+        out.writeByte(flags);
+        out.writeVarInt(row.getOutlineLevel());
+        if (row.hasCustomHeight()) {
+            out.writeInt(Float.floatToRawIntBits(row.getHeightInPoints()));
+        }
+        if (row.isFormatted()) {
+            out.writeVarInt(row.getRowStyleIndex());
+        }
+    }
+
+    @Override
+    void endRow() throws IOException {
+        _records.writeByte(END_ROW);
+    }
+
+    @Override
+    public void writeCell(int columnIndex, Cell cell) throws IOException {
+        if (cell == null) {
+            return;
+        }
+        RecordOutput out = _records;
+        CellStyle cellStyle = cell.getCellStyle();
+        // need to convert the short to unsigned short as the indexes can be up to 64k
+        int style = cellStyle.getIndex() & 0xffff;
+        CellType cellType = cell.getCellType();
+        switch (cellType) {
+            case BLANK:
+                out.writeCellHeader(CELL_BLANK, columnIndex, style);
+                break;
+            case FORMULA: {
+                out.writeCellHeader(CELL_FORMULA, columnIndex, style);
+                out.writeString(cell.getCellFormula());
+                // the cached result follows as a cell record without column and style
+                switch (cell.getCachedFormulaResultType()) {
+                    case NUMERIC:
+                        out.writeByte(CELL_NUMERIC);
+                        out.writeLong(Double.doubleToRawLongBits(cell.getNumericCellValue()));
+                        break;
+                    case STRING:
+                        out.writeByte(CELL_INLINE_STRING);
+                        out.writeString(cell.getStringCellValue());
+                        break;
+                    case BOOLEAN:
+                        out.writeByte(CELL_BOOLEAN);
+                        out.writeByte(cell.getBooleanCellValue() ? 1 : 0);
+                        break;
+                    case ERROR:
+                        out.writeByte(CELL_ERROR);
+                        out.writeByte(cell.getErrorCellValue());
+                        break;
+                    default:
+                        out.writeByte(CELL_BLANK);
+                        break;
+                }
+                break;
+            }
+            case STRING:
+                if (_sst != null) {
+                    XSSFRichTextString rt = new XSSFRichTextString(cell.getStringCellValue());
+                    out.writeCellHeader(CELL_SHARED_STRING, columnIndex, style);
+                    out.writeVarInt(_sst.addSharedStringItem(rt));
+                } else {
+                    out.writeCellHeader(CELL_INLINE_STRING, columnIndex, style);
+                    out.writeString(cell.getStringCellValue());
+                }
+                break;
+            case NUMERIC:
+                out.writeCellHeader(CELL_NUMERIC, columnIndex, style);
+                out.writeLong(Double.doubleToRawLongBits(cell.getNumericCellValue()));
+                break;
+            case BOOLEAN:
+                out.writeCellHeader(CELL_BOOLEAN, columnIndex, style);
+                out.writeByte(cell.getBooleanCellValue() ? 1 : 0);
+                break;
+            case ERROR:
+                out.writeCellHeader(CELL_ERROR, columnIndex, style);
+                out.writeByte(cell.getErrorCellValue());
+                break;
+            default:
+                throw new IllegalStateException("Invalid cell type: " + cellType);
+        }
+    }
+
+    /**
+     * Writes the primitives of the binary records to the temp file stream
+     */
+    private static final class RecordOutput implements Closeable, Flushable {
+        private final OutputStream _os;
+        private final byte[] _scratch = new byte[8];
+
+        RecordOutput(OutputStream os) {
+            _os = os;
+        }
+
+        void writeByte(int b) throws IOException {
+            _os.write(b);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                _os.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            _os.write(v);
+        }
+
+        void writeInt(int value) throws IOException {
+            for (int i = 0; i < 4; i++) {
+                _scratch[i] = (byte)(value >>> (i * 8));
+            }
+            _os.write(_scratch, 0, 4);
+        }
+
+        void writeLong(long value) throws IOException {
+            for (int i = 0; i < 8; i++) {
+                _scratch[i] = (byte)(value >>> (i * 8));
+            }
+            _os.write(_scratch, 0, 8);
+        }
+
+        void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            _os.write(bytes);
+        }
+
+        void writeCellHeader(int tag, int column, int style) throws IOException {
+            writeByte(tag);
+            writeVarInt(column);
+            writeVarInt(style);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _os.close();
+        }
+    }
+
+    /**
+     * Decodes the binary records one row at a time and serves the rendered XML.
+     */
+    private final class XMLRenderingInputStream extends InputStream {
+        private final InputStream _in;
+        private final RenderBuffer _buffer = new RenderBuffer();
+        private final Writer _xml = new OutputStreamWriter(_buffer, StandardCharsets.UTF_8);
+        private byte[] _strBuf = new byte[256];
+        private int _pos;
+        private boolean _eof;
+
+        XMLRenderingInputStream(InputStream in) {
+            _in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return _buffer.bytes()[_pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, _buffer.size() - _pos);
+            System.arraycopy(_buffer.bytes(), _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        private boolean fill() throws IOException {
+            while (_pos >= _buffer.size()) {
+                if (_eof) {
+                    return false;
+                }
+                _buffer.reset();
+                _pos = 0;
+                renderRow();
+                _xml.flush();
+            }
+            return true;
+        }
+
+        private void renderRow() throws IOException {
+            int tag = _in.read();
+            if (tag == -1) {
+                _eof = true;
+                return;
+            }
+            if (tag != ROW) {
+                throw new IOException("Corrupt sheet data, expected a row record but found " + tag);
+            }
+            int rownum = readVarInt();
+            int flags = readByte();
+            int outlineLevel = readVarInt();
+
+            _xml.write("<row");
+            writeAttribute("r", Integer.toString(rownum + 1));
+            if ((flags & FLAG_CUSTOM_HEIGHT) != 0) {
+                writeAttribute("customHeight", "true");
+                writeAttribute("ht", Float.toString(Float.intBitsToFloat(readInt())));
+            }
+            if ((flags & FLAG_ZERO_HEIGHT) != 0) {
+                writeAttribute("hidden", "true");
+            }
+            if ((flags & FLAG_FORMATTED) != 0) {
+                writeAttribute("s", Integer.toString(readVarInt()));
+                writeAttribute("customFormat", "1");
+            }
+            if (outlineLevel != 0) {
+                writeAttribute("outlineLevel", Integer.toString(outlineLevel));
+            }
+            if ((flags & FLAG_HAS_HIDDEN) != 0) {
+                writeAttribute("hidden", (flags & FLAG_HIDDEN) != 0 ? "1" : "0");
+            }
+            if ((flags & FLAG_HAS_COLLAPSED) != 0) {
+                writeAttribute("collapsed", (flags & FLAG_COLLAPSED) != 0 ? "1" : "0");
+            }
+            _xml.write(">\n");
+
+            while ((tag = readByte()) != END_ROW) {
+                renderCell(tag, rownum);
+            }
+            _xml.write("</row>\n");
+        }
+
+        private void renderCell(int tag, int rownum) throws IOException {
+            int column = readVarInt();
+            int style = readVarInt();
+            _xml.write("<c");
+            writeAttribute("r", new CellReference(rownum, column).formatAsString());
+            if (style != 0) {
+                writeAttribute("s", Integer.toString(style));
+            }
+            switch (tag) {
+                case CELL_BLANK:
+                    _xml.write('>');
+                    break;
+                case CELL_FORMULA:
+                    renderFormula();
+                    break;
+                case CELL_SHARED_STRING:
+                    writeAttribute("t", "s");
+                    _xml.write("><v>");
+                    _xml.write(Integer.toString(readVarInt()));
+                    _xml.write("</v>");
+                    break;
+                case CELL_INLINE_STRING: {
+                    String value = readString();
+                    writeAttribute("t", "inlineStr");
+                    _xml.write("><is><t");
+                    if (hasLeadingTrailingSpaces(value)) {
+                        writeAttribute("xml:space", "preserve");
+                    }
+                    _xml.write(">");
+                    writeQuotedString(_xml, value);
+                    _xml.write("</t></is>");
+                    break;
+                }
+                case CELL_NUMERIC:
+                    writeAttribute("t", "n");
+                    _xml.write("><v>");
+                    _xml.write(Double.toString(Double.longBitsToDouble(readLong())));
+                    _xml.write("</v>");
+                    break;
+                case CELL_BOOLEAN:
+                    writeAttribute("t", "b");
+                    _xml.write("><v>");
+                    _xml.write(readByte() != 0 ? "1" : "0");
+                    _xml.write("</v>");
+                    break;
+                case CELL_ERROR:
+                    writeAttribute("t", "e");
+                    _xml.write("><v>");
+                    _xml.write(FormulaError.forInt((byte)readByte()).getString());
+                    _xml.write("</v>");
+                    break;
+                default:
+                    throw new IOException("Corrupt sheet data, unknown cell record " + tag);
+            }
+            _xml.write("</c>");
+        }
+
+        private void renderFormula() throws IOException {
+            String formula = readString();
+            int resultTag = readByte();
+            switch (resultTag) {
+                case CELL_INLINE_STRING:
+                    writeAttribute("t", "str");
+                    break;
+                case CELL_BOOLEAN:
+                    writeAttribute("t", "b");
+                    break;
+                case CELL_ERROR:
+                    writeAttribute("t", "e");
+                    break;
+                default:
+                    break;
+            }
+            _xml.write("><f>");
+            writeQuotedString(_xml, formula);
+            _xml.write("</f>");
+            switch (resultTag) {
+                case CELL_NUMERIC: {
+                    double nval = Double.longBitsToDouble(readLong());
+                    if (!Double.isNaN(nval)) {
+                        _xml.write("<v>");
+                        _xml.write(Double.toString(nval));
+                        _xml.write("</v>");
+                    }
+                    break;
+                }
+                case CELL_INLINE_STRING:
+                    _xml.write("<v>");
+                    writeQuotedString(_xml, readString());
+                    _xml.write("</v>");
+                    break;
+                case CELL_BOOLEAN:
+                    _xml.write("<v>");
+                    _xml.write(readByte() != 0 ? "1" : "0");
+                    _xml.write("</v>");
+                    break;
+                case CELL_ERROR:
+                    _xml.write("<v>");
+                    _xml.write(FormulaError.forInt((byte)readByte()).getString());
+                    _xml.write("</v>");
+                    break;
+                case CELL_BLANK:
+                    break;
+                default:
+                    throw new IOException("Corrupt sheet data, unknown formula result record " + resultTag);
+            }
+        }
+
+        private void writeAttribute(String name, String value) throws IOException {
+            _xml.write(' ');
+            _xml.write(name);
+            _xml.write("=\"");
+            _xml.write(value);
+            _xml.write('\"');
+        }
+
+        private int readByte() throws IOException {
+            int b = _in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of sheet data");
+            }
+            return b;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private int readInt() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= readByte() << (i * 8);
+            }
+            return value;
+        }
+
+        private long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= ((long)readByte()) << (i * 8);
+            }
+            return value;
+        }
+
+        private String readString() throws IOException {
+            int len = readVarInt();
+            if (len > _strBuf.length) {
+                _strBuf = new byte[Math.max(len, _strBuf.length * 2)];
+            }
+            int off = 0;
+            while (off < len) {
+                int n = _in.read(_strBuf, off, len - off);
+                if (n == -1) {
+                    throw new EOFException("Unexpected end of sheet data");
+                }
+                off += n;
+            }
+            return new String(_strBuf, 0, len, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Gives access to the rendered bytes without copying them.
+     */
+    private static final class RenderBuffer extends ByteArrayOutputStream {
+        RenderBuffer() {
+            super(BUFFER_SIZE);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
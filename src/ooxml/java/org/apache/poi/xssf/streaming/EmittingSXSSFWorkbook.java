@@ -0,0 +1,313 @@
+/*
+ *  ====================================================================
+ *    Licensed to the Apache Software Foundation (ASF) under one or more
+ *    contributor license agreements.  See the NOTICE file distributed with
+ *    this work for additional information regarding copyright ownership.
+ *    The ASF licenses this file to You under the Apache License, Version 2.0
+ *    (the "License"); you may not use this file except in compliance with
+ *    the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * ====================================================================
+ */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+/**
+ * Streaming workbook which is bound to its output stream up front and doesn't
+ * use any temp files.
+ * <p>
+ * The rows flushed out of the row access window are written directly into the
+ * zip entry of the sheet's worksheet part. Therefore the sheets have to be filled
+ * one after another: creating a new sheet completes the previous one and no more
+ * rows can be added to it. The remaining parts, e.g. the workbook, the styles and
+ * the shared strings, are written when the workbook is closed.
+ * </p>
+ * <p>
+ * As the start of the worksheet XML is written with the first flushed row,
+ * settings which are stored before the sheet data, e.g. column widths, freeze panes
+ * or the default row height, need to be applied before the first row is flushed.
+ * Settings stored after the sheet data, like merged regions, can be changed
+ * until the next sheet is created.
+ * </p>
+ * <p>
+ * {@link #write(OutputStream)} is not supported, call {@link #close()} to
+ * complete the package instead. The output stream is finished, but not closed.
+ * </p>
+ */
+public class EmittingSXSSFWorkbook extends SXSSFWorkbook {
+    private final ZipOutputStream _zos;
+    private final Writer _zipWriter;
+    private final Set<String> _emittedParts = new HashSet<>();
+    private SXSSFSheet _currentSheet;
+    private boolean _finished;
+
+    /**
+     * Construct a new workbook with default row window size and inline strings
+     *
+     * @param out the stream to write the workbook to
+     */
+    public EmittingSXSSFWorkbook(OutputStream out) {
+        this(out, DEFAULT_WINDOW_SIZE, false);
+    }
+
+    /**
+     * Construct a new workbook
+     *
+     * @param out the stream to write the workbook to
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out,
+     *                            see {@link SXSSFWorkbook#SXSSFWorkbook(int)}
+     * @param useSharedStringsTable whether to use a shared strings table
+     */
+    public EmittingSXSSFWorkbook(OutputStream out, int rowAccessWindowSize, boolean useSharedStringsTable) {
+        super(null, rowAccessWindowSize, false, useSharedStringsTable);
+        _zos = new ZipOutputStream(out);
+        _zipWriter = new BufferedWriter(new OutputStreamWriter(_zos, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Completes the sheet which has been filled so far, as the rows of a
+     * new sheet are written into a new zip entry.
+     */
+    @Override
+    protected SheetDataWriter createSheetDataWriter() throws IOException {
+        if (_finished) {
+            throw new IllegalStateException("The workbook has already been written");
+        }
+        finishSheet(_currentSheet);
+        _currentSheet = null;
+        return new EntrySheetDataWriter();
+    }
+
+    @Override
+    public SXSSFSheet createSheet() {
+        SXSSFSheet sheet = super.createSheet();
+        _currentSheet = sheet;
+        return sheet;
+    }
+
+    @Override
+    public SXSSFSheet createSheet(String sheetname) {
+        SXSSFSheet sheet = super.createSheet(sheetname);
+        _currentSheet = sheet;
+        return sheet;
+    }
+
+    @Override
+    public void removeSheetAt(int index) {
+        SXSSFSheet sheet = getSheetAt(index);
+        if (((EntrySheetDataWriter)sheet.getSheetDataWriter()).isStarted()) {
+            throw new IllegalStateException("The sheet '" + sheet.getSheetName() + "' has already been written");
+        }
+        if (sheet == _currentSheet) {
+            _currentSheet = null;
+        }
+        super.removeSheetAt(index);
+    }
+
+    /**
+     * Not supported, as the workbook is written to the stream given in the constructor.
+     * Call {@link #close()} to complete the package.
+     */
+    @Override
+    public void write(OutputStream stream) throws IOException {
+        throw new UnsupportedOperationException(
+                "EmittingSXSSFWorkbook is written to the stream given in its constructor, call close() instead");
+    }
+
+    /**
+     * Completes the last sheet, writes the remaining package parts and
+     * finishes the output stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * There are no temp files to be deleted
+     *
+     * @return always true
+     */
+    @Override
+    public boolean dispose() {
+        return true;
+    }
+
+    private void finish() throws IOException {
+        if (_finished) {
+            return;
+        }
+        finishSheet(_currentSheet);
+        _currentSheet = null;
+        _finished = true;
+
+        // the package writes its parts one by one into the zip stream, the sheets
+        // which have already been emitted are skipped
+        try (RemainingPartsStream rps = new RemainingPartsStream()) {
+            getXSSFWorkbook().write(rps);
+        }
+        _zos.finish();
+        _zos.flush();
+    }
+
+    private void finishSheet(SXSSFSheet sheet) throws IOException {
+        if (sheet == null) {
+            return;
+        }
+        sheet.flushRows();
+        ((EntrySheetDataWriter)sheet.getSheetDataWriter()).finishEntry(getXSSFSheet(sheet));
+    }
+
+    private static String renderWorksheet(XSSFSheet xSheet) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        xSheet.writeWorksheet(bos);
+        return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Forwards the entries of the package to the zip stream of the workbook,
+     * apart from the already emitted sheets. The zip stream isn't finished
+     * or closed, when the package is done.
+     */
+    private final class RemainingPartsStream extends ZipOutputStream {
+        private boolean _skipEntry;
+
+        RemainingPartsStream() {
+            // all writing methods are overridden, so the parent stream is never written to
+            super(_zos);
+        }
+
+        @Override
+        public void putNextEntry(ZipEntry e) throws IOException {
+            _skipEntry = _emittedParts.contains(e.getName());
+            if (!_skipEntry) {
+                _zos.putNextEntry(new ZipEntry(e.getName()));
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!_skipEntry) {
+                _zos.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void closeEntry() throws IOException {
+            if (!_skipEntry) {
+                _zos.closeEntry();
+            }
+            _skipEntry = false;
+        }
+
+        @Override
+        public void finish() {
+            // the workbook finishes the zip stream
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _zos.flush();
+        }
+
+        @Override
+        public void close() {
+            // only release the unused deflater of this stream
+            def.end();
+        }
+    }
+
+    /**
+     * Writes the rows of the current sheet into the zip entry of its worksheet part.
+     * The entry is opened with the first row and closed once the next sheet is created.
+     */
+    private final class EntrySheetDataWriter extends SheetDataWriter {
+        private boolean _started;
+        private boolean _done;
+
+        EntrySheetDataWriter() {
+            super(_zipWriter, getSharedStringSource());
+        }
+
+        boolean isStarted() {
+            return _started;
+        }
+
+        @Override
+        public void writeRow(int rownum, SXSSFRow row) throws IOException {
+            if (_done) {
+                throw new IllegalStateException("The sheet '" + row.getSheet().getSheetName()
+                        + "' has already been written, rows can only be added to the last created sheet");
+            }
+            if (!_started) {
+                startEntry(getXSSFSheet(row.getSheet()));
+            }
+            super.writeRow(rownum, row);
+        }
+
+        private void startEntry(XSSFSheet xSheet) throws IOException {
+            String partName = xSheet.getPackagePart().getPartName().getName().substring(1);
+            String xml = renderWorksheet(xSheet);
+            int start = xml.indexOf("<sheetData");
+            if (start == -1) {
+                throw new IllegalStateException("Can't find the sheet data of " + partName);
+            }
+            _zos.putNextEntry(new ZipEntry(partName));
+            _emittedParts.add(partName);
+            _zipWriter.write(xml, 0, start);
+            _zipWriter.write("<sheetData>\n");
+            _started = true;
+        }
+
+        void finishEntry(XSSFSheet xSheet) throws IOException {
+            _done = true;
+            if (!_started) {
+                // no rows were written, so the sheet is written like any other part
+                return;
+            }
+            // render the XML again, the parts after the sheet data may have changed meanwhile
+            String xml = renderWorksheet(xSheet);
+            int start = xml.indexOf("<sheetData");
+            int end = xml.startsWith("<sheetData/>", start)
+                    ? start + "<sheetData/>".length()
+                    : xml.indexOf("</sheetData>", start) + "</sheetData>".length();
+            _zipWriter.write("</sheetData>");
+            _zipWriter.write(xml, end, xml.length() - end);
+            _zipWriter.flush();
+            _zos.closeEntry();
+        }
+
+        /**
+         * Only flushes the rows, as the zip stream is shared by all sheets
+         */
+        @Override
+        public void close() throws IOException {
+            _zipWriter.flush();
+        }
+    }
+}
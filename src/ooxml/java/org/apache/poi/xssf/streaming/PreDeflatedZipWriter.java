@@ -0,0 +1,352 @@
+/*
+ *  ====================================================================
+ *    Licensed to the Apache Software Foundation (ASF) under one or more
+ *    contributor license agreements.  See the NOTICE file distributed with
+ *    this work for additional information regarding copyright ownership.
+ *    The ASF licenses this file to You under the Apache License, Version 2.0
+ *    (the "License"); you may not use this file except in compliance with
+ *    the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * ====================================================================
+ */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.LittleEndian;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+import org.apache.poi.util.TempFile;
+
+/**
+ * Minimal zip writer which appends entries that have been deflated beforehand,
+ * possibly on another thread.
+ * <p>
+ * {@link java.util.zip.ZipOutputStream} always deflates the entry data itself,
+ * so it can't be used to assemble entries which were compressed concurrently.
+ * This writer only supports deflated entries with known sizes and CRC, which
+ * is all SXSSF needs, and switches to Zip64 records for large sheets.
+ * </p>
+ */
+final class PreDeflatedZipWriter implements Closeable {
+    private static final POILogger logger = POILogFactory.getLogger(PreDeflatedZipWriter.class);
+
+    private static final int LOCAL_FILE_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_FILE_HEADER_SIG = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIG = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_SIG = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * Produces the uncompressed data of an entry
+     */
+    interface EntryContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * The deflated data of an entry, either kept in memory or in a temp file
+     */
+    static final class DeflatedEntry {
+        private final byte[] _data;
+        private final File _file;
+        private final long _crc;
+        private final long _size;
+        private final long _compressedSize;
+
+        private DeflatedEntry(byte[] data, File file, long crc, long size, long compressedSize) {
+            _data = data;
+            _file = file;
+            _crc = crc;
+            _size = size;
+            _compressedSize = compressedSize;
+        }
+
+        void dispose() {
+            if (_file != null && !_file.delete()) {
+                logger.log(POILogger.ERROR, "Can't delete temporary file: "+_file);
+            }
+        }
+    }
+
+    private static final class CentralDirectoryEntry {
+        final byte[] name;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final long offset;
+
+        CentralDirectoryEntry(byte[] name, DeflatedEntry entry, long offset) {
+            this.name = name;
+            this.crc = entry._crc;
+            this.size = entry._size;
+            this.compressedSize = entry._compressedSize;
+            this.offset = offset;
+        }
+    }
+
+    private final CountingOutputStream _out;
+    private final List<CentralDirectoryEntry> _entries = new ArrayList<>();
+    private final int _dosTime;
+    private final int _dosDate;
+    private final byte[] _buf = new byte[64];
+    private boolean _finished;
+
+    PreDeflatedZipWriter(OutputStream out) {
+        _out = new CountingOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        Calendar cal = Calendar.getInstance();
+        _dosTime = (cal.get(Calendar.HOUR_OF_DAY) << 11) | (cal.get(Calendar.MINUTE) << 5) | (cal.get(Calendar.SECOND) >> 1);
+        _dosDate = ((cal.get(Calendar.YEAR) - 1980) << 9) | ((cal.get(Calendar.MONTH) + 1) << 5) | cal.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * Deflate the entry content into memory
+     */
+    static DeflatedEntry deflateInMemory(EntryContent content) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        long[] sizes = deflate(content, bos);
+        return new DeflatedEntry(bos.toByteArray(), null, sizes[0], sizes[1], bos.size());
+    }
+
+    /**
+     * Deflate the entry content into a temp file, used for the potentially huge sheet data
+     */
+    static DeflatedEntry deflateToTempFile(EntryContent content) throws IOException {
+        File fd = TempFile.createTempFile("poi-sxssf-sheet-zip", ".deflated");
+        boolean success = false;
+        try {
+            long[] sizes;
+            try (FileOutputStream fos = new FileOutputStream(fd)) {
+                sizes = deflate(content, fos);
+            }
+            success = true;
+            return new DeflatedEntry(null, fd, sizes[0], sizes[1], fd.length());
+        } finally {
+            if (!success && !fd.delete()) {
+                logger.log(POILogger.ERROR, "Can't delete temporary file: "+fd);
+            }
+        }
+    }
+
+    /**
+     * @return the crc and the uncompressed size of the content
+     */
+    private static long[] deflate(EntryContent content, OutputStream target) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            DeflaterOutputStream dos = new DeflaterOutputStream(target, deflater, 64 * 1024);
+            CountingOutputStream counter = new CountingOutputStream(dos);
+            CheckedOutputStream checked = new CheckedOutputStream(counter, new CRC32());
+            content.writeTo(checked);
+            checked.flush();
+            dos.finish();
+            dos.flush();
+            return new long[]{ checked.getChecksum().getValue(), counter.getCount() };
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Append an entry which was deflated via {@link #deflateInMemory(EntryContent)}
+     * or {@link #deflateToTempFile(EntryContent)}
+     */
+    void putEntry(String name, DeflatedEntry entry) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = _out.getCount();
+        boolean zip64 = entry._size >= ZIP64_MAGIC || entry._compressedSize >= ZIP64_MAGIC;
+
+        writeInt(LOCAL_FILE_HEADER_SIG);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(FLAG_UTF8);
+        writeShort(METHOD_DEFLATED);
+        writeShort(_dosTime);
+        writeShort(_dosDate);
+        writeInt(entry._crc);
+        writeInt(zip64 ? ZIP64_MAGIC : entry._compressedSize);
+        writeInt(zip64 ? ZIP64_MAGIC : entry._size);
+        writeShort(nameBytes.length);
+        writeShort(zip64 ? 20 : 0);
+        _out.write(nameBytes);
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(entry._size);
+            writeLong(entry._compressedSize);
+        }
+
+        if (entry._file != null) {
+            try (InputStream is = new FileInputStream(entry._file)) {
+                IOUtils.copy(is, _out);
+            }
+        } else {
+            _out.write(entry._data);
+        }
+
+        _entries.add(new CentralDirectoryEntry(nameBytes, entry, offset));
+    }
+
+    /**
+     * Writes the central directory, but doesn't close the underlying stream
+     */
+    void finish() throws IOException {
+        if (_finished) {
+            return;
+        }
+        _finished = true;
+
+        long cdOffset = _out.getCount();
+        for (CentralDirectoryEntry e : _entries) {
+            boolean sizeOverflow = e.size >= ZIP64_MAGIC;
+            boolean csizeOverflow = e.compressedSize >= ZIP64_MAGIC;
+            boolean offsetOverflow = e.offset >= ZIP64_MAGIC;
+            int extraLen = (sizeOverflow ? 8 : 0) + (csizeOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+            boolean zip64 = extraLen > 0;
+
+            writeInt(CENTRAL_FILE_HEADER_SIG);
+            writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+            writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+            writeShort(FLAG_UTF8);
+            writeShort(METHOD_DEFLATED);
+            writeShort(_dosTime);
+            writeShort(_dosDate);
+            writeInt(e.crc);
+            writeInt(csizeOverflow ? ZIP64_MAGIC : e.compressedSize);
+            writeInt(sizeOverflow ? ZIP64_MAGIC : e.size);
+            writeShort(e.name.length);
+            writeShort(zip64 ? extraLen + 4 : 0);
+            // comment length, disk number start, internal and external attributes
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt(offsetOverflow ? ZIP64_MAGIC : e.offset);
+            _out.write(e.name);
+            if (zip64) {
+                writeShort(ZIP64_EXTRA_ID);
+                writeShort(extraLen);
+                if (sizeOverflow) {
+                    writeLong(e.size);
+                }
+                if (csizeOverflow) {
+                    writeLong(e.compressedSize);
+                }
+                if (offsetOverflow) {
+                    writeLong(e.offset);
+                }
+            }
+        }
+        long cdEnd = _out.getCount();
+        long cdSize = cdEnd - cdOffset;
+        int count = _entries.size();
+
+        boolean zip64 = count >= 0xFFFF || cdSize >= ZIP64_MAGIC || cdOffset >= ZIP64_MAGIC;
+        if (zip64) {
+            writeInt(ZIP64_END_OF_CENTRAL_DIR_SIG);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(cdSize);
+            writeLong(cdOffset);
+
+            writeInt(ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIG);
+            writeInt(0);
+            writeLong(cdEnd);
+            writeInt(1);
+        }
+
+        writeInt(END_OF_CENTRAL_DIR_SIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, 0xFFFF));
+        writeShort(Math.min(count, 0xFFFF));
+        writeInt(Math.min(cdSize, ZIP64_MAGIC));
+        writeInt(Math.min(cdOffset, ZIP64_MAGIC));
+        writeShort(0);
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            _out.close();
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        LittleEndian.putUShort(_buf, 0, value);
+        _out.write(_buf, 0, LittleEndian.SHORT_SIZE);
+    }
+
+    private void writeInt(long value) throws IOException {
+        LittleEndian.putUInt(_buf, 0, value);
+        _out.write(_buf, 0, LittleEndian.INT_SIZE);
+    }
+
+    private void writeLong(long value) throws IOException {
+        LittleEndian.putLong(_buf, 0, value);
+        _out.write(_buf, 0, LittleEndian.LONG_SIZE);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long _count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            _count += len;
+        }
+
+        long getCount() {
+            return _count;
+        }
+    }
+}
@@ -278,7 +278,10 @@ public class SXSSFCell implements Cell {
     {
         XSSFRichTextString xvalue = (XSSFRichTextString)value;
         
-        if (xvalue != null && xvalue.getString() != null) {
+        if (xvalue != null && xvalue.getString() != null && _value.getType() == CellType.FORMULA) {
+            // the cached result of a formula keeps the formula
+            setCellValue(xvalue.getString());
+        } else if (xvalue != null && xvalue.getString() != null) {
             ensureRichTextStringType();
             
             if (xvalue.length() > SpreadsheetVersion.EXCEL2007.getMaxTextLength()) {
@@ -27,11 +27,9 @@ import org.apache.poi.util.Internal;
 @Internal
 final class SXSSFEvaluationSheet implements EvaluationSheet {
     private final SXSSFSheet _xs;
-    private int _lastDefinedRow = -1;
 
     public SXSSFEvaluationSheet(SXSSFSheet sheet) {
         _xs = sheet;
-        _lastDefinedRow = _xs.getLastRowNum();
     }
 
     public SXSSFSheet getSXSSFSheet() {
@@ -44,7 +42,8 @@ final class SXSSFEvaluationSheet implements EvaluationSheet {
      */
     @Override
     public int getLastRowNum() {
-        return _lastDefinedRow;
+        // rows are added while streaming, and the flushed rows may still be evaluated
+        return Math.max(_xs.getLastRowNum(), _xs.getLastFlushedRowNum());
     }
     
     @Override
@@ -52,7 +51,11 @@ final class SXSSFEvaluationSheet implements EvaluationSheet {
         SXSSFRow row = _xs.getRow(rowIndex);
         if (row == null) {
             if (rowIndex <= _xs.getLastFlushedRowNum()) {
-                throw new SXSSFFormulaEvaluator.RowFlushedException(rowIndex);
+                SXSSFValueShadow shadow = _xs.getValueShadow();
+                if (shadow == null || !shadow.contains(rowIndex, columnIndex)) {
+                    throw new SXSSFFormulaEvaluator.RowFlushedException(rowIndex);
+                }
+                return shadow.getCell(this, rowIndex, columnIndex);
             }
             return null;
         }
@@ -68,6 +71,6 @@ final class SXSSFEvaluationSheet implements EvaluationSheet {
      */
     @Override
     public void clearAllCachedResultValues() {
-        _lastDefinedRow = _xs.getLastRowNum();
+        // nothing to do, the last row number isn't cached
     }
 }
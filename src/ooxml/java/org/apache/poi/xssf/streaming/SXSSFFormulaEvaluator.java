@@ -17,6 +17,9 @@
 
 package org.apache.poi.xssf.streaming;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.apache.poi.ss.formula.EvaluationCell;
 import org.apache.poi.ss.formula.IStabilityClassifier;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
@@ -32,17 +35,22 @@ import org.apache.poi.xssf.usermodel.BaseXSSFFormulaEvaluator;
 /**
  * Streaming-specific Formula Evaluator, which is able to 
  *  lookup cells within the current Window.
+ * With {@link #keepFlushedValues(Sheet, int...)}, the values of flushed rows are kept,
+ *  so formulas referencing them can be evaluated while streaming.
  */
 public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
     private static final POILogger logger = POILogFactory.getLogger(SXSSFFormulaEvaluator.class);
     
     private SXSSFWorkbook wb;
+    /** one evaluation sheet per sheet, so the evaluator doesn't need to remember each one */
+    private final Map<SXSSFSheet, SXSSFEvaluationSheet> _evaluationSheets = new IdentityHashMap<>();
     
     public SXSSFFormulaEvaluator(SXSSFWorkbook workbook) {
         this(workbook, null, null);
     }
     private SXSSFFormulaEvaluator(SXSSFWorkbook workbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
-        this(workbook, new WorkbookEvaluator(SXSSFEvaluationWorkbook.create(workbook), stabilityClassifier, udfFinder));
+        this(workbook, new WorkbookEvaluator(SXSSFEvaluationWorkbook.create(workbook),
+                new FlushedCellClassifier(workbook, stabilityClassifier), udfFinder));
     }
     private SXSSFFormulaEvaluator(SXSSFWorkbook workbook, WorkbookEvaluator bookEvaluator) {
         super(bookEvaluator);
@@ -59,13 +67,66 @@ public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
         return new SXSSFFormulaEvaluator(workbook, stabilityClassifier, udfFinder);
     }
     public void notifySetFormula(Cell cell) {
-        _bookEvaluator.notifyUpdateCell(new SXSSFEvaluationCell((SXSSFCell)cell));
+        _bookEvaluator.notifyUpdateCell(toEvaluationCell((SXSSFCell)cell));
     }
     public void notifyDeleteCell(Cell cell) {
-        _bookEvaluator.notifyDeleteCell(new SXSSFEvaluationCell((SXSSFCell)cell));
+        _bookEvaluator.notifyDeleteCell(toEvaluationCell((SXSSFCell)cell));
     }
     public void notifyUpdateCell(Cell cell) {
-        _bookEvaluator.notifyUpdateCell(new SXSSFEvaluationCell((SXSSFCell)cell));
+        _bookEvaluator.notifyUpdateCell(toEvaluationCell((SXSSFCell)cell));
+    }
+
+    /**
+     * Keeps the values of the cells of the sheet, whose rows are flushed from now on, in a compact
+     *  value shadow, so formulas referencing flushed rows can still be evaluated. The formula cells
+     *  of each row are evaluated by this evaluator just before the row is flushed, so their results
+     *  are written as cached values and kept in the shadow.
+     * <p>
+     * Formulas referencing rows, which have been flushed before or whose column isn't kept, can't
+     *  be evaluated and give a {@link RowFlushedException}.
+     * </p>
+     *
+     * @param sheet the sheet of the workbook of this evaluator
+     * @param columnIndexes the columns to keep the values of, e.g. the columns referenced by
+     *  formulas, all columns if none are given
+     * @throws IllegalStateException if the values of the sheet are already kept
+     * @since POI 4.0.0
+     */
+    public void keepFlushedValues(Sheet sheet, int... columnIndexes) {
+        SXSSFSheet sxSheet = (SXSSFSheet) sheet;
+        if (sxSheet.getValueShadow() != null) {
+            throw new IllegalStateException("The flushed values of sheet '" + sheet.getSheetName() + "' are already kept");
+        }
+        sxSheet.setValueShadow(new SXSSFValueShadow(this, sxSheet.getLastFlushedRowNum() + 1, columnIndexes));
+    }
+
+    /**
+     * Keeps the values of the flushed rows of all current sheets.
+     *
+     * @see #keepFlushedValues(Sheet, int...)
+     * @since POI 4.0.0
+     */
+    public void keepFlushedValues() {
+        for (Sheet sheet : wb) {
+            keepFlushedValues(sheet);
+        }
+    }
+
+    /**
+     * Removes the cache entries of a cell, which is flushed
+     */
+    /* package */ void notifyFlushedCell(SXSSFCell cell) {
+        _bookEvaluator.notifyFinalCell(toEvaluationCell(cell));
+    }
+
+    private SXSSFEvaluationCell toEvaluationCell(SXSSFCell cell) {
+        SXSSFSheet sheet = cell.getSheet();
+        SXSSFEvaluationSheet evalSheet = _evaluationSheets.get(sheet);
+        if (evalSheet == null) {
+            evalSheet = new SXSSFEvaluationSheet(sheet);
+            _evaluationSheets.put(sheet, evalSheet);
+        }
+        return new SXSSFEvaluationCell(cell, evalSheet);
     }
 
 
@@ -79,7 +140,7 @@ public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
                     " Only SXSSFCells can be evaluated.");
         }
 
-        return new SXSSFEvaluationCell((SXSSFCell)cell);
+        return toEvaluationCell((SXSSFCell)cell);
     }
     
     @Override
@@ -136,6 +197,28 @@ public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
         evaluateAllFormulaCells(wb, false);
     }
     
+    /**
+     * Treats the kept values of flushed rows as final, so they aren't cached
+     */
+    private static final class FlushedCellClassifier implements IStabilityClassifier {
+        private final SXSSFWorkbook _workbook;
+        private final IStabilityClassifier _classifier;
+
+        FlushedCellClassifier(SXSSFWorkbook workbook, IStabilityClassifier classifier) {
+            _workbook = workbook;
+            _classifier = classifier;
+        }
+
+        @Override
+        public boolean isCellFinal(int sheetIndex, int rowIndex, int columnIndex) {
+            SXSSFSheet sheet = _workbook.getSheetAt(sheetIndex);
+            if (sheet.getValueShadow() != null && rowIndex <= sheet.getLastFlushedRowNum()) {
+                return true;
+            }
+            return _classifier != null && _classifier.isCellFinal(sheetIndex, rowIndex, columnIndex);
+        }
+    }
+
     public static class SheetsFlushedException extends IllegalStateException {
         protected SheetsFlushedException() {
             super("One or more sheets have been flushed, cannot evaluate all cells");
@@ -73,6 +73,8 @@ public class SXSSFSheet implements Sheet
     private int outlineLevelRow;
     private int lastFlushedRowNumber = -1;
     private boolean allFlushed;
+    /** the values of the flushed rows, <code>null</code> if they aren't kept */
+    private SXSSFValueShadow _valueShadow;
 
     public SXSSFSheet(SXSSFWorkbook workbook, XSSFSheet xSheet) throws IOException {
         _workbook = workbook;
@@ -1847,6 +1849,18 @@ public class SXSSFSheet implements Sheet
         return lastFlushedRowNumber;
     }
 
+    /**
+     * @return the values of the flushed rows or <code>null</code>, if they aren't kept
+     * @see SXSSFFormulaEvaluator#keepFlushedValues(Sheet, int...)
+     */
+    /* package */ SXSSFValueShadow getValueShadow() {
+        return _valueShadow;
+    }
+
+    /* package */ void setValueShadow(SXSSFValueShadow valueShadow) {
+        _valueShadow = valueShadow;
+    }
+
     /**
      * Specifies how many rows can be accessed at most via getRow().
      * The exeeding rows (if any) are flushed to the disk while rows
@@ -1880,6 +1894,9 @@ public class SXSSFSheet implements Sheet
             SXSSFRow row = _rows.get(firstRowNum);
             // Update the best fit column widths for auto-sizing just before the rows are flushed
             _autoSizeColumnTracker.updateColumnWidths(row);
+            if (_valueShadow != null) {
+                _valueShadow.addRow(rowIndex, row);
+            }
             _writer.writeRow(rowIndex, row);
             _rows.remove(firstRowNum);
             lastFlushedRowNumber = rowIndex;
@@ -0,0 +1,288 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.Internal;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+import org.apache.poi.util.Removal;
+
+/**
+ * The values of the flushed rows of a sheet, kept in primitive arrays per column, so formulas
+ * referencing flushed cells can still be evaluated by a {@link SXSSFFormulaEvaluator}.
+ * The formula cells of a row are evaluated before the row is flushed and only their results
+ * are kept.
+ */
+@Internal
+final class SXSSFValueShadow {
+    private static final POILogger logger = POILogFactory.getLogger(SXSSFValueShadow.class);
+
+    private static final byte BLANK = 0;
+    private static final byte NUMBER = 1;
+    private static final byte STRING = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte ERROR = 4;
+    /** a formula cell which couldn't be evaluated, it's treated like a cell of a column which isn't kept */
+    private static final byte NOT_KEPT = 5;
+
+    private final SXSSFFormulaEvaluator _evaluator;
+    /** the rows before have been flushed before the values were kept */
+    private final int _firstRow;
+    /** the kept columns, <code>null</code> for all columns */
+    private final BitSet _columnIndexes;
+    private Column[] _columns = new Column[0];
+
+    /**
+     * @param firstRow the first row, which will be flushed
+     * @param columnIndexes the columns to keep, all columns if empty
+     */
+    SXSSFValueShadow(SXSSFFormulaEvaluator evaluator, int firstRow, int... columnIndexes) {
+        _evaluator = evaluator;
+        _firstRow = firstRow;
+        if (columnIndexes.length == 0) {
+            _columnIndexes = null;
+        } else {
+            _columnIndexes = new BitSet();
+            for (int columnIndex : columnIndexes) {
+                _columnIndexes.set(columnIndex);
+            }
+        }
+    }
+
+    /**
+     * @return whether the value of the flushed cell is kept
+     */
+    public boolean contains(int rowIndex, int columnIndex) {
+        if (rowIndex < _firstRow || (_columnIndexes != null && !_columnIndexes.get(columnIndex))) {
+            return false;
+        }
+        if (columnIndex >= _columns.length || _columns[columnIndex] == null) {
+            return true;
+        }
+        Column column = _columns[columnIndex];
+        int index = rowIndex - _firstRow;
+        return index >= column.size || column.types[index] != NOT_KEPT;
+    }
+
+    /**
+     * Evaluates the formula cells of the row and keeps the values of its cells,
+     * before the row is flushed. A formula which can't be evaluated, e.g. as it
+     * references a flushed cell which isn't kept, keeps its cached value and
+     * isn't kept itself.
+     */
+    public void addRow(int rowIndex, SXSSFRow row) {
+        for (Cell c : row) {
+            SXSSFCell cell = (SXSSFCell) c;
+            CellType cellType = cell.getCellType();
+            boolean evaluated = true;
+            if (cellType == CellType.FORMULA) {
+                try {
+                    _evaluator.evaluateFormulaCell(cell);
+                    cellType = cell.getCachedFormulaResultType();
+                } catch (RuntimeException e) {
+                    logger.log(POILogger.INFO, "Formula of cell " + new CellReference(cell).formatAsString()
+                            + " can't be evaluated before its row is flushed: " + e);
+                    evaluated = false;
+                }
+            }
+            int columnIndex = cell.getColumnIndex();
+            if (contains(rowIndex, columnIndex)) {
+                Column column = getColumn(columnIndex);
+                int index = rowIndex - _firstRow;
+                if (!evaluated) {
+                    column.set(index, NOT_KEPT, 0.0, null);
+                    continue;
+                }
+                switch (cellType) {
+                    case NUMERIC:
+                        column.set(index, NUMBER, cell.getNumericCellValue(), null);
+                        break;
+                    case STRING:
+                        column.set(index, STRING, 0.0, cell.getRichStringCellValue().getString());
+                        break;
+                    case BOOLEAN:
+                        column.set(index, BOOLEAN, cell.getBooleanCellValue() ? 1.0 : 0.0, null);
+                        break;
+                    case ERROR:
+                        column.set(index, ERROR, cell.getErrorCellValue(), null);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        // the flushed cells won't change any more
+        for (Cell c : row) {
+            _evaluator.notifyFlushedCell((SXSSFCell) c);
+        }
+    }
+
+    /**
+     * @return the kept value of a flushed cell or <code>null</code> for a blank cell
+     */
+    public EvaluationCell getCell(EvaluationSheet sheet, int rowIndex, int columnIndex) {
+        if (columnIndex >= _columns.length || _columns[columnIndex] == null) {
+            return null;
+        }
+        Column column = _columns[columnIndex];
+        int index = rowIndex - _firstRow;
+        if (index >= column.size || column.types[index] == BLANK) {
+            return null;
+        }
+        return new ShadowCell(sheet, rowIndex, columnIndex, column.types[index], column.numbers[index],
+                column.strings == null ? null : column.strings[index]);
+    }
+
+    private Column getColumn(int columnIndex) {
+        if (columnIndex >= _columns.length) {
+            _columns = Arrays.copyOf(_columns, Math.max(columnIndex + 1, _columns.length * 2));
+        }
+        Column column = _columns[columnIndex];
+        if (column == null) {
+            column = new Column();
+            _columns[columnIndex] = column;
+        }
+        return column;
+    }
+
+    private static final class Column {
+        byte[] types = new byte[16];
+        double[] numbers = new double[16];
+        /** only created for the first string */
+        String[] strings;
+        int size;
+
+        void set(int index, byte type, double number, String string) {
+            if (index >= types.length) {
+                int newLength = Math.max(index + 1, types.length * 3 / 2);
+                types = Arrays.copyOf(types, newLength);
+                numbers = Arrays.copyOf(numbers, newLength);
+                if (strings != null) {
+                    strings = Arrays.copyOf(strings, newLength);
+                }
+            }
+            if (string != null && strings == null) {
+                strings = new String[types.length];
+            }
+            types[index] = type;
+            numbers[index] = number;
+            if (strings != null) {
+                strings[index] = string;
+            }
+            size = Math.max(size, index + 1);
+        }
+    }
+
+    /**
+     * A flushed cell with a plain value
+     */
+    private static final class ShadowCell implements EvaluationCell {
+        private final EvaluationSheet _sheet;
+        private final int _rowIndex;
+        private final int _columnIndex;
+        private final byte _type;
+        private final double _number;
+        private final String _string;
+
+        ShadowCell(EvaluationSheet sheet, int rowIndex, int columnIndex, byte type, double number, String string) {
+            _sheet = sheet;
+            _rowIndex = rowIndex;
+            _columnIndex = columnIndex;
+            _type = type;
+            _number = number;
+            _string = string;
+        }
+
+        @Override
+        public Object getIdentityKey() {
+            // only used for formula cells
+            return this;
+        }
+        @Override
+        public EvaluationSheet getSheet() {
+            return _sheet;
+        }
+        @Override
+        public int getRowIndex() {
+            return _rowIndex;
+        }
+        @Override
+        public int getColumnIndex() {
+            return _columnIndex;
+        }
+        @Override
+        public CellType getCellType() {
+            switch (_type) {
+                case NUMBER: return CellType.NUMERIC;
+                case STRING: return CellType.STRING;
+                case BOOLEAN: return CellType.BOOLEAN;
+                case ERROR: return CellType.ERROR;
+                default: return CellType.BLANK;
+            }
+        }
+        @Deprecated
+        @Removal(version = "4.2")
+        @Override
+        public CellType getCellTypeEnum() {
+            return getCellType();
+        }
+        @Override
+        public double getNumericCellValue() {
+            return _number;
+        }
+        @Override
+        public String getStringCellValue() {
+            return _string;
+        }
+        @Override
+        public boolean getBooleanCellValue() {
+            return _number != 0.0;
+        }
+        @Override
+        public int getErrorCellValue() {
+            return (int) _number;
+        }
+        @Override
+        public CellRangeAddress getArrayFormulaRange() {
+            throw new IllegalStateException("Cell " + _rowIndex + ":" + _columnIndex + " is not part of an array formula.");
+        }
+        @Override
+        public boolean isPartOfArrayFormulaGroup() {
+            return false;
+        }
+        @Override
+        public CellType getCachedFormulaResultType() {
+            throw new IllegalStateException("Only formula cells have cached results");
+        }
+        @Deprecated
+        @Removal(version = "4.2")
+        @Override
+        public CellType getCachedFormulaResultTypeEnum() {
+            return getCachedFormulaResultType();
+        }
+    }
+}
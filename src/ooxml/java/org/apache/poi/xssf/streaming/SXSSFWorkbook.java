@@ -22,15 +22,21 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -59,6 +65,8 @@ import org.apache.poi.util.POILogger;
 import org.apache.poi.util.Removal;
 import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.streaming.PreDeflatedZipWriter.DeflatedEntry;
+import org.apache.poi.xssf.streaming.PreDeflatedZipWriter.EntryContent;
 import org.apache.poi.xssf.usermodel.XSSFChartSheet;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -100,6 +108,9 @@ public class SXSSFWorkbook implements Workbook {
     public static final int DEFAULT_WINDOW_SIZE = 100;
     private static final POILogger logger = POILogFactory.getLogger(SXSSFWorkbook.class);
 
+    /** the uncompressed size up to which the non-sheet parts are deflated in memory on parallel writes */
+    private static final long MAX_IN_MEMORY_PART_SIZE = 1024 * 1024;
+
     private final XSSFWorkbook _wb;
 
     private final Map<SXSSFSheet,XSSFSheet> _sxFromXHash = new HashMap<>();
@@ -112,6 +123,16 @@ public class SXSSFWorkbook implements Workbook {
      */
     private boolean _compressTmpFiles;
 
+    /**
+     * whether temp files should hold binary records instead of XML.
+     */
+    private boolean _binaryTmpFiles;
+
+    /**
+     * executor which compresses the sheet parts in parallel on write, null for serial writing
+     */
+    private Executor _writeExecutor;
+
     /**
      * shared string table - a cache of strings in this workbook
      */
@@ -318,13 +339,75 @@ public class SXSSFWorkbook implements Workbook {
     public void setCompressTempFiles(boolean compress) {
         _compressTmpFiles = compress;
     }
+
+    /**
+     * Get whether temp files hold binary row records instead of XML.
+     *
+     * @return whether to write binary temp files
+     */
+    public boolean isBinaryTempFiles() {
+        return _binaryTmpFiles;
+    }
+
+    /**
+     * Set whether temp files hold binary row records instead of XML.
+     * <p>
+     *   By default the flushed rows are written as escaped worksheet XML. With this
+     *   option the rows are spilled as compact binary records (see {@link BinarySheetDataWriter})
+     *   and the XML is only rendered once, while the workbook is written.
+     *   Combined with {@link #setCompressTempFiles(boolean)} the records are deflated.
+     * </p>
+     * <p>
+     *     Setting this option only affects subsequent <code>createSheet()</code> calls.
+     * </p>
+     * @param binary whether to write binary temp files
+     */
+    public void setBinaryTempFiles(boolean binary) {
+        _binaryTmpFiles = binary;
+    }
     
+    /**
+     * Get the executor which compresses the workbook parts in parallel on {@link #write(OutputStream)}.
+     *
+     * @return the executor, or <code>null</code> if the parts are written serially
+     */
+    public Executor getWriteExecutor() {
+        return _writeExecutor;
+    }
+
+    /**
+     * Set an executor to compress the workbook parts in parallel on {@link #write(OutputStream)}.
+     * <p>
+     *   By default all parts are deflated one after another while they are copied into
+     *   the output zip. With an executor, each worksheet part is merged with its temp
+     *   file data and deflated on its own task into a temp file, while the other parts
+     *   are deflated in memory, unless they are large like a big shared strings table.
+     *   The parts are read from the template by their tasks and never buffered
+     *   uncompressed. The pre-deflated entries are then appended in the
+     *   original order, so with many large sheets the write time drops roughly by the
+     *   number of threads available to the executor.
+     * </p>
+     * <p>
+     *   The executor isn't shut down by this workbook.
+     * </p>
+     *
+     * @param executor the executor, or <code>null</code> to write serially
+     */
+    public void setWriteExecutor(Executor executor) {
+        _writeExecutor = executor;
+    }
+
     @Internal
     protected SharedStringsTable getSharedStringSource() {
         return _sharedStringSource;
     }
 
     protected SheetDataWriter createSheetDataWriter() throws IOException {
+        if(_binaryTmpFiles) {
+            return _compressTmpFiles
+                    ? new CompressedBinarySheetDataWriter(_sharedStringSource)
+                    : new BinarySheetDataWriter(_sharedStringSource);
+        }
         if(_compressTmpFiles) {
             return new GZIPSheetDataWriter(_sharedStringSource);
         }
@@ -404,6 +487,103 @@ public class SXSSFWorkbook implements Workbook {
         }
     }
 
+    /**
+     * Like {@link #injectData(ZipEntrySource, OutputStream)}, but deflates the entries
+     * on the given executor and appends them in their original order.
+     */
+    protected void injectData(ZipEntrySource zipEntrySource, OutputStream out, Executor executor) throws IOException {
+        final List<String> names = new ArrayList<>();
+        final List<Future<DeflatedEntry>> entries = new ArrayList<>();
+        int written = 0;
+        try {
+            Enumeration<? extends ZipEntry> en = zipEntrySource.getEntries();
+            while (en.hasMoreElements()) {
+                final ZipEntry ze = en.nextElement();
+                XSSFSheet xSheet = getSheetFromZipEntryName(ze.getName());
+                FutureTask<DeflatedEntry> task;
+                // the tasks read the template entries themselves, so no part is buffered uncompressed
+                // See bug 56557, we should not inject data into the special ChartSheets
+                if (xSheet != null && !(xSheet instanceof XSSFChartSheet)) {
+                    final SXSSFSheet sxSheet = getSXSSFSheet(xSheet);
+                    task = new FutureTask<>(() -> PreDeflatedZipWriter.deflateToTempFile(os -> {
+                        try (InputStream is = getTemplateInputStream(zipEntrySource, ze);
+                             InputStream xis = sxSheet.getWorksheetXMLInputStream()) {
+                            copyStreamAndInjectWorksheet(is, os, xis);
+                        }
+                    }));
+                } else {
+                    final EntryContent content = os -> {
+                        try (InputStream is = getTemplateInputStream(zipEntrySource, ze)) {
+                            IOUtils.copy(is, os);
+                        }
+                    };
+                    // large parts, like the shared strings table, are deflated to a temp file as well
+                    final boolean inMemory = ze.getSize() >= 0 && ze.getSize() <= MAX_IN_MEMORY_PART_SIZE;
+                    task = new FutureTask<>(() -> inMemory
+                            ? PreDeflatedZipWriter.deflateInMemory(content)
+                            : PreDeflatedZipWriter.deflateToTempFile(content));
+                }
+                executor.execute(task);
+                names.add(ze.getName());
+                entries.add(task);
+            }
+
+            try (PreDeflatedZipWriter zos = new PreDeflatedZipWriter(out)) {
+                while (written < entries.size()) {
+                    String name = names.get(written);
+                    // counted before the entry is used, it's disposed here and not by the cleanup below
+                    DeflatedEntry entry = getDeflatedEntry(entries.get(written++));
+                    try {
+                        zos.putEntry(name, entry);
+                    } finally {
+                        entry.dispose();
+                    }
+                }
+            }
+        } finally {
+            try {
+                // wait for the remaining tasks, so their temp files can be removed
+                for (int i = written; i < entries.size(); i++) {
+                    try {
+                        getDeflatedEntry(entries.get(i)).dispose();
+                    } catch (IOException | RuntimeException e) {
+                        // don't mask the exception which stopped the writing
+                        logger.log(POILogger.WARN, "Failed to compress part " + names.get(i), e);
+                    }
+                }
+            } finally {
+                zipEntrySource.close();
+            }
+        }
+    }
+
+    private static InputStream getTemplateInputStream(ZipEntrySource zipEntrySource, ZipEntry ze) throws IOException {
+        InputStream is = zipEntrySource.getInputStream(ze);
+        if (is instanceof ZipArchiveThresholdInputStream) {
+            // #59743 - disable Threshold handling for SXSSF copy
+            ((ZipArchiveThresholdInputStream)is).setGuardState(false);
+        }
+        return is;
+    }
+
+    private static DeflatedEntry getDeflatedEntry(Future<DeflatedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compressed part");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     private static void copyStreamAndInjectWorksheet(InputStream in, OutputStream out, InputStream worksheetData) throws IOException {
         InputStreamReader inReader = new InputStreamReader(in, StandardCharsets.UTF_8);
         OutputStreamWriter outWriter = new OutputStreamWriter(out, StandardCharsets.UTF_8);
@@ -929,7 +1109,11 @@ public class SXSSFWorkbook implements Workbook {
 
             //Substitute the template entries with the generated sheet data files
             final ZipEntrySource source = new ZipFileZipEntrySource(new ZipFile(tmplFile));
-            injectData(source, stream);
+            if (_writeExecutor != null) {
+                injectData(source, stream, _writeExecutor);
+            } else {
+                injectData(source, stream);
+            }
         } finally {
             deleted = tmplFile.delete();
         }
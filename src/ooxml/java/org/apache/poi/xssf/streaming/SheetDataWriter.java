@@ -54,6 +54,7 @@ public class SheetDataWriter implements Closeable {
     private static final POILogger logger = POILogFactory.getLogger(SheetDataWriter.class);
     
     private final File _fd;
+    /** <code>null</code> for a subclass which writes the temp file in a format of its own */
     private final Writer _out;
     private int _rownum;
     private int _numberOfFlushedRows;
@@ -68,13 +69,42 @@ public class SheetDataWriter implements Closeable {
     private SharedStringsTable _sharedStringSource;
 
     public SheetDataWriter() throws IOException {
-        _fd = createTempFile();
-        _out = createWriter(_fd);
+        this(null, true);
     }
 
     public SheetDataWriter(SharedStringsTable sharedStringsTable) throws IOException {
-        this();
-        this._sharedStringSource = sharedStringsTable;
+        this(sharedStringsTable, true);
+    }
+
+    /**
+     * Create a writer, which writes the sheet data to a temp file either as XML or, for a
+     * subclass, in a format of its own. Such a subclass opens the temp file with
+     * {@link #createOutputStream(File)}, and overrides {@link #close()}, {@link #dispose()},
+     * {@link #getWorksheetXMLInputStream()} and the methods which write the rows and cells.
+     *
+     * @param sharedStringsTable the shared strings table, or null if inline text is used
+     * @param writeXml whether the sheet data is written as XML via {@link #createWriter(File)}
+     * @see BinarySheetDataWriter
+     * @since POI 4.0.0
+     */
+    protected SheetDataWriter(SharedStringsTable sharedStringsTable, boolean writeXml) throws IOException {
+        _fd = createTempFile();
+        _out = writeXml ? createWriter(_fd) : null;
+        _sharedStringSource = sharedStringsTable;
+    }
+
+    /**
+     * Create a writer which doesn't use a temp file, but writes the sheet data
+     * directly to the given writer, e.g. into an open zip entry.
+     *
+     * @param writer the writer to write the sheet data to
+     * @param sharedStringsTable the shared strings table, or null if inline text is used
+     * @see EmittingSXSSFWorkbook
+     */
+    protected SheetDataWriter(Writer writer, SharedStringsTable sharedStringsTable) {
+        _fd = null;
+        _out = writer;
+        _sharedStringSource = sharedStringsTable;
     }
     /**
      * Create a temp file to write sheet data. 
@@ -94,16 +124,24 @@ public class SheetDataWriter implements Closeable {
      * @param  fd the file to write to
      */
     public Writer createWriter(File fd) throws IOException {
+        return new BufferedWriter(
+                new OutputStreamWriter(createOutputStream(fd), "UTF-8"));
+    }
+
+    /**
+     * Create the stream to the temp file, decorated by {@link #decorateOutputStream(FileOutputStream)}
+     *
+     * @param fd the file to write to
+     * @since POI 4.0.0
+     */
+    protected OutputStream createOutputStream(File fd) throws IOException {
         FileOutputStream fos = new FileOutputStream(fd);
-        OutputStream decorated;
         try {
-            decorated = decorateOutputStream(fos);
+            return decorateOutputStream(fos);
         } catch (final IOException e) {
             fos.close();
             throw e;
         }
-        return new BufferedWriter(
-                new OutputStreamWriter(decorated, "UTF-8"));
     }
     
     /**
@@ -125,8 +163,10 @@ public class SheetDataWriter implements Closeable {
      * This method <em>must</em> be invoked before calling {@link #getWorksheetXMLInputStream()}
      */
     public void close() throws IOException {
-        _out.flush();
-        _out.close();
+        if (_out != null) {
+            _out.flush();
+            _out.close();
+        }
     }
 
     protected File getTempFile() {
@@ -138,6 +178,9 @@ public class SheetDataWriter implements Closeable {
      */
     public InputStream getWorksheetXMLInputStream() throws IOException {
         File fd = getTempFile();
+        if (fd == null) {
+            throw new IllegalStateException("The sheet data wasn't written to a temp file");
+        }
         FileInputStream fis = new FileInputStream(fd);
         try {
             return decorateInputStream(fis);
@@ -179,7 +222,7 @@ public class SheetDataWriter implements Closeable {
 
     @Override
     protected void finalize() throws Throwable {
-        if (!_fd.delete()) {
+        if (_fd != null && !_fd.delete()) {
             logger.log(POILogger.ERROR, "Can't delete temporary encryption file: "+_fd);
         }
 
@@ -262,10 +305,24 @@ public class SheetDataWriter implements Closeable {
                 break;
             }
             case FORMULA: {
+                CellType resultType = cell.getCachedFormulaResultType();
+                switch (resultType) {
+                    case STRING:
+                        writeAttribute("t", STCellType.STR.toString());
+                        break;
+                    case BOOLEAN:
+                        writeAttribute("t", "b");
+                        break;
+                    case ERROR:
+                        writeAttribute("t", "e");
+                        break;
+                    default:
+                        break;
+                }
                 _out.write("><f>");
                 outputQuotedString(cell.getCellFormula());
                 _out.write("</f>");
-                switch (cell.getCachedFormulaResultType()) {
+                switch (resultType) {
                     case NUMERIC:
                         double nval = cell.getNumericCellValue();
                         if (!Double.isNaN(nval)) {
@@ -274,6 +331,21 @@ public class SheetDataWriter implements Closeable {
                             _out.write("</v>");
                         }
                         break;
+                    case STRING:
+                        _out.write("<v>");
+                        outputQuotedString(cell.getStringCellValue());
+                        _out.write("</v>");
+                        break;
+                    case BOOLEAN:
+                        _out.write("<v>");
+                        _out.write(cell.getBooleanCellValue() ? "1" : "0");
+                        _out.write("</v>");
+                        break;
+                    case ERROR:
+                        _out.write("<v>");
+                        _out.write(FormulaError.forInt(cell.getErrorCellValue()).getString());
+                        _out.write("</v>");
+                        break;
                     default:
                         break;
                 }
@@ -352,6 +424,10 @@ public class SheetDataWriter implements Closeable {
     }
 
     protected void outputQuotedString(String s) throws IOException {
+        writeQuotedString(_out, s);
+    }
+
+    static void writeQuotedString(Writer out, String s) throws IOException {
         if (s == null || s.length() == 0) {
             return;
         }
@@ -359,29 +435,29 @@ public class SheetDataWriter implements Closeable {
         for (String codepoint : new StringCodepointsIterable(s)) {
             switch (codepoint) {
                 case "<":
-                    _out.write("&lt;");
+                    out.write("&lt;");
                     break;
                 case ">":
-                    _out.write("&gt;");
+                    out.write("&gt;");
                     break;
                 case "&":
-                    _out.write("&amp;");
+                    out.write("&amp;");
                     break;
                 case "\"":
-                    _out.write("&quot;");
+                    out.write("&quot;");
                     break;
                 // Special characters
                 case "\n":
-                    _out.write("&#xa;");
+                    out.write("&#xa;");
                     break;
                 case "\r":
-                    _out.write("&#xd;");
+                    out.write("&#xd;");
                     break;
                 case "\t":
-                    _out.write("&#x9;");
+                    out.write("&#x9;");
                     break;
                 case "\u00A0": // NO-BREAK SPACE
-                    _out.write("&#xa0;");
+                    out.write("&#xa0;");
                     break;
                 default:
                     if (codepoint.length() == 1) {
@@ -389,12 +465,12 @@ public class SheetDataWriter implements Closeable {
                         // YK: XmlBeans silently replaces all ISO control characters ( < 32) with question marks.
                         // the same rule applies to "not a character" symbols.
                         if (replaceWithQuestionMark(c)) {
-                            _out.write('?');
+                            out.write('?');
                         } else {
-                            _out.write(c);
+                            out.write(c);
                         }
                     } else {
-                        _out.write(codepoint);
+                        out.write(codepoint);
                     }
                     break;
             }
@@ -412,9 +488,11 @@ public class SheetDataWriter implements Closeable {
     boolean dispose() throws IOException {
         final boolean ret;
         try {
-            _out.close();
+            if (_out != null) {
+                _out.close();
+            }
         } finally {
-            ret = _fd.delete();
+            ret = _fd == null || _fd.delete();
         }
         return ret;
     }
@@ -56,7 +56,7 @@ public abstract class BaseXSSFEvaluationWorkbook implements FormulaRenderingWork
 
     // lazily populated. This should only be accessed through getTableCache
     // keys are lower-case to make this a quasi-case-insensitive map
-    private Map<String, XSSFTable> _tableCache;
+    private volatile Map<String, XSSFTable> _tableCache;
 
 
     protected BaseXSSFEvaluationWorkbook(XSSFWorkbook book) {
@@ -365,19 +365,22 @@ public abstract class BaseXSSFEvaluationWorkbook implements FormulaRenderingWork
      *       Perhaps tables can be managed similar to PivotTable references above?
      */
     private Map<String, XSSFTable> getTableCache() {
-        if ( _tableCache != null ) {
-            return _tableCache;
+        Map<String, XSSFTable> tableCache = _tableCache;
+        if ( tableCache != null ) {
+            return tableCache;
         }
         // FIXME: use org.apache.commons.collections.map.CaseInsensitiveMap
-        _tableCache = new HashMap<>();
+        tableCache = new HashMap<>();
 
         for (Sheet sheet : _uBook) {
             for (XSSFTable tbl : ((XSSFSheet)sheet).getTables()) {
                 String lname = caseInsensitive(tbl.getName());
-                _tableCache.put(lname, tbl);
+                tableCache.put(lname, tbl);
             }
         }
-        return _tableCache;
+        // only publish the filled map, formulas may be evaluated concurrently
+        _tableCache = tableCache;
+        return tableCache;
     }
 
     /**
@@ -29,7 +29,7 @@ import org.apache.poi.util.Internal;
  */
 @Internal
 public final class XSSFEvaluationWorkbook extends BaseXSSFEvaluationWorkbook {
-    private XSSFEvaluationSheet[] _sheetCache;
+    private volatile XSSFEvaluationSheet[] _sheetCache;
     
     public static XSSFEvaluationWorkbook create(XSSFWorkbook book) {
         if (book == null) {
@@ -63,18 +63,20 @@ public final class XSSFEvaluationWorkbook extends BaseXSSFEvaluationWorkbook {
         // to avoid re-creating the XSSFEvaluationSheet each time a new cell is evaluated
         // EvaluationWorkbooks make not guarantee to synchronize changes made to
         // the underlying workbook after the EvaluationWorkbook is created.
-        if (_sheetCache == null) {
+        XSSFEvaluationSheet[] sheetCache = _sheetCache;
+        if (sheetCache == null) {
             final int numberOfSheets = _uBook.getNumberOfSheets();
-            _sheetCache = new XSSFEvaluationSheet[numberOfSheets];
+            sheetCache = new XSSFEvaluationSheet[numberOfSheets];
             for (int i=0; i < numberOfSheets; i++) {
-                _sheetCache[i] = new XSSFEvaluationSheet(_uBook.getSheetAt(i));
+                sheetCache[i] = new XSSFEvaluationSheet(_uBook.getSheetAt(i));
             }
+            _sheetCache = sheetCache;
         }
-        if (sheetIndex < 0 || sheetIndex >= _sheetCache.length) {
+        if (sheetIndex < 0 || sheetIndex >= sheetCache.length) {
             // do this to reuse the out-of-bounds logic and message from XSSFWorkbook
             _uBook.getSheetAt(sheetIndex);
         }
-        return _sheetCache[sheetIndex];
+        return sheetCache[sheetIndex];
     }
 
     @Override    
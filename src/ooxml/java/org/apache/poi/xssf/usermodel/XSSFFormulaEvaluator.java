@@ -17,12 +17,18 @@
 
 package org.apache.poi.xssf.usermodel;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.poi.ss.formula.BaseFormulaEvaluator;
 import org.apache.poi.ss.formula.EvaluationCell;
 import org.apache.poi.ss.formula.IStabilityClassifier;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Workbook;
 
 /**
  * Evaluates formula cells.<p>
@@ -100,6 +106,55 @@ public final class XSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
         evaluateAllFormulaCells(_book, this);
     }
 
+    /**
+     * Evaluates the formula cells, which are affected by the cells changed since the last call,
+     *  and saves their results. The first call evaluates all formula cells.
+     *
+     * @return the number of evaluated formula cells
+     * @see BaseFormulaEvaluator#evaluateDirtyFormulaCells(Workbook, BaseFormulaEvaluator)
+     * @since POI 4.0.0
+     */
+    public int evaluateDirtyFormulaCells() {
+        return evaluateDirtyFormulaCells(_book, this);
+    }
+
+    /**
+     * Evaluates the formula cells, which are affected by the cells changed since the last call,
+     *  and saves their results. The independent cells are evaluated concurrently on the given pool.
+     *  The first call evaluates all formula cells.
+     *
+     * @param pool the pool to evaluate the cells on
+     * @return the number of evaluated formula cells
+     * @see BaseFormulaEvaluator#evaluateDirtyFormulaCells(Workbook, BaseFormulaEvaluator, ForkJoinPool)
+     * @since POI 4.0.0
+     */
+    public int evaluateDirtyFormulaCells(ForkJoinPool pool) {
+        return evaluateDirtyFormulaCells(_book, this, pool);
+    }
+
+    /**
+     * Writes the cached cell values to a snapshot, which can be restored after a restart
+     *  by {@link #readCacheSnapshot(InputStream)}.
+     *
+     * @see BaseFormulaEvaluator#writeCacheSnapshot(Workbook, BaseFormulaEvaluator, OutputStream)
+     * @since POI 4.0.0
+     */
+    public void writeCacheSnapshot(OutputStream out) throws IOException {
+        writeCacheSnapshot(_book, this, out);
+    }
+
+    /**
+     * Restores the cached cell values written by {@link #writeCacheSnapshot(OutputStream)},
+     *  if the workbook still has the same contents.
+     *
+     * @return {@code false}, if the snapshot was written for different workbook contents
+     * @see BaseFormulaEvaluator#readCacheSnapshot(Workbook, BaseFormulaEvaluator, InputStream)
+     * @since POI 4.0.0
+     */
+    public boolean readCacheSnapshot(InputStream in) throws IOException {
+        return readCacheSnapshot(_book, this, in);
+    }
+
     /**
      * Turns a XSSFCell into a XSSFEvaluationCell
      */
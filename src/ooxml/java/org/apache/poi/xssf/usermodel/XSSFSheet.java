@@ -81,6 +81,7 @@ import org.apache.poi.util.Internal;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 import org.apache.poi.util.Removal;
+import org.apache.poi.util.SortedIntMap;
 import org.apache.poi.util.Units;
 import org.apache.poi.xssf.model.CommentsTable;
 import org.apache.poi.xssf.usermodel.XSSFPivotTable.PivotTableReferenceConfigurator;
@@ -163,7 +164,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
     protected CTSheet sheet;
     protected CTWorksheet worksheet;
 
-    private final SortedMap<Integer, XSSFRow> _rows = new TreeMap<>();
+    private final SortedIntMap<XSSFRow> _rows = new SortedIntMap<>();
     private List<XSSFHyperlink> hyperlinks;
     private ColumnHelper columnHelper;
     private CommentsTable sheetComments;
@@ -175,6 +176,10 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
     private SortedMap<String,XSSFTable> tables;
     private List<CellRangeAddress> arrayFormulas;
     private XSSFDataValidationHelper dataValidationHelper;
+    /**
+     * true, while the worksheet part of a lazily opened workbook hasn't been parsed yet
+     */
+    private boolean unparsed;
 
     /**
      * Creates new XSSFSheet   - called by XSSFWorkbook to create a sheet from scratch.
@@ -231,7 +236,17 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
         initRows(worksheet);
         columnHelper = new ColumnHelper(worksheet);
-        // Look for bits we're interested in
+        initRelations();
+
+        // Process external hyperlinks for the sheet, if there are any
+        initHyperlinks();
+    }
+
+    /**
+     * Look for the related parts we're interested in
+     */
+    private void initRelations() {
+        List<XSSFPivotTable> pivotTables = getWorkbook().getPivotTables();
         for(RelationPart rp : getRelationParts()){
             POIXMLDocumentPart p = rp.getDocumentPart();
             if(p instanceof CommentsTable) {
@@ -240,13 +255,45 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
             if(p instanceof XSSFTable) {
                tables.put( rp.getRelationship().getId(), (XSSFTable)p );
             }
-            if(p instanceof XSSFPivotTable) {
-                getWorkbook().getPivotTables().add((XSSFPivotTable) p);
+            // a lazily parsed sheet has already registered its pivot tables
+            if(p instanceof XSSFPivotTable && !pivotTables.contains(p)) {
+                pivotTables.add((XSSFPivotTable) p);
             }
         }
+    }
 
-        // Process external hyperlinks for the sheet, if there are any
-        initHyperlinks();
+    /**
+     * Called by a lazily opened workbook instead of {@link #onDocumentRead()}.
+     * Only the related parts are processed, the worksheet part is parsed
+     * when the sheet is accessed the first time.
+     *
+     * @see XSSFWorkbook#XSSFWorkbook(org.apache.poi.openxml4j.opc.OPCPackage, boolean)
+     */
+    void onDocumentReadDeferred() {
+        unparsed = true;
+        tables = new TreeMap<>();
+        initRelations();
+    }
+
+    /**
+     * Parses the worksheet part, if this hasn't been done yet
+     *
+     * @return this sheet
+     */
+    XSSFSheet ensureParsed() {
+        if (unparsed) {
+            unparsed = false;
+            onDocumentRead();
+        }
+        return this;
+    }
+
+    /**
+     * @return true, if the worksheet part of a lazily opened workbook hasn't been parsed yet
+     */
+    @Internal
+    public boolean isParsed() {
+        return !unparsed;
     }
 
     /**
@@ -267,9 +314,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
         arrayFormulas = new ArrayList<>();
         for (CTRow row : worksheetParam.getSheetData().getRowArray()) {
             XSSFRow r = new XSSFRow(row, this);
-            // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-            final Integer rownumI = Integer.valueOf(r.getRowNum()); // NOSONAR
-            _rows.put(rownumI, r);
+            _rows.put(r.getRowNum(), r);
         }
     }
 
@@ -337,10 +382,12 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Internal
     public CTWorksheet getCTWorksheet() {
+        ensureParsed();
         return this.worksheet;
     }
 
     public ColumnHelper getColumnHelper() {
+        ensureParsed();
         return columnHelper;
     }
 
@@ -365,6 +412,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int addMergedRegion(CellRangeAddress region) {
+        ensureParsed();
         return addMergedRegion(region, true);
     }
 
@@ -383,6 +431,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int addMergedRegionUnsafe(CellRangeAddress region) {
+        ensureParsed();
         return addMergedRegion(region, false);
     }
 
@@ -547,6 +596,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void autoSizeColumn(int column, boolean useMergedCells) {
+        ensureParsed();
         double width = SheetUtil.getColumnWidth(this, column, useMergedCells);
 
         if (width != -1) {
@@ -595,6 +645,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public XSSFDrawing createDrawingPatriarch() {
+        ensureParsed();
         CTDrawing ctDrawing = getCTDrawing();
         if (ctDrawing != null) {
             return getDrawingPatriarch();
@@ -624,6 +675,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return the VML drawing of <code>null</code> if the drawing was not found and autoCreate=false
      */
     protected XSSFVMLDrawing getVMLDrawing(boolean autoCreate) {
+        ensureParsed();
         XSSFVMLDrawing drawing = null;
         CTLegacyDrawing ctDrawing = getCTLegacyDrawing();
         if(ctDrawing == null) {
@@ -662,9 +714,11 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
     }
 
     protected CTDrawing getCTDrawing() {
+        ensureParsed();
        return worksheet.getDrawing();
     }
     protected CTLegacyDrawing getCTLegacyDrawing() {
+        ensureParsed();
        return worksheet.getLegacyDrawing();
     }
 
@@ -692,6 +746,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void createFreezePane(int colSplit, int rowSplit, int leftmostColumn, int topRow) {
+        ensureParsed();
         CTSheetView ctView = getDefaultSheetView();
 
         // If both colSplit and rowSplit are zero then the existing freeze pane is removed
@@ -752,10 +807,9 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public XSSFRow createRow(int rownum) {
-        // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-        final Integer rownumI = Integer.valueOf(rownum); // NOSONAR
+        ensureParsed();
         CTRow ctRow;
-        XSSFRow prev = _rows.get(rownumI);
+        XSSFRow prev = _rows.get(rownum);
         if(prev != null){
             // the Cells in an existing row are invalidated on-purpose, in order to clean up correctly, we
             // need to call the remove, so things like ArrayFormulas and CalculationChain updates are done 
@@ -775,13 +829,13 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
             } else {
                 // get number of rows where row index < rownum
                 // --> this tells us where our row should go
-                int idx = _rows.headMap(rownumI).size();
+                int idx = _rows.headSize(rownum);
                 ctRow = worksheet.getSheetData().insertNewRow(idx);
             }
         }
         XSSFRow r = new XSSFRow(ctRow, this);
         r.setRowNum(rownum);
-        _rows.put(rownumI, r);
+        _rows.put(rownum, r);
         return r;
     }
 
@@ -800,6 +854,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void createSplitPane(int xSplitPos, int ySplitPos, int leftmostColumn, int topRow, int activePane) {
+        ensureParsed();
         createFreezePane(xSplitPos, ySplitPos, leftmostColumn, topRow);
         getPane().setState(STPaneState.SPLIT);
         getPane().setActivePane(STPane.Enum.forInt(activePane));
@@ -865,6 +920,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public XSSFHyperlink getHyperlink(CellAddress addr) {
+        ensureParsed();
         String ref = addr.formatAsString();
         for(XSSFHyperlink hyperlink : hyperlinks) {
             if(hyperlink.getCellRef().equals(ref)) {
@@ -881,6 +937,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public List<XSSFHyperlink> getHyperlinkList() {
+        ensureParsed();
         return Collections.unmodifiableList(hyperlinks);
     }
 
@@ -912,6 +969,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int[] getColumnBreaks() {
+        ensureParsed();
         return worksheet.isSetColBreaks() ? getBreaks(worksheet.getColBreaks()) : new int[0];
     }
 
@@ -930,6 +988,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int getColumnWidth(int columnIndex) {
+        ensureParsed();
         CTCol col = columnHelper.getColumn(columnIndex, false);
         double width = col == null || !col.isSetWidth() ? getDefaultColumnWidth() : col.getWidth();
         return (int)(width*256);
@@ -960,6 +1019,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int getDefaultColumnWidth() {
+        ensureParsed();
         CTSheetFormatPr pr = worksheet.getSheetFormatPr();
         return pr == null ? 8 : (int)pr.getBaseColWidth();
     }
@@ -983,6 +1043,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public float getDefaultRowHeightInPoints() {
+        ensureParsed();
         CTSheetFormatPr pr = worksheet.getSheetFormatPr();
         return (float)(pr == null ? 0 : pr.getDefaultRowHeight());
     }
@@ -1000,6 +1061,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public CellStyle getColumnStyle(int column) {
+        ensureParsed();
         int idx = columnHelper.getColDefaultStyle(column);
         return getWorkbook().getCellStyleAt((short)(idx == -1 ? 0 : idx));
     }
@@ -1011,6 +1073,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setRightToLeft(boolean value) {
+        ensureParsed();
        CTSheetView view = getDefaultSheetView();
        view.setRightToLeft(value);
     }
@@ -1022,6 +1085,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isRightToLeft() {
+        ensureParsed();
        CTSheetView view = getDefaultSheetView();
        return view != null && view.getRightToLeft();
     }
@@ -1034,6 +1098,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getDisplayGuts() {
+        ensureParsed();
         CTSheetPr sheetPr = getSheetTypeSheetPr();
         CTOutlinePr outlinePr = sheetPr.getOutlinePr() == null ? CTOutlinePr.Factory.newInstance() : sheetPr.getOutlinePr();
         return outlinePr.getShowOutlineSymbols();
@@ -1046,6 +1111,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDisplayGuts(boolean value) {
+        ensureParsed();
         CTSheetPr sheetPr = getSheetTypeSheetPr();
         CTOutlinePr outlinePr = sheetPr.getOutlinePr() == null ? sheetPr.addNewOutlinePr() : sheetPr.getOutlinePr();
         outlinePr.setShowOutlineSymbols(value);
@@ -1059,6 +1125,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isDisplayZeros(){
+        ensureParsed();
         CTSheetView view = getDefaultSheetView();
         return view == null || view.getShowZeros();
     }
@@ -1071,6 +1138,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDisplayZeros(boolean value){
+        ensureParsed();
         CTSheetView view = getSheetTypeSheetView();
         view.setShowZeros(value);
     }
@@ -1082,6 +1150,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int getFirstRowNum() {
+        ensureParsed();
         return _rows.isEmpty() ? 0 : _rows.firstKey();
     }
 
@@ -1092,6 +1161,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getFitToPage() {
+        ensureParsed();
         CTSheetPr sheetPr = getSheetTypeSheetPr();
         CTPageSetUpPr psSetup = (sheetPr == null || !sheetPr.isSetPageSetUpPr()) ?
                 CTPageSetUpPr.Factory.newInstance() : sheetPr.getPageSetUpPr();
@@ -1148,6 +1218,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  odd pages.
      */
     public Footer getOddFooter() {
+        ensureParsed();
         return new XSSFOddFooter(getSheetTypeHeaderFooter());
     }
     /**
@@ -1155,6 +1226,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  when set, used on even pages.
      */
     public Footer getEvenFooter() {
+        ensureParsed();
         return new XSSFEvenFooter(getSheetTypeHeaderFooter());
     }
     /**
@@ -1162,6 +1234,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  default, but when set, used on the first page.
      */
     public Footer getFirstFooter() {
+        ensureParsed();
         return new XSSFFirstFooter(getSheetTypeHeaderFooter());
     }
 
@@ -1171,6 +1244,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  odd pages.
      */
     public Header getOddHeader() {
+        ensureParsed();
         return new XSSFOddHeader(getSheetTypeHeaderFooter());
     }
     /**
@@ -1178,6 +1252,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  when set, used on even pages.
      */
     public Header getEvenHeader() {
+        ensureParsed();
         return new XSSFEvenHeader(getSheetTypeHeaderFooter());
     }
     /**
@@ -1185,6 +1260,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  default, but when set, used on the first page.
      */
     public Header getFirstHeader() {
+        ensureParsed();
         return new XSSFFirstHeader(getSheetTypeHeaderFooter());
     }
 
@@ -1194,17 +1270,20 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getHorizontallyCenter() {
+        ensureParsed();
         CTPrintOptions opts = worksheet.getPrintOptions();
         return opts != null && opts.getHorizontalCentered();
     }
 
     @Override
     public int getLastRowNum() {
+        ensureParsed();
         return _rows.isEmpty() ? 0 : _rows.lastKey();
     }
 
     @Override
     public short getLeftCol() {
+        ensureParsed();
         String cellRef = worksheet.getSheetViews().getSheetViewArray(0).getTopLeftCell();
         if(cellRef == null) {
             return 0;
@@ -1227,6 +1306,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public double getMargin(short margin) {
+        ensureParsed();
         if (!worksheet.isSetPageMargins()) {
             return 0;
         }
@@ -1264,6 +1344,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setMargin(short margin, double size) {
+        ensureParsed();
         CTPageMargins pageMargins = worksheet.isSetPageMargins() ?
                 worksheet.getPageMargins() : worksheet.addNewPageMargins();
         switch (margin) {
@@ -1299,6 +1380,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public CellRangeAddress getMergedRegion(int index) {
+        ensureParsed();
         CTMergeCells ctMergeCells = worksheet.getMergeCells();
         if(ctMergeCells == null) {
             throw new IllegalStateException("This worksheet does not contain merged regions");
@@ -1317,6 +1399,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public List<CellRangeAddress> getMergedRegions() {
+        ensureParsed();
         List<CellRangeAddress> addresses = new ArrayList<>();
         CTMergeCells ctMergeCells = worksheet.getMergeCells();
         if(ctMergeCells == null) {
@@ -1337,11 +1420,13 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int getNumMergedRegions() {
+        ensureParsed();
         CTMergeCells ctMergeCells = worksheet.getMergeCells();
         return ctMergeCells == null ? 0 : ctMergeCells.sizeOfMergeCellArray();
     }
 
     public int getNumHyperlinks() {
+        ensureParsed();
         return hyperlinks.size();
     }
 
@@ -1352,6 +1437,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public PaneInformation getPaneInformation() {
+        ensureParsed();
         CTPane pane = getDefaultSheetView().getPane();
         // no pane configured
         if(pane == null) {
@@ -1371,6 +1457,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int getPhysicalNumberOfRows() {
+        ensureParsed();
         return _rows.size();
     }
 
@@ -1381,6 +1468,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public XSSFPrintSetup getPrintSetup() {
+        ensureParsed();
         return new XSSFPrintSetup(worksheet);
     }
 
@@ -1403,6 +1491,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void protectSheet(String password) {
+        ensureParsed();
         if (password != null) {
             CTSheetProtection sheetProtection = safeGetProtectionField();
             setSheetPassword(password, null); // defaults to xor password
@@ -1422,6 +1511,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  otherwise the given algorithm is used for calculating the hash password (Excel 2013)
      */
     public void setSheetPassword(String password, HashAlgorithm hashAlgo) {
+        ensureParsed();
         if (password == null && !isSheetProtectionEnabled()) {
             return;
         }
@@ -1434,6 +1524,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true, if the hashes match (... though original password may differ ...)
      */
     public boolean validateSheetPassword(String password) {
+        ensureParsed();
         if (!isSheetProtectionEnabled()) {
             return (password == null);
         }
@@ -1449,9 +1540,8 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public XSSFRow getRow(int rownum) {
-        // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-        final Integer rownumI = Integer.valueOf(rownum); // NOSONAR
-        return _rows.get(rownumI);
+        ensureParsed();
+        return _rows.get(rownum);
     }
     
     /**
@@ -1480,10 +1570,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
             }
         }
         else {
-            // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-            final Integer startI = Integer.valueOf(startRowNum); // NOSONAR
-            final Integer endI = Integer.valueOf(endRowNum+1); // NOSONAR
-            final Collection<XSSFRow> inclusive = _rows.subMap(startI, endI).values();
+            final Collection<XSSFRow> inclusive = _rows.values(startRowNum, endRowNum+1);
             rows.addAll(inclusive);
         }
         return rows;
@@ -1497,6 +1584,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public int[] getRowBreaks() {
+        ensureParsed();
         return worksheet.isSetRowBreaks() ? getBreaks(worksheet.getRowBreaks()) : new int[0];
 
     }
@@ -1516,6 +1604,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getRowSumsBelow() {
+        ensureParsed();
         CTSheetPr sheetPr = worksheet.getSheetPr();
         CTOutlinePr outlinePr = (sheetPr != null && sheetPr.isSetOutlinePr())
                 ? sheetPr.getOutlinePr() : null;
@@ -1537,6 +1626,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setRowSumsBelow(boolean value) {
+        ensureParsed();
         ensureOutlinePr().setSummaryBelow(value);
     }
 
@@ -1555,6 +1645,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getRowSumsRight() {
+        ensureParsed();
         CTSheetPr sheetPr = worksheet.getSheetPr();
         CTOutlinePr outlinePr = (sheetPr != null && sheetPr.isSetOutlinePr())
                 ? sheetPr.getOutlinePr() : CTOutlinePr.Factory.newInstance();
@@ -1576,6 +1667,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setRowSumsRight(boolean value) {
+        ensureParsed();
         ensureOutlinePr().setSummaryRight(value);
     }
 
@@ -1595,6 +1687,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getScenarioProtect() {
+        ensureParsed();
         return worksheet.isSetSheetProtection() && worksheet.getSheetProtection().getScenarios();
     }
 
@@ -1606,6 +1699,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public short getTopRow() {
+        ensureParsed();
         String cellRef = getSheetTypeSheetView().getTopLeftCell();
         if(cellRef == null) {
             return 0;
@@ -1621,6 +1715,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getVerticallyCenter() {
+        ensureParsed();
         CTPrintOptions opts = worksheet.getPrintOptions();
         return opts != null && opts.getVerticalCentered();
     }
@@ -1630,6 +1725,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void groupColumn(int fromColumn, int toColumn) {
+        ensureParsed();
         groupColumn1Based(fromColumn+1, toColumn+1);
     }
     private void groupColumn1Based(int fromColumn, int toColumn) {
@@ -1684,6 +1780,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void groupRow(int fromRow, int toRow) {
+        ensureParsed();
         for (int i = fromRow; i <= toRow; i++) {
             XSSFRow xrow = getRow(i);
             if (xrow == null) {
@@ -1734,6 +1831,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isColumnHidden(int columnIndex) {
+        ensureParsed();
         CTCol col = columnHelper.getColumn(columnIndex, false);
         return col != null && col.getHidden();
     }
@@ -1745,6 +1843,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isDisplayFormulas() {
+        ensureParsed();
         return getSheetTypeSheetView().getShowFormulas();
     }
 
@@ -1757,6 +1856,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isDisplayGridlines() {
+        ensureParsed();
         return getSheetTypeSheetView().getShowGridLines();
     }
 
@@ -1771,6 +1871,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDisplayGridlines(boolean show) {
+        ensureParsed();
         getSheetTypeSheetView().setShowGridLines(show);
     }
 
@@ -1787,6 +1888,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isDisplayRowColHeadings() {
+        ensureParsed();
         return getSheetTypeSheetView().getShowRowColHeaders();
     }
 
@@ -1803,6 +1905,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDisplayRowColHeadings(boolean show) {
+        ensureParsed();
         getSheetTypeSheetView().setShowRowColHeaders(show);
     }
 
@@ -1813,6 +1916,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isPrintGridlines() {
+        ensureParsed();
         CTPrintOptions opts = worksheet.getPrintOptions();
         return opts != null && opts.getGridLines();
     }
@@ -1824,6 +1928,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setPrintGridlines(boolean value) {
+        ensureParsed();
         CTPrintOptions opts = worksheet.isSetPrintOptions() ?
                 worksheet.getPrintOptions() : worksheet.addNewPrintOptions();
         opts.setGridLines(value);
@@ -1836,6 +1941,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isPrintRowAndColumnHeadings() {
+        ensureParsed();
         CTPrintOptions opts = worksheet.getPrintOptions();
         return opts != null && opts.getHeadings();
     }
@@ -1847,6 +1953,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setPrintRowAndColumnHeadings(boolean value) {
+        ensureParsed();
         CTPrintOptions opts = worksheet.isSetPrintOptions() ?
                 worksheet.getPrintOptions() : worksheet.addNewPrintOptions();
         opts.setHeadings(value);
@@ -1892,6 +1999,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setRowBreak(int row) {
+        ensureParsed();
         if (!isRowBroken(row)) {
             CTPageBreak pgBreak = worksheet.isSetRowBreaks() ? worksheet.getRowBreaks() : worksheet.addNewRowBreaks();
             setBreak(row, pgBreak, SpreadsheetVersion.EXCEL2007.getLastColumnIndex());
@@ -1903,6 +2011,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void removeColumnBreak(int column) {
+        ensureParsed();
         if (worksheet.isSetColBreaks()) {
             removeBreak(column, worksheet.getColBreaks());
         } // else no breaks
@@ -1915,6 +2024,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void removeMergedRegion(int index) {
+        ensureParsed();
         if (!worksheet.isSetMergeCells()) {
             return;
         }
@@ -1940,6 +2050,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void removeMergedRegions(Collection<Integer> indices) {
+        ensureParsed();
         if (!worksheet.isSetMergeCells()) {
             return;
         }
@@ -1969,6 +2080,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void removeRow(Row row) {
+        ensureParsed();
         if (row.getSheet() != this) {
             throw new IllegalArgumentException("Specified row does not belong to this sheet");
         }
@@ -1982,12 +2094,10 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
             row.removeCell(cell);
         }
 
-        // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
         final int rowNum = row.getRowNum();
-        final Integer rowNumI = Integer.valueOf(rowNum); // NOSONAR
         // this is not the physical row number!
-        final int idx = _rows.headMap(rowNumI).size();
-        _rows.remove(rowNumI);
+        final int idx = _rows.headSize(rowNum);
+        _rows.remove(rowNum);
         worksheet.getSheetData().removeRow(idx);
 
         // also remove any comment located in that row
@@ -2005,6 +2115,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void removeRowBreak(int row) {
+        ensureParsed();
         if (worksheet.isSetRowBreaks()) {
             removeBreak(row, worksheet.getRowBreaks());
         } // else no breaks
@@ -2032,6 +2143,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setForceFormulaRecalculation(boolean value) {
+        ensureParsed();
         CTCalcPr calcPr = getWorkbook().getCTWorkbook().getCalcPr();
 
         if(worksheet.isSetSheetCalcPr()) {
@@ -2056,6 +2168,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getForceFormulaRecalculation() {
+        ensureParsed();
        if(worksheet.isSetSheetCalcPr()) {
           CTSheetCalcPr calc = worksheet.getSheetCalcPr();
           return calc.getFullCalcOnLoad();
@@ -2071,6 +2184,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
     @Override
     @SuppressWarnings("unchecked")
     public Iterator<Row> rowIterator() {
+        ensureParsed();
         return (Iterator<Row>)(Iterator<? extends Row>) _rows.values().iterator();
     }
 
@@ -2090,6 +2204,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean getAutobreaks() {
+        ensureParsed();
         CTSheetPr sheetPr = getSheetTypeSheetPr();
         CTPageSetUpPr psSetup = (sheetPr == null || !sheetPr.isSetPageSetUpPr()) ?
                 CTPageSetUpPr.Factory.newInstance() : sheetPr.getPageSetUpPr();
@@ -2103,6 +2218,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setAutobreaks(boolean value) {
+        ensureParsed();
         CTSheetPr sheetPr = getSheetTypeSheetPr();
         CTPageSetUpPr psSetup = sheetPr.isSetPageSetUpPr() ? sheetPr.getPageSetUpPr() : sheetPr.addNewPageSetUpPr();
         psSetup.setAutoPageBreaks(value);
@@ -2121,6 +2237,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setColumnBreak(int column) {
+        ensureParsed();
         if (!isColumnBroken(column)) {
             CTPageBreak pgBreak = worksheet.isSetColBreaks() ? worksheet.getColBreaks() : worksheet.addNewColBreaks();
             setBreak(column, pgBreak, SpreadsheetVersion.EXCEL2007.getLastRowIndex());
@@ -2129,6 +2246,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public void setColumnGroupCollapsed(int columnNumber, boolean collapsed) {
+        ensureParsed();
         if (collapsed) {
             collapseColumn(columnNumber);
         } else {
@@ -2475,6 +2593,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setColumnHidden(int columnIndex, boolean hidden) {
+        ensureParsed();
         columnHelper.setColHidden(columnIndex, hidden);
      }
 
@@ -2524,6 +2643,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setColumnWidth(int columnIndex, int width) {
+        ensureParsed();
         if(width > 255*256) {
             throw new IllegalArgumentException("The maximum column width for an individual cell is 255 characters.");
         }
@@ -2534,6 +2654,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public void setDefaultColumnStyle(int column, CellStyle style) {
+        ensureParsed();
         columnHelper.setColDefaultStyle(column, style);
     }
 
@@ -2546,6 +2667,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDefaultColumnWidth(int width) {
+        ensureParsed();
         getSheetTypeSheetFormatPr().setBaseColWidth(width);
     }
 
@@ -2567,6 +2689,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDefaultRowHeightInPoints(float height) {
+        ensureParsed();
         CTSheetFormatPr pr = getSheetTypeSheetFormatPr();
         pr.setDefaultRowHeight(height);
         pr.setCustomHeight(true);
@@ -2579,6 +2702,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setDisplayFormulas(boolean show) {
+        ensureParsed();
         getSheetTypeSheetView().setShowFormulas(show);
     }
 
@@ -2596,6 +2720,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setFitToPage(boolean b) {
+        ensureParsed();
         getSheetTypePageSetUpPr().setFitToPage(b);
     }
 
@@ -2606,6 +2731,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setHorizontallyCenter(boolean value) {
+        ensureParsed();
         CTPrintOptions opts = worksheet.isSetPrintOptions() ?
                 worksheet.getPrintOptions() : worksheet.addNewPrintOptions();
         opts.setHorizontalCentered(value);
@@ -2618,6 +2744,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setVerticallyCenter(boolean value) {
+        ensureParsed();
         CTPrintOptions opts = worksheet.isSetPrintOptions() ?
                 worksheet.getPrintOptions() : worksheet.addNewPrintOptions();
         opts.setVerticalCentered(value);
@@ -2830,6 +2957,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setZoom(int scale) {
+        ensureParsed();
         if (scale < 10 || scale > 400) {
             throw new IllegalArgumentException("Valid scale values range from 10 to 400");
         }
@@ -2852,6 +2980,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public void copyRows(List<? extends Row> srcRows, int destStartRow, CellCopyPolicy policy) {
+        ensureParsed();
         if (srcRows == null || srcRows.size() == 0) {
             throw new IllegalArgumentException("No rows to copy");
         }
@@ -2944,6 +3073,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public void copyRows(int srcStartRow, int srcEndRow, int destStartRow, CellCopyPolicy cellCopyPolicy) {
+        ensureParsed();
         final List<XSSFRow> srcRows = getRows(srcStartRow, srcEndRow, false); //FIXME: should be false, no need to create rows where src is only to copy them to dest
         copyRows(srcRows, destStartRow, cellCopyPolicy);
     }
@@ -2985,6 +3115,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void shiftRows(int startRow, int endRow, final int n, boolean copyRowHeight, boolean resetOriginalRowHeight) {
+        ensureParsed();
         XSSFVMLDrawing vml = getVMLDrawing(false);
 
         int sheetIndex = getWorkbook().getSheetIndex(this);
@@ -3001,15 +3132,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
         rowShifter.updateConditionalFormatting(formulaShifter);
         rowShifter.updateHyperlinks(formulaShifter);
 
-        //rebuild the _rows map
-        Map<Integer, XSSFRow> map = new HashMap<>();
-        for(XSSFRow r : _rows.values()) {
-            // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-            final Integer rownumI = new Integer(r.getRowNum()); // NOSONAR
-            map.put(rownumI, r);
-        }
-        _rows.clear();
-        _rows.putAll(map);
+        rebuildRows();
     }
     
     /**
@@ -3023,6 +3146,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */    
     @Override
     public void shiftColumns(int startColumn, int endColumn, final int n) {
+        ensureParsed();
         XSSFVMLDrawing vml = getVMLDrawing(false);
         shiftCommentsForColumns(vml, startColumn, endColumn, n);
         FormulaShifter formulaShifter = FormulaShifter.createForColumnShift(this.getWorkbook().getSheetIndex(this), this.getSheetName(), startColumn, endColumn, n, SpreadsheetVersion.EXCEL2007);
@@ -3034,14 +3158,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
         columnShifter.updateHyperlinks(formulaShifter);
         columnShifter.updateNamedRanges(formulaShifter);
 
-        //rebuild the _rows map
-        Map<Integer, XSSFRow> map = new HashMap<>();
-        for(XSSFRow r : _rows.values()) {
-            final Integer rownumI = new Integer(r.getRowNum()); // NOSONAR
-            map.put(rownumI, r);
-        }
-        _rows.clear();
-        _rows.putAll(map);
+        rebuildRows();
     }
     
     // remove all rows which will be overwritten
@@ -3053,9 +3170,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
             // check if we should remove this row as it will be overwritten by the data later
             if (shouldRemoveRow(startRow, endRow, n, rownum)) {
                 // remove row from worksheet.getSheetData row array
-                // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-                final Integer rownumI = Integer.valueOf(row.getRowNum()); // NOSONAR
-                int idx = _rows.headMap(rownumI).size();
+                int idx = _rows.headSize(row.getRowNum());
                 worksheet.getSheetData().removeRow(idx);
 
                 // remove row from _rows
@@ -3158,17 +3273,23 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
              entry.getKey().setRow(entry.getValue());
          }
          
-         //rebuild the _rows map
-         Map<Integer, XSSFRow> map = new HashMap<>();
-         for(XSSFRow r : _rows.values()) {
-             // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-             final Integer rownumI = Integer.valueOf(r.getRowNum()); // NOSONAR
-             map.put(rownumI, r);
-         }
-         _rows.clear();
-         _rows.putAll(map);
+         rebuildRows();
          
     }
+    /**
+     * Re-keys the rows by their current row numbers, e.g. after they have been shifted.
+     * The rows are put in ascending order, so each of them is appended to the map.
+     */
+    private void rebuildRows() {
+        List<XSSFRow> rows = new ArrayList<>(_rows.values());
+        // stable, so a row which is shifted onto another one still replaces it
+        rows.sort(Comparator.comparingInt(XSSFRow::getRowNum));
+        _rows.clear();
+        for (XSSFRow r : rows) {
+            _rows.put(r.getRowNum(), r);
+        }
+    }
+
     private int shiftedRowNum(int startRow, int endRow, int n, int rownum) {
         // no change if before any affected row
         if(rownum < startRow && (n > 0 || (startRow - rownum) > n)) {
@@ -3244,15 +3365,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
             entry.getKey().setColumn(entry.getValue());
         }
         
-        //rebuild the _rows map
-        Map<Integer, XSSFRow> map = new HashMap<>();
-        for(XSSFRow r : _rows.values()) {
-            // Performance optimization: explicit boxing is slightly faster than auto-unboxing, though may use more memory
-            final Integer rownumI = Integer.valueOf(r.getRowNum()); // NOSONAR
-            map.put(rownumI, r);
-        }
-        _rows.clear();
-        _rows.putAll(map);
+        rebuildRows();
         
     }
 
@@ -3265,6 +3378,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void showInPane(int toprow, int leftcol) {
+        ensureParsed();
         CellReference cellReference = new CellReference(toprow, leftcol);
         String cellRef = cellReference.formatAsString();
         getPane().setTopLeftCell(cellRef);
@@ -3272,6 +3386,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public void ungroupColumn(int fromColumn, int toColumn) {
+        ensureParsed();
         CTCols cols = worksheet.getColsArray(0);
         for (int index = fromColumn; index <= toColumn; index++) {
             CTCol col = columnHelper.getColumn(index, false);
@@ -3298,6 +3413,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void ungroupRow(int fromRow, int toRow) {
+        ensureParsed();
         for (int i = fromRow; i <= toRow; i++) {
             XSSFRow xrow = getRow(i);
             if (xrow != null) {
@@ -3343,6 +3459,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public boolean isSelected() {
+        ensureParsed();
         CTSheetView view = getDefaultSheetView();
         return view != null && view.getTabSelected();
     }
@@ -3360,6 +3477,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setSelected(boolean value) {
+        ensureParsed();
         CTSheetViews views = getSheetTypeSheetViews();
         for (CTSheetView view : views.getSheetViewArray()) {
             view.setTabSelected(value);
@@ -3373,6 +3491,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Internal
     public void addHyperlink(XSSFHyperlink hyperlink) {
+        ensureParsed();
         hyperlinks.add(hyperlink);
     }
 
@@ -3384,6 +3503,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Internal
     public void removeHyperlink(int row, int column) {
+        ensureParsed();
         // CTHyperlinks is regenerated from scratch when writing out the spreadsheet
         // so don't worry about maintaining hyperlinks and CTHyperlinks in parallel.
         // only maintain hyperlinks
@@ -3404,6 +3524,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public CellAddress getActiveCell() {
+        ensureParsed();
         String address = getSheetTypeSelection().getActiveCell();
         if (address == null) {
             return null;
@@ -3416,6 +3537,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Override
     public void setActiveCell(CellAddress address) {
+        ensureParsed();
         String ref = address.formatAsString();
         CTSelection ctsel = getSheetTypeSelection();
         ctsel.setActiveCell(ref);
@@ -3517,10 +3639,12 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Internal
     public CTCellFormula getSharedFormula(int sid){
+        ensureParsed();
         return sharedFormulas.get(sid);
     }
 
     void onReadCell(XSSFCell cell){
+        ensureParsed();
         //collect cells holding shared formulas
         CTCell ct = cell.getCTCell();
         CTCellFormula f = ct.getF();
@@ -3547,15 +3671,41 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
         }
     }
 
+    /**
+     * Keeps the content of a sheet, which hasn't been parsed, so it's copied verbatim
+     */
+    @Override
+    protected void prepareForCommit() {
+        if (!unparsed) {
+            super.prepareForCommit();
+        }
+    }
+
     @Override
     protected void commit() throws IOException {
+        if (unparsed) {
+            return;
+        }
         PackagePart part = getPackagePart();
         OutputStream out = part.getOutputStream();
         write(out);
         out.close();
     }
 
+    /**
+     * Write the worksheet part as it would be written with the workbook, e.g. to
+     * stream the sheet data of SXSSF directly into the package.
+     *
+     * @param out the stream to write the worksheet XML to
+     */
+    @Internal
+    public void writeWorksheet(OutputStream out) throws IOException {
+        ensureParsed();
+        write(out);
+    }
+
     protected void write(OutputStream out) throws IOException {
+        ensureParsed();
         boolean setToNull = false;
         if(worksheet.sizeOfColsArray() == 1) {
             CTCols col = worksheet.getColsArray(0);
@@ -3640,6 +3790,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Autofilters are locked and the sheet is protected.
      */
     public boolean isAutoFilterLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getAutoFilter();
     }
 
@@ -3647,6 +3798,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Deleting columns is locked and the sheet is protected.
      */
     public boolean isDeleteColumnsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getDeleteColumns();
     }
 
@@ -3654,6 +3806,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Deleting rows is locked and the sheet is protected.
      */
     public boolean isDeleteRowsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getDeleteRows();
     }
 
@@ -3661,6 +3814,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Formatting cells is locked and the sheet is protected.
      */
     public boolean isFormatCellsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getFormatCells();
     }
 
@@ -3668,6 +3822,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Formatting columns is locked and the sheet is protected.
      */
     public boolean isFormatColumnsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getFormatColumns();
     }
 
@@ -3675,6 +3830,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Formatting rows is locked and the sheet is protected.
      */
     public boolean isFormatRowsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getFormatRows();
     }
 
@@ -3682,6 +3838,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Inserting columns is locked and the sheet is protected.
      */
     public boolean isInsertColumnsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getInsertColumns();
     }
 
@@ -3689,6 +3846,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Inserting hyperlinks is locked and the sheet is protected.
      */
     public boolean isInsertHyperlinksLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getInsertHyperlinks();
     }
 
@@ -3696,6 +3854,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Inserting rows is locked and the sheet is protected.
      */
     public boolean isInsertRowsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getInsertRows();
     }
 
@@ -3703,6 +3862,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Pivot tables are locked and the sheet is protected.
      */
     public boolean isPivotTablesLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getPivotTables();
     }
 
@@ -3710,6 +3870,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Sorting is locked and the sheet is protected.
      */
     public boolean isSortLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getSort();
     }
 
@@ -3717,6 +3878,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Objects are locked and the sheet is protected.
      */
     public boolean isObjectsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getObjects();
     }
 
@@ -3724,6 +3886,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Scenarios are locked and the sheet is protected.
      */
     public boolean isScenariosLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getScenarios();
     }
 
@@ -3731,6 +3894,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Selection of locked cells is locked and the sheet is protected.
      */
     public boolean isSelectLockedCellsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getSelectLockedCells();
     }
 
@@ -3738,6 +3902,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Selection of unlocked cells is locked and the sheet is protected.
      */
     public boolean isSelectUnlockedCellsLocked() {
+        ensureParsed();
         return isSheetLocked() && safeGetProtectionField().getSelectUnlockedCells();
     }
 
@@ -3745,6 +3910,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return true when Sheet is Protected.
      */
     public boolean isSheetLocked() {
+        ensureParsed();
         return worksheet.isSetSheetProtection() && safeGetProtectionField().getSheet();
     }
 
@@ -3752,6 +3918,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * Enable sheet protection
      */
     public void enableLocking() {
+        ensureParsed();
         safeGetProtectionField().setSheet(true);
     }
 
@@ -3759,6 +3926,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * Disable sheet protection
      */
     public void disableLocking() {
+        ensureParsed();
         safeGetProtectionField().setSheet(false);
     }
 
@@ -3768,6 +3936,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockAutoFilter(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setAutoFilter(enabled);
     }
 
@@ -3777,6 +3946,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockDeleteColumns(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setDeleteColumns(enabled);
     }
 
@@ -3786,6 +3956,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockDeleteRows(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setDeleteRows(enabled);
     }
 
@@ -3795,6 +3966,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockFormatCells(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setFormatCells(enabled);
     }
 
@@ -3804,6 +3976,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockFormatColumns(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setFormatColumns(enabled);
     }
 
@@ -3813,6 +3986,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockFormatRows(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setFormatRows(enabled);
     }
 
@@ -3822,6 +3996,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockInsertColumns(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setInsertColumns(enabled);
     }
 
@@ -3831,6 +4006,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockInsertHyperlinks(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setInsertHyperlinks(enabled);
     }
 
@@ -3840,6 +4016,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockInsertRows(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setInsertRows(enabled);
     }
 
@@ -3849,6 +4026,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockPivotTables(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setPivotTables(enabled);
     }
 
@@ -3858,6 +4036,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockSort(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setSort(enabled);
     }
 
@@ -3867,6 +4046,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockObjects(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setObjects(enabled);
     }
 
@@ -3876,6 +4056,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockScenarios(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setScenarios(enabled);
     }
 
@@ -3885,6 +4066,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockSelectLockedCells(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setSelectLockedCells(enabled);
     }
 
@@ -3894,6 +4076,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * To enforce this un-/locking, call {@link #disableLocking()} or {@link #enableLocking()}
      */
     public void lockSelectUnlockedCells(boolean enabled) {
+        ensureParsed();
         safeGetProtectionField().setSelectUnlockedCells(enabled);
     }
 
@@ -3955,6 +4138,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public CellRange<XSSFCell> setArrayFormula(String formula, CellRangeAddress range) {
+        ensureParsed();
         CellRange<XSSFCell> cr = getCellRange(range);
 
         XSSFCell mainArrayFormulaCell = cr.getTopLeftCell();
@@ -3965,6 +4149,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public CellRange<XSSFCell> removeArrayFormula(Cell cell) {
+        ensureParsed();
         if (cell.getSheet() != this) {
             throw new IllegalArgumentException("Specified cell does not belong to this sheet.");
         }
@@ -3990,6 +4175,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public List<XSSFDataValidation> getDataValidations() {
+        ensureParsed();
         List<XSSFDataValidation> xssfValidations = new ArrayList<>();
         CTDataValidations dataValidations = this.worksheet.getDataValidations();
         if( dataValidations!=null && dataValidations.getCount() > 0 ) {
@@ -4017,6 +4203,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public void addValidationData(DataValidation dataValidation) {
+        ensureParsed();
         XSSFDataValidation xssfDataValidation = (XSSFDataValidation)dataValidation;
         CTDataValidations dataValidations = worksheet.getDataValidations();
         if( dataValidations==null ) {
@@ -4031,6 +4218,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public XSSFAutoFilter setAutoFilter(CellRangeAddress range) {
+        ensureParsed();
         CTAutoFilter af = worksheet.getAutoFilter();
         if(af == null) {
             af = worksheet.addNewAutoFilter();
@@ -4079,6 +4267,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @since 4.0.0
      */
     public XSSFTable createTable(AreaReference tableArea) {
+        ensureParsed();
         if (!worksheet.isSetTableParts()) {
             worksheet.addNewTableParts();
         }
@@ -4156,6 +4345,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return the background color of the sheet tab
      */
     public XSSFColor getTabColor() {
+        ensureParsed();
         CTSheetPr pr = worksheet.getSheetPr();
         if(pr == null) {
             pr = worksheet.addNewSheetPr();
@@ -4172,6 +4362,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @param color the color to set
      */
     public void setTabColor(XSSFColor color) {
+        ensureParsed();
         CTSheetPr pr = worksheet.getSheetPr();
         if(pr == null) {
             pr = worksheet.addNewSheetPr();
@@ -4192,6 +4383,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public void setRepeatingRows(CellRangeAddress rowRangeRef) {
+        ensureParsed();
       CellRangeAddress columnRangeRef = getRepeatingColumns();
       setRepeatingRowsAndColumns(rowRangeRef, columnRangeRef);
     }
@@ -4199,6 +4391,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
 
     @Override
     public void setRepeatingColumns(CellRangeAddress columnRangeRef) {
+        ensureParsed();
       CellRangeAddress rowRangeRef = getRepeatingRows();
       setRepeatingRowsAndColumns(rowRangeRef, columnRangeRef);
     }
@@ -4393,6 +4586,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public XSSFPivotTable createPivotTable(final AreaReference source, CellReference position, Sheet sourceSheet) {
+        ensureParsed();
         final String sourceSheetName = source.getFirstCell().getSheetName();
         if(sourceSheetName != null && !sourceSheetName.equalsIgnoreCase(sourceSheet.getSheetName())) {
             throw new IllegalArgumentException("The area is referenced in another sheet than the "
@@ -4448,6 +4642,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public XSSFPivotTable createPivotTable(AreaReference source, CellReference position){
+        ensureParsed();
         final String sourceSheetName = source.getFirstCell().getSheetName();
         if(sourceSheetName != null && !sourceSheetName.equalsIgnoreCase(this.getSheetName())) {
             final XSSFSheet sourceSheet = getWorkbook().getSheet(sourceSheetName);
@@ -4467,6 +4662,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public XSSFPivotTable createPivotTable(final Name source, CellReference position, Sheet sourceSheet) {
+        ensureParsed();
         if(source.getSheetName() != null && !source.getSheetName().equals(sourceSheet.getSheetName())) {
             throw new IllegalArgumentException("The named range references another sheet than the "
                     + "defined source sheet " + sourceSheet.getSheetName() + ".");
@@ -4489,6 +4685,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public XSSFPivotTable createPivotTable(Name source, CellReference position) {
+        ensureParsed();
         return createPivotTable(source, position, getWorkbook().getSheet(source.getSheetName()));
     }
     
@@ -4501,6 +4698,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      */
     @Beta
     public XSSFPivotTable createPivotTable(final Table source, CellReference position) {
+        ensureParsed();
        return createPivotTable(position, getWorkbook().getSheet(source.getSheetName()), new PivotTableReferenceConfigurator() {
            @Override
         public void configureReference(CTWorksheetSource wsSource) {
@@ -4525,6 +4723,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
     
     @Override
     public int getColumnOutlineLevel(int columnIndex) {
+        ensureParsed();
         CTCol col = columnHelper.getColumn(columnIndex, false);
         if (col == null) {
             return 0;
@@ -4540,6 +4739,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @param ignoredErrorTypes Types of error to ignore there.
      */
     public void addIgnoredErrors(CellReference cell, IgnoredErrorType... ignoredErrorTypes) {
+        ensureParsed();
         addIgnoredErrors(cell.formatAsString(), ignoredErrorTypes);
     }
     
@@ -4550,6 +4750,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @param ignoredErrorTypes Types of error to ignore there.
      */
     public void addIgnoredErrors(CellRangeAddress region, IgnoredErrorType... ignoredErrorTypes) {
+        ensureParsed();
         region.validate(SpreadsheetVersion.EXCEL2007);
         addIgnoredErrors(region.formatAsString(), ignoredErrorTypes);
     }
@@ -4561,6 +4762,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      * @return Map of error type to the range(s) where they are ignored.
      */
     public Map<IgnoredErrorType, Set<CellRangeAddress>> getIgnoredErrors() {
+        ensureParsed();
         Map<IgnoredErrorType, Set<CellRangeAddress>> result = new LinkedHashMap<>();
         if (worksheet.isSetIgnoredErrors()) {
             for (CTIgnoredError err : worksheet.getIgnoredErrors().getIgnoredErrorList()) {
@@ -4601,6 +4803,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
      *  when a cell with a 'master' shared formula is removed,  the next cell in the range becomes the master
      */
     protected void onDeleteFormula(XSSFCell cell){
+        ensureParsed();
 
         CTCellFormula f = cell.getCTCell().getF();
         if (f != null && f.getT() == STCellFormulaType.SHARED && f.isSetRef() && f.getStringValue() != null) {
@@ -4689,6 +4892,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet  {
     }
 
     public XSSFHeaderFooterProperties getHeaderFooterProperties() {
+        ensureParsed();
         return new XSSFHeaderFooterProperties(getSheetTypeHeaderFooter());
     }
 }
@@ -238,6 +238,11 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook {
 
     private final XSSFFactory xssfFactory;
 
+    /**
+     * whether the worksheet parts are parsed on first access
+     */
+    private boolean lazySheets;
+
     /**
      * Create a new SpreadsheetML workbook.
      */
@@ -278,8 +283,28 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook {
      * @param pkg the OpenXML4J <code>OPC Package</code> object.
      */
     public XSSFWorkbook(OPCPackage pkg) throws IOException {
+        this(pkg, false);
+    }
+
+    /**
+     * Constructs a XSSFWorkbook object given a OpenXML4J <code>Package</code> object
+     *  and optionally defers the parsing of the worksheets.
+     *
+     * <p>When opened lazily, the worksheet part of a sheet is only parsed when its
+     *  rows, cells or other worksheet content are accessed the first time, however
+     *  the sheet was obtained. Sheets whose content has never been accessed are
+     *  written unchanged, so this reduces the time and memory
+     *  needed to update a few sheets of a large workbook. Workbook operations
+     *  which need to update all sheets, e.g. renaming a sheet, parse them all.
+     *
+     * @param pkg the OpenXML4J <code>OPC Package</code> object.
+     * @param lazySheets if true, the worksheet parts are parsed on first access
+     * @since POI 4.0.0
+     */
+    public XSSFWorkbook(OPCPackage pkg, boolean lazySheets) throws IOException {
         super(pkg);
         this.xssfFactory = XSSFFactory.getInstance();
+        this.lazySheets = lazySheets;
 
         beforeDocumentRead();
 
@@ -450,7 +475,12 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook {
             return;
         }
         sh.sheet = ctSheet;
-        sh.onDocumentRead();
+        // chart and dialog sheets are small and have their own parsing
+        if (lazySheets && sh.getClass() == XSSFSheet.class) {
+            sh.onDocumentReadDeferred();
+        } else {
+            sh.onDocumentRead();
+        }
         sheets.add(sh);
     }
 
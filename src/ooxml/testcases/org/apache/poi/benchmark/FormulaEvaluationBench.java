@@ -0,0 +1,129 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Recalculates a sheet of typical financial formulas (NPV, PMT, SUMPRODUCT, IF, VLOOKUP and
+ * running totals) after changing the interest rate, which all formulas depend on.
+ * The recalculation reuses the compiled formulas of the evaluation cache, while the evaluation
+ * from scratch compiles every formula again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class FormulaEvaluationBench {
+
+    @Param({"2000"})
+    public int rows;
+
+    private XSSFWorkbook wb;
+    private XSSFFormulaEvaluator evaluator;
+    private XSSFCell rate;
+    private final List<Cell> formulaCells = new ArrayList<>();
+    private int iteration;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+
+        // the interest rate and a lookup table of fees by amount
+        rate = sheet.createRow(0).createCell(0);
+        rate.setCellValue(0.05);
+        for (int r = 0; r < 10; r++) {
+            XSSFRow row = sheet.getRow(r) == null ? sheet.createRow(r) : sheet.getRow(r);
+            row.createCell(10).setCellValue(r * 10000);
+            row.createCell(11).setCellValue(r * 12.5);
+        }
+
+        for (int r = 1; r <= rows; r++) {
+            XSSFRow row = sheet.getRow(r) == null ? sheet.createRow(r) : sheet.getRow(r);
+            int n = r + 1;
+            row.createCell(0).setCellValue(1000 + r * 7.5);
+            row.createCell(1).setCellValue(12 + r % 48);
+            addFormula(row, 2, "PMT($A$1/12,B" + n + ",-A" + n + "*10)");
+            addFormula(row, 3, "NPV($A$1,A" + n + ",A" + n + "*1.02,A" + n + "*1.02^2,A" + n + "*1.02^3)");
+            addFormula(row, 4, "IF(C" + n + ">D" + n + "/12,C" + n + "*(1-1/12),D" + n + "/12)");
+            addFormula(row, 5, "VLOOKUP(A" + n + "*10,$K$1:$L$10,2,TRUE)+E" + n);
+            addFormula(row, 6, r == 1 ? "F2" : "G" + r + "+F" + n);
+            if (r % 100 == 0) {
+                addFormula(row, 7, "SUMPRODUCT(A" + (n - 99) + ":A" + n + ",C" + (n - 99) + ":C" + n + ")");
+            }
+        }
+        evaluator = wb.getCreationHelper().createFormulaEvaluator();
+    }
+
+    private void addFormula(XSSFRow row, int col, String formula) {
+        XSSFCell cell = row.createCell(col);
+        cell.setCellFormula(formula);
+        formulaCells.add(cell);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        wb.close();
+    }
+
+    @Benchmark
+    public void benchRecalculateAfterInputChange(Blackhole bh) {
+        rate.setCellValue(0.03 + (iteration++ % 5) * 0.005);
+        evaluator.notifyUpdateCell(rate);
+        evaluateAll(bh);
+    }
+
+    @Benchmark
+    public void benchEvaluateFromScratch(Blackhole bh) {
+        evaluator.clearAllCachedResultValues();
+        evaluateAll(bh);
+    }
+
+    private void evaluateAll(Blackhole bh) {
+        for (Cell cell : formulaCells) {
+            bh.consume(evaluator.evaluate(cell));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(".*" + FormulaEvaluationBench.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,354 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.SortedIntMap;
+import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the storage of the rows of a sheet and the cells of a row in a {@link SortedIntMap}
+ * with the former {@code TreeMap<Integer,...>} layout, for the sheets of real workbooks from the
+ * test data. The benchmarks iterate, look up and build both layouts. Building in ascending order
+ * is the usual case, descending order and removing from the start are handled by the gap of the
+ * sorted arrays, while a shuffled order is the worst case of the sorted arrays.
+ * {@link #main(String[])} additionally prints the retained heap of both layouts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RowCellStorageBench {
+
+    // many short rows, a few wide rows and a typical mix of tables and lookups
+    @Param({"57893-many-merges.xlsx", "51585.xlsx", "StructuredRefs-lots-with-lookups.xlsx"})
+    public String file;
+
+    /** the row numbers and the column indexes of the cells of all sheets */
+    private SheetKeys[] sheets;
+    private List<SortedIntMap<SortedIntMap<Object>>> sortedLayout;
+    private List<TreeMap<Integer,TreeMap<Integer,Object>>> treeLayout;
+
+    private static final class SheetKeys {
+        final int[] rows;
+        final int[][] cols;
+        // the indexes of the rows in random order and the columns of each row in random order
+        final int[] shuffledRows;
+        final int[][] shuffledCols;
+
+        SheetKeys(Sheet sheet, Random rnd) {
+            List<Row> rowList = new ArrayList<>();
+            sheet.forEach(rowList::add);
+            rows = new int[rowList.size()];
+            cols = new int[rows.length][];
+            for (int r = 0; r < rows.length; r++) {
+                Row row = rowList.get(r);
+                rows[r] = row.getRowNum();
+                List<Cell> cellList = new ArrayList<>();
+                row.forEach(cellList::add);
+                cols[r] = new int[cellList.size()];
+                for (int c = 0; c < cols[r].length; c++) {
+                    cols[r][c] = cellList.get(c).getColumnIndex();
+                }
+            }
+            int[] rowIndexes = new int[rows.length];
+            for (int r = 0; r < rows.length; r++) {
+                rowIndexes[r] = r;
+            }
+            shuffledRows = shuffle(rowIndexes, rnd);
+            shuffledCols = new int[rows.length][];
+            for (int r = 0; r < rows.length; r++) {
+                shuffledCols[r] = shuffle(cols[r], rnd);
+            }
+        }
+
+        private static int[] shuffle(int[] keys, Random rnd) {
+            int[] result = keys.clone();
+            for (int i = result.length - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                int tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+            return result;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        sheets = loadSheets(file);
+        sortedLayout = buildSorted(sheets, false);
+        treeLayout = buildTree(sheets, false);
+    }
+
+    private static SheetKeys[] loadSheets(String file) throws Exception {
+        Random rnd = new Random(42);
+        try (XSSFWorkbook wb = XSSFTestDataSamples.openSampleWorkbook(file)) {
+            SheetKeys[] result = new SheetKeys[wb.getNumberOfSheets()];
+            for (int s = 0; s < result.length; s++) {
+                result[s] = new SheetKeys(wb.getSheetAt(s), rnd);
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long benchIterateSortedIntMap() {
+        long sum = 0;
+        for (SortedIntMap<SortedIntMap<Object>> rows : sortedLayout) {
+            for (SortedIntMap<Object> cells : rows.values()) {
+                for (Object cell : cells.values()) {
+                    sum += cell.hashCode();
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long benchIterateTreeMap() {
+        long sum = 0;
+        for (TreeMap<Integer,TreeMap<Integer,Object>> rows : treeLayout) {
+            for (TreeMap<Integer,Object> cells : rows.values()) {
+                for (Object cell : cells.values()) {
+                    sum += cell.hashCode();
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int benchLookupSortedIntMap() {
+        int found = 0;
+        for (int s = 0; s < sheets.length; s++) {
+            SortedIntMap<SortedIntMap<Object>> rows = sortedLayout.get(s);
+            SheetKeys keys = sheets[s];
+            for (int r : keys.shuffledRows) {
+                SortedIntMap<Object> cells = rows.get(keys.rows[r]);
+                for (int col : keys.shuffledCols[r]) {
+                    if (cells.get(col) != null) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int benchLookupTreeMap() {
+        int found = 0;
+        for (int s = 0; s < sheets.length; s++) {
+            TreeMap<Integer,TreeMap<Integer,Object>> rows = treeLayout.get(s);
+            SheetKeys keys = sheets[s];
+            for (int r : keys.shuffledRows) {
+                TreeMap<Integer,Object> cells = rows.get(keys.rows[r]);
+                for (int col : keys.shuffledCols[r]) {
+                    if (cells.get(col) != null) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public Object benchBuildSortedIntMap() {
+        return buildSorted(sheets, false);
+    }
+
+    @Benchmark
+    public Object benchBuildTreeMap() {
+        return buildTree(sheets, false);
+    }
+
+    @Benchmark
+    public Object benchBuildDescendingSortedIntMap() {
+        List<SortedIntMap<SortedIntMap<Object>>> result = new ArrayList<>();
+        for (SheetKeys keys : sheets) {
+            SortedIntMap<SortedIntMap<Object>> rows = new SortedIntMap<>();
+            for (int r = keys.rows.length - 1; r >= 0; r--) {
+                SortedIntMap<Object> cells = new SortedIntMap<>();
+                for (int c = keys.cols[r].length - 1; c >= 0; c--) {
+                    cells.put(keys.cols[r][c], keys);
+                }
+                rows.put(keys.rows[r], cells);
+            }
+            result.add(rows);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Object benchBuildDescendingTreeMap() {
+        List<TreeMap<Integer,TreeMap<Integer,Object>>> result = new ArrayList<>();
+        for (SheetKeys keys : sheets) {
+            TreeMap<Integer,TreeMap<Integer,Object>> rows = new TreeMap<>();
+            for (int r = keys.rows.length - 1; r >= 0; r--) {
+                TreeMap<Integer,Object> cells = new TreeMap<>();
+                for (int c = keys.cols[r].length - 1; c >= 0; c--) {
+                    cells.put(keys.cols[r][c], keys);
+                }
+                rows.put(keys.rows[r], cells);
+            }
+            result.add(rows);
+        }
+        return result;
+    }
+
+    /** the worst case of the sorted arrays, every insertion moves entries */
+    @Benchmark
+    public Object benchBuildShuffledSortedIntMap() {
+        return buildSorted(sheets, true);
+    }
+
+    @Benchmark
+    public Object benchBuildShuffledTreeMap() {
+        return buildTree(sheets, true);
+    }
+
+    @Benchmark
+    public int benchRemoveFromStartSortedIntMap() {
+        int removed = 0;
+        for (SortedIntMap<SortedIntMap<Object>> rows : buildSorted(sheets, false)) {
+            while (!rows.isEmpty()) {
+                rows.remove(rows.firstKey());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Benchmark
+    public int benchRemoveFromStartTreeMap() {
+        int removed = 0;
+        for (TreeMap<Integer,TreeMap<Integer,Object>> rows : buildTree(sheets, false)) {
+            while (!rows.isEmpty()) {
+                rows.remove(rows.firstKey());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static List<SortedIntMap<SortedIntMap<Object>>> buildSorted(SheetKeys[] sheets, boolean shuffled) {
+        List<SortedIntMap<SortedIntMap<Object>>> result = new ArrayList<>();
+        for (SheetKeys keys : sheets) {
+            SortedIntMap<SortedIntMap<Object>> rows = new SortedIntMap<>();
+            for (int i = 0; i < keys.rows.length; i++) {
+                int r = shuffled ? keys.shuffledRows[i] : i;
+                SortedIntMap<Object> cells = new SortedIntMap<>();
+                for (int col : shuffled ? keys.shuffledCols[r] : keys.cols[r]) {
+                    // the same value for all cells, only the layout is measured
+                    cells.put(col, keys);
+                }
+                rows.put(keys.rows[r], cells);
+            }
+            result.add(rows);
+        }
+        return result;
+    }
+
+    private static List<TreeMap<Integer,TreeMap<Integer,Object>>> buildTree(SheetKeys[] sheets, boolean shuffled) {
+        List<TreeMap<Integer,TreeMap<Integer,Object>>> result = new ArrayList<>();
+        for (SheetKeys keys : sheets) {
+            TreeMap<Integer,TreeMap<Integer,Object>> rows = new TreeMap<>();
+            for (int i = 0; i < keys.rows.length; i++) {
+                int r = shuffled ? keys.shuffledRows[i] : i;
+                TreeMap<Integer,Object> cells = new TreeMap<>();
+                for (int col : shuffled ? keys.shuffledCols[r] : keys.cols[r]) {
+                    cells.put(col, keys);
+                }
+                rows.put(keys.rows[r], cells);
+            }
+            result.add(rows);
+        }
+        return result;
+    }
+
+    /** keeps the measured layout reachable */
+    private static Object retained;
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Prints the retained heap of both layouts for the sheets of the benchmarked workbooks
+     */
+    public static void printRetainedSizes() throws Exception {
+        for (String file : RowCellStorageBench.class.getField("file").getAnnotation(Param.class).value()) {
+            SheetKeys[] sheets = loadSheets(file);
+            int rowCount = 0;
+            int cellCount = 0;
+            for (SheetKeys keys : sheets) {
+                rowCount += keys.rows.length;
+                for (int[] cols : keys.cols) {
+                    cellCount += cols.length;
+                }
+            }
+
+            long before = usedHeap();
+            retained = buildSorted(sheets, false);
+            long sortedSize = usedHeap() - before;
+            retained = null;
+
+            before = usedHeap();
+            retained = buildTree(sheets, false);
+            long treeSize = usedHeap() - before;
+            retained = null;
+
+            System.out.println(file + ": " + rowCount + " rows, " + cellCount + " cells - SortedIntMap "
+                    + (sortedSize / 1024) + " KB, TreeMap " + (treeSize / 1024) + " KB ("
+                    + (treeSize == 0 ? 0 : (100 - sortedSize * 100 / treeSize)) + "% less)");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        printRetainedSizes();
+
+        Options opt = new OptionsBuilder()
+                .include(".*" + RowCellStorageBench.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
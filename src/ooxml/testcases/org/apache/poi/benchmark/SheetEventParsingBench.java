@@ -0,0 +1,161 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetValuesHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Compares the event based parsing of a numeric sheet with the formatted
+ * {@link SheetContentsHandler} and the typed {@link SheetValuesHandler}.
+ * Run with the GC profiler to see the allocation rate per cell.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class SheetEventParsingBench {
+
+    @Param({"20000"})
+    public int rows;
+
+    @Param({"10"})
+    public int cols;
+
+    private byte[] sheetXml;
+    private StylesTable styles;
+    private ReadOnlySharedStringsTable strings;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFCellStyle style = wb.createCellStyle();
+        style.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+        XSSFSheet sheet = wb.createSheet();
+        for (int r = 0; r < rows; r++) {
+            XSSFRow row = sheet.createRow(r);
+            for (int c = 0; c < cols; c++) {
+                row.createCell(c).setCellValue(r * 0.25 + c);
+                if (c % 2 == 0) {
+                    row.getCell(c).setCellStyle(style);
+                }
+            }
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        wb.write(bos);
+        wb.close();
+
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(bos.toByteArray()))) {
+            XSSFReader reader = new XSSFReader(pkg);
+            styles = reader.getStylesTable();
+            strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) reader.getSheetsData();
+            iter.next().close();
+            PackagePart part = iter.getSheetPart();
+            try (InputStream is = part.getInputStream()) {
+                sheetXml = IOUtils.toByteArray(is);
+            }
+        }
+    }
+
+    @Benchmark
+    public void benchFormattedValues(final Blackhole bh) throws Exception {
+        parse(new XSSFSheetXMLHandler(styles, strings, new SheetContentsHandler() {
+            @Override
+            public void startRow(int rowNum) {}
+
+            @Override
+            public void endRow(int rowNum) {}
+
+            @Override
+            public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+                bh.consume(cellReference);
+                bh.consume(formattedValue);
+            }
+        }, false));
+    }
+
+    @Benchmark
+    public void benchTypedValues(final Blackhole bh) throws Exception {
+        parse(new XSSFSheetXMLHandler(styles, strings, new SheetValuesHandler() {
+            @Override
+            public void numericCell(int rowNum, int colNum, double value, int styleIndex) {
+                bh.consume(value);
+            }
+
+            @Override
+            public void booleanCell(int rowNum, int colNum, boolean value, int styleIndex) {
+                bh.consume(value);
+            }
+
+            @Override
+            public void sharedStringCell(int rowNum, int colNum, int sstIndex, int styleIndex) {
+                bh.consume(sstIndex);
+            }
+
+            @Override
+            public void stringCell(int rowNum, int colNum, CharSequence value, int styleIndex) {
+                bh.consume(value);
+            }
+        }));
+    }
+
+    private void parse(ContentHandler handler) throws Exception {
+        XMLReader parser = SAXHelper.newXMLReader();
+        parser.setContentHandler(handler);
+        parser.parse(new InputSource(new ByteArrayInputStream(sheetXml)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(".*" + SheetEventParsingBench.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,94 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public final class TestTempFileReadOnlySharedStringsTable {
+
+    private static void assertSameStrings(OPCPackage pkg) throws Exception {
+        ReadOnlySharedStringsTable expected = new ReadOnlySharedStringsTable(pkg);
+        try (TempFileReadOnlySharedStringsTable actual = new TempFileReadOnlySharedStringsTable(pkg)) {
+            assertEquals(expected.getCount(), actual.getCount());
+            assertEquals(expected.getUniqueCount(), actual.getUniqueCount());
+            if (expected.getItems() == null) {
+                // no shared strings part
+                assertEquals(0, actual.getItems().size());
+                return;
+            }
+            assertEquals(expected.getItems(), actual.getItems());
+            for (int i = expected.getItems().size() - 1; i >= 0; i--) {
+                assertEquals(expected.getEntryAt(i), actual.getEntryAt(i));
+            }
+        }
+    }
+
+    @Test
+    public void sampleFiles() throws Exception {
+        for (String file : new String[]{"SampleSS.xlsx", "51519.xlsx", "57914.xlsx"}) {
+            try (OPCPackage pkg = XSSFTestDataSamples.openSamplePackage(file)) {
+                assertSameStrings(pkg);
+            }
+        }
+    }
+
+    @Test
+    public void manyStrings() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            longText.append("ä€😀 ");
+        }
+        for (int i = 0; i < 20000; i++) {
+            XSSFRow row = sheet.createRow(i);
+            row.createCell(0).setCellValue("string " + i);
+            if (i % 1000 == 0) {
+                row.createCell(1).setCellValue(longText.toString() + i);
+            }
+        }
+        byte[] data = XSSFTestDataSamples.writeOutAndClose(wb).toByteArray();
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(data))) {
+            assertSameStrings(pkg);
+        }
+    }
+
+    @Test
+    public void noSharedStrings() throws Exception {
+        try (OPCPackage pkg = XSSFTestDataSamples.openSamplePackage("noSharedStringTable.xlsx");
+             TempFileReadOnlySharedStringsTable sst = new TempFileReadOnlySharedStringsTable(pkg)) {
+            assertEquals(0, sst.getItems().size());
+            try {
+                sst.getEntryAt(0);
+                fail("there are no strings");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+    }
+}
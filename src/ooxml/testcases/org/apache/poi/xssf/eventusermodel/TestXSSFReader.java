@@ -21,24 +21,35 @@ import static org.apache.poi.POITestCase.assertContains;
 import static org.apache.poi.POITestCase.assertNotContained;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.poi.POIDataSamples;
 import org.apache.poi.POIXMLException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.util.IOUtils;
 import org.apache.poi.xssf.XSSFTestDataSamples;
 import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
 import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFShape;
 import org.apache.poi.xssf.usermodel.XSSFSimpleShape;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -322,4 +333,61 @@ public final class TestXSSFReader {
             System.out.println("workbook.getName(\"total\").getSheetName() returned: " + name.getSheetName());
         }
     }
+
+    @Test
+    public void parseSheetsConcurrently() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        for (int i = 0; i < 4; i++) {
+            Sheet sheet = wb.createSheet("Sheet" + i);
+            for (int j = 0; j < 1000; j++) {
+                Row row = sheet.createRow(j);
+                row.createCell(0).setCellValue(i * 1000 + j);
+                row.createCell(1).setCellValue("s" + i);
+            }
+        }
+        byte[] data = XSSFTestDataSamples.writeOutAndClose(wb).toByteArray();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(data))) {
+            XSSFReader r = new XSSFReader(pkg);
+            final Map<String, List<String>> values = new ConcurrentHashMap<>();
+            r.parseSheets(executor, r.getStylesTable(), new ReadOnlySharedStringsTable(pkg),
+                    (sheetIndex, sheetName) -> {
+                        final List<String> sheetValues = new ArrayList<>();
+                        values.put(sheetIndex + "/" + sheetName, sheetValues);
+                        return new SheetContentsHandler() {
+                            @Override
+                            public void startRow(int rowNum) {}
+
+                            @Override
+                            public void endRow(int rowNum) {}
+
+                            @Override
+                            public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+                                sheetValues.add(formattedValue);
+                            }
+                        };
+                    }, false);
+
+            assertEquals(4, values.size());
+            for (int i = 0; i < 4; i++) {
+                List<String> sheetValues = values.get(i + "/Sheet" + i);
+                assertEquals(2000, sheetValues.size());
+                assertEquals(Integer.toString(i * 1000 + 999), sheetValues.get(1998));
+                assertEquals("s" + i, sheetValues.get(1999));
+            }
+
+            // a failing handler is reported to the caller
+            try {
+                r.parseSheets(executor, null, new ReadOnlySharedStringsTable(pkg), (sheetIndex, sheetName) -> {
+                    throw new IllegalStateException("failed " + sheetName);
+                }, false);
+                fail("expected the failure of the first sheet");
+            } catch (IllegalStateException e) {
+                assertEquals("failed Sheet0", e.getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,190 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public final class TestXSSFRowRangeReader {
+
+    private static byte[] createWorkbook(int rows) {
+        return createWorkbook(rows, 3);
+    }
+
+    private static byte[] createWorkbook(int rows, int gap) {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        for (int i = 0; i < rows; i++) {
+            // leave some gaps
+            if (i % 10 == gap) {
+                continue;
+            }
+            XSSFRow row = sheet.createRow(i);
+            row.createCell(0).setCellValue(i);
+            row.createCell(1).setCellValue("text " + (i % 50));
+        }
+        return XSSFTestDataSamples.writeOutAndClose(wb).toByteArray();
+    }
+
+    private static List<String> readRows(XSSFRowRangeReader reader, int first, int last) throws Exception {
+        final List<String> result = new ArrayList<>();
+        reader.readRows(first, last, new SheetContentsHandler() {
+            @Override
+            public void startRow(int rowNum) {
+                result.add("row " + rowNum);
+            }
+
+            @Override
+            public void endRow(int rowNum) {
+            }
+
+            @Override
+            public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+                result.add(cellReference + "=" + formattedValue);
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void readRanges() throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(createWorkbook(5000)))) {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            iter.next().close();
+            PackagePart sheetPart = iter.getSheetPart();
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+            XSSFRowRangeReader reader = new XSSFRowRangeReader(
+                    sheetPart, xssfReader.getStylesTable(), strings, null, 100);
+            assertEquals(0, reader.getFirstRowNum());
+            assertEquals(4999, reader.getLastRowNum());
+            assertEquals(4500, reader.getPhysicalNumberOfRows());
+
+            assertEquals(Arrays.asList(
+                    "row 2001", "A2002=2001", "B2002=text 1",
+                    "row 2002", "A2003=2002", "B2003=text 2",
+                    "row 2004", "A2005=2004", "B2005=text 4"),
+                    readRows(reader, 2001, 2004));
+            assertEquals(Arrays.asList("row 0", "A1=0", "B1=text 0"), readRows(reader, 0, 0));
+            assertEquals(Arrays.asList("row 4999", "A5000=4999", "B5000=text 49"), readRows(reader, 4999, 6000));
+            assertTrue(readRows(reader, 6000, 7000).isEmpty());
+            assertTrue(readRows(reader, 13, 13).isEmpty());
+            // ranges crossing several indexed rows
+            assertEquals(450 * 3, readRows(reader, 1000, 1499).size());
+        }
+    }
+
+    @Test
+    public void indexCache() throws Exception {
+        File cache = TempFile.createTempFile("rowindex", ".bin");
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(createWorkbook(3000)))) {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            iter.next().close();
+            PackagePart sheetPart = iter.getSheetPart();
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+            XSSFRowRangeReader built = new XSSFRowRangeReader(
+                    sheetPart, xssfReader.getStylesTable(), strings, cache, 64);
+            assertTrue(cache.length() > 0);
+            // the index isn't written again, if it can be reused
+            assertTrue(cache.setLastModified(10000));
+
+            XSSFRowRangeReader cached = new XSSFRowRangeReader(
+                    sheetPart, xssfReader.getStylesTable(), strings, cache, 64);
+            assertEquals(10000, cache.lastModified());
+            assertEquals(built.getPhysicalNumberOfRows(), cached.getPhysicalNumberOfRows());
+            assertEquals(readRows(built, 1500, 1600), readRows(cached, 1500, 1600));
+
+            // an index with a different interval isn't reused
+            XSSFRowRangeReader rebuilt = new XSSFRowRangeReader(
+                    sheetPart, xssfReader.getStylesTable(), strings, cache, 128);
+            assertEquals(readRows(built, 2990, 2999), readRows(rebuilt, 2990, 2999));
+        } finally {
+            assertTrue(cache.delete());
+        }
+    }
+
+    @Test
+    public void indexCacheOfOtherFile() throws Exception {
+        // same part names and sizes, but other rows are left out
+        byte[] first = createWorkbook(3000, 3);
+        byte[] second = createWorkbook(3000, 4);
+        File firstFile = TempFile.createTempFile("rowindex", ".xlsx");
+        File secondFile = TempFile.createTempFile("rowindex", ".xlsx");
+        File cache = TempFile.createTempFile("rowindex", ".bin");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(firstFile)) {
+                fos.write(first);
+            }
+            try (FileOutputStream fos = new FileOutputStream(secondFile)) {
+                fos.write(second);
+            }
+            // the fingerprint of the zip entries, when opened from a file
+            List<String> expected = readWithCache(OPCPackage.open(firstFile, PackageAccess.READ), cache);
+            assertTrue(cache.setLastModified(10000));
+            assertEquals(expected, readWithCache(OPCPackage.open(firstFile, PackageAccess.READ), cache));
+            assertEquals(10000, cache.lastModified());
+            // the calculated fingerprint, when opened from a stream
+            assertEquals(expected, readWithCache(OPCPackage.open(new ByteArrayInputStream(first)), cache));
+            assertEquals(10000, cache.lastModified());
+
+            assertEquals(readWithCache(OPCPackage.open(new ByteArrayInputStream(second)), null),
+                    readWithCache(OPCPackage.open(secondFile, PackageAccess.READ), cache));
+            assertNotEquals(10000, cache.lastModified());
+        } finally {
+            assertTrue(cache.delete());
+            assertTrue(firstFile.delete());
+            assertTrue(secondFile.delete());
+        }
+    }
+
+    private static List<String> readWithCache(OPCPackage pkg, File cache) throws Exception {
+        try {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            iter.next().close();
+            XSSFRowRangeReader reader = new XSSFRowRangeReader(iter.getSheetPart(),
+                    xssfReader.getStylesTable(), new ReadOnlySharedStringsTable(pkg), cache, 64);
+            return readRows(reader, 1500, 1600);
+        } finally {
+            pkg.revert();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetValuesHandler;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+public final class TestXSSFSheetXMLHandler {
+
+    private static class RecordingHandler implements SheetValuesHandler {
+        private final List<String> events = new ArrayList<>();
+        private final List<Double> numbers = new ArrayList<>();
+
+        private String ref(int rowNum, int colNum) {
+            return new CellReference(rowNum, colNum).formatAsString();
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            events.add("row " + rowNum);
+        }
+
+        @Override
+        public void numericCell(int rowNum, int colNum, double value, int styleIndex) {
+            events.add(ref(rowNum, colNum) + " n " + value + " s" + styleIndex);
+            numbers.add(value);
+        }
+
+        @Override
+        public void booleanCell(int rowNum, int colNum, boolean value, int styleIndex) {
+            events.add(ref(rowNum, colNum) + " b " + value);
+        }
+
+        @Override
+        public void sharedStringCell(int rowNum, int colNum, int sstIndex, int styleIndex) {
+            events.add(ref(rowNum, colNum) + " sst " + sstIndex);
+        }
+
+        @Override
+        public void stringCell(int rowNum, int colNum, CharSequence value, int styleIndex) {
+            events.add(ref(rowNum, colNum) + " str " + value);
+        }
+
+        @Override
+        public void errorCell(int rowNum, int colNum, CharSequence errorCode, int styleIndex) {
+            events.add(ref(rowNum, colNum) + " err " + errorCode);
+        }
+
+        @Override
+        public void endSheet() {
+            events.add("end");
+        }
+    }
+
+    private static RecordingHandler parseFirstSheet(byte[] data) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(data))) {
+            XSSFReader reader = new XSSFReader(pkg);
+            RecordingHandler handler = new RecordingHandler();
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(
+                    reader.getStylesTable(), new ReadOnlySharedStringsTable(pkg), handler));
+            try (InputStream is = reader.getSheetsData().next()) {
+                parser.parse(new InputSource(is));
+            }
+            return handler;
+        }
+    }
+
+    @Test
+    public void typedValues() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        CellStyle dateStyle = wb.createCellStyle();
+        dateStyle.setDataFormat((short)14);
+        Sheet sheet = wb.createSheet();
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue(1.5);
+        row.createCell(2).setCellValue("text");
+        row.createCell(3).setCellValue(true);
+        row.createCell(4).setCellErrorValue(FormulaError.DIV0.getCode());
+        row.createCell(27).setCellValue(43000);
+        row.getCell(27).setCellStyle(dateStyle);
+        row = sheet.createRow(2);
+        row.createCell(0).setCellFormula("A1*2");
+        row.createCell(1).setCellFormula("\"abc\"");
+        wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+        byte[] data = XSSFTestDataSamples.writeOutAndClose(wb).toByteArray();
+
+        RecordingHandler handler = parseFirstSheet(data);
+        assertEquals(Arrays.asList(
+                "row 0", "A1 n 1.5 s0", "C1 sst 0", "D1 b true", "E1 err #DIV/0!",
+                "AB1 n 43000.0 s" + dateStyle.getIndex(),
+                "row 2", "A3 n 3.0 s0", "B3 str abc", "end"), handler.events);
+
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(data))) {
+            XSSFSheetXMLHandler sheetHandler = new XSSFSheetXMLHandler(
+                    new XSSFReader(pkg).getStylesTable(), null, handler);
+            assertEquals("9/22/17", sheetHandler.formatRawCellContents(43000, dateStyle.getIndex()));
+            assertEquals("1.5", sheetHandler.formatRawCellContents(1.5, 0));
+        }
+    }
+
+    @Test
+    public void inlineStrings() throws Exception {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        Sheet sheet = wb.createSheet();
+        sheet.createRow(0).createCell(1).setCellValue("inline\r\nstring");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        wb.write(bos);
+        wb.dispose();
+        wb.close();
+        assertEquals(Arrays.asList("row 0", "B1 str inline\r\nstring", "end"),
+                parseFirstSheet(bos.toByteArray()).events);
+    }
+
+    @Test
+    public void numbersAreParsedExactly() throws Exception {
+        Random rnd = new Random(12345);
+        double[] values = new double[2000];
+        for (int i = 0; i < values.length; i++) {
+            switch (i % 4) {
+                case 0: values[i] = rnd.nextDouble(); break;
+                case 1: values[i] = rnd.nextInt(1000000) / 100.0; break;
+                case 2: values[i] = -rnd.nextGaussian() * Math.pow(10, rnd.nextInt(40) - 20); break;
+                default: values[i] = rnd.nextInt(); break;
+            }
+        }
+        values[0] = 0;
+        values[1] = 1e22;
+        values[2] = 1e-300;
+        values[3] = Double.MAX_VALUE;
+
+        XSSFWorkbook wb = new XSSFWorkbook();
+        Sheet sheet = wb.createSheet();
+        for (int i = 0; i < values.length; i++) {
+            sheet.createRow(i).createCell(0).setCellValue(values[i]);
+        }
+        RecordingHandler handler = parseFirstSheet(XSSFTestDataSamples.writeOutAndClose(wb).toByteArray());
+        assertEquals(values.length, handler.numbers.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(handler.numbers.get(i)));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.SXSSFITestDataProvider;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public final class TestTempFileSharedStringsTable {
+
+    @Test
+    public void addAndGet() throws IOException {
+        TempFileSharedStringsTable sst = new TempFileSharedStringsTable();
+        try {
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("Hello, World!")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("Second string")));
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("Hello, World!")));
+
+            XSSFRichTextString rich = new XSSFRichTextString("Rich < & > text ");
+            XSSFFont font = new XSSFFont();
+            font.setBold(true);
+            rich.applyFont(0, 4, font);
+            assertEquals(2, sst.addSharedStringItem(rich));
+            // same text, but without formatting is a different entry
+            assertEquals(3, sst.addSharedStringItem(new XSSFRichTextString("Rich < & > text ")));
+
+            assertEquals(5, sst.getCount());
+            assertEquals(4, sst.getUniqueCount());
+            assertEquals("Hello, World!", sst.getItemAt(0).getString());
+            assertEquals("Second string", sst.getItemAt(1).getString());
+            assertEquals("Rich < & > text ", sst.getItemAt(2).getString());
+            assertEquals(2, sst.getItemAt(2).numFormattingRuns());
+            assertEquals(4, sst.getSharedStringItems().size());
+        } finally {
+            sst.close();
+        }
+    }
+
+    @Test
+    public void manyStrings() throws IOException {
+        final int num = 100000;
+        TempFileSharedStringsTable sst = new TempFileSharedStringsTable();
+        try {
+            for (int i = 0; i < num; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("string " + i)));
+            }
+            // the index has been resized meanwhile, all entries still need to be found
+            for (int i = 0; i < num; i += 7) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("string " + i)));
+            }
+            assertEquals(num, sst.getUniqueCount());
+            assertEquals("string 12345", sst.getItemAt(12345).getString());
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            sst.writeTo(bos);
+
+            SharedStringsTable read = new SharedStringsTable();
+            read.readFrom(new ByteArrayInputStream(bos.toByteArray()));
+            assertEquals(sst.getCount(), read.getCount());
+            assertEquals(num, read.getUniqueCount());
+            for (int i = 0; i < num; i += 999) {
+                assertEquals("string " + i, read.getItemAt(i).getString());
+            }
+            read.close();
+        } finally {
+            sst.close();
+        }
+    }
+
+    @Test
+    public void streamingWorkbook() throws IOException {
+        XSSFWorkbook template = new XSSFWorkbook(TempFileSharedStringsTable.FACTORY);
+        assertSame(TempFileSharedStringsTable.class, template.getSharedStringSource().getClass());
+
+        SXSSFWorkbook wb = new SXSSFWorkbook(template, 10, false, true);
+        Sheet sheet = wb.createSheet();
+        for (int i = 0; i < 1000; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue("value " + (i % 100));
+            row.createCell(1).setCellValue("unique " + i);
+        }
+
+        XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertEquals(1100, xwb.getSharedStringSource().getUniqueCount());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value " + (i % 100), xwb.getSheetAt(0).getRow(i).getCell(0).getStringCellValue());
+            assertEquals("unique " + i, xwb.getSheetAt(0).getRow(i).getCell(1).getStringCellValue());
+        }
+        xwb.close();
+        wb.dispose();
+        wb.close();
+    }
+}
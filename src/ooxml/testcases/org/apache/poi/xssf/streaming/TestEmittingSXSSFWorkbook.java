@@ -0,0 +1,145 @@
+/*
+ *  ====================================================================
+ *    Licensed to the Apache Software Foundation (ASF) under one or more
+ *    contributor license agreements.  See the NOTICE file distributed with
+ *    this work for additional information regarding copyright ownership.
+ *    The ASF licenses this file to You under the Apache License, Version 2.0
+ *    (the "License"); you may not use this file except in compliance with
+ *    the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * ====================================================================
+ */
+
+package org.apache.poi.xssf.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.NullOutputStream;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public final class TestEmittingSXSSFWorkbook {
+
+    @Test
+    public void writeSheetsOneAfterAnother() throws IOException {
+        for (boolean useSharedStrings : new boolean[]{false, true}) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            EmittingSXSSFWorkbook wb = new EmittingSXSSFWorkbook(bos, 10, useSharedStrings);
+            CellStyle bold = wb.createCellStyle();
+            Font font = wb.createFont();
+            font.setBold(true);
+            bold.setFont(font);
+
+            for (int i = 0; i < 3; i++) {
+                SXSSFSheet sheet = wb.createSheet("sheet" + i);
+                sheet.setColumnWidth(0, 20 * 256);
+                for (int j = 0; j < 500; j++) {
+                    Row row = sheet.createRow(j);
+                    row.createCell(0).setCellValue("text " + i + "/" + j);
+                    row.createCell(1).setCellValue(j);
+                    if (j == 0) {
+                        row.getCell(0).setCellStyle(bold);
+                    }
+                }
+                // stored after the sheet data, so it can still be changed
+                sheet.addMergedRegion(new CellRangeAddress(0, 0, 2, 3));
+            }
+            // a sheet without any rows is written like in the template
+            wb.createSheet("empty");
+            wb.close();
+
+            XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(bos.toByteArray()));
+            assertEquals(4, xwb.getNumberOfSheets());
+            for (int i = 0; i < 3; i++) {
+                XSSFSheet sheet = xwb.getSheetAt(i);
+                assertEquals("sheet" + i, sheet.getSheetName());
+                assertEquals(499, sheet.getLastRowNum());
+                assertEquals(20 * 256, sheet.getColumnWidth(0));
+                assertEquals(1, sheet.getNumMergedRegions());
+                for (int j = 0; j < 500; j++) {
+                    assertEquals("text " + i + "/" + j, sheet.getRow(j).getCell(0).getStringCellValue());
+                    assertEquals(j, (int)sheet.getRow(j).getCell(1).getNumericCellValue());
+                }
+                XSSFCell first = sheet.getRow(0).getCell(0);
+                assertTrue(xwb.getFontAt(first.getCellStyle().getFontIndexAsInt()).getBold());
+            }
+            assertNull(xwb.getSheet("empty").getRow(0));
+            xwb.close();
+        }
+    }
+
+    @Test
+    public void outputStreamIsNotClosed() throws IOException {
+        final AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        EmittingSXSSFWorkbook wb = new EmittingSXSSFWorkbook(new FilterOutputStream(bos) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        }, 10, true);
+        wb.createSheet().createRow(0).createCell(0).setCellValue("shared");
+        wb.close();
+        assertFalse(closed.get());
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals("shared", xwb.getSheetAt(0).getRow(0).getCell(0).getStringCellValue());
+        assertEquals(1, xwb.getSharedStringSource().getCount());
+        xwb.close();
+    }
+
+    @Test
+    public void previousSheetIsCompleted() throws IOException {
+        EmittingSXSSFWorkbook wb = new EmittingSXSSFWorkbook(new NullOutputStream(), 1, false);
+        try {
+            SXSSFSheet sheet1 = wb.createSheet();
+            sheet1.createRow(0).createCell(0).setCellValue(1);
+            sheet1.createRow(1).createCell(0).setCellValue(2);
+            wb.createSheet();
+            try {
+                sheet1.createRow(2);
+                sheet1.createRow(3);
+                fail("rows can't be added to a completed sheet");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try {
+                wb.removeSheetAt(0);
+                fail("a written sheet can't be removed");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try {
+                wb.write(new NullOutputStream());
+                fail("write() is not supported");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        } finally {
+            wb.close();
+        }
+    }
+}
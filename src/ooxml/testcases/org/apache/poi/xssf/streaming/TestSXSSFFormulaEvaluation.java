@@ -122,6 +122,98 @@ public final class TestSXSSFFormulaEvaluation  extends BaseTestFormulaEvaluator
         wb.close();
     }
     
+    /**
+     * With the kept values of the flushed rows, running totals and references to earlier
+     *  rows can be evaluated while streaming, and the results are written as cached values
+     */
+    @Test
+    public void testEvaluateRefToKeptFlushedValues() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(5);
+        SXSSFSheet s = wb.createSheet();
+        SXSSFFormulaEvaluator eval = new SXSSFFormulaEvaluator(wb);
+        eval.keepFlushedValues(s, 0, 1, 2);
+
+        for (int i = 0; i < 100; i++) {
+            SXSSFRow row = s.createRow(i);
+            row.createCell(0).setCellValue(i + 1);
+            row.createCell(1).setCellFormula(i == 0 ? "A1" : "B" + i + "+A" + (i + 1));
+            row.createCell(2).setCellValue("x" + i);
+            row.createCell(3).setCellFormula("SUM(A$1:A" + (i + 1) + ")&C" + (i + 1));
+            // column E isn't kept
+            row.createCell(4).setCellValue(-1);
+        }
+        assertEquals(94, s.getLastFlushedRowNum());
+
+        Cell c = s.getRow(99).createCell(5);
+        c.setCellFormula("B1+B99+COUNTA(C1:C100)");
+        eval.evaluateFormulaCell(c);
+        assertEquals(1 + 4950 + 100, c.getNumericCellValue(), 0.0);
+
+        c = s.getRow(99).createCell(6);
+        c.setCellFormula("E1");
+        try {
+            eval.evaluateFormulaCell(c);
+            fail("Evaluate shouldn't work, as column E isn't kept");
+        } catch(SXSSFFormulaEvaluator.RowFlushedException e) {
+            // Expected
+        }
+        s.getRow(99).removeCell(c);
+
+        c = s.getRow(99).getCell(3);
+        eval.evaluateFormulaCell(c);
+        assertEquals("5050x99", c.getStringCellValue());
+
+        // the results of the formulas are written with the flushed rows
+        XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertEquals(5050, xwb.getSheetAt(0).getRow(99).getCell(1).getNumericCellValue(), 0.0);
+        assertEquals(210, xwb.getSheetAt(0).getRow(19).getCell(1).getNumericCellValue(), 0.0);
+        assertEquals("SUM(A$1:A100)&C100", xwb.getSheetAt(0).getRow(99).getCell(3).getCellFormula());
+        assertEquals("5050x99", xwb.getSheetAt(0).getRow(99).getCell(3).getStringCellValue());
+        assertEquals("SUM(A$1:A20)&C20", xwb.getSheetAt(0).getRow(19).getCell(3).getCellFormula());
+        assertEquals("210x19", xwb.getSheetAt(0).getRow(19).getCell(3).getStringCellValue());
+
+        xwb.close();
+        wb.close();
+    }
+
+    @Test
+    public void testKeepFlushedValuesOfUnevaluableFormulas() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(1);
+        SXSSFSheet s = wb.createSheet();
+        SXSSFFormulaEvaluator eval = new SXSSFFormulaEvaluator(wb);
+        eval.keepFlushedValues(s, 0, 2);
+
+        SXSSFRow row = s.createRow(0);
+        row.createCell(0).setCellValue(1);
+        row.createCell(1).setCellValue(2);
+        row = s.createRow(1);
+        // column B isn't kept, so C2 can't be evaluated when its row is flushed
+        row.createCell(2).setCellFormula("B1");
+        for (int i = 2; i < 10; i++) {
+            s.createRow(i).createCell(0).setCellValue(i + 1);
+        }
+        assertEquals(8, s.getLastFlushedRowNum());
+
+        Cell c = s.getRow(9).createCell(1);
+        c.setCellFormula("A1+A2");
+        eval.evaluateFormulaCell(c);
+        assertEquals(1, c.getNumericCellValue(), 0.0);
+
+        c = s.getRow(9).createCell(2);
+        c.setCellFormula("C2");
+        try {
+            eval.evaluateFormulaCell(c);
+            fail("Evaluate shouldn't work, as C2 couldn't be evaluated before it was flushed");
+        } catch(SXSSFFormulaEvaluator.RowFlushedException e) {
+            // Expected
+        }
+
+        XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertEquals("B1", xwb.getSheetAt(0).getRow(1).getCell(2).getCellFormula());
+        xwb.close();
+        wb.close();
+    }
+
     /**
      * If all formula cells + their references are inside the window,
      *  then evaluation works
@@ -34,7 +34,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.poi.POIDataSamples;
 import org.apache.poi.POITestCase;
@@ -308,6 +312,139 @@ public final class TestSXSSFWorkbook extends BaseTestXWorkbook {
         wb.close();
     }
 
+    @Test
+    public void binarySheetdataWriter() throws IOException {
+        for (boolean compress : new boolean[]{false, true}) {
+            SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, compress, true);
+            wb.setBinaryTempFiles(true);
+
+            final int rowNum = 1000;
+            final int sheetNum = 5;
+            populateData(wb, rowNum, sheetNum);
+
+            SheetDataWriter wr = wb.getSheetAt(0).getSheetDataWriter();
+            assertSame(compress ? CompressedBinarySheetDataWriter.class : BinarySheetDataWriter.class, wr.getClass());
+
+            XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+            for(int i = 0; i < sheetNum; i++){
+                Sheet sh = xwb.getSheetAt(i);
+                assertEquals("sheet" + i, sh.getSheetName());
+                for(int j = 0; j < rowNum; j++){
+                    Row row = sh.getRow(j);
+                    assertNotNull("row[" + j + "]", row);
+                    Cell cell1 = row.getCell(0);
+                    assertEquals(new CellReference(cell1).formatAsString(), cell1.getStringCellValue());
+
+                    Cell cell2 = row.getCell(1);
+                    assertEquals(i, (int)cell2.getNumericCellValue());
+
+                    Cell cell3 = row.getCell(2);
+                    assertEquals(j, (int)cell3.getNumericCellValue());
+                }
+            }
+
+            assertTrue(wb.dispose());
+            xwb.close();
+            wb.close();
+        }
+    }
+
+    @Test
+    public void parallelWrite() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (boolean useSharedStrings : new boolean[]{false, true}) {
+                SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, useSharedStrings);
+                wb.setWriteExecutor(executor);
+                assertSame(executor, wb.getWriteExecutor());
+
+                final int rowNum = 1000;
+                final int sheetNum = 5;
+                populateData(wb, rowNum, sheetNum);
+
+                XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+                assertEquals(sheetNum, xwb.getNumberOfSheets());
+                for(int i = 0; i < sheetNum; i++){
+                    Sheet sh = xwb.getSheetAt(i);
+                    assertEquals("sheet" + i, sh.getSheetName());
+                    assertEquals(rowNum - 1, sh.getLastRowNum());
+                    for(int j = 0; j < rowNum; j++){
+                        Row row = sh.getRow(j);
+                        Cell cell1 = row.getCell(0);
+                        assertEquals(new CellReference(cell1).formatAsString(), cell1.getStringCellValue());
+                        assertEquals(i, (int)row.getCell(1).getNumericCellValue());
+                        assertEquals(j, (int)row.getCell(2).getNumericCellValue());
+                    }
+                }
+
+                assertTrue(wb.dispose());
+                xwb.close();
+                wb.close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelWriteLargeSharedStrings() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SXSSFWorkbook wb = new SXSSFWorkbook(null, 100, false, true);
+            wb.setWriteExecutor(executor);
+            // the shared strings part exceeds the in-memory limit and is deflated to a temp file
+            final int rowNum = 50000;
+            Sheet sh = wb.createSheet();
+            for (int j = 0; j < rowNum; j++) {
+                sh.createRow(j).createCell(0).setCellValue("shared string number " + j);
+            }
+
+            XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+            assertEquals(rowNum, xwb.getSharedStringSource().getUniqueCount());
+            Sheet xsh = xwb.getSheetAt(0);
+            assertEquals(rowNum - 1, xsh.getLastRowNum());
+            assertEquals("shared string number 0", xsh.getRow(0).getCell(0).getStringCellValue());
+            assertEquals("shared string number " + (rowNum - 1), xsh.getRow(rowNum - 1).getCell(0).getStringCellValue());
+
+            assertTrue(wb.dispose());
+            xwb.close();
+            wb.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelWriteReportsFirstFailure() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final AtomicInteger sheetIndex = new AtomicInteger();
+        try (SXSSFWorkbook wb = new SXSSFWorkbook() {
+            @Override
+            protected SheetDataWriter createSheetDataWriter() throws IOException {
+                final int index = sheetIndex.getAndIncrement();
+                return new SheetDataWriter(getSharedStringSource()) {
+                    @Override
+                    public InputStream getWorksheetXMLInputStream() {
+                        throw new IllegalStateException("sheet" + index);
+                    }
+                };
+            }
+        }) {
+            wb.setWriteExecutor(executor);
+            populateData(wb, 10, 3);
+            try {
+                wb.write(new NullOutputStream());
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // the failures of the later sheets are only logged
+                assertEquals("sheet0", e.getMessage());
+            }
+            assertTrue(wb.dispose());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private static void assertWorkbookDispose(SXSSFWorkbook wb)
     {
         populateData(wb, 1000, 5);
@@ -26,7 +26,10 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
 import org.apache.poi.util.IOUtils;
 import org.junit.Test;
 
@@ -91,4 +94,55 @@ public final class TestSheetDataWriter {
             IOUtils.closeQuietly(writer);
         }
     }
+
+    @Test
+    public void testBinaryWriterRendersSameXml() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        try {
+            SXSSFSheet sheet = wb.createSheet();
+            CellStyle style = wb.createCellStyle();
+            SXSSFRow row = sheet.createRow(4);
+            row.setHeightInPoints(21.5f);
+            row.setRowStyle(style);
+            row.createCell(0).setCellValue(" <a & \"b\"> \n");
+            row.createCell(1).setCellValue(1.25);
+            row.createCell(3).setCellValue(true);
+            row.createCell(4).setCellErrorValue(FormulaError.DIV0.getCode());
+            row.createCell(5).setCellFormula("B5*2");
+            row.createCell(6).setCellStyle(style);
+            row.createCell(7).setCellValue(unicodeSurrogates);
+            SXSSFCell cell = row.createCell(8);
+            cell.setCellFormula("A5&\"!\"");
+            cell.setCellValue("<cached> & \"str\"");
+            cell = row.createCell(9);
+            cell.setCellFormula("D5");
+            cell.setCellValue(true);
+            cell = row.createCell(10);
+            cell.setCellFormula("E5");
+            cell.setCellErrorValue(FormulaError.DIV0.getCode());
+            sheet.groupRow(4, 4);
+
+            assertEquals(render(new SheetDataWriter(), row), render(new BinarySheetDataWriter(), row));
+            assertEquals(render(new SheetDataWriter(), row), render(new CompressedBinarySheetDataWriter(), row));
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private static String render(SheetDataWriter writer, SXSSFRow row) throws IOException {
+        try {
+            writer.writeRow(row.getRowNum(), row);
+            writer.writeRow(row.getRowNum() + 1, row);
+            writer.close();
+            InputStream is = writer.getWorksheetXMLInputStream();
+            try {
+                return new String(IOUtils.toByteArray(is), "UTF-8");
+            } finally {
+                is.close();
+            }
+        } finally {
+            writer.dispose();
+        }
+    }
 }
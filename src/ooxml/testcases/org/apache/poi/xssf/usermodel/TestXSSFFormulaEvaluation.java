@@ -22,10 +22,12 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.poi.hssf.HSSFTestDataSamples;
 import org.apache.poi.ss.usermodel.BaseTestFormulaEvaluator;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.CellValue;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
@@ -442,4 +444,109 @@ public final class TestXSSFFormulaEvaluation extends BaseTestFormulaEvaluator {
         
         assertEquals("D 0,068", evaluator.evaluate(wb.getSheetAt(0).getRow(1).getCell(1)));
     }
+
+    @Test
+    public void evaluateDirtyFormulaCells() throws IOException {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            XSSFSheet sheet1 = wb.createSheet("Sheet1");
+            XSSFSheet sheet2 = wb.createSheet("Sheet 2");
+            XSSFCell input = sheet1.createRow(0).createCell(0);
+            input.setCellValue(1);
+            sheet1.getRow(0).createCell(1).setCellValue(2);
+            sheet1.getRow(0).createCell(2).setCellFormula("B1*3");
+            XSSFCell total = sheet2.createRow(0).createCell(0);
+            total.setCellFormula("SUM(Sheet1!A1:A10)+1");
+            XSSFCell range = sheet2.getRow(0).createCell(1);
+            range.setCellFormula("SUM(Sheet1:'Sheet 2'!D1)");
+
+            XSSFFormulaEvaluator evaluator = wb.getCreationHelper().createFormulaEvaluator();
+            assertEquals(3, evaluator.evaluateDirtyFormulaCells());
+            assertEquals(2, total.getNumericCellValue(), 0);
+
+            input.setCellValue(41);
+            evaluator.notifyUpdateCell(input);
+            assertEquals(1, evaluator.evaluateDirtyFormulaCells());
+            assertEquals(42, total.getNumericCellValue(), 0);
+
+            // 3D references cover all sheets of the range
+            XSSFCell d1 = sheet2.getRow(0).createCell(3);
+            d1.setCellValue(5);
+            evaluator.notifyUpdateCell(d1);
+            assertEquals(1, evaluator.evaluateDirtyFormulaCells());
+            assertEquals(5, range.getNumericCellValue(), 0);
+        }
+    }
+
+    private static XSSFWorkbook createChainedFormulas(int rows) {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        for (int i = 0; i < rows; i++) {
+            XSSFRow row = sheet.createRow(i);
+            row.createCell(0).setCellValue(i);
+            row.createCell(1).setCellFormula("A" + (i + 1) + "*2");
+            row.createCell(2).setCellFormula("B" + (i + 1) + "+SUM(B$1:B$" + rows + ")");
+            row.createCell(3).setCellFormula("IF(C" + (i + 1) + ">" + rows + ",\"big\",\"small\")");
+        }
+        // circular references are evaluated sequentially
+        sheet.getRow(0).createCell(4).setCellFormula("E2+1");
+        sheet.getRow(1).createCell(4).setCellFormula("E1+1");
+        return wb;
+    }
+
+    @Test
+    public void evaluateDirtyFormulaCellsInParallel() throws IOException {
+        final int rows = 500;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (XSSFWorkbook expected = createChainedFormulas(rows);
+             XSSFWorkbook actual = createChainedFormulas(rows)) {
+            XSSFFormulaEvaluator sequential = expected.getCreationHelper().createFormulaEvaluator();
+            XSSFFormulaEvaluator parallel = actual.getCreationHelper().createFormulaEvaluator();
+            assertEquals(sequential.evaluateDirtyFormulaCells(), parallel.evaluateDirtyFormulaCells(pool));
+            assertSameValues(expected.getSheetAt(0), actual.getSheetAt(0));
+
+            for (int i = 0; i < rows; i += 7) {
+                XSSFCell e = expected.getSheetAt(0).getRow(i).getCell(0);
+                e.setCellValue(-i);
+                sequential.notifyUpdateCell(e);
+                XSSFCell a = actual.getSheetAt(0).getRow(i).getCell(0);
+                a.setCellValue(-i);
+                parallel.notifyUpdateCell(a);
+            }
+            assertEquals(sequential.evaluateDirtyFormulaCells(), parallel.evaluateDirtyFormulaCells(pool));
+            assertSameValues(expected.getSheetAt(0), actual.getSheetAt(0));
+            double sum = 0;
+            for (int i = 0; i < rows; i++) {
+                sum += 2 * (i % 7 == 0 ? -i : i);
+            }
+            assertEquals(-14 + sum, actual.getSheetAt(0).getRow(7).getCell(2).getNumericCellValue(), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameValues(XSSFSheet expected, XSSFSheet actual) {
+        for (Row row : expected) {
+            for (Cell cell : row) {
+                Cell other = actual.getRow(row.getRowNum()).getCell(cell.getColumnIndex());
+                assertEquals(cell.getCellType(), other.getCellType());
+                if (cell.getCellType() != CellType.FORMULA) {
+                    continue;
+                }
+                assertEquals(cell.toString(), cell.getCachedFormulaResultType(), other.getCachedFormulaResultType());
+                switch (cell.getCachedFormulaResultType()) {
+                    case NUMERIC:
+                        assertEquals(cell.getNumericCellValue(), other.getNumericCellValue(), 0);
+                        break;
+                    case STRING:
+                        assertEquals(cell.getStringCellValue(), other.getStringCellValue());
+                        break;
+                    case ERROR:
+                        assertEquals(cell.getErrorCellValue(), other.getErrorCellValue());
+                        break;
+                    default:
+                        assertEquals(cell.toString(), other.toString());
+                }
+            }
+        }
+    }
 }
@@ -39,6 +39,7 @@ import java.util.List;
 import java.util.zip.CRC32;
 
 import org.apache.poi.POIDataSamples;
+import org.apache.poi.POIXMLDocumentPart;
 import org.apache.poi.POIXMLProperties;
 import org.apache.poi.hssf.HSSFTestDataSamples;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
@@ -1119,4 +1120,64 @@ public final class TestXSSFWorkbook extends BaseTestXWorkbook {
 
         wb.close();
     }
+
+    @Test
+    public void lazySheets() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        for (int i = 0; i < 3; i++) {
+            XSSFSheet sheet = wb.createSheet("Sheet" + i);
+            for (int j = 0; j < 10; j++) {
+                sheet.createRow(j).createCell(0).setCellValue(i * 100 + j);
+            }
+        }
+        byte[] data = XSSFTestDataSamples.writeOutAndClose(wb).toByteArray();
+
+        XSSFWorkbook lazy = new XSSFWorkbook(OPCPackage.open(new ByteArrayInputStream(data)), true);
+        assertEquals(3, lazy.getNumberOfSheets());
+        assertEquals("Sheet2", lazy.getSheetName(2));
+        for (POIXMLDocumentPart p : lazy.getRelations()) {
+            if (p instanceof XSSFSheet) {
+                assertFalse(((XSSFSheet)p).isParsed());
+            }
+        }
+
+        // the worksheet is parsed when its rows are accessed
+        XSSFSheet sheet1 = lazy.getSheet("Sheet1");
+        assertFalse(sheet1.isParsed());
+        assertEquals(105, (int)sheet1.getRow(5).getCell(0).getNumericCellValue());
+        assertTrue(sheet1.isParsed());
+        sheet1.getRow(5).getCell(0).setCellValue("changed");
+
+        PackagePart part3 = lazy.getPackage().getPart(PackagingURIHelper.createPartName("/xl/worksheets/sheet3.xml"));
+        byte[] sheetData = IOUtils.toByteArray(part3.getInputStream());
+
+        XSSFWorkbook readBack = XSSFTestDataSamples.writeOutAndReadBack(lazy);
+        lazy.close();
+        assertEquals("changed", readBack.getSheetAt(1).getRow(5).getCell(0).getStringCellValue());
+        assertEquals(5, (int)readBack.getSheetAt(0).getRow(5).getCell(0).getNumericCellValue());
+        assertEquals(205, (int)readBack.getSheetAt(2).getRow(5).getCell(0).getNumericCellValue());
+        // the sheets, which haven't been accessed, are copied verbatim
+        assertArrayEquals(sheetData, IOUtils.toByteArray(readBack.getSheetAt(2).getPackagePart().getInputStream()));
+        readBack.close();
+    }
+
+    @Test
+    public void lazySheetsReachedViaRelations() throws Exception {
+        XSSFWorkbook eager = XSSFTestDataSamples.openSampleWorkbook("WithTable.xlsx");
+        XSSFSheet eagerSheet = eager.getSheetAt(0);
+
+        XSSFWorkbook lazy = new XSSFWorkbook(
+                OPCPackage.open(HSSFTestDataSamples.openSampleFileStream("WithTable.xlsx")), true);
+        XSSFTable table = lazy.getTable(eagerSheet.getTables().get(0).getName());
+        XSSFSheet sheet = table.getXSSFSheet();
+        assertFalse(sheet.isParsed());
+        assertEquals(eagerSheet.getLastRowNum(), sheet.getLastRowNum());
+        assertTrue(sheet.isParsed());
+        assertEquals(eagerSheet.getRow(0).getCell(0).getStringCellValue(),
+                sheet.getRow(0).getCell(0).getStringCellValue());
+        assertNotNull(sheet.createRow(sheet.getLastRowNum() + 1));
+
+        lazy.close();
+        eager.close();
+    }
 }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.zip.CRC32;
 
@@ -32,13 +33,16 @@ import org.apache.poi.hssf.model.RowBlocksReader;
 import org.apache.poi.hssf.record.BlankRecord;
 import org.apache.poi.hssf.record.CellValueRecordInterface;
 import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
 import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.SharedFormulaRecord;
 import org.apache.poi.hssf.record.WindowTwoRecord;
 import org.apache.poi.hssf.record.aggregates.RecordAggregate.RecordVisitor;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.ptg.Ptg;
 import org.apache.poi.util.HexRead;
 import org.junit.Test;
 
@@ -199,6 +203,97 @@ public final class TestValueRecordsAggregate {
 		assertArrayEquals(expectedArray, actualArray);
 	}
 
+	private static ValueRecordsAggregate createAggregate(boolean packCellValues) {
+		ValueRecordsAggregate agg = new ValueRecordsAggregate();
+		agg.setPackCellValues(packCellValues);
+		NumberRecord nr = new NumberRecord();
+		nr.setRow(0);
+		nr.setColumn((short) 0);
+		nr.setXFIndex((short) 17);
+		nr.setValue(2.5);
+		LabelSSTRecord lr = new LabelSSTRecord();
+		lr.setRow(0);
+		lr.setColumn((short) 1);
+		lr.setXFIndex((short) 18);
+		lr.setSSTIndex(3);
+		FormulaRecord fr = new FormulaRecord();
+		fr.setRow(1);
+		fr.setColumn((short) 0);
+		fr.setParsedExpression(new Ptg[0]);
+		List<Record> records = new ArrayList<>();
+		records.add(nr);
+		records.add(lr);
+		records.add(fr);
+		records.add(new WindowTwoRecord());
+		RowBlocksReader rbr = new RowBlocksReader(new RecordStream(records, 0));
+		RecordStream rs = rbr.getPlainRecordStream();
+		while (rs.hasNext()) {
+			agg.construct((CellValueRecordInterface) rs.getNext(), rs, rbr.getSharedFormulaManager());
+		}
+		agg.addMultipleBlanks(new MulBlankRecord(0, 2, new short[] { 20, 21, 22 }));
+		agg.insertCell(newBlankRecord(6, 0));
+		return agg;
+	}
+
+	private static byte[] serializeRow(ValueRecordsAggregate agg, int rowIndex) {
+		final List<byte[]> data = new ArrayList<>();
+		agg.visitCellsForRow(rowIndex, new RecordVisitor() {
+			@Override
+			public void visitRecord(Record r) {
+				data.add(r.serialize());
+			}
+		});
+		int size = 0;
+		for (byte[] d : data) {
+			size += d.length;
+		}
+		byte[] result = new byte[size];
+		int offset = 0;
+		for (byte[] d : data) {
+			System.arraycopy(d, 0, result, offset, d.length);
+			offset += d.length;
+		}
+		return result;
+	}
+
+	@Test
+	public void testPackedCellValues() {
+		ValueRecordsAggregate plain = createAggregate(false);
+		ValueRecordsAggregate packed = createAggregate(true);
+
+		assertTrue(packed.isPackCellValues());
+		assertEquals(plain.getPhysicalNumberOfCells(), packed.getPhysicalNumberOfCells());
+		assertEquals(plain.getFirstCellNum(), packed.getFirstCellNum());
+		assertEquals(plain.getLastCellNum(), packed.getLastCellNum());
+		assertEquals(plain.getRowCellBlockSize(0, 1), packed.getRowCellBlockSize(0, 1));
+		assertArrayEquals(new int[] { 0, 1 }, packed.getRowIndexesWithCells());
+		// the blanks of the MulBlankRecord and the inserted blank are serialized as one MulBlankRecord
+		byte[] expected = serializeRow(plain, 0);
+		assertArrayEquals(expected, serializeRow(packed, 0));
+		assertEquals(expected.length, packed.getRowCellBlockSize(0, 0));
+
+		CellValueRecordInterface[] cells = packed.getValueRecordsForRow(0);
+		assertEquals(6, cells.length);
+		assertEquals(2.5, ((NumberRecord) cells[0]).getValue(), 0.0);
+		assertEquals(17, cells[0].getXFIndex());
+		assertEquals(3, ((LabelSSTRecord) cells[1]).getSSTIndex());
+		assertEquals(22, cells[4].getXFIndex());
+		assertTrue(cells[4] instanceof BlankRecord);
+		// materialized records are kept
+		assertSame(cells[0], packed.getValueRecordsForRow(0)[0]);
+		Iterator<CellValueRecordInterface> it = packed.iterator();
+		assertSame(cells[0], it.next());
+		assertSame(cells[1], it.next());
+		assertArrayEquals(expected, serializeRow(packed, 0));
+
+		((NumberRecord) cells[0]).setValue(4);
+		assertEquals(4, ((NumberRecord) packed.getValueRecordsForRow(0)[0]).getValue(), 0.0);
+
+		packed.removeAllCellsValuesForRow(0);
+		assertFalse(packed.rowHasCells(0));
+		assertEquals(1, packed.getPhysicalNumberOfCells());
+	}
+
 	private static BlankRecord newBlankRecord() {
 		return newBlankRecord( 2, 2 );
 	}
@@ -0,0 +1,130 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.IOUtils;
+import org.junit.Test;
+
+public final class TestSHSSFWorkbook {
+
+    private static final int ROWS = 1000;
+
+    private static void fillSheet(Sheet sheet) {
+        for (int r = 0; r < ROWS; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("row " + r);
+            row.createCell(3).setCellFormula("A" + (r + 1) + "*2");
+        }
+    }
+
+    private static byte[] getWorkbookStream(byte[] file) throws IOException {
+        try (NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(file))) {
+            return IOUtils.toByteArray(fs.createDocumentInputStream("Workbook"));
+        }
+    }
+
+    @Test
+    public void flushedRowsAreWritten() throws IOException {
+        SHSSFWorkbook wb = new SHSSFWorkbook(100);
+        HSSFSheet sheet = wb.createSheet("data");
+        fillSheet(sheet);
+
+        assertNull(sheet.getRow(0));
+        assertNull(sheet.getRow(ROWS - 100 - 32));
+        assertNotNull(sheet.getRow(ROWS - 100));
+        assertEquals(ROWS, sheet.getPhysicalNumberOfRows());
+        assertEquals(0, sheet.getFirstRowNum());
+        assertEquals(ROWS - 1, sheet.getLastRowNum());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        wb.close();
+        assertTrue(wb.dispose());
+
+        HSSFWorkbook wbBack = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        HSSFSheet sheetBack = wbBack.getSheet("data");
+        assertEquals(ROWS, sheetBack.getPhysicalNumberOfRows());
+        for (int r = 0; r < ROWS; r++) {
+            Row row = sheetBack.getRow(r);
+            assertEquals(r, row.getCell(0).getNumericCellValue(), 0);
+            assertEquals("row " + r, row.getCell(1).getStringCellValue());
+            assertEquals("A" + (r + 1) + "*2", row.getCell(3).getCellFormula());
+        }
+        wbBack.close();
+    }
+
+    @Test
+    public void writesSameRecordsAsHSSFWorkbook() throws IOException {
+        SHSSFWorkbook wb = new SHSSFWorkbook(50);
+        fillSheet(wb.createSheet("data"));
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        wb.write(streamed);
+        wb.close();
+        assertTrue(wb.dispose());
+
+        Workbook expectedWb = new HSSFWorkbook();
+        fillSheet(expectedWb.createSheet("data"));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expectedWb.write(expected);
+        expectedWb.close();
+
+        // the INDEX record must point to the DBCELL records of the flushed blocks, too
+        assertArrayEquals(getWorkbookStream(expected.toByteArray()), getWorkbookStream(streamed.toByteArray()));
+    }
+
+    @Test
+    public void createFlushedRowFails() throws IOException {
+        SHSSFWorkbook wb = new SHSSFWorkbook(1);
+        HSSFSheet sheet = wb.createSheet();
+        for (int r = 0; r < 40; r++) {
+            sheet.createRow(r);
+        }
+        try {
+            sheet.createRow(31);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Attempting to write a row[31] in the range [0,31] that is already written to disk.", e.getMessage());
+        }
+        assertNotNull(sheet.createRow(32));
+        wb.close();
+        assertTrue(wb.dispose());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindowSize() {
+        new SHSSFWorkbook(0);
+    }
+}
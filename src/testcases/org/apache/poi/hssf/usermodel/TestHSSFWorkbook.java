@@ -18,6 +18,7 @@
 package org.apache.poi.hssf.usermodel;
 
 import static org.apache.poi.POITestCase.assertContains;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -36,6 +37,8 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.AssertionFailedError;
 
@@ -61,6 +64,7 @@ import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.ss.formula.ptg.Area3DPtg;
 import org.apache.poi.ss.usermodel.BaseTestWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.ConditionalFormatting;
 import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
 import org.apache.poi.ss.usermodel.Name;
@@ -1317,6 +1321,106 @@ public final class TestHSSFWorkbook extends BaseTestWorkbook {
         wb.close();
     }
     
+    @Test
+    public void writeStreamsWorkbookRecords() throws Exception {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        for (int s = 0; s < 3; s++) {
+            HSSFSheet sheet = wb.createSheet("Sheet" + s);
+            for (int r = 0; r < 2000; r++) {
+                HSSFRow row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r);
+                row.createCell(1).setCellValue("text " + s + "/" + r);
+                row.createCell(2).setCellFormula("A" + (r + 1) + "*2");
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+
+        // the streamed workbook stream is the same as the serialized one
+        byte[] expected = wb.getBytes();
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        InputStream is = fs.createDocumentInputStream("Workbook");
+        byte[] actual = IOUtils.toByteArray(is);
+        is.close();
+        assertArrayEquals(expected, actual);
+        fs.close();
+
+        HSSFWorkbook wb2 = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, wb2.getNumberOfSheets());
+        assertEquals("text 2/1999", wb2.getSheet("Sheet2").getRow(1999).getCell(1).getStringCellValue());
+        assertEquals("A1000*2", wb2.getSheet("Sheet1").getRow(999).getCell(2).getCellFormula());
+        wb2.close();
+        wb.close();
+    }
+
+    @Test
+    public void writeStreamsWithPreservedNodes() throws Exception {
+        HSSFWorkbook wb = HSSFTestDataSamples.openSampleWorkbook("SimpleMacro.xls");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(fs.getRoot().hasEntry("_VBA_PROJECT_CUR"));
+        assertTrue(fs.getRoot().hasEntry("Workbook"));
+        assertEquals(wb.getDirectory().getStorageClsid(), fs.getRoot().getStorageClsid());
+        HSSFWorkbook wb2 = new HSSFWorkbook(fs.getRoot(), true);
+        assertEquals(wb.getNumberOfSheets(), wb2.getNumberOfSheets());
+        assertNotNull(wb2.getSummaryInformation());
+        wb2.close();
+        fs.close();
+        wb.close();
+    }
+
+    @Test
+    public void packCellValues() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("packed");
+        for (int r = 0; r < 100; r++) {
+            HSSFRow row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("row " + r);
+            row.createCell(2);
+            row.createCell(3);
+            row.createCell(4).setCellFormula("A" + (r + 1) + "+1");
+        }
+        HSSFWorkbook wbBack = HSSFTestDataSamples.writeOutAndReadBack(wb);
+        wb.close();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        wbBack.write(file);
+        byte[] expected = wbBack.getBytes();
+        wbBack.close();
+
+        System.setProperty(HSSFWorkbook.PACK_CELL_VALUES_PROPERTY, "true");
+        try {
+            HSSFWorkbook wbPacked = new HSSFWorkbook(new ByteArrayInputStream(file.toByteArray()));
+            assertTrue(wbPacked.getSheetAt(0).getSheet().getRowsAggregate().isPackCellValues());
+            // untouched rows are written from the packed cells
+            assertArrayEquals(expected, wbPacked.getBytes());
+
+            HSSFSheet sheetPacked = wbPacked.getSheetAt(0);
+            assertEquals(100, sheetPacked.getPhysicalNumberOfRows());
+            HSSFRow row = sheetPacked.getRow(42);
+            assertEquals(0, row.getFirstCellNum());
+            assertEquals(5, row.getLastCellNum());
+            assertEquals(5, row.getPhysicalNumberOfCells());
+            assertEquals(42, row.getCell(0).getNumericCellValue(), 0);
+            assertEquals("row 42", row.getCell(1).getStringCellValue());
+            assertEquals(CellType.BLANK, row.getCell(3).getCellType());
+            assertEquals(43, wbPacked.getCreationHelper().createFormulaEvaluator()
+                    .evaluate(row.getCell(4)).getNumberValue(), 0);
+
+            row.getCell(0).setCellValue(-1);
+            HSSFWorkbook wbPackedBack = HSSFTestDataSamples.writeOutAndReadBack(wbPacked);
+            wbPacked.close();
+            assertEquals(-1, wbPackedBack.getSheetAt(0).getRow(42).getCell(0).getNumericCellValue(), 0);
+            assertEquals(41, wbPackedBack.getSheetAt(0).getRow(41).getCell(0).getNumericCellValue(), 0);
+            wbPackedBack.close();
+        } finally {
+            System.clearProperty(HSSFWorkbook.PACK_CELL_VALUES_PROPERTY);
+        }
+    }
+
     @Ignore
     @Test
     @Override
@@ -1324,4 +1428,33 @@ public final class TestHSSFWorkbook extends BaseTestWorkbook {
         super.createDrawing();
         // the dimensions for this image are different than for XSSF and SXSSF
     }
+
+    @Test
+    public void readSheetsConcurrently() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (String file : new String[]{ "SampleSS.xls", "HyperlinksOnManySheets.xls", "44010-TwoCharts.xls",
+                    "27349-vlookupAcrossSheets.xls", "SimpleWithComments.xls", "15228.xls",
+                    // sheets with label records, which are added to the shared strings table
+                    "12843-1.xls", "34775.xls" }) {
+                HSSFWorkbook expected = HSSFTestDataSamples.openSampleWorkbook(file);
+                NPOIFSFileSystem fs = new NPOIFSFileSystem(HSSFTestDataSamples.openSampleFileStream(file));
+                HSSFWorkbook actual = new HSSFWorkbook(fs.getRoot(), true, executor);
+
+                assertEquals(file, expected.getNumberOfSheets(), actual.getNumberOfSheets());
+                for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+                    assertEquals(file, expected.getSheetName(i), actual.getSheetName(i));
+                    assertEquals(file, expected.getSheetAt(i).getPhysicalNumberOfRows(),
+                            actual.getSheetAt(i).getPhysicalNumberOfRows());
+                }
+                assertArrayEquals(file, expected.getBytes(), actual.getBytes());
+
+                actual.close();
+                fs.close();
+                expected.close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -31,6 +31,7 @@ import java.util.Arrays;
 import org.apache.poi.POIDataSamples;
 import org.apache.poi.poifs.property.DirectoryProperty;
 import org.apache.poi.poifs.storage.RawDataBlock;
+import org.apache.poi.util.LittleEndian;
 import org.apache.poi.util.SuppressForbidden;
 import org.junit.Before;
 import org.junit.Test;
@@ -483,6 +484,23 @@ public final class TestDocumentInputStream {
        }
     }
 
+    @Test
+    public void testReadPrimitivesAcrossBlocks() throws IOException {
+       // values within a block, and values spanning the boundary of the first and second block
+       int[] offsets = { 0, 100, 505, 508, 509, 510, 511, 1023 };
+       for (int offset : offsets) {
+          DocumentInputStream stream = new NDocumentInputStream(_workbook_n);
+          assertEquals(offset, stream.skip(offset));
+          assertEquals("long at " + offset, LittleEndian.getLong(_workbook_data, offset), stream.readLong());
+          assertEquals("int at " + (offset + 8), LittleEndian.getInt(_workbook_data, offset + 8), stream.readInt());
+          assertEquals("short at " + (offset + 12), LittleEndian.getShort(_workbook_data, offset + 12), stream.readShort());
+          assertEquals("ushort at " + (offset + 14), LittleEndian.getUShort(_workbook_data, offset + 14), stream.readUShort());
+          assertEquals("ubyte at " + (offset + 16), LittleEndian.getUByte(_workbook_data, offset + 16), stream.readUByte());
+          assertEquals(_workbook_size - offset - 17, stream.available());
+          stream.close();
+       }
+    }
+
     /**
      * Tests that we can skip within the stream
      */
@@ -41,6 +41,8 @@ public class TestDataSource extends TestCase
       FileBackedDataSource ds = new FileBackedDataSource(f);
       try {
           checkDataSource(ds, false);
+          // by default, the blocks are read onto the heap
+          assertFalse(ds.read(4, 0).isReadOnly());
       } finally {
           ds.close();
       }
@@ -54,6 +56,25 @@ public class TestDataSource extends TestCase
       }
    }
 
+   public void testFileMapped() throws Exception {
+      File f = data.getFile("Notes.ole2");
+
+      System.setProperty(FileBackedDataSource.MAP_READ_ONLY_PROPERTY, "true");
+      FileBackedDataSource ds;
+      try {
+          ds = new FileBackedDataSource(f);
+      } finally {
+          System.clearProperty(FileBackedDataSource.MAP_READ_ONLY_PROPERTY);
+      }
+      try {
+          checkDataSource(ds, false);
+          // the file is mapped, and the blocks are views of the mapping
+          assertTrue(ds.read(4, 0).isReadOnly());
+      } finally {
+          ds.close();
+      }
+   }
+
    public void testFileWritable() throws Exception {
        File temp = TempFile.createTempFile("TestDataSource", ".test");
        try {
@@ -28,6 +28,10 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
     TestCellCacheEntry.class,
     TestEvaluationCache.class,
+    TestEvaluationCacheSnapshot.class,
+    TestEvaluationProfiler.class,
+    TestFormulaDependencyGraph.class,
+    TestFormulaPlan.class,
     TestWorkbookEvaluator.class,
     TestForkedEvaluator.class
 })
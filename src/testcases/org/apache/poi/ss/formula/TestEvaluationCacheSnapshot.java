@@ -0,0 +1,131 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.IEvaluationListener.ICacheEntry;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.junit.Test;
+
+public final class TestEvaluationCacheSnapshot {
+
+    private static final class CountingListener extends EvaluationListener {
+        int evaluations;
+
+        @Override
+        public void onStartEvaluate(EvaluationCell cell, ICacheEntry entry) {
+            evaluations++;
+        }
+    }
+
+    private static HSSFWorkbook createWorkbook() {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("Sheet1");
+        HSSFRow row = sheet.createRow(0);
+        row.createCell(0).setCellValue(2);
+        row.createCell(1).setCellFormula("A1*A2");
+        row = sheet.createRow(1);
+        row.createCell(0).setCellValue(3);
+        row.createCell(1).setCellFormula("B1+SUM(C1:C3)");
+        row = sheet.createRow(2);
+        row.createCell(1).setCellFormula("\"x\"&A1");
+        return wb;
+    }
+
+    private static ValueEval evaluate(WorkbookEvaluator evaluator, int rowIndex, int columnIndex) {
+        return evaluator.evaluate(evaluator.getSheet(0).getCell(rowIndex, columnIndex));
+    }
+
+    private static double evaluateNumber(WorkbookEvaluator evaluator, int rowIndex, int columnIndex) {
+        return ((NumberEval) evaluate(evaluator, rowIndex, columnIndex)).getNumberValue();
+    }
+
+    @Test
+    public void restoreWithoutEvaluation() throws IOException {
+        HSSFWorkbook wb = createWorkbook();
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        fe.evaluateAll();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fe.writeCacheSnapshot(out);
+
+        CountingListener listener = new CountingListener();
+        WorkbookEvaluator evaluator = WorkbookEvaluatorTestHelper.createEvaluator(wb, listener);
+        assertTrue(EvaluationCacheSnapshot.read(evaluator, wb, new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(6.0, evaluateNumber(evaluator, 0, 1), 0.0);
+        assertEquals(6.0, evaluateNumber(evaluator, 1, 1), 0.0);
+        assertEquals("x2", ((StringEval) evaluate(evaluator, 2, 1)).getStringValue());
+        assertEquals(0, listener.evaluations);
+
+        // the dependencies of the restored results are known
+        HSSFSheet sheet = wb.getSheetAt(0);
+        sheet.getRow(0).getCell(0).setCellValue(5);
+        evaluator.notifyUpdateCell(evaluator.getSheet(0).getCell(0, 0));
+        assertEquals(15.0, evaluateNumber(evaluator, 1, 1), 0.0);
+        assertEquals("x5", ((StringEval) evaluate(evaluator, 2, 1)).getStringValue());
+        assertEquals(3, listener.evaluations);
+
+        // as well as the used blank cells
+        sheet.getRow(1).createCell(2).setCellValue(1);
+        evaluator.notifyUpdateCell(evaluator.getSheet(0).getCell(1, 2));
+        assertEquals(16.0, evaluateNumber(evaluator, 1, 1), 0.0);
+        assertEquals(15.0, evaluateNumber(evaluator, 0, 1), 0.0);
+        assertEquals(4, listener.evaluations);
+
+        wb.close();
+    }
+
+    @Test
+    public void changedWorkbook() throws IOException {
+        HSSFWorkbook wb = createWorkbook();
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        fe.evaluateAll();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fe.writeCacheSnapshot(out);
+
+        // the cached formula results are no contents of the workbook
+        HSSFFormulaEvaluator fe2 = wb.getCreationHelper().createFormulaEvaluator();
+        assertTrue(fe2.readCacheSnapshot(new ByteArrayInputStream(out.toByteArray())));
+
+        wb.getSheetAt(0).getRow(1).getCell(1).setCellFormula("B1+SUM(C1:C4)");
+        fe2 = wb.getCreationHelper().createFormulaEvaluator();
+        assertFalse(fe2.readCacheSnapshot(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(6.0, fe2.evaluate(wb.getSheetAt(0).getRow(1).getCell(1)).getNumberValue(), 0.0);
+
+        wb.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noSnapshot() throws IOException {
+        try (HSSFWorkbook wb = createWorkbook()) {
+            wb.getCreationHelper().createFormulaEvaluator().readCacheSnapshot(new ByteArrayInputStream(new byte[64]));
+        }
+    }
+}
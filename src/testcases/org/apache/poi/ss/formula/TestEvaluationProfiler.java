@@ -0,0 +1,133 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.EvaluationProfiler.Statistic;
+import org.junit.Test;
+
+public final class TestEvaluationProfiler {
+
+    private static HSSFWorkbook createWorkbook() {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet1 = wb.createSheet("Sheet1");
+        for (int i = 0; i < 10; i++) {
+            sheet1.createRow(i).createCell(0).setCellValue(i + 1);
+        }
+        HSSFRow row = sheet1.getRow(0);
+        row.createCell(1).setCellFormula("SUM(A1:A10)");
+        row.createCell(2).setCellFormula("IF(B2>100,\"big\",\"small\")");
+        sheet1.getRow(1).createCell(1).setCellFormula("B1*2");
+        HSSFSheet sheet2 = wb.createSheet("Sheet2");
+        sheet2.createRow(0).createCell(0).setCellFormula("Sheet1!B2+1");
+        return wb;
+    }
+
+    private static Map<String, Statistic> byName(List<Statistic> statistics) {
+        Map<String, Statistic> result = new HashMap<>();
+        for (Statistic statistic : statistics) {
+            result.put(statistic.getName(), statistic);
+        }
+        return result;
+    }
+
+    @Test
+    public void recordFunctionsSheetsAndCells() throws IOException {
+        HSSFWorkbook wb = createWorkbook();
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        EvaluationProfiler profiler = new EvaluationProfiler();
+        fe.setEvaluationProfiler(profiler);
+        fe.evaluateAll();
+
+        assertEquals(4, profiler.getEvaluationCount());
+        assertEquals(3, profiler.getMaxDependencyDepth());
+        assertTrue(profiler.getCacheHitCount() > 0);
+        assertTrue(profiler.getCacheHitRatio() > 0.0 && profiler.getCacheHitRatio() < 1.0);
+
+        Map<String, Statistic> functions = byName(profiler.getFunctionStatistics());
+        assertEquals(1, functions.get("SUM").getCount());
+        // IF is evaluated by jumping over the unused argument, not as a function
+        assertNull(functions.get("IF"));
+        assertEquals(1, functions.get("Multiply").getCount());
+        assertEquals(1, functions.get("GreaterThan").getCount());
+        assertEquals(1, functions.get("Add").getCount());
+
+        Map<String, Statistic> sheets = byName(profiler.getSheetStatistics());
+        assertEquals(2, sheets.size());
+        assertEquals(3, sheets.get("Sheet1").getCount());
+        assertEquals(1, sheets.get("Sheet2").getCount());
+        // the time of the nested evaluations is only counted once
+        assertEquals(profiler.getTotalTime(), sheets.get("Sheet1").getSelfTime() + sheets.get("Sheet2").getSelfTime());
+
+        Map<String, Statistic> cells = byName(profiler.getCellStatistics());
+        assertEquals(4, cells.size());
+        assertEquals(1, cells.get("Sheet1!B1").getDependencyDepth());
+        assertEquals(2, cells.get("Sheet1!B2").getDependencyDepth());
+        assertEquals(3, cells.get("Sheet1!C1").getDependencyDepth());
+        assertEquals(3, cells.get("Sheet2!A1").getDependencyDepth());
+
+        StringBuilder report = new StringBuilder();
+        profiler.writeReport(report, 10);
+        assertTrue(report.toString().contains("SUM"));
+        assertTrue(report.toString().contains("Sheet2!A1"));
+
+        // no more recording after the profiler is removed
+        fe.setEvaluationProfiler(null);
+        fe.clearAllCachedResultValues();
+        fe.evaluateAll();
+        assertEquals(4, profiler.getEvaluationCount());
+
+        profiler.reset();
+        assertEquals(0, profiler.getEvaluationCount());
+        assertEquals(0, profiler.getCellStatistics().size());
+
+        wb.close();
+    }
+
+    @Test
+    public void recordRepeatedEvaluations() throws IOException {
+        HSSFWorkbook wb = createWorkbook();
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        EvaluationProfiler profiler = new EvaluationProfiler();
+        fe.setEvaluationProfiler(profiler);
+        fe.evaluateAll();
+        wb.getSheet("Sheet1").getRow(0).getCell(0).setCellValue(100);
+        fe.notifyUpdateCell(wb.getSheet("Sheet1").getRow(0).getCell(0));
+        fe.evaluateAll();
+
+        Map<String, Statistic> cells = byName(profiler.getCellStatistics());
+        assertEquals(2, cells.get("Sheet1!B1").getCount());
+        assertEquals(2, cells.get("Sheet2!A1").getCount());
+        assertEquals(2, byName(profiler.getFunctionStatistics()).get("SUM").getCount());
+        assertEquals(8, profiler.getEvaluationCount());
+
+        wb.close();
+    }
+}
@@ -0,0 +1,216 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.junit.Test;
+
+public final class TestFormulaDependencyGraph {
+
+    private static Cell cell(Sheet sheet, String ref) {
+        CellReference cr = new CellReference(ref);
+        Row row = sheet.getRow(cr.getRow());
+        if (row == null) {
+            row = sheet.createRow(cr.getRow());
+        }
+        Cell cell = row.getCell(cr.getCol());
+        return cell == null ? row.createCell(cr.getCol()) : cell;
+    }
+
+    private static void setValue(HSSFFormulaEvaluator fe, Sheet sheet, String ref, double value) {
+        Cell cell = cell(sheet, ref);
+        cell.setCellValue(value);
+        fe.notifyUpdateCell(cell);
+    }
+
+    private static void setFormula(Sheet sheet, String ref, String formula) {
+        cell(sheet, ref).setCellFormula(formula);
+    }
+
+    private static double value(Sheet sheet, String ref) {
+        return cell(sheet, ref).getNumericCellValue();
+    }
+
+    @Test
+    public void evaluateDirtyCone() throws IOException {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            HSSFSheet sheet = wb.createSheet("Sheet1");
+            HSSFSheet sheet2 = wb.createSheet("Sheet2");
+            for (int i = 1; i <= 10; i++) {
+                cell(sheet, "A" + i).setCellValue(i);
+            }
+            cell(sheet, "G1").setCellValue(5);
+            setFormula(sheet, "B1", "A1*2");
+            setFormula(sheet, "C1", "B1+1");
+            setFormula(sheet, "D1", "SUM(A1:A10)");
+            setFormula(sheet2, "A1", "Sheet1!C1*10");
+            setFormula(sheet, "F1", "G1+1");
+
+            HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+            assertNull(fe._getWorkbookEvaluator().getDependencyGraph());
+            // the first call evaluates all formulas
+            assertEquals(5, fe.evaluateDirtyFormulaCells());
+            assertEquals(5, fe._getWorkbookEvaluator().getDependencyGraph().getNumberOfFormulaCells());
+            assertEquals(30, value(sheet2, "A1"), 0);
+            // nothing changed
+            assertEquals(0, fe.evaluateDirtyFormulaCells());
+
+            setValue(fe, sheet, "A1", 100);
+            assertEquals(4, fe.evaluateDirtyFormulaCells());
+            assertEquals(200, value(sheet, "B1"), 0);
+            assertEquals(201, value(sheet, "C1"), 0);
+            assertEquals(154, value(sheet, "D1"), 0);
+            assertEquals(2010, value(sheet2, "A1"), 0);
+
+            // only the area reference is affected
+            setValue(fe, sheet, "A5", 0);
+            assertEquals(1, fe.evaluateDirtyFormulaCells());
+            assertEquals(149, value(sheet, "D1"), 0);
+
+            setValue(fe, sheet, "G1", 1);
+            assertEquals(1, fe.evaluateDirtyFormulaCells());
+            assertEquals(2, value(sheet, "F1"), 0);
+
+            // a changed formula is evaluated with its dependents
+            Cell c1 = cell(sheet, "C1");
+            c1.setCellFormula("B1+1000");
+            fe.notifySetFormula(c1);
+            assertEquals(2, fe.evaluateDirtyFormulaCells());
+            assertEquals(12000, value(sheet2, "A1"), 0);
+
+            // a removed formula isn't evaluated anymore
+            Cell b1 = cell(sheet, "B1");
+            b1.setCellType(CellType.BLANK);
+            b1.setCellValue(1);
+            fe.notifyUpdateCell(b1);
+            assertEquals(2, fe.evaluateDirtyFormulaCells());
+            assertEquals(1001, value(sheet, "C1"), 0);
+            assertEquals(4, fe._getWorkbookEvaluator().getDependencyGraph().getNumberOfFormulaCells());
+
+            fe.clearAllCachedResultValues();
+            assertNull(fe._getWorkbookEvaluator().getDependencyGraph());
+        }
+    }
+
+    @Test
+    public void levels() throws IOException {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            HSSFSheet sheet = wb.createSheet("Sheet1");
+            cell(sheet, "A1").setCellValue(1);
+            setFormula(sheet, "B1", "A1+1");
+            setFormula(sheet, "B2", "A1+2");
+            setFormula(sheet, "C1", "B1+B2");
+            setFormula(sheet, "D1", "SUM(B1:C1)");
+
+            HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+            fe.evaluateDirtyFormulaCells();
+            FormulaDependencyGraph graph = fe._getWorkbookEvaluator().getDependencyGraph();
+            assertNotNull(graph);
+
+            setValue(fe, sheet, "A1", 2);
+            int[][] levels = graph.takeDirtyLevels();
+            assertEquals(3, levels.length);
+            assertEquals(2, levels[0].length);
+            assertEquals("C1", ref(graph, levels[1][0]));
+            assertEquals("D1", ref(graph, levels[2][0]));
+            assertEquals(0, graph.takeDirtyLevels().length);
+
+            assertEquals(2, graph.getDirectDependents(0, 0, 1).length);
+        }
+    }
+
+    private static String ref(FormulaDependencyGraph graph, int node) {
+        return new CellReference(graph.getRowIndex(node), graph.getColumnIndex(node)).formatAsString();
+    }
+
+    @Test
+    public void volatileAndCircularFormulas() throws IOException {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            HSSFSheet sheet = wb.createSheet("Sheet1");
+            cell(sheet, "A1").setCellValue(1);
+            cell(sheet, "A2").setCellValue(7);
+            setFormula(sheet, "B1", "INDIRECT(\"A\"&A1)");
+            setFormula(sheet, "C1", "B1*2");
+            setFormula(sheet, "D1", "E1+1");
+            setFormula(sheet, "E1", "D1+1");
+
+            HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+            assertEquals(4, fe.evaluateDirtyFormulaCells());
+            assertEquals(2, value(sheet, "C1"), 0);
+            assertEquals(CellType.ERROR, cell(sheet, "D1").getCachedFormulaResultType());
+
+            // the INDIRECT is evaluated each time
+            assertEquals(2, fe.evaluateDirtyFormulaCells());
+
+            setValue(fe, sheet, "A1", 2);
+            assertEquals(2, fe.evaluateDirtyFormulaCells());
+            assertEquals(14, value(sheet, "C1"), 0);
+        }
+    }
+
+    @Test
+    public void sameResultsAsFullEvaluation() throws IOException {
+        Random rnd = new Random(42);
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            HSSFSheet sheet = wb.createSheet("Sheet1");
+            for (int r = 0; r < 50; r++) {
+                cell(sheet, "A" + (r + 1)).setCellValue(r);
+            }
+            // columns B to F reference the previous columns with cells and areas
+            for (int c = 1; c < 6; c++) {
+                String col = CellReference.convertNumToColString(c);
+                String prev = CellReference.convertNumToColString(c - 1);
+                for (int r = 1; r <= 50; r++) {
+                    int other = rnd.nextInt(50) + 1;
+                    int to = Math.min(50, other + rnd.nextInt(10));
+                    setFormula(sheet, col + r, prev + r + "+SUM(" + prev + other + ":" + prev + to + ")/100");
+                }
+            }
+
+            HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+            fe.evaluateDirtyFormulaCells();
+            for (int i = 0; i < 20; i++) {
+                setValue(fe, sheet, "A" + (rnd.nextInt(50) + 1), rnd.nextInt(1000));
+                fe.evaluateDirtyFormulaCells();
+
+                HSSFFormulaEvaluator full = new HSSFFormulaEvaluator(wb);
+                for (Row row : sheet) {
+                    for (Cell cell : row) {
+                        if (cell.getCellType() == CellType.FORMULA) {
+                            assertEquals(full.evaluate(cell).getNumberValue(), cell.getNumericCellValue(), 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
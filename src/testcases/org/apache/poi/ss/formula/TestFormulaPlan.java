@@ -0,0 +1,176 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.junit.Test;
+
+public final class TestFormulaPlan {
+
+    private static FormulaPlan compile(String formula, boolean arrayFormula) throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        try {
+            wb.createSheet();
+            Ptg[] ptgs = HSSFFormulaParser.parse(formula, wb);
+            return FormulaPlan.compile(ptgs, arrayFormula);
+        } finally {
+            wb.close();
+        }
+    }
+
+    private static int count(FormulaPlan plan, byte kind) {
+        int count = 0;
+        for (int i = 0; i < plan.getPtgs().length; i++) {
+            if (plan.getKind(i) == kind) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the value of the last constant of the plan, i.e. the folded result
+     */
+    private static ValueEval lastConstant(FormulaPlan plan) {
+        for (int i = plan.getPtgs().length - 1; i >= 0; i--) {
+            if (plan.getKind(i) == FormulaPlan.CONSTANT) {
+                return plan.getConstant(i);
+            }
+        }
+        return null;
+    }
+
+    private static FormulaPlan getPlan(WorkbookEvaluator evaluator, HSSFCell cell) {
+        EvaluationCell evalCell = evaluator.getSheet(0).getCell(cell.getRowIndex(), cell.getColumnIndex());
+        return evaluator.getOrCreateFormulaCellEntry(evalCell).getPlan();
+    }
+
+    @Test
+    public void foldConstantOperators() throws IOException {
+        FormulaPlan plan = compile("A1*(1/12)", false);
+        assertEquals(1, count(plan, FormulaPlan.CONSTANT));
+        assertEquals(1, count(plan, FormulaPlan.OPERAND));
+        assertEquals(1, count(plan, FormulaPlan.OPERATION));
+        assertEquals(1.0 / 12, ((NumberEval) lastConstant(plan)).getNumberValue(), 0.0);
+
+        plan = compile("(1+2)*3-B2", false);
+        assertEquals(1, count(plan, FormulaPlan.CONSTANT));
+        assertEquals(9.0, ((NumberEval) lastConstant(plan)).getNumberValue(), 0.0);
+
+        plan = compile("\"a\"&\"b\"", false);
+        assertEquals(1, count(plan, FormulaPlan.CONSTANT));
+        assertEquals("ab", ((StringEval) lastConstant(plan)).getStringValue());
+    }
+
+    @Test
+    public void dontFoldFunctionsOrArrayFormulas() throws IOException {
+        // functions may depend on the evaluation context, e.g. NOW() or ROW()
+        FormulaPlan plan = compile("ROUND(1/3,2)", false);
+        assertEquals(2, count(plan, FormulaPlan.CONSTANT));
+        assertEquals(1, count(plan, FormulaPlan.OPERATION));
+
+        plan = compile("1+2", true);
+        assertEquals(2, count(plan, FormulaPlan.CONSTANT));
+        assertEquals(1, count(plan, FormulaPlan.OPERATION));
+    }
+
+    @Test
+    public void evaluateJumps() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        HSSFRow row = sheet.createRow(0);
+        HSSFCell a1 = row.createCell(0);
+        HSSFCell b1 = row.createCell(1);
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+
+        String[][] formulas = {
+            { "IF(A1>1,\"big\",\"small\")", "small", "big", "big" },
+            { "IF(A1>1,\"big\")", "FALSE", "big", "big" },
+            { "CHOOSE(A1,\"a\",\"b\",\"c\")", "a", "b", "c" },
+            { "IF(A1=2,CHOOSE(A1,1,2*2+0,3),IF(A1>2,3*4,-1))", "-1.0", "4.0", "12.0" },
+            { "SUM(A1,A1)+1/2", "2.5", "4.5", "6.5" },
+        };
+        for (String[] f : formulas) {
+            b1.setCellFormula(f[0]);
+            fe.notifySetFormula(b1);
+            for (int i = 1; i <= 3; i++) {
+                a1.setCellValue(i);
+                fe.notifyUpdateCell(a1);
+                CellValue cv = fe.evaluate(b1);
+                assertEquals(f[0] + " with A1=" + i, f[i], cv.formatAsString().replace("\"", ""));
+            }
+        }
+
+        a1.setCellValue(5);
+        fe.notifyUpdateCell(a1);
+        b1.setCellFormula("CHOOSE(A1,\"a\",\"b\",\"c\")");
+        fe.notifySetFormula(b1);
+        assertEquals(FormulaError.VALUE.getCode(), fe.evaluate(b1).getErrorValue());
+
+        wb.close();
+    }
+
+    @Test
+    public void reusePlanUntilFormulaChanges() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        HSSFRow row = sheet.createRow(0);
+        HSSFCell a1 = row.createCell(0);
+        HSSFCell b1 = row.createCell(1);
+        a1.setCellValue(2);
+        b1.setCellFormula("A1*(1+1)");
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        WorkbookEvaluator evaluator = fe._getWorkbookEvaluator();
+
+        assertEquals(4.0, fe.evaluate(b1).getNumberValue(), 0.0);
+        FormulaPlan plan = getPlan(evaluator, b1);
+        assertNotNull(plan);
+
+        // changed input values keep the plan
+        a1.setCellValue(3);
+        fe.notifyUpdateCell(a1);
+        assertEquals(6.0, fe.evaluate(b1).getNumberValue(), 0.0);
+        assertSame(plan, getPlan(evaluator, b1));
+
+        // a changed formula is compiled again
+        b1.setCellFormula("A1*(1+2)");
+        fe.notifySetFormula(b1);
+        assertEquals(9.0, fe.evaluate(b1).getNumberValue(), 0.0);
+        assertNotSame(plan, getPlan(evaluator, b1));
+
+        wb.close();
+    }
+}
@@ -602,4 +602,68 @@ public class TestWorkbookEvaluator {
         
         testIFEqualsFormulaEvaluation_teardown(wb);
     }
+
+    /**
+     * Long chains of formulas, like running totals referencing the cell above,
+     * must not need a Java stack frame per cell
+     */
+    @Test
+    public void testLongFormulaChain() throws Exception {
+        final int rows = 50000;
+        final HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("Sheet1");
+        sheet.createRow(0).createCell(0).setCellValue(1);
+        for (int i = 1; i < rows; i++) {
+            HSSFRow row = sheet.createRow(i);
+            row.createCell(0).setCellFormula("A" + i + "+B" + (i + 1) + "+SUM($C$1:$C$3)");
+            row.createCell(1).setCellValue(2);
+        }
+        sheet.getRow(0).createCell(2).setCellValue(0.5);
+        final HSSFCell last = sheet.getRow(rows - 1).getCell(0);
+
+        // a small stack, which would overflow with a recursive evaluation
+        final CellValue[] result = new CellValue[1];
+        final Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = wb.getCreationHelper().createFormulaEvaluator().evaluate(last);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        }, "evaluator", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (error[0] != null) {
+            throw new AssertionError("evaluation failed", error[0]);
+        }
+        assertEquals(1 + (rows - 1) * 2.5, result[0].getNumberValue(), EPSILON);
+        wb.close();
+    }
+
+    /**
+     * Cells with circular references within a long chain are still detected
+     */
+    @Test
+    public void testLongFormulaChainWithCircularReference() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("Sheet1");
+        sheet.createRow(0).createCell(0).setCellFormula("A2");
+        // deeper than the recursive evaluation, but errors of circular references aren't cached,
+        // so cells depending on them are still evaluated recursively
+        for (int i = 1; i < 100; i++) {
+            sheet.createRow(i).createCell(0).setCellFormula("A" + i + "+1");
+        }
+        // a branch, which isn't evaluated in advance
+        sheet.getRow(0).createCell(1).setCellFormula("IF(TRUE,1,A100)");
+
+        FormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        CellValue cv = fe.evaluate(sheet.getRow(99).getCell(0));
+        assertEquals(CellType.ERROR, cv.getCellType());
+        assertEquals(ErrorEval.CIRCULAR_REF_ERROR.getErrorCode(), cv.getErrorValue());
+        assertEquals(1, fe.evaluate(sheet.getRow(0).getCell(1)).getNumberValue(), EPSILON);
+        wb.close();
+    }
 }
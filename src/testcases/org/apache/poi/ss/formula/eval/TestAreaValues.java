@@ -0,0 +1,150 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.junit.Test;
+
+public final class TestAreaValues {
+
+    @Test
+    public void addAndGetValues() {
+        AreaValues values = new AreaValues();
+        values.reset(2, 20);
+        values.addNumber(1.5);
+        values.addValue(BoolEval.TRUE);
+        values.addValue(new StringEval("a"));
+        values.addValue(ErrorEval.NA);
+        values.addValue(BlankEval.instance);
+        values.addValue(new NumberEval(-2));
+
+        assertEquals(40, values.getSize());
+        assertEquals(6, values.getCount());
+        assertEquals(AreaValues.NUMBER, values.getType(0));
+        assertEquals(1.5, values.getNumber(0), 0.0);
+        assertEquals(AreaValues.BOOLEAN, values.getType(1));
+        assertEquals(1.0, values.getNumber(1), 0.0);
+        assertSame(BoolEval.TRUE, values.getValue(1));
+        assertEquals(AreaValues.STRING, values.getType(2));
+        assertEquals("a", ((StringEval) values.getValue(2)).getStringValue());
+        assertSame(ErrorEval.NA, values.getValue(3));
+        assertEquals(AreaValues.BLANK, values.getType(4));
+        assertEquals(-2.0, ((NumberEval) values.getValue(5)).getNumberValue(), 0.0);
+        // the cells after the added values are blank
+        assertEquals(AreaValues.BLANK, values.getType(39));
+        assertSame(BlankEval.instance, values.getValue(39));
+
+        // the values are removed for the next area
+        values.reset(1, 3);
+        assertEquals(3, values.getSize());
+        assertEquals(0, values.getCount());
+        assertEquals(AreaValues.BLANK, values.getType(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addTooManyValues() {
+        AreaValues values = new AreaValues();
+        values.reset(1, 1);
+        values.addNumber(1);
+        values.addNumber(2);
+    }
+
+    private static HSSFCell cell(HSSFSheet sheet, int rowIndex, int columnIndex) {
+        HSSFRow row = sheet.getRow(rowIndex);
+        if (row == null) {
+            row = sheet.createRow(rowIndex);
+        }
+        return row.createCell(columnIndex);
+    }
+
+    private static void confirm(HSSFFormulaEvaluator fe, HSSFCell cell, String formula, double expected) {
+        cell.setCellFormula(formula);
+        fe.notifySetFormula(cell);
+        CellValue cv = fe.evaluate(cell);
+        assertEquals(formula, expected, cv.getNumberValue(), 0.0);
+    }
+
+    /**
+     * The aggregate functions get the values of the areas at once, which needs to give the same
+     * results and dependencies as getting them one by one
+     */
+    @Test
+    public void aggregateLargeAreas() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        cell(sheet, 0, 0).setCellValue(1);
+        cell(sheet, 1, 0).setCellValue(2);
+        cell(sheet, 2, 0).setCellValue(true);
+        cell(sheet, 3, 0).setCellValue("3");
+        // A5 is blank
+        cell(sheet, 5, 0).setCellFormula("A1*10");
+        cell(sheet, 6, 0).setCellValue(-4);
+        HSSFCell a8 = cell(sheet, 7, 0);
+        a8.setCellValue("x");
+        for (int r = 0; r < 8; r++) {
+            cell(sheet, r, 1).setCellValue(r + 1);
+        }
+
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        HSSFCell sum = cell(sheet, 0, 3);
+        sum.setCellFormula("SUM(A1:A1000)");
+        assertEquals(9.0, fe.evaluate(sum).getNumberValue(), 0.0);
+
+        HSSFCell other = cell(sheet, 1, 3);
+        confirm(fe, other, "COUNT(A1:A1000)", 4);
+        confirm(fe, other, "AVERAGE(A1:A1000)", 2.25);
+        confirm(fe, other, "MIN(A1:A1000)", -4);
+        confirm(fe, other, "MAXA(A1:A1000)", 10);
+        // blanks are counted as zero
+        confirm(fe, other, "MINA(A1:A1000,A7:A7)", -4);
+        confirm(fe, other, "MINA(A1:A3,A9:A1000)", 0);
+        confirm(fe, other, "SUMPRODUCT(A1:A1000,B1:B1000)", 1 + 4 + 3 + 60 - 28);
+        confirm(fe, other, "SUMIFS(B1:B1000,A1:A1000,\">0\")", 1 + 2 + 6);
+        confirm(fe, other, "COUNTIFS(A1:A1000,\"3\")", 1);
+        confirm(fe, other, "COUNTIFS(A1:A1000,\"<>5\",B1:B1000,\"<>5\")", 1000 - 1 - 1);
+
+        // changed and new plain number cells
+        HSSFCell a1 = sheet.getRow(0).getCell(0);
+        a1.setCellValue(5);
+        fe.notifyUpdateCell(a1);
+        assertEquals(5 + 2 + 50 - 4, fe.evaluate(sum).getNumberValue(), 0.0);
+        HSSFCell a700 = cell(sheet, 699, 0);
+        a700.setCellValue(100);
+        fe.notifyUpdateCell(a700);
+        assertEquals(5 + 2 + 50 - 4 + 100, fe.evaluate(sum).getNumberValue(), 0.0);
+
+        // errors are propagated
+        a8.setCellErrorValue(FormulaError.DIV0.getCode());
+        fe.notifyUpdateCell(a8);
+        assertEquals(FormulaError.DIV0.getCode(), fe.evaluate(sum).getErrorValue());
+        confirm(fe, other, "SUMIFS(B1:B1000,A1:A1000,\">0\")", 1 + 2 + 6);
+
+        wb.close();
+    }
+}
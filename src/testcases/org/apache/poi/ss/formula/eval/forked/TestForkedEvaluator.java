@@ -20,6 +20,12 @@ package org.apache.poi.ss.formula.eval.forked;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.formula.IStabilityClassifier;
@@ -94,6 +100,62 @@ public class TestForkedEvaluator {
 		wb.close();
 	}
 
+	/**
+	 * Many threads evaluate their own inputs with forked evaluators sharing the evaluated base
+	 */
+	@Test
+	public void testSharedBase() throws Exception {
+		Workbook wb = createWorkbook();
+		Sheet sheet2 = wb.getSheet("Calculations");
+		sheet2.getRow(0).createCell(2).setCellFormula("A1*2");
+		sheet2.createRow(1).createCell(0).setCellFormula("SUM(B1:B3)+Inputs!B1");
+		sheet2.getRow(1).createCell(1).setCellValue(7.0);
+		sheet2.createRow(2).createCell(0).setCellFormula("INDIRECT(\"Inputs!A1\")+1");
+		sheet2.getRow(2).createCell(2).setCellFormula("A3*10");
+
+		final ForkedEvaluationBase base = ForkedEvaluationBase.create(wb, null, null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < 50; i++) {
+							double input = thread * 100 + i;
+							ForkedEvaluator fe = ForkedEvaluator.create(base);
+							// the results of the base
+							assertEquals(7.0, evaluate(fe, 0, 0), 0.0);
+							assertEquals(15.0, evaluate(fe, 1, 0), 0.0);
+							fe.updateCell("Inputs", 0, 0, new NumberEval(input));
+							assertEquals(5 * input - 3, evaluate(fe, 0, 0), 0.0);
+							assertEquals(10 * input - 6, evaluate(fe, 0, 2), 0.0);
+							assertEquals(15.0, evaluate(fe, 1, 0), 0.0);
+							// the volatile formula and its dependents are always evaluated
+							assertEquals(input + 1, evaluate(fe, 2, 0), 0.0);
+							assertEquals(10 * input + 10, evaluate(fe, 2, 2), 0.0);
+							fe.updateCell("Inputs", 0, 1, new NumberEval(1.0));
+							assertEquals(5 * input - 1, evaluate(fe, 0, 0), 0.0);
+							assertEquals(13.0, evaluate(fe, 1, 0), 0.0);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		wb.close();
+	}
+
+	private static double evaluate(ForkedEvaluator fe, int rowIndex, int columnIndex) {
+		return ((NumberEval) fe.evaluate("Calculations", rowIndex, columnIndex)).getNumberValue();
+	}
+
 	/**
 	 * As of Sep 2009, the Forked evaluator can update values from existing cells (this is because
 	 * the underlying 'master' cell is used as a key into the calculation cache.  Prior to the fix
@@ -37,6 +37,7 @@ import org.junit.runners.Suite;
     TestIsBlank.class,
     TestLen.class,
     TestLookupFunctionsFromSpreadsheet.class,
+    TestLookupIndex.class,
     TestMatch.class,
     TestMathX.class,
     TestMid.class,
@@ -0,0 +1,291 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellReference;
+import org.junit.Test;
+
+/**
+ * Compares the lookups using the cached {@link LookupIndex} of lazily evaluated areas with the
+ * lookups scanning the values of plain areas
+ */
+public final class TestLookupIndex {
+
+    private static final int ROWS = 60;
+
+    private static final Object[] LOOKUP_VALUES = {
+        0.0, -0.0, 1.0, 2.0, 3.5, 7.0, 100.0, -3.0,
+        "abc", "ABC", "Abd", "5", "7", "zz", "", "a*", "?b?",
+        Boolean.TRUE, Boolean.FALSE, null
+    };
+
+    private static void setValue(Cell cell, Object value) {
+        if (value instanceof Double) {
+            cell.setCellValue((Double) value);
+        } else if (value instanceof String) {
+            cell.setCellValue((String) value);
+        } else if (value instanceof Boolean) {
+            cell.setCellValue((Boolean) value);
+        } else {
+            cell.setCellType(CellType.BLANK);
+        }
+    }
+
+    private static Object randomValue(Random rnd) {
+        switch (rnd.nextInt(6)) {
+            case 0:
+            case 1:
+                return (double) (rnd.nextInt(10) - 3);
+            case 2:
+                return rnd.nextBoolean() ? "abc" : "ABC";
+            case 3:
+                return new String[] { "5", "7", "Abd", "a", "x*" }[rnd.nextInt(5)];
+            case 4:
+                return rnd.nextBoolean();
+            default:
+                return null;
+        }
+    }
+
+    private static HSSFCell cell(HSSFSheet sheet, int rowIndex, int columnIndex) {
+        HSSFRow row = sheet.getRow(rowIndex);
+        if (row == null) {
+            row = sheet.createRow(rowIndex);
+        }
+        return row.getCell(columnIndex) == null ? row.createCell(columnIndex) : row.getCell(columnIndex);
+    }
+
+    private static ValueEval toValueEval(Object value) {
+        if (value instanceof Double) {
+            return new NumberEval((Double) value);
+        }
+        if (value instanceof String) {
+            return new StringEval((String) value);
+        }
+        if (value instanceof Boolean) {
+            return BoolEval.valueOf((Boolean) value);
+        }
+        return BlankEval.instance;
+    }
+
+    /**
+     * @return the formula text of the lookup value, blank is looked up as reference to a blank cell
+     */
+    private static String toFormula(Object value) {
+        if (value instanceof Double) {
+            return String.valueOf(value);
+        }
+        if (value instanceof String) {
+            return "\"" + value + "\"";
+        }
+        if (value instanceof Boolean) {
+            return String.valueOf(value).toUpperCase();
+        }
+        return "$Z$1";
+    }
+
+    /**
+     * @return a plain area, which doesn't cache an index, with the current values of the sheet
+     */
+    private static AreaEval plainArea(HSSFSheet sheet, String ref) {
+        AreaReference area = new AreaReference(ref, sheet.getWorkbook().getSpreadsheetVersion());
+        CellReference first = area.getFirstCell();
+        CellReference last = area.getLastCell();
+        int width = last.getCol() - first.getCol() + 1;
+        ValueEval[] values = new ValueEval[(last.getRow() - first.getRow() + 1) * width];
+        for (int r = first.getRow(); r <= last.getRow(); r++) {
+            for (int c = first.getCol(); c <= last.getCol(); c++) {
+                HSSFRow row = sheet.getRow(r);
+                Cell cell = row == null ? null : row.getCell(c);
+                ValueEval value = BlankEval.instance;
+                if (cell != null && cell.getCellType() == CellType.NUMERIC) {
+                    value = new NumberEval(cell.getNumericCellValue());
+                } else if (cell != null && cell.getCellType() == CellType.STRING) {
+                    value = new StringEval(cell.getStringCellValue());
+                } else if (cell != null && cell.getCellType() == CellType.BOOLEAN) {
+                    value = BoolEval.valueOf(cell.getBooleanCellValue());
+                }
+                values[(r - first.getRow()) * width + c - first.getCol()] = value;
+            }
+        }
+        return EvalFactory.createAreaEval(ref, values);
+    }
+
+    private static void confirm(HSSFFormulaEvaluator fe, HSSFCell cell, String formula, ValueEval expected) {
+        cell.setCellFormula(formula);
+        fe.notifySetFormula(cell);
+        CellValue actual = fe.evaluate(cell);
+        String msg = formula;
+        if (expected instanceof NumberEval) {
+            assertEquals(msg, CellType.NUMERIC, actual.getCellType());
+            assertEquals(msg, ((NumberEval) expected).getNumberValue(), actual.getNumberValue(), 0.0);
+        } else if (expected instanceof StringEval) {
+            assertEquals(msg, ((StringEval) expected).getStringValue(), actual.getStringValue());
+        } else if (expected instanceof BoolEval) {
+            assertEquals(msg, CellType.BOOLEAN, actual.getCellType());
+            assertEquals(msg, ((BoolEval) expected).getBooleanValue(), actual.getBooleanValue());
+        } else if (expected instanceof ErrorEval) {
+            assertEquals(msg, CellType.ERROR, actual.getCellType());
+            assertEquals(msg, ((ErrorEval) expected).getErrorCode(), actual.getErrorValue());
+        } else {
+            // blank results of lookups are evaluated as zero
+            assertEquals(msg, 0.0, actual.getNumberValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void sameResultsAsScanning() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        Random rnd = new Random(4711);
+        for (int r = 0; r < ROWS; r++) {
+            // unsorted mixed values in A, sorted numbers in C
+            Object value = randomValue(rnd);
+            setValue(cell(sheet, r, 0), value);
+            cell(sheet, r, 1).setCellValue(r + 0.25);
+            cell(sheet, r, 2).setCellValue(r / 4 - 3);
+            cell(sheet, r, 3).setCellValue(r * 2);
+            // the same values transposed into rows 71 and 72
+            setValue(cell(sheet, 70, r), value);
+            cell(sheet, 71, r).setCellValue(r + 0.5);
+        }
+
+        AreaEval tableAB = plainArea(sheet, "A1:B60");
+        AreaEval tableCD = plainArea(sheet, "C1:D60");
+        AreaEval columnA = plainArea(sheet, "A1:A60");
+        AreaEval columnB = plainArea(sheet, "B1:B60");
+        AreaEval columnC = plainArea(sheet, "C1:C60");
+        AreaEval columnD = plainArea(sheet, "D1:D60");
+        AreaEval rows71 = plainArea(sheet, "A71:BH72");
+
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        HSSFCell cell = cell(sheet, 80, 0);
+        NumberEval two = new NumberEval(2);
+        for (Object value : LOOKUP_VALUES) {
+            String x = toFormula(value);
+            ValueEval v = toValueEval(value);
+            for (boolean range : new boolean[] { false, true }) {
+                BoolEval rangeLookup = BoolEval.valueOf(range);
+                confirm(fe, cell, "VLOOKUP(" + x + ",A1:B60,2," + rangeLookup.getStringValue() + ")",
+                        new Vlookup().evaluate(new ValueEval[] { v, tableAB, two, rangeLookup }, 80, 0));
+                confirm(fe, cell, "VLOOKUP(" + x + ",C1:D60,2," + rangeLookup.getStringValue() + ")",
+                        new Vlookup().evaluate(new ValueEval[] { v, tableCD, two, rangeLookup }, 80, 0));
+                confirm(fe, cell, "HLOOKUP(" + x + ",A71:BH72,2," + rangeLookup.getStringValue() + ")",
+                        new Hlookup().evaluate(new ValueEval[] { v, rows71, two, rangeLookup }, 80, 0));
+            }
+            for (int matchType = -1; matchType <= 1; matchType++) {
+                NumberEval type = new NumberEval(matchType);
+                confirm(fe, cell, "MATCH(" + x + ",A1:A60," + matchType + ")",
+                        new Match().evaluate(new ValueEval[] { v, columnA, type }, 80, 0));
+                confirm(fe, cell, "MATCH(" + x + ",C1:C60," + matchType + ")",
+                        new Match().evaluate(new ValueEval[] { v, columnC, type }, 80, 0));
+            }
+            confirm(fe, cell, "LOOKUP(" + x + ",C1:C60,D1:D60)",
+                    new Lookup().evaluate(new ValueEval[] { v, columnC, columnD }, 80, 0));
+            confirm(fe, cell, "COUNTIF(A1:B60," + x + ")",
+                    new Countif().evaluate(new ValueEval[] { tableAB, v }, 80, 0));
+            confirm(fe, cell, "SUMIF(A1:A60," + x + ",B1:B60)",
+                    new Sumif().evaluate(new ValueEval[] { columnA, v, columnB }, 80, 0));
+            if (value != null) {
+                String criteria = "=" + (value instanceof Boolean ? toFormula(value) : value);
+                StringEval se = new StringEval(criteria);
+                confirm(fe, cell, "COUNTIF(A1:B60,\"" + criteria + "\")",
+                        new Countif().evaluate(new ValueEval[] { tableAB, se }, 80, 0));
+            }
+        }
+
+        wb.close();
+    }
+
+    @Test
+    public void invalidateIndexOfChangedCells() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        for (int r = 0; r < 50; r++) {
+            cell(sheet, r, 0).setCellValue("key" + r);
+            cell(sheet, r, 1).setCellValue(r);
+        }
+        // a formula key depending on a cell outside of the table
+        cell(sheet, 60, 5).setCellValue("input");
+        cell(sheet, 50, 0).setCellFormula("F61&\"!\"");
+        cell(sheet, 50, 1).setCellValue(50);
+
+        HSSFCell lookup1 = cell(sheet, 0, 3);
+        HSSFCell lookup2 = cell(sheet, 1, 3);
+        HSSFCell count = cell(sheet, 2, 3);
+        HSSFCell match = cell(sheet, 3, 3);
+        lookup1.setCellFormula("VLOOKUP(\"key42\",A1:B1000,2,FALSE)");
+        lookup2.setCellFormula("VLOOKUP(\"input!\",A1:B1000,2,FALSE)");
+        count.setCellFormula("COUNTIF(A1:A1000,\"key7\")");
+        match.setCellFormula("MATCH(\"new\",A1:A1000,0)");
+
+        HSSFFormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+        assertEquals(42.0, fe.evaluate(lookup1).getNumberValue(), 0.0);
+        assertEquals(50.0, fe.evaluate(lookup2).getNumberValue(), 0.0);
+        assertEquals(1.0, fe.evaluate(count).getNumberValue(), 0.0);
+        assertEquals(ErrorEval.NA.getErrorCode(), fe.evaluate(match).getErrorValue());
+
+        // a changed plain value
+        HSSFCell key7 = cell(sheet, 7, 0);
+        key7.setCellValue("key42");
+        fe.notifyUpdateCell(key7);
+        assertEquals(7.0, fe.evaluate(lookup1).getNumberValue(), 0.0);
+        assertEquals(0.0, fe.evaluate(count).getNumberValue(), 0.0);
+
+        // a changed formula result
+        HSSFCell input = cell(sheet, 60, 5);
+        input.setCellValue("other");
+        fe.notifyUpdateCell(input);
+        assertEquals(ErrorEval.NA.getErrorCode(), fe.evaluate(lookup2).getErrorValue());
+
+        // a new cell below the last row
+        HSSFCell newKey = cell(sheet, 500, 0);
+        newKey.setCellValue("new");
+        fe.notifyUpdateCell(newKey);
+        assertEquals(501.0, fe.evaluate(match).getNumberValue(), 0.0);
+
+        // a blank cell within the rows of the sheet
+        HSSFCell blank = cell(sheet, 200, 0);
+        blank.setCellValue("key7");
+        fe.notifyUpdateCell(blank);
+        assertEquals(1.0, fe.evaluate(count).getNumberValue(), 0.0);
+
+        wb.close();
+    }
+}
@@ -0,0 +1,167 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public final class TestSortedIntMap {
+    @Test
+    public void testPutGetRemove() {
+        SortedIntMap<String> map = new SortedIntMap<>(1);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(5, "5"));
+        assertNull(map.put(1, "1"));
+        assertNull(map.put(9, "9"));
+        assertNull(map.put(3, "3"));
+        assertEquals("3", map.put(3, "three"));
+
+        assertEquals(4, map.size());
+        assertEquals(1, map.firstKey());
+        assertEquals(9, map.lastKey());
+        assertEquals("three", map.get(3));
+        assertNull(map.get(4));
+        assertEquals(Arrays.asList("1", "three", "5", "9"), new ArrayList<>(map.values()));
+
+        assertEquals("5", map.remove(5));
+        assertNull(map.remove(5));
+        assertEquals(Arrays.asList("1", "three", "9"), new ArrayList<>(map.values()));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        try {
+            map.firstKey();
+            fail("empty map has no first key");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHeadSizeAndRange() {
+        SortedIntMap<String> map = new SortedIntMap<>();
+        for (int i = 0; i < 20; i += 2) {
+            map.put(i, Integer.toString(i));
+        }
+        assertEquals(0, map.headSize(-1));
+        assertEquals(0, map.headSize(0));
+        assertEquals(1, map.headSize(1));
+        assertEquals(3, map.headSize(6));
+        assertEquals(10, map.headSize(100));
+
+        assertEquals(Arrays.asList("4", "6", "8"), new ArrayList<>(map.values(3, 10)));
+        assertEquals(0, map.values(5, 5).size());
+        assertEquals(3, map.values(3, 10).size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        SortedIntMap<Integer> map = new SortedIntMap<>();
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i);
+        }
+        for (Iterator<Integer> it = map.values().iterator(); it.hasNext(); ) {
+            if (it.next() % 3 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(Arrays.asList(1, 2, 4, 5, 7, 8), new ArrayList<>(map.values()));
+
+        Iterator<Integer> it = map.values().iterator();
+        it.next();
+        map.put(100, 100);
+        try {
+            it.next();
+            fail("map was modified");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDescendingAndRemoveFromStart() {
+        SortedIntMap<Integer> map = new SortedIntMap<>(1);
+        TreeMap<Integer,Integer> ref = new TreeMap<>();
+        // built in descending order, the gap stays at the start
+        for (int i = 999; i >= 0; i--) {
+            map.put(i * 2, i);
+            ref.put(i * 2, i);
+        }
+        // then filled in the middle and appended again
+        for (int i = 501; i < 1500; i += 2) {
+            map.put(i, i);
+            ref.put(i, i);
+        }
+        map.put(5000, 5000);
+        ref.put(5000, 5000);
+        assertEquals(new ArrayList<>(ref.values()), new ArrayList<>(map.values()));
+
+        // removed from the start, like the top rows of a sheet
+        for (int i = 0; i < 600; i++) {
+            int key = map.firstKey();
+            assertEquals(ref.remove(key), map.remove(key));
+        }
+        assertEquals(ref.firstKey().intValue(), map.firstKey());
+        assertEquals(ref.lastKey().intValue(), map.lastKey());
+        assertEquals(new ArrayList<>(ref.values()), new ArrayList<>(map.values()));
+        assertEquals(new ArrayList<>(ref.subMap(1000, 1200).values()), new ArrayList<>(map.values(1000, 1200)));
+        assertEquals(ref.headMap(1001).size(), map.headSize(1001));
+        for (Map.Entry<Integer,Integer> e : ref.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertNull(map.get(1));
+    }
+
+    @Test
+    public void testSameAsTreeMap() {
+        Random rnd = new Random(42);
+        SortedIntMap<Integer> map = new SortedIntMap<>();
+        TreeMap<Integer,Integer> ref = new TreeMap<>();
+        for (int i = 0; i < 10000; i++) {
+            int key = rnd.nextInt(500);
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(ref.remove(key), map.remove(key));
+            } else {
+                assertEquals(ref.put(key, i), map.put(key, i));
+            }
+        }
+        assertEquals(ref.size(), map.size());
+        assertEquals(ref.firstKey().intValue(), map.firstKey());
+        assertEquals(ref.lastKey().intValue(), map.lastKey());
+        assertEquals(new ArrayList<>(ref.values()), new ArrayList<>(map.values()));
+        assertEquals(new ArrayList<>(ref.subMap(100, 200).values()), new ArrayList<>(map.values(100, 200)));
+        assertEquals(ref.headMap(250).size(), map.headSize(250));
+        for (Map.Entry<Integer,Integer> e : ref.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+    }
+}